@@ -300,7 +300,7 @@ const App = () => {
     console.log('📄 Document detected in App:', event);
     
     if (event.corners && event.croppedImage) {
-      console.log('✅ Document successfully detected with', event.corners.length, 'corners');
+      console.log('✅ Document successfully detected with', event.corners.length / 2, 'corners');
       
       // Auto-process the detected document without cluttering feedback
       processDetectedDocument(event.croppedImage, event.frameWidth, event.frameHeight);
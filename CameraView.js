@@ -17,6 +17,9 @@ class CameraView extends React.Component {
     this.isReady = false;
     this.documentDetectionListener = null;
     this.documentContoursListener = null;
+    this.captureThumbnailListener = null;
+    this.scannerStateListener = null;
+    this.capturePipelineListener = null;
   }
 
   componentDidMount() {
@@ -49,6 +52,30 @@ class CameraView extends React.Component {
       this.onDocumentContoursDetected
     );
 
+    // Detected document region in view pixels (legacy scanner events)
+    this.overlayUpdateListener = DeviceEventEmitter.addListener(
+      'onOverlayUpdate',
+      this.onOverlayUpdate
+    );
+
+    // Small preview of a capture, sent before its full-size DocumentDetected event
+    this.captureThumbnailListener = DeviceEventEmitter.addListener(
+      'CaptureThumbnail',
+      this.onCaptureThumbnail
+    );
+
+    // Coalesced live state (one event per display frame), replaces per-frame contour events
+    this.scannerStateListener = DeviceEventEmitter.addListener(
+      'onScannerState',
+      this.onScannerState
+    );
+
+    // One result per capture from the native pipeline set with setCapturePipeline
+    this.capturePipelineListener = DeviceEventEmitter.addListener(
+      'CapturePipelineResult',
+      this.onCapturePipelineResult
+    );
+
     console.log('📡 Document detection listeners set up');
   };
 
@@ -61,6 +88,22 @@ class CameraView extends React.Component {
       this.documentContoursListener.remove();
       this.documentContoursListener = null;
     }
+    if (this.overlayUpdateListener) {
+      this.overlayUpdateListener.remove();
+      this.overlayUpdateListener = null;
+    }
+    if (this.captureThumbnailListener) {
+      this.captureThumbnailListener.remove();
+      this.captureThumbnailListener = null;
+    }
+    if (this.scannerStateListener) {
+      this.scannerStateListener.remove();
+      this.scannerStateListener = null;
+    }
+    if (this.capturePipelineListener) {
+      this.capturePipelineListener.remove();
+      this.capturePipelineListener = null;
+    }
     console.log('📡 Document detection listeners removed');
   };
 
@@ -73,6 +116,52 @@ class CameraView extends React.Component {
     }
   };
 
+  onCaptureThumbnail = (event) => {
+    if (this.props.onCaptureThumbnail) {
+      this.props.onCaptureThumbnail(event);
+    }
+  };
+
+  // event: { seq, state, detections, required, captures, coalesced, frameWidth, frameHeight,
+  //          corners: [x0, y0, ..., x3, y3] | null, region: [x, y, width, height] | null }
+  onScannerState = (event) => {
+    if (this.props.onScannerState) {
+      this.props.onScannerState(event);
+      return;
+    }
+    // Callers of the old callbacks get the old event shapes
+    if (this.props.onDocumentContoursDetected) {
+      const contour = { frameWidth: event.frameWidth, frameHeight: event.frameHeight };
+      if (Array.isArray(event.corners)) {
+        // Packed, or [{x, y}] in 'points' mode
+        contour.bestContour = typeof event.corners[0] === 'object'
+          ? event.corners.flatMap((point) => [point.x, point.y])
+          : event.corners;
+      }
+      // No bestContour when the document is lost, as in legacy mode
+      this.props.onDocumentContoursDetected(contour);
+    }
+    if (this.props.onOverlayUpdate && Array.isArray(event.region)) {
+      const [x, y, width, height] = event.region;
+      this.onOverlayUpdate({ x, y, width, height });
+    }
+  };
+
+  // event: { x, y, width, height } in view pixels
+  onOverlayUpdate = (event) => {
+    if (this.props.onOverlayUpdate) {
+      this.props.onOverlayUpdate(event);
+    }
+  };
+
+  // event: { captureId, status: 'ok' | 'partial' | 'busy', totalMs,
+  //          stages: { [id]: { type, status: 'ok' | 'error' | 'skipped', ms, ...stage result } } }
+  onCapturePipelineResult = (event) => {
+    if (this.props.onCapturePipelineResult) {
+      this.props.onCapturePipelineResult(event);
+    }
+  };
+
   onDocumentContoursDetected = (event) => {
     console.log('🔲 Document contours detected:', event);
     
@@ -92,10 +181,53 @@ class CameraView extends React.Component {
     UIManager.dispatchViewManagerCommand(viewId, 'resumeScanning', null);
   };
 
+  // Optional DNN edge detector (ONNX model in android assets); falls back to Otsu when missing
+  setDnnDetection = (enabled, modelAsset = null) => {
+    const viewId = findNodeHandle(this.cameraRef.current);
+    UIManager.dispatchViewManagerCommand(viewId, 'setDnnDetection', [enabled, modelAsset]);
+  };
+
+  // 'base64' (default): croppedImage in DocumentDetected; 'file': imageUri/imageWidth/imageHeight of a cache JPEG
+  setCaptureOutput = (mode) => {
+    const viewId = findNodeHandle(this.cameraRef.current);
+    UIManager.dispatchViewManagerCommand(viewId, 'setCaptureOutput', [mode]);
+  };
+
+  // Capture resolution for known document types (size in mm at this DPI, capped natively)
+  setOutputDpi = (dpi) => {
+    const viewId = findNodeHandle(this.cameraRef.current);
+    UIManager.dispatchViewManagerCommand(viewId, 'setOutputDpi', [dpi]);
+  };
+
+  // mode: 'jpeg' (default), 'webp' or 'auto' (text pages as 1-bit PNG); maxBytes: size budget, 0 = none
+  setCaptureEncoding = (mode, maxBytes = 0) => {
+    const viewId = findNodeHandle(this.cameraRef.current);
+    UIManager.dispatchViewManagerCommand(viewId, 'setCaptureEncoding', [mode, maxBytes]);
+  };
+
+  // 'packed' (default) or 'points': coalesced onScannerState; 'legacy': per-frame contour/overlay events
+  setScannerEvents = (mode) => {
+    const viewId = findNodeHandle(this.cameraRef.current);
+    UIManager.dispatchViewManagerCommand(viewId, 'setScannerEvents', [mode]);
+  };
+
+  // Stages run natively on every capture, e.g. [{ type: 'crop', margin: 0.01 }, { type: 'orientation' },
+  // { type: 'enhance', filter: 'shadow_removal' }, { type: 'qr' }, { type: 'ocr' }, { type: 'face', output: 'base64' }].
+  // Types: crop, orientation, enhance, qr, ocr, face; optional id, input, after, output ('handle' | 'base64' | 'none').
+  // null or [] removes the pipeline
+  setCapturePipeline = (stages) => {
+    const viewId = findNodeHandle(this.cameraRef.current);
+    UIManager.dispatchViewManagerCommand(viewId, 'setCapturePipeline', [stages || []]);
+  };
+
+  // Selects the native document-type priors (scan region, fill, aspect) by name
   setExpectedRatio = (aspectRatio, documentType) => {
-    // For now, ignore aspect ratio constraints and enable generic document detection
-    console.log('📞 CameraView.setExpectedRatio called - ignoring aspect ratio for generic detection');
-    console.log('🎯 Generic document detection enabled - any rectangular document will be detected');
+    const viewId = findNodeHandle(this.cameraRef.current);
+    if (!viewId) {
+      console.log('⏳ CameraView not ready, setExpectedRatio skipped');
+      return;
+    }
+    UIManager.dispatchViewManagerCommand(viewId, 'setExpectedRatio', [aspectRatio, documentType]);
   };
 
   // New method to set detection sensitivity
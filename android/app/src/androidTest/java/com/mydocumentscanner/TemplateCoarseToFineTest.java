@@ -0,0 +1,125 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Coarse-to-fine search (full search on a coarse level, TOP_K peaks refined +-REFINE_RADIUS
+ * per finer level) against an exhaustive full-resolution matchTemplate. Needs the OpenCV
+ * natives, hence an instrumented test.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TemplateCoarseToFineTest {
+    private static final int IMAGE_WIDTH = 640;
+    private static final int IMAGE_HEIGHT = 480;
+    // 128 x 96: the full search runs two levels down (32 x 24), so two refinement steps
+    private static final int TEMPLATE_WIDTH = 128;
+    private static final int TEMPLATE_HEIGHT = 96;
+    private static final double SCORE_EPSILON = 1e-3;
+
+    private Mat image;
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Before
+    public void setUp() {
+        // Blurred noise: textured everywhere, so the true location is the only strong peak
+        image = new Mat(IMAGE_HEIGHT, IMAGE_WIDTH, CvType.CV_8UC1);
+        Core.setRNGSeed(49);
+        Core.randu(image, 0, 256);
+        Imgproc.GaussianBlur(image, image, new Size(5, 5), 0);
+    }
+
+    @After
+    public void tearDown() {
+        image.release();
+    }
+
+    private Mat crop(int x, int y) {
+        Mat region = image.submat(y, y + TEMPLATE_HEIGHT, x, x + TEMPLATE_WIDTH);
+        Mat template = region.clone();
+        region.release();
+        return template;
+    }
+
+    /**
+     * Coarse-to-fine and exhaustive results for {@code template}, then release everything
+     */
+    private void assertMatchesExhaustiveSearch(Mat template, int expectedX, int expectedY) {
+        Mat grayImage = image.clone();
+        List<Mat> imagePyramid = TemplateMatchingModule.buildImagePyramid(grayImage);
+        Mat[] templatePyramid = TemplateMatchingModule.buildGrayPyramid(template);
+        Mat result = new Mat();
+        try {
+            TemplateMatchingModule.Peak peak = TemplateMatchingModule.matchCoarseToFine(imagePyramid, templatePyramid);
+
+            Imgproc.matchTemplate(image, template, result, Imgproc.TM_CCOEFF_NORMED);
+            Core.MinMaxLocResult exhaustive = Core.minMaxLoc(result);
+
+            assertNotNull(peak);
+            assertEquals(expectedX, (int) exhaustive.maxLoc.x);
+            assertEquals(expectedY, (int) exhaustive.maxLoc.y);
+            assertEquals(expectedX, peak.x);
+            assertEquals(expectedY, peak.y);
+            assertEquals(exhaustive.maxVal, peak.score, SCORE_EPSILON);
+        } finally {
+            result.release();
+            for (Mat level : templatePyramid) {
+                level.release();
+            }
+            for (Mat level : imagePyramid) {
+                level.release();
+            }
+        }
+    }
+
+    @Test
+    public void exactCropIsFoundAtTheExhaustivePeak() {
+        // Off the coarse grid, both image corners and an interior point
+        int[][] locations = {
+                {203, 117},
+                {0, 0},
+                {IMAGE_WIDTH - TEMPLATE_WIDTH, IMAGE_HEIGHT - TEMPLATE_HEIGHT},
+                {371, 289},
+        };
+        for (int[] location : locations) {
+            assertMatchesExhaustiveSearch(crop(location[0], location[1]), location[0], location[1]);
+        }
+    }
+
+    @Test
+    public void noisyTemplateIsFoundAtTheExhaustivePeak() {
+        // Sensor-like noise on the template: the peak stays put but scores below 1
+        Mat template = crop(157, 233);
+        Mat noisy = new Mat();
+        template.convertTo(noisy, CvType.CV_16S);
+        Mat noise = new Mat(template.size(), CvType.CV_16S);
+        Core.setRNGSeed(7);
+        Core.randn(noise, 0, 20);
+        Core.add(noisy, noise, noisy);
+        noisy.convertTo(template, CvType.CV_8U);
+        noisy.release();
+        noise.release();
+        assertMatchesExhaustiveSearch(template, 157, 233);
+    }
+}
@@ -0,0 +1,173 @@
+package com.mydocumentscanner;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.opencv.core.Mat;
+
+/**
+ * Ring of the last N accepted frames of a stability window, so capture can use the
+ * best one instead of whichever frame completed the count.
+ *
+ * Each slot owns a copy of the document's bounding box (plus a small margin) rather
+ * than the whole frame, together with its quality score and corners. Memory is capped
+ * by both the slot count and a byte budget; a frame pushed out of the ring releases its
+ * pixels immediately. Not thread-safe: owned by the detection thread.
+ */
+public class BestFrameBuffer {
+    private static final String TAG = "BestFrameBuffer";
+
+    private static final int ROI_MARGIN = 16;
+
+    public static final class Frame {
+        public Mat image;                      // document bounding box crop, allocated on first use
+        public final Quad quad = new Quad();   // corners in crop coordinates
+        public final Quad frameQuad = new Quad(); // corners in frame coordinates
+        public int frameWidth;
+        public int frameHeight;
+        public double score;
+        public long sequence;
+        long bytes;
+
+        private void release() {
+            if (image != null) {
+                image.release();
+            }
+            bytes = 0;
+        }
+    }
+
+    private final long maxBytes;
+    private Frame[] slots;
+    private int head = 0;   // oldest slot
+    private int count = 0;
+    private long usedBytes = 0;
+
+    public BestFrameBuffer(int capacity, long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.slots = newSlots(Math.max(1, capacity));
+    }
+
+    /**
+     * Change the window length; drops the buffered frames when it differs
+     */
+    public void setCapacity(int capacity) {
+        capacity = Math.max(1, capacity);
+        if (capacity == slots.length) {
+            return;
+        }
+        clear();
+        slots = newSlots(capacity);
+    }
+
+    /**
+     * Copy the quad region of {@code frame} into the ring, evicting the oldest frames
+     * as needed to stay within the slot count and byte budget.
+     *
+     * @return false if the region alone exceeds the budget or is degenerate
+     */
+    public boolean offer(Mat frame, Quad corners, double score, long sequence) {
+        float[] p = corners.pts;
+        int x0 = Math.max(0, (int) Math.floor(Math.min(Math.min(p[0], p[2]), Math.min(p[4], p[6]))) - ROI_MARGIN);
+        int y0 = Math.max(0, (int) Math.floor(Math.min(Math.min(p[1], p[3]), Math.min(p[5], p[7]))) - ROI_MARGIN);
+        int x1 = Math.min(frame.cols(), (int) Math.ceil(Math.max(Math.max(p[0], p[2]), Math.max(p[4], p[6]))) + ROI_MARGIN);
+        int y1 = Math.min(frame.rows(), (int) Math.ceil(Math.max(Math.max(p[1], p[3]), Math.max(p[5], p[7]))) + ROI_MARGIN);
+        if (x1 - x0 < 2 || y1 - y0 < 2) {
+            return false;
+        }
+
+        long bytes = (long) (x1 - x0) * (y1 - y0) * frame.elemSize();
+        if (bytes > maxBytes) {
+            Log.w(TAG, "Frame region of " + bytes + " bytes exceeds the " + maxBytes + " byte budget");
+            return false;
+        }
+        Frame slot = makeRoom(bytes);
+        if (slot.image == null) {
+            slot.image = new Mat();
+        }
+        Mat view = frame.submat(y0, y1, x0, x1);
+        try {
+            view.copyTo(slot.image);
+        } finally {
+            view.release();
+        }
+        slot.frameQuad.set(corners);
+        slot.quad.set(corners).scaleAndOffset(1.0, -x0, -y0);
+        slot.frameWidth = frame.cols();
+        slot.frameHeight = frame.rows();
+        commit(slot, bytes, score, sequence);
+        return true;
+    }
+
+    /**
+     * Evict the oldest frames until a region of {@code bytes} fits; returns the free slot
+     */
+    Frame makeRoom(long bytes) {
+        while (count > 0 && (count == slots.length || usedBytes + bytes > maxBytes)) {
+            evictOldest();
+        }
+        return slots[(head + count) % slots.length];
+    }
+
+    /**
+     * Account a filled slot from makeRoom() as the newest frame
+     */
+    void commit(Frame slot, long bytes, double score, long sequence) {
+        slot.score = score;
+        slot.sequence = sequence;
+        slot.bytes = bytes;
+        usedBytes += bytes;
+        count++;
+    }
+
+    /**
+     * Highest scoring buffered frame (newest wins ties), or null when empty.
+     * Valid until the next offer() or clear().
+     */
+    @Nullable
+    public Frame best() {
+        Frame best = null;
+        for (int i = 0; i < count; i++) {
+            Frame frame = slots[(head + i) % slots.length];
+            if (best == null || frame.score >= best.score) {
+                best = frame;
+            }
+        }
+        return best;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long bytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Release every buffered frame
+     */
+    public void clear() {
+        while (count > 0) {
+            evictOldest();
+        }
+        head = 0;
+    }
+
+    private void evictOldest() {
+        Frame oldest = slots[head];
+        usedBytes -= oldest.bytes;
+        oldest.release();
+        head = (head + 1) % slots.length;
+        count--;
+    }
+
+    private static Frame[] newSlots(int capacity) {
+        Frame[] frames = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new Frame();
+        }
+        return frames;
+    }
+}
@@ -20,7 +20,10 @@ import android.view.Surface;
 import android.view.TextureView;
 import android.view.WindowManager;
 import android.os.Environment;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -29,7 +32,6 @@ import androidx.annotation.Nullable;
 
 import org.opencv.core.*;
 import org.opencv.imgcodecs.Imgcodecs;
-import org.opencv.imgproc.CLAHE;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.utils.Converters;
 
@@ -38,6 +40,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
@@ -59,6 +65,15 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     private int imageHeight = 1080; // or the corresponding height
     private int lastProcessedRotation = -1; // Track last rotation to avoid dimension swapping every frame
 
+    // Last overlay projection inputs and result (see updateOverlayGeometry)
+    private final Object overlayGeometryLock = new Object();
+    private int overlayViewWidth = -1;
+    private int overlayViewHeight = -1;
+    private int overlayRotation = -1;
+    private final double[] overlayRegion = new double[4];
+    private final double[] projectedOverlay = new double[4];
+    private boolean hasProjectedOverlay = false;
+
     private List<Point> docCorners = null;
 
     private long lastProcessedTime = 0;
@@ -82,6 +97,9 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     // Expected document aspect ratio for validation (ignoring for now)
     private double expectedAspectRatio = 0.0;
     private String documentType = "Unknown";
+    // Geometric priors of the selected type (null = generic detection)
+    private volatile DocumentType selectedDocumentType = null;
+    private DocumentType appliedDocumentType = null; // detection thread copy
 
     // Rectangle overlay settings
     private boolean showRectangleOverlay = true;
@@ -92,6 +110,16 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     private volatile int numOfSquares = 0; // Current detection count
     private boolean autoCapture = true; // Enable auto-capture when document is detected
 
+    // Capture output: Base64 JPEG in the event, or a JPEG file in the app cache (URI only)
+    public static final String OUTPUT_BASE64 = "base64";
+    public static final String OUTPUT_FILE = "file";
+    private static final String CAPTURE_DIR = "captures";
+    private static final int MAX_CAPTURE_FILES = 20;
+    private volatile boolean fileOutput = false;
+
+    // Post-capture stages registered from JS, run on every delivered capture
+    private volatile CapturePipeline capturePipeline = null;
+
     // // Mat object pool to reduce allocation overhead
     // private Mat pooledFrame = null;
     // private Mat pooledGray = null;
@@ -120,27 +148,107 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     // Camera characteristics
     private int lensFacing = CameraCharacteristics.LENS_FACING_BACK; // Default to back camera
     private boolean enableImageFlipCorrection = true; // Flag to enable/disable flip correction
+
+    /**
+     * Orientation correction of the captured crop: optional horizontal mirror, then
+     * counter-clockwise quarter turns. Applied through the warp destination points.
+     */
+    private static final class CaptureOrientation {
+        static final CaptureOrientation NONE = new CaptureOrientation(false, 0);
+
+        final boolean mirror;
+        final int quarterTurnsCcw;
+
+        CaptureOrientation(boolean mirror, int quarterTurnsCcw) {
+            this.mirror = mirror;
+            this.quarterTurnsCcw = quarterTurnsCcw & 3;
+        }
+    }
+
+    // Mirror + 90° CCW (a transpose) for both lenses, as the former flip/rotate pass did
+    private static final CaptureOrientation BACK_CAPTURE_ORIENTATION = new CaptureOrientation(true, 1);
+    private static final CaptureOrientation FRONT_CAPTURE_ORIENTATION = new CaptureOrientation(true, 1);
     
     // Blur detection settings
     private boolean enableBlurDetection = true; // Enable blur detection
-    private double blurThreshold = 100.0; // Laplacian variance threshold for blur detection
+    private double blurThreshold = 100.0; // Laplacian variance threshold, measured at QualityScorer.ANALYSIS_SIZE
     private int blurDetectionCount = 0; // Count of consecutive blur detections
     private static final int MAX_BLUR_COUNT = 3; // Consecutive blur detections before filtering
 
+    // Capture quality (sharpness, lighting, ...) of the quad ROI, scored once per frame
+    private boolean enableGlareDetection = true;
+    private final QualityScorer qualityScorer = new QualityScorer();
+    private final QualityScorer.Result qualityResult = new QualityScorer.Result();
+    private long frameSequence = 0;            // incremented per processed frame
+    private long qualityFrameSequence = -1;    // frame the cached qualityResult belongs to
+
+    // Last accepted frames of the stability window; capture uses the sharpest (detection thread only)
+    private static final long BEST_FRAME_BUDGET_BYTES = 24L * 1024 * 1024;
+    private final BestFrameBuffer bestFrames = new BestFrameBuffer(numOfRectangles, BEST_FRAME_BUDGET_BYTES);
+
+    // NV21 conversion buffer for imageToMat, reused across frames (camera thread only)
+    private byte[] nv21Buffer = null;
+
+    // Quadrilateral scoring (detection thread only, buffers reused across frames)
+    private static final int MAX_QUAD_CANDIDATES = 16;
+    private final QuadScorer quadScorer = new QuadScorer(MAX_QUAD_CANDIDATES);
+    private final QuadScorer quadValidator = new QuadScorer(1);
+    private final QuadScorer.Limits basicQuadLimits = QuadScorer.Limits.permissive();
+    private final QuadScorer.Limits cornerGeometryLimits = QuadScorer.Limits.permissive();
+    private final QuadScorer.Limits documentGeometryLimits = QuadScorer.Limits.permissive();
+    private final float[] quadBuffer = new float[8];
+    private final Quad detectedQuad = new Quad();
+    private MatOfPoint2f warpSrc = null;
+    private MatOfPoint2f warpDst = null;
+    private final float[] warpDstBuffer = new float[8];
+    private final float[] orientedSizeBuffer = new float[8];
+    private final CaptureOutputPolicy outputPolicy = new CaptureOutputPolicy();
+    private final CaptureOutputPolicy.Output captureOutput = new CaptureOutputPolicy.Output();
+    private final CaptureEncoder captureEncoder = new CaptureEncoder();
+    // Replaced, never mutated, by setCaptureEncoding on the UI thread
+    private volatile CaptureEncoder.Settings encoderSettings = new CaptureEncoder.Settings();
+
+    // Capture delivery: thumbnail on the detection thread, full-size encode on its own thread,
+    // which lives as long as the background thread
+    private static final int THUMBNAIL_SIZE = 320;
+    private static final int MAX_PENDING_ENCODES = 2;
+    private static final String CAPTURE_BUSY_MESSAGE = "Saving previous capture. Hold steady.";
+    private final CaptureEncoder thumbnailEncoder = new CaptureEncoder();
+    private final CaptureEncoder.Settings thumbnailSettings = new CaptureEncoder.Settings();
+    private final CaptureEncoder.Result thumbnailResult = new CaptureEncoder.Result();
+    private final AtomicInteger pendingEncodes = new AtomicInteger();
+    private volatile ExecutorService encodeExecutor = null;
+    private long captureSequence = 0;
+
+    // Optional DNN edge detector (falls back to Otsu when unavailable)
+    private static final int DNN_INPUT_SIZE = 256;
+    private volatile boolean enableDnnDetection = false;
+    // Set from the UI thread, used and released on the detection thread
+    private volatile String dnnModelAsset = DnnEdgeDetector.DEFAULT_MODEL_ASSET;
+    private volatile DnnEdgeDetector dnnEdgeDetector = null;
+    private final float[] quadFeatures = new float[QuadScorer.FEATURE_COUNT];
+
 
 
     public interface FrameListener {
-        void onDocumentDetected(@Nullable List<Point> corners, int frameWidth, int frameHeight,
-                @Nullable String croppedImageBase64);
+        void onDocumentDetected(@Nullable Quad corners, int frameWidth, int frameHeight,
+                @Nullable String croppedImageBase64, @Nullable String mimeType, long captureId,
+                @Nullable String imageId);
 
         void onImageCaptured(String imagePath);
 
+        void onDocumentCaptured(Quad corners, int frameWidth, int frameHeight,
+                String imageUri, int imageWidth, int imageHeight, long captureId, @Nullable String imageId);
+
+        void onCaptureThumbnail(Quad corners, int frameWidth, int frameHeight,
+                String thumbnailBase64, String mimeType, int width, int height, long captureId);
+
         void onFeedback(String feedbackMessage);
 
         void onOverlayUpdate(double x, double y, double width, double height);
         
-        void onDocumentContoursDetected(@Nullable List<Point> bestContour, @Nullable List<List<Point>> allValidContours, 
-                int frameWidth, int frameHeight);
+        void onDocumentContoursDetected(@Nullable Quad bestContour, int frameWidth, int frameHeight,
+                int detections, int required);
     }
 
     private FrameListener frameListener;
@@ -149,6 +257,11 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         this.frameListener = listener;
     }
 
+    @Nullable
+    public FrameListener getFrameListener() {
+        return frameListener;
+    }
+
     public CameraPreview(Context context) {
         super(context);
         init(context);
@@ -173,6 +286,29 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         } catch (Exception e) {
             Log.e(TAG, "Failed to initialize template matching module: " + e.getMessage());
         }
+        configureQuadLimits();
+        thumbnailSettings.quality = 75;
+    }
+
+    /**
+     * Hard limits for the live detector and the geometry validators
+     */
+    private void configureQuadLimits() {
+        // Live candidates: contours are pre-filtered at 15%, allow for approximation loss
+        quadScorer.limits.minAreaFraction = 0.10f;
+        quadScorer.limits.maxCornerCos = 0.866f; // 30-150 degrees, tolerant of perspective
+
+        // Aspect is checked on the longer opposite sides in isValidQuadrilateral
+        basicQuadLimits.minAreaFraction = 0.05f;
+
+        cornerGeometryLimits.minSide = 50f;
+        cornerGeometryLimits.requireConvex = true;
+
+        documentGeometryLimits.minParallelism = 0.7f;
+        documentGeometryLimits.minRectangularity = 0.8f;
+        documentGeometryLimits.maxRectangularity = 1.2f;
+        documentGeometryLimits.maxCornerCos = 0.7071f; // 45-135 degrees
+        documentGeometryLimits.requireConvex = true;
     }
 
     public void pauseScanning() {
@@ -186,11 +322,14 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     public void setExpectedDocumentRatio(double aspectRatio, String docType) {
         this.expectedAspectRatio = aspectRatio;
         this.documentType = docType;
+        this.selectedDocumentType = DocumentType.resolve(docType, aspectRatio);
+        numOfSquares = 0; // Stability is counted per document type
         
         // Calculate optimal scan region based on aspect ratio
         calculateOptimalScanRegion(aspectRatio);
         
-        Log.d(TAG, "Expected document ratio set: " + aspectRatio + " for " + docType);
+        Log.d(TAG, "Expected document ratio set: " + aspectRatio + " for " + docType
+                + " -> " + (selectedDocumentType != null ? selectedDocumentType : "generic"));
     }
     private void calculateOptimalScanRegion(double aspectRatio) {
         // Get the actual frame dimensions after rotation
@@ -244,52 +383,80 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         Log.d(TAG, String.format("Frame size: %.0fx%.0f, Region size: %.1fx%.1f, Actual aspect: %.3f", 
                frameWidth, frameHeight, scanRegionWidth, scanRegionHeight, scanRegionWidth/scanRegionHeight));
         
-        // Update overlay coordinates immediately
-        updateOverlayCoordinates();
+        // Push the new region to the overlay (no-op if the projection is unchanged)
+        updateOverlayGeometry(rotation);
     }
+
     /**
-     * Update overlay coordinates for external overlay view - matches actual processing region
+     * Project the scan region from frame to view coordinates and hand it to the overlay
+     * view and JS. Inputs (view size, rotation, region) are cached, so this only does work
+     * after a configuration change and only notifies when the projected rectangle moved.
      */
-    private void updateOverlayCoordinates() {
-        if (overlayView != null && hasScanRegion && expectedAspectRatio > 0) {
-            // Get view dimensions
-            int viewWidth = getWidth();
-            int viewHeight = getHeight();
-    
-            if (viewWidth > 0 && viewHeight > 0) {
-                // Get actual frame dimensions accounting for rotation
-                int rotation = getImageRotation();
-                double frameWidth, frameHeight;
-                if (rotation == 90 || rotation == 270) {
-                    frameWidth = imageHeight;
-                    frameHeight = imageWidth;
-                } else {
-                    frameWidth = imageWidth;
-                    frameHeight = imageHeight;
-                }
-                
-                // Calculate scale factors from frame to view
-                double scaleX = (double) viewWidth / frameWidth;
-                double scaleY = (double) viewHeight / frameHeight;
-                
-                // Transform the actual scan region coordinates to view coordinates
-                double overlayLeft = scanRegionX * scaleX;
-                double overlayTop = scanRegionY * scaleY;
-                double overlayWidth = scanRegionWidth * scaleX;
-                double overlayHeight = scanRegionHeight * scaleY;
-                
-                Log.d(TAG, String.format("Frame: %.0fx%.0f, View: %dx%d, Scale: %.3fx%.3f", 
-                    frameWidth, frameHeight, viewWidth, viewHeight, scaleX, scaleY));
-                Log.d(TAG, String.format("Scan region in frame: (%.1f,%.1f,%.1fx%.1f)", 
-                    scanRegionX, scanRegionY, scanRegionWidth, scanRegionHeight));
-                Log.d(TAG, String.format("Overlay in view: (%.1f,%.1f,%.1fx%.1f) aspect=%.3f", 
-                    overlayLeft, overlayTop, overlayWidth, overlayHeight, expectedAspectRatio));
-    
-                overlayView.updateScanRegion(overlayLeft, overlayTop, overlayWidth, overlayHeight);
+    private void updateOverlayGeometry(int rotation) {
+        if (!hasScanRegion || scanRegionWidth <= 0 || scanRegionHeight <= 0) {
+            return;
+        }
+        int viewWidth = getWidth();
+        int viewHeight = getHeight();
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return; // Not laid out yet; onSizeChanged retries
+        }
+
+        double left, top, width, height;
+        synchronized (overlayGeometryLock) {
+            if (viewWidth == overlayViewWidth && viewHeight == overlayViewHeight && rotation == overlayRotation
+                    && scanRegionX == overlayRegion[0] && scanRegionY == overlayRegion[1]
+                    && scanRegionWidth == overlayRegion[2] && scanRegionHeight == overlayRegion[3]) {
+                return;
+            }
+            overlayViewWidth = viewWidth;
+            overlayViewHeight = viewHeight;
+            overlayRotation = rotation;
+            overlayRegion[0] = scanRegionX;
+            overlayRegion[1] = scanRegionY;
+            overlayRegion[2] = scanRegionWidth;
+            overlayRegion[3] = scanRegionHeight;
+
+            // Frame dimensions after rotation, then frame -> view scale
+            boolean swap = rotation == 90 || rotation == 270;
+            double scaleX = (double) viewWidth / (swap ? imageHeight : imageWidth);
+            double scaleY = (double) viewHeight / (swap ? imageWidth : imageHeight);
+            left = scanRegionX * scaleX;
+            top = scanRegionY * scaleY;
+            width = scanRegionWidth * scaleX;
+            height = scanRegionHeight * scaleY;
+
+            if (hasProjectedOverlay && left == projectedOverlay[0] && top == projectedOverlay[1]
+                    && width == projectedOverlay[2] && height == projectedOverlay[3]) {
+                return;
+            }
+            projectedOverlay[0] = left;
+            projectedOverlay[1] = top;
+            projectedOverlay[2] = width;
+            projectedOverlay[3] = height;
+            hasProjectedOverlay = true;
+        }
+
+        Log.d(TAG, String.format(Locale.US, "📱 Overlay geometry: view=%dx%d, rotation=%d°, rect=(%.1f,%.1f,%.1fx%.1f)",
+                viewWidth, viewHeight, rotation, left, top, width, height));
+        if (overlayView != null) {
+            overlayView.updateScanRegion(left, top, width, height);
+        }
+        if (showRectangleOverlay && frameListener != null) {
+            try {
+                frameListener.onOverlayUpdate(left, top, width, height);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Error calling onOverlayUpdate", e);
             }
         }
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateOverlayGeometry(lastProcessedRotation >= 0 ? lastProcessedRotation : getImageRotation());
+    }
+
     public void setOverlayView(OverlayView overlay) {
         this.overlayView = overlay;
     }
@@ -398,12 +565,44 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         // }
 
         stopBackgroundThread();
+
+        // Detection thread has stopped, safe to drop the reusable warp buffers
+        if (warpSrc != null) {
+            warpSrc.release();
+            warpDst.release();
+            warpSrc = null;
+            warpDst = null;
+        }
+
+        qualityScorer.release();
+        bestFrames.clear();
+        thumbnailEncoder.release();
+        
+        // Detection has stopped, so nothing else submits: let queued full-size encodes
+        // finish, then free the encoder on that thread
+        ExecutorService executor = encodeExecutor;
+        encodeExecutor = null;
+        if (executor != null) {
+            executor.execute(captureEncoder::release);
+            executor.shutdown();
+        } else {
+            captureEncoder.release();
+        }
+
+        // Recreated on demand if DNN detection is still enabled
+        if (dnnEdgeDetector != null) {
+            dnnEdgeDetector.release();
+            dnnEdgeDetector = null;
+        }
     }
 
     private void startBackgroundThread() {
         backgroundThread = new HandlerThread("CameraBackground");
         backgroundThread.start();
         backgroundHandler = new Handler(backgroundThread.getLooper());
+        if (encodeExecutor == null) {
+            encodeExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "CaptureEncoder"));
+        }
     }
 
     private void stopBackgroundThread() {
@@ -500,8 +699,8 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
                 image.close();
             }
             return;
-        } else {
-            Log.d(TAG, "Proceeding to process frame: processing=" + isCurrentlyProcessing + ", interval="
+        } else if (ScanTrace.ENABLED) {
+            ScanTrace.log(TAG, "Proceeding to process frame: processing=" + isCurrentlyProcessing + ", interval="
                     + (currentTime - lastProcessedTime) + "ms");
         }
 
@@ -516,17 +715,17 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
 
             // Process the frame if we got one
             if (image != null) {
-                Log.d(TAG, "Processing image: " + image.getWidth() + "x" + image.getHeight());
+                if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Processing image: " + image.getWidth() + "x" + image.getHeight());
                 processImage(image);
-            } else {
-                Log.d(TAG, "No image available to process");
+            } else if (ScanTrace.ENABLED) {
+                ScanTrace.log(TAG, "No image available to process");
             }
         } catch (Exception e) {
             Log.e(TAG, "Error processing image", e);
         } finally {
             if (image != null) {
                 image.close();
-                Log.d(TAG, "Image closed successfully");
+                if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Image closed successfully");
             }
             isCurrentlyProcessing = false;
         }
@@ -547,23 +746,22 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
 
     private void processImage(Image image) {
         if (isScanningPaused) {
-            Log.d(TAG, "Scanning is paused, skipping frame");
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Scanning is paused, skipping frame");
             return;
         }
 
         // Check if rotation has changed and recalculate scan region if needed
         int currentRotation = getImageRotation();
         if (currentRotation != lastProcessedRotation && expectedAspectRatio > 0) {
-            Log.d(TAG, "Rotation changed from " + lastProcessedRotation + "° to " + currentRotation + "°, recalculating scan region");
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Rotation changed from " + lastProcessedRotation + "° to " + currentRotation + "°, recalculating scan region");
             calculateOptimalScanRegion(expectedAspectRatio);
             lastProcessedRotation = currentRotation;
         }
 
-        // Update overlay coordinates on every frame
-        updateOverlayCoordinates();
-
         // Convert image to Mat for processing only when we're going to use it
+        long ingestStart = ScanTrace.begin(ScanTrace.Span.INGEST);
         Mat frame = imageToMat(image);
+        ScanTrace.end(ScanTrace.Span.INGEST, ingestStart);
         
         if (frame == null || frame.empty()) {
             Log.e(TAG, "Failed to convert image to Mat");
@@ -571,10 +769,13 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         }
 
         // Apply rotation to match display orientation
+        frameSequence++;
+        long rotateStart = ScanTrace.begin(ScanTrace.Span.ROTATE);
         Mat rotatedFrame = applyDisplayRotation(frame);
+        ScanTrace.end(ScanTrace.Span.ROTATE, rotateStart);
         frame.release();
 
-        Log.d(TAG, "Starting async document detection for frame: " + rotatedFrame.width() + "x" + rotatedFrame.height());
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Starting async document detection for frame: " + rotatedFrame.width() + "x" + rotatedFrame.height());
 
         // Process document detection asynchronously
         processDocumentDetectionAsync(rotatedFrame);
@@ -588,13 +789,13 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         int rotationCode = getOpenCvRotationCode(rotation);
         
         if (rotationCode == -1) {
-            Log.d(TAG, "No rotation needed, rotation: " + rotation);
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "No rotation needed, rotation: " + rotation);
             return frame;
         }
         
         Mat rotated = new Mat();
         Core.rotate(frame, rotated, rotationCode);
-        Log.d(TAG, "Applied rotation: " + rotation + "° (code: " + rotationCode + "), frame: " + 
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Applied rotation: " + rotation + "° (code: " + rotationCode + "), frame: " + 
               frame.width() + "x" + frame.height() + " -> " + rotated.width() + "x" + rotated.height());
         
         return rotated;
@@ -606,25 +807,25 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     private void processDocumentDetectionAsync(Mat frame) {
         // Skip frames if processing is already in progress
         if (isCurrentlyProcessing) {
-            Log.d(TAG, "⏭️ Skipping frame - processing already in progress");
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "⏭️ Skipping frame - processing already in progress");
             frame.release();
             return;
         }
         
         if (backgroundHandler != null) {
             isCurrentlyProcessing = true;
-            Log.d(TAG, "📋 Set processing flag to true, starting background task");
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "📋 Set processing flag to true, starting background task");
             backgroundHandler.post(() -> {
                 try {
-                    Log.d(TAG, "🚀 Background task started, calling fast document detection");
+                    if (ScanTrace.ENABLED) ScanTrace.log(TAG, "🚀 Background task started, calling fast document detection");
                     detectDocumentWithGrabCut(frame); // This will internally use fast segmentation
-                    Log.d(TAG, "✅ Document detection completed successfully");
+                    if (ScanTrace.ENABLED) ScanTrace.log(TAG, "✅ Document detection completed successfully");
                 } catch (Exception e) {
                     Log.e(TAG, "❌ Error in document detection", e);
                 } finally {
                     frame.release();
                     isCurrentlyProcessing = false; // Reset flag when done
-                    Log.d(TAG, "🏁 Background task finished, processing flag reset to false");
+                    if (ScanTrace.ENABLED) ScanTrace.log(TAG, "🏁 Background task finished, processing flag reset to false");
                 }
             });
         } else {
@@ -636,14 +837,14 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
      * Enterprise-grade robust document detection for complex backgrounds
      */
     private void detectDocumentWithGrabCut(Mat originalFrame) {
-        Log.d(TAG, "🔍 Starting enterprise-grade document detection");
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, "🔍 Starting enterprise-grade document detection");
         
         if (originalFrame == null || originalFrame.empty()) {
             Log.e(TAG, "❌ Original frame is null or empty");
             return;
         }
 
-        Log.d(TAG, "📏 Original frame size: " + originalFrame.width() + "x" + originalFrame.height());
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, "📏 Original frame size: " + originalFrame.width() + "x" + originalFrame.height());
 
         Mat frame = null;
         Mat gray = null;
@@ -668,13 +869,13 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
                     croppedFrame = new Mat(originalFrame, cropRect);
                     cropOffsetX = cropX;
                     cropOffsetY = cropY;
-                    Log.d(TAG, "🔍 Cropped to scan region: " + cropX + "," + cropY + " " + cropW + "x" + cropH);
+                    if (ScanTrace.ENABLED) ScanTrace.log(TAG, "🔍 Cropped to scan region: " + cropX + "," + cropY + " " + cropW + "x" + cropH);
                 } else {
-                    Log.d(TAG, "📐 Scan region too small, using full frame");
+                    if (ScanTrace.ENABLED) ScanTrace.log(TAG, "📐 Scan region too small, using full frame");
                     croppedFrame = originalFrame.clone();
                 }
             } else {
-                Log.d(TAG, "📐 No scan region defined, using full frame");
+                if (ScanTrace.ENABLED) ScanTrace.log(TAG, "📐 No scan region defined, using full frame");
                 croppedFrame = originalFrame.clone();
             }
 
@@ -690,7 +891,9 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
                 croppedFrame.copyTo(frame);
                 ratio = 1.0;
             } else {
+                long resizeStart = ScanTrace.begin(ScanTrace.Span.RESIZE);
                 Imgproc.resize(croppedFrame, frame, new Size(newWidth, targetHeight), 0, 0, Imgproc.INTER_LINEAR); // Faster interpolation
+                ScanTrace.end(ScanTrace.Span.RESIZE, resizeStart);
             }
             
             // Skip debug saves for performance
@@ -698,23 +901,29 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
             // saveCroppedMat(frame, "02_resizedFrame");
             croppedFrame.release();
             
-            Log.d(TAG, "📐 Processing frame: " + frame.width() + "x" + frame.height() + " (ratio: " + ratio + ")");
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "📐 Processing frame: " + frame.width() + "x" + frame.height() + " (ratio: " + ratio + ")");
 
             // 3. Ultra-fast document detection
-            Log.d(TAG, "⚡ Using ultra-fast document detection");
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "⚡ Using ultra-fast document detection");
             
             // Simple document detection without aspect ratio constraints
-            Point[] documentCorners = detectDocumentRealTime(frame, frame.width(), frame.height());
+            // Scan region area in processing coordinates, for the document-type fill prior
+            double regionArea = hasScanRegion ? scanRegionWidth * scanRegionHeight * ratio * ratio : 0;
             
-            if (documentCorners != null && documentCorners.length == 4) {
+            if (detectDocumentRealTime(frame, frame.width(), frame.height(), regionArea, detectedQuad)) {
                 // Transform coordinates back to original frame space
-                Point[] originalCorners = transformCornersToOriginalFrame(documentCorners, ratio, 
-                    (int)cropOffsetX, (int)cropOffsetY);
+                transformCornersToOriginalFrame(detectedQuad, ratio, (int)cropOffsetX, (int)cropOffsetY);
                 
                 // Simple validation: check if it's a reasonable quadrilateral
-                if (isValidQuadrilateral(originalCorners)) {
+                long validateStart = ScanTrace.begin(ScanTrace.Span.VALIDATE);
+                boolean validQuad = isValidQuadrilateral(detectedQuad);
+                ScanTrace.end(ScanTrace.Span.VALIDATE, validateStart);
+                if (validQuad) {
                     // Check for blur before proceeding with detection
-                    if (isImageBlurry(originalFrame)) {
+                    long blurStart = ScanTrace.begin(ScanTrace.Span.BLUR);
+                    boolean blurry = isImageBlurry(originalFrame, detectedQuad);
+                    ScanTrace.end(ScanTrace.Span.BLUR, blurStart);
+                    if (blurry) {
                         Log.w(TAG, "⚠️ Blurry image detected, skipping detection");
                         numOfSquares = Math.max(0, numOfSquares - 1); // Decrement count for blur
                         return; // Skip processing blurry images
@@ -723,35 +932,59 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
                     // Reset blur counter for sharp images
                     blurDetectionCount = 0;
                     
+                    // Glare / exposure check on the document area
+                    if (hasQualityProblem(originalFrame, detectedQuad)) {
+                        numOfSquares = Math.max(0, numOfSquares - 1);
+                        return;
+                    }
+                    
                     numOfSquares++; // Increment detection count
-                    Log.d(TAG, "✅ Document detected! Count: " + numOfSquares + "/" + numOfRectangles);
+                    if (ScanTrace.ENABLED) ScanTrace.log(TAG, "✅ Document detected! Count: " + numOfSquares + "/" + numOfRectangles);
+                    
+                    // Keep this frame as a capture candidate, scored by its (cached) sharpness
+                    bestFrames.setCapacity(numOfRectangles);
+                    bestFrames.offer(originalFrame, detectedQuad,
+                            scoreFrameQuality(originalFrame, detectedQuad).sharpness, frameSequence);
                     
                     // Check if we have enough consistent detections
-                    if (numOfSquares >= numOfRectangles) {
-                        Log.d(TAG, "🎯 Stable document detection achieved!");
+                    if (numOfSquares >= numOfRectangles && pendingEncodes.get() >= MAX_PENDING_ENCODES) {
+                        // Encoder behind: keep the stable state and the buffered frames, tell the
+                        // user, and capture on the first stable frame after the encoder drains
+                        numOfSquares = numOfRectangles;
+                        if (ScanTrace.ENABLED) ScanTrace.log(TAG, "⏳ Capture encoder behind, deferring capture");
+                        sendFeedbackIfNeeded(CAPTURE_BUSY_MESSAGE);
+                    } else if (numOfSquares >= numOfRectangles) {
+                        if (ScanTrace.ENABLED) ScanTrace.log(TAG, "🎯 Stable document detection achieved!");
                         
-                        // Final blur check before capture
-                        if (isImageBlurry(originalFrame)) {
-                            Log.w(TAG, "⚠️ Final blur check failed, skipping capture");
-                            numOfSquares = Math.max(0, numOfSquares - 2); // Decrement more for blur
-                            return;
+                        // Every buffered frame already passed the blur check; take the sharpest
+                        BestFrameBuffer.Frame best = bestFrames.best();
+                        Mat croppedDocument;
+                        Quad capturedQuad;
+                        int capturedWidth, capturedHeight;
+                        if (best != null) {
+                            if (ScanTrace.ENABLED) ScanTrace.log(TAG, String.format(Locale.US, "🏆 Best of %d frames: #%d (sharpness=%.1f), current #%d",
+                                    bestFrames.size(), best.sequence, best.score, frameSequence));
+                            croppedDocument = performSimplePerspectiveTransform(best.image, best.quad);
+                            capturedQuad = best.frameQuad;
+                            capturedWidth = best.frameWidth;
+                            capturedHeight = best.frameHeight;
+                        } else {
+                            croppedDocument = performSimplePerspectiveTransform(originalFrame, detectedQuad);
+                            capturedQuad = detectedQuad;
+                            capturedWidth = originalFrame.width();
+                            capturedHeight = originalFrame.height();
                         }
-                        
-                        // Enhanced perspective transformation
-                        Mat croppedDocument = performSimplePerspectiveTransform(originalFrame, originalCorners);
-                        String base64Image = null;
-                        
                         if (croppedDocument != null) {
-                            base64Image = matToBase64(croppedDocument);
-                            croppedDocument.release();
-                        }
-                        
-                        // Notify listener with results
-                        List<Point> cornersList = Arrays.asList(originalCorners);
-                        if (frameListener != null) {
-                            frameListener.onDocumentDetected(cornersList, originalFrame.width(), 
-                                originalFrame.height(), base64Image);
+                            // Preview first from the same warp; the full-size encode follows off this thread
+                            long captureId = ++captureSequence;
+                            emitCaptureThumbnail(croppedDocument, capturedQuad, capturedWidth, capturedHeight, captureId);
+                            encodeCaptureAsync(croppedDocument, new Quad().set(capturedQuad),
+                                capturedWidth, capturedHeight, captureId);
+                        } else if (!fileOutput && frameListener != null) {
+                            frameListener.onDocumentDetected(capturedQuad, capturedWidth, 
+                                capturedHeight, null, null, 0, null);
                         }
+                        bestFrames.clear();
                         
                         // Reset counter after successful detection for next capture
                         if (autoCapture) {
@@ -763,10 +996,9 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
                     }
                     
                     // Send real-time contour visualization
-                    List<Point> cornersList = Arrays.asList(originalCorners);
                     if (frameListener != null) {
-                        frameListener.onDocumentContoursDetected(cornersList, null, 
-                            originalFrame.width(), originalFrame.height());
+                        frameListener.onDocumentContoursDetected(detectedQuad, 
+                            originalFrame.width(), originalFrame.height(), numOfSquares, numOfRectangles);
                     }
                 } else {
                     // Only decrement if we've had several consecutive invalid detections
@@ -777,13 +1009,13 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
                 // Only decrement every few frames to maintain stability
                 if (numOfSquares > 0) {
                     numOfSquares = Math.max(0, numOfSquares - 1);
-                    Log.d(TAG, "📉 No document found, count: " + numOfSquares);
+                    if (ScanTrace.ENABLED) ScanTrace.log(TAG, "📉 No document found, count: " + numOfSquares);
                 }
                 
                 // Clear overlay only if no detections for a while
                 if (numOfSquares == 0 && frameListener != null) {
-                    frameListener.onDocumentContoursDetected(null, null, 
-                        originalFrame.width(), originalFrame.height());
+                    frameListener.onDocumentContoursDetected(null, 
+                        originalFrame.width(), originalFrame.height(), 0, numOfRectangles);
                 }
             }
 
@@ -798,120 +1030,13 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
             if (gray != null) gray.release();
             if (enhanced != null) enhanced.release();
             if (edges != null) edges.release();
-        }
-    }
-
-    /**
-     * Advanced preprocessing pipeline for robust document detection on complex backgrounds
-     */
-    private Mat performAdvancedPreprocessing(Mat inputFrame) {
-        Log.d(TAG, "🎨 Starting advanced preprocessing pipeline");
-        
-        Mat gray = null;
-        Mat shadowCompensated = null;
-        Mat contrastEnhanced = null;
-        Mat denoised = null;
-        Mat enhanced = null;
-        
-        try {
-            // 1. Convert to grayscale if needed
-            if (inputFrame.channels() == 3) {
-                gray = new Mat();
-                Imgproc.cvtColor(inputFrame, gray, Imgproc.COLOR_RGB2GRAY);
-            } else {
-                gray = inputFrame.clone();
-            }
-            saveCroppedMat(gray, "05_gray");
-            
-            // 2. Shadow and lighting compensation
-            shadowCompensated = compensateShadowsAndLighting(gray);
-            saveCroppedMat(shadowCompensated, "06_shadowCompensated");
-            
-            // 3. Adaptive histogram equalization for better contrast
-            contrastEnhanced = new Mat();
-            CLAHE clahe = Imgproc.createCLAHE(3.0, new Size(8, 8));
-            clahe.apply(shadowCompensated, contrastEnhanced);
-            saveCroppedMat(contrastEnhanced, "07_contrastEnhanced");
-            
-            // 4. Advanced denoising while preserving edges
-            denoised = new Mat();
-            Imgproc.bilateralFilter(contrastEnhanced, denoised, 9, 75, 75);
-            saveCroppedMat(denoised, "08_denoised");
-            
-            // 5. Combine original and enhanced for better document detection
-            enhanced = new Mat();
-            Core.addWeighted(denoised, 0.7, shadowCompensated, 0.3, 0, enhanced);
-            saveCroppedMat(enhanced, "09_finalEnhanced");
-            
-            Log.d(TAG, "✅ Advanced preprocessing complete");
-            return enhanced.clone();
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error in advanced preprocessing", e);
-            // Fallback to basic processing
-            if (gray != null) {
-                return gray.clone();
+            // Stability window lost: drop the buffered candidates
+            if (numOfSquares == 0) {
+                bestFrames.clear();
             }
-            return inputFrame.clone();
-        } finally {
-            if (gray != null) gray.release();
-            if (shadowCompensated != null) shadowCompensated.release();
-            if (contrastEnhanced != null) contrastEnhanced.release();
-            if (denoised != null) denoised.release();
-            if (enhanced != null) enhanced.release();
-        }
-    }
-    
-    /**
-     * Compensate for shadows and uneven lighting using advanced techniques
-     */
-    private Mat compensateShadowsAndLighting(Mat grayImage) {
-        Log.d(TAG, "💡 Compensating shadows and lighting");
-        
-        Mat background = null;
-        Mat normalized = null;
-        Mat result = null;
-        
-        try {
-            // 1. Estimate background using morphological operations
-            background = new Mat();
-            Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(19, 19));
-            Imgproc.morphologyEx(grayImage, background, Imgproc.MORPH_CLOSE, kernel);
-            kernel.release();
-            
-            // 2. Subtract background to remove lighting variations using division method
-            normalized = new Mat();
-            Mat backgroundFloat = new Mat();
-            Mat grayFloat = new Mat();
-            
-            // Convert to float for division
-            background.convertTo(backgroundFloat, CvType.CV_32F, 1.0/255.0);
-            grayImage.convertTo(grayFloat, CvType.CV_32F, 1.0/255.0);
-            
-            // Divide original by background to normalize lighting
-            Core.divide(grayFloat, backgroundFloat, normalized, 255.0);
-            
-            // Convert back to 8-bit
-            result = new Mat();
-            normalized.convertTo(result, CvType.CV_8U);
-            
-            // Clean up intermediate matrices
-            backgroundFloat.release();
-            grayFloat.release();
-            
-            Log.d(TAG, "✅ Shadow compensation complete");
-            return result.clone();
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error in shadow compensation", e);
-            return grayImage.clone();
-        } finally {
-            if (background != null) background.release();
-            if (normalized != null) normalized.release();
-            if (result != null) result.release();
         }
     }
-    
+
     /**
      * Multi-scale edge detection for robust contour finding
      */
@@ -1209,7 +1334,7 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
             }
             
             // 9. Process top 5 largest contours (equivalent to Python line 156)
-            contours.sort((c1, c2) -> Double.compare(Imgproc.contourArea(c2), Imgproc.contourArea(c1)));
+            sortContoursByAreaDescending(contours);
             int maxContours = Math.min(5, contours.size());
             
             double frameArea = frameWidth * frameHeight;
@@ -1425,7 +1550,7 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
             
             if (!contours.isEmpty()) {
                 // Sort by area (largest first)
-                contours.sort((c1, c2) -> Double.compare(Imgproc.contourArea(c2), Imgproc.contourArea(c1)));
+                sortContoursByAreaDescending(contours);
                 
                 double frameArea = frameWidth * frameHeight;
                 double minArea = frameArea * 0.08; // 8% minimum area
@@ -2018,7 +2143,7 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
             
             if (!contours.isEmpty()) {
                 // Sort by area (largest first)
-                contours.sort((c1, c2) -> Double.compare(Imgproc.contourArea(c2), Imgproc.contourArea(c1)));
+                sortContoursByAreaDescending(contours);
                 
                 double frameArea = frameWidth * frameHeight;
                 double minArea = frameArea * 0.08; // 8% minimum area
@@ -2154,7 +2279,7 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
             
             if (!contours.isEmpty()) {
                 // Sort by area and take the largest
-                contours.sort((c1, c2) -> Double.compare(Imgproc.contourArea(c2), Imgproc.contourArea(c1)));
+                sortContoursByAreaDescending(contours);
                 
                 double frameArea = frameWidth * frameHeight;
                 double minArea = frameArea * 0.05; // 5% minimum
@@ -2246,830 +2371,165 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     }
 
     /**
-     * Send contours for real-time visualization
+     * Approximate contour to a quadrilateral
      */
-    private void sendContoursForVisualization(MatOfPoint bestContour, List<MatOfPoint> validContours, 
-            int originalFrameWidth, int originalFrameHeight, double ratio, int cropOffsetX, int cropOffsetY) {
-        
+    private Point[] approximateToQuadrilateral(MatOfPoint contour) {
         try {
-            List<Point> bestContourPoints = null;
-            List<List<Point>> allValidContourPoints = new ArrayList<>();
-            
-            // Transform best contour to original frame coordinates
-            if (bestContour != null) {
-                Point[] points = bestContour.toArray();
-                bestContourPoints = new ArrayList<>();
-                for (Point p : points) {
-                    Point originalPoint = new Point(
-                        (p.x / ratio) + cropOffsetX,
-                        (p.y / ratio) + cropOffsetY
-                    );
-                    bestContourPoints.add(originalPoint);
-                }
-            }
+            // Convert MatOfPoint to MatOfPoint2f for approximation
+            MatOfPoint2f contour2f = new MatOfPoint2f();
+            contour.convertTo(contour2f, CvType.CV_32FC2);
             
-            // Transform all valid contours to original frame coordinates (limit to top 5 for performance)
-            int maxContours = Math.min(5, validContours.size());
-            for (int i = 0; i < maxContours; i++) {
-                MatOfPoint contour = validContours.get(i);
-                Point[] points = contour.toArray();
-                List<Point> contourPoints = new ArrayList<>();
-                
-                // Simplify contour to reduce points (every 5th point for performance)
-                for (int j = 0; j < points.length; j += 5) {
-                    Point originalPoint = new Point(
-                        (points[j].x / ratio) + cropOffsetX,
-                        (points[j].y / ratio) + cropOffsetY
-                    );
-                    contourPoints.add(originalPoint);
-                }
-                
-                if (!contourPoints.isEmpty()) {
-                    allValidContourPoints.add(contourPoints);
-                }
-            }
+            // Approximate contour
+            MatOfPoint2f approxCurve = new MatOfPoint2f();
+            double epsilon = 0.02 * Imgproc.arcLength(contour2f, true);
+            Imgproc.approxPolyDP(contour2f, approxCurve, epsilon, true);
             
-            // Send to React Native for visualization
-            if (frameListener != null) {
-                frameListener.onDocumentContoursDetected(bestContourPoints, allValidContourPoints, 
-                    originalFrameWidth, originalFrameHeight);
+            // Check if we got 4 points (quadrilateral)
+            Point[] points = approxCurve.toArray();
+            if (points.length == 4) {
+                // Clean up
+                contour2f.release();
+                approxCurve.release();
+                return points;
             }
             
-            Log.d(TAG, String.format("📤 Sent contours for visualization: best=%s, valid=%d", 
-                bestContour != null ? "yes" : "no", allValidContourPoints.size()));
-                
+            // Clean up
+            contour2f.release();
+            approxCurve.release();
+            return null;
+            
         } catch (Exception e) {
-            Log.e(TAG, "Error sending contours for visualization", e);
+            Log.e(TAG, "Error approximating contour to quadrilateral", e);
+            return null;
         }
     }
-    
-    /**  
-     * Filter contours to find potential document candidates
+
+    /**
+     * Transform coordinates from processed frame space back to original frame space
      */
-    private List<MatOfPoint> filterValidDocumentContours(List<MatOfPoint> contours, int frameWidth, int frameHeight) {
-        Log.d(TAG, "📋 Filtering " + contours.size() + " contours for document candidates");
-        
-        List<MatOfPoint> validContours = new ArrayList<>();
-        double frameArea = frameWidth * frameHeight;
-        
-        // More lenient filtering to catch more potential documents
-        double minArea = frameArea * 0.05; // Reduced from 0.15 to 0.05 (5% of frame)
-        double maxArea = frameArea * 0.90; // Allow up to 90% of frame
-        
-        Log.d(TAG, String.format("📊 Filter criteria: area %.0f-%.0f (%.1f%%-%.1f%%)", 
-            minArea, maxArea, (minArea/frameArea)*100, (maxArea/frameArea)*100));
+    private void transformCornersToOriginalFrame(Quad corners, double ratio, int originalX, int originalY) {
+        // ratio maps original -> processed, so divide to go back
+        corners.scaleAndOffset(1.0 / ratio, originalX, originalY);
+    }
 
-        for (int i = 0; i < contours.size(); i++) {
-            MatOfPoint contour = contours.get(i);
+    /**
+     * Refined corner detection with sub-pixel accuracy and geometric validation
+     */
+    private Point[] refineDocumentCorners(MatOfPoint contour, Mat enhancedImage) {
+        Log.d(TAG, "🎯 Refining document corners with sub-pixel accuracy");
+        
+        try {
+            // 1. First approximation to quadrilateral
+            Point[] initialCorners = approximateToQuadrilateral(contour);
+            if (initialCorners == null || initialCorners.length != 4) {
+                Log.w(TAG, "Initial corner approximation failed");
+                return null;
+            }
             
-            try {
-                double area = Imgproc.contourArea(contour);
-                
-                // Basic area filter
-                if (area < minArea || area > maxArea) {
-                    continue;
-                }
-                
-                // Basic perimeter filter
-                double perimeter = Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true);
-                if (perimeter < 100) { // Minimum perimeter
-                    continue;
-                }
-                
-                // Basic rectangularity check
-                org.opencv.core.Rect boundingRect = Imgproc.boundingRect(contour);
-                double rectangularity = area / (boundingRect.width * boundingRect.height);
-                
-                if (rectangularity < 0.3) { // Very lenient rectangularity
-                    continue;
-                }
+            // 2. Refine corners using Harris corner detection in local regions
+            Point[] refinedCorners = new Point[4];
+            Mat cornerMask = Mat.zeros(enhancedImage.size(), CvType.CV_8UC1);
+            
+            for (int i = 0; i < 4; i++) {
+                Point corner = initialCorners[i];
                 
-                // Check if contour can be approximated to a reasonable polygon
-                MatOfPoint2f contour2f = new MatOfPoint2f();
-                contour.convertTo(contour2f, CvType.CV_32FC2);
+                // Define search region around each corner
+                int searchRadius = 20;
+                int x1 = Math.max(0, (int)(corner.x - searchRadius));
+                int y1 = Math.max(0, (int)(corner.y - searchRadius));
+                int x2 = Math.min(enhancedImage.width() - 1, (int)(corner.x + searchRadius));
+                int y2 = Math.min(enhancedImage.height() - 1, (int)(corner.y + searchRadius));
                 
-                MatOfPoint2f approx = new MatOfPoint2f();
-                double epsilon = 0.05 * Imgproc.arcLength(contour2f, true); // More lenient approximation
-                Imgproc.approxPolyDP(contour2f, approx, epsilon, true);
+                org.opencv.core.Rect searchRect = new org.opencv.core.Rect(x1, y1, x2 - x1, y2 - y1);
+                Mat searchRegion = new Mat(enhancedImage, searchRect);
                 
-                Point[] approxPoints = approx.toArray();
+                // Apply Harris corner detection
+                Mat corners = new Mat();
+                Imgproc.cornerHarris(searchRegion, corners, 2, 3, 0.04);
                 
-                // Accept polygons with 3-8 vertices (documents can appear as triangles due to perspective)
-                if (approxPoints.length >= 3 && approxPoints.length <= 8) {
-                    validContours.add(contour);
-                    Log.d(TAG, String.format("✅ Valid contour %d: area=%.0f(%.1f%%), perim=%.0f, rect=%.3f, vertices=%d", 
-                        validContours.size(), area, (area/frameArea)*100, perimeter, rectangularity, approxPoints.length));
+                // Find the strongest corner in the search region
+                Core.MinMaxLocResult mmr = Core.minMaxLoc(corners);
+                if (mmr.maxVal > 0.01) { // Threshold for corner strength
+                    refinedCorners[i] = new Point(
+                        x1 + mmr.maxLoc.x,
+                        y1 + mmr.maxLoc.y
+                    );
+                } else {
+                    // Fallback to original corner if Harris detection fails
+                    refinedCorners[i] = corner;
                 }
                 
-                contour2f.release();
-                approx.release();
+                searchRegion.release();
+                corners.release();
                 
-            } catch (Exception e) {
-                Log.w(TAG, "Error filtering contour " + i, e);
+                Log.d(TAG, String.format("Corner %d: (%.1f,%.1f) -> (%.1f,%.1f)", 
+                    i, corner.x, corner.y, refinedCorners[i].x, refinedCorners[i].y));
+            }
+            
+            cornerMask.release();
+            
+            // 3. Geometric validation of refined corners
+            if (validateCornerGeometry(refinedCorners)) {
+                Log.d(TAG, "✅ Corner refinement successful");
+                return refinedCorners;
+            } else {
+                Log.w(TAG, "⚠️ Refined corners failed geometry validation, using initial corners");
+                return initialCorners;
             }
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error in corner refinement", e);
+            // Fallback to basic approximation
+            return approximateToQuadrilateral(contour);
         }
-        
-        Log.d(TAG, String.format("📋 Filtered to %d valid document candidates", validContours.size()));
-        return validContours;
     }
     
     /**
-     * Select the best document contour from valid candidates
+     * Validate geometric properties of detected corners
      */
-    private MatOfPoint selectBestDocumentContour(List<MatOfPoint> validContours, int frameWidth, int frameHeight) {
-        if (validContours.isEmpty()) {
-            return null;
-        }
-        
-        Log.d(TAG, "🎯 Selecting best contour from " + validContours.size() + " candidates");
-        
-        MatOfPoint bestContour = null;
-        double maxScore = 0;
-        double frameArea = frameWidth * frameHeight;
-        
-        for (int i = 0; i < validContours.size(); i++) {
-            MatOfPoint contour = validContours.get(i);
-            
-            try {
-                double area = Imgproc.contourArea(contour);
-                double perimeter = Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true);
-                
-                // Calculate position score (prefer center)
-                org.opencv.core.Rect boundingRect = Imgproc.boundingRect(contour);
-                double centerX = boundingRect.x + boundingRect.width / 2.0;
-                double centerY = boundingRect.y + boundingRect.height / 2.0;
-                double distFromCenter = Math.sqrt(Math.pow(centerX - frameWidth/2.0, 2) + Math.pow(centerY - frameHeight/2.0, 2));
-                double maxDistFromCenter = Math.sqrt(Math.pow(frameWidth/2.0, 2) + Math.pow(frameHeight/2.0, 2));
-                double positionScore = 1.0 - (distFromCenter / maxDistFromCenter);
-                
-                // Calculate solidity
-                MatOfInt hull = new MatOfInt();
-                Imgproc.convexHull(contour, hull);
-                
-                MatOfPoint hullPoints = new MatOfPoint();
-                Point[] contourArray = contour.toArray();
-                List<Point> hullPointsList = new ArrayList<>();
-                int[] hullIndices = hull.toArray();
-                for (int index : hullIndices) {
-                    if (index < contourArray.length) {
-                        hullPointsList.add(contourArray[index]);
-                    }
-                }
-                hullPoints.fromList(hullPointsList);
-                
-                double hullArea = Imgproc.contourArea(hullPoints);
-                double solidity = (hullArea > 0) ? area / hullArea : 0;
-                
-                // Simple scoring: prioritize larger, more centered, more solid contours
-                double areaScore = Math.min(1.0, area / (frameArea * 0.3)); // Normalize to 30% of frame
-                double solidityScore = solidity;
-                
-                double totalScore = (areaScore * 0.5) + (positionScore * 0.3) + (solidityScore * 0.2);
-                
-                Log.d(TAG, String.format("Contour %d: area=%.0f(%.1f%%), pos=%.3f, solid=%.3f, score=%.3f", 
-                    i, area, (area/frameArea)*100, positionScore, solidity, totalScore));
-                
-                if (totalScore > maxScore) {
-                    maxScore = totalScore;
-                    bestContour = contour;
-                }
-                
-                hull.release();
-                hullPoints.release();
-                
-            } catch (Exception e) {
-                Log.w(TAG, "Error scoring contour " + i, e);
-            }
+    private boolean validateCornerGeometry(Point[] corners) {
+        if (corners == null || corners.length != 4) {
+            return false;
         }
         
-        if (bestContour != null) {
-            Log.d(TAG, "✅ Selected best contour with score: " + maxScore);
+        // Convex, non-degenerate, sides at least 50px
+        quadValidator.reset(imageWidth, imageHeight);
+        boolean valid = quadValidator.evaluate(toQuadBuffer(corners), 0, cornerGeometryLimits, quadFeatures);
+        if (valid) {
+            Log.d(TAG, "✅ Corner geometry validation passed");
         } else {
-            Log.d(TAG, "❌ No suitable best contour found");
+            Log.w(TAG, "Corner geometry rejected: minSide=" + quadFeatures[QuadScorer.F_MIN_SIDE]
+                    + ", convex=" + (quadFeatures[QuadScorer.F_CONVEX] > 0f));
         }
-        
-        return bestContour;
-    }
-
-    /**
-     * Advanced contour filtering with geometric validation for document detection
-     */
-    private MatOfPoint findBestDocumentContour(List<MatOfPoint> contours, int frameWidth, int frameHeight) {
-        Log.d(TAG, "🔍 Finding best document contour from " + contours.size() + " candidates");
-        
-        if (contours.isEmpty()) {
-            return null;
-        }
-
-        MatOfPoint bestContour = null;
-        double maxScore = 0;
-        double frameArea = frameWidth * frameHeight;
-        
-        // Minimum area should be at least 15% of frame area for better filtering
-        double minArea = frameArea * 0.15;
-        double maxArea = frameArea * 0.95; // Exclude full-frame contours
-        
-        Log.d(TAG, String.format("📊 Frame area: %.0f, Min area: %.0f, Max area: %.0f", 
-            frameArea, minArea, maxArea));
-
-        for (int i = 0; i < contours.size(); i++) {
-            MatOfPoint contour = contours.get(i);
-            
-            try {
-                double area = Imgproc.contourArea(contour);
-                
-                // Skip contours outside area range
-                if (area < minArea || area > maxArea) {
-                    continue;
-                }
-                
-                // Calculate perimeter
-                double perimeter = Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true);
-                if (perimeter < 200) { // Too small perimeter for documents
-                    continue;
-                }
-                
-                // Calculate aspect ratio and rectangularity
-                org.opencv.core.Rect boundingRect = Imgproc.boundingRect(contour);
-                double aspectRatio = (double) boundingRect.width / boundingRect.height;
-                double rectangularity = area / (boundingRect.width * boundingRect.height);
-                
-                // Skip contours with extreme aspect ratios or poor rectangularity
-                if (aspectRatio < 0.3 || aspectRatio > 3.5 || rectangularity < 0.4) {
-                    continue;
-                }
-                
-                // Calculate solidity (convexity measure)
-                MatOfInt hull = new MatOfInt();
-                Imgproc.convexHull(contour, hull);
-                
-                MatOfPoint hullPoints = new MatOfPoint();
-                Point[] contourArray = contour.toArray();
-                List<Point> hullPointsList = new ArrayList<>();
-                int[] hullIndices = hull.toArray();
-                for (int index : hullIndices) {
-                    if (index < contourArray.length) {
-                        hullPointsList.add(contourArray[index]);
-                    }
-                }
-                hullPoints.fromList(hullPointsList);
-                
-                double hullArea = Imgproc.contourArea(hullPoints);
-                double solidity = (hullArea > 0) ? area / hullArea : 0;
-                
-                // Calculate corner detection score
-                double cornerScore = calculateCornerScore(contour);
-                
-                // Calculate position score (prefer center of frame)
-                double centerX = boundingRect.x + boundingRect.width / 2.0;
-                double centerY = boundingRect.y + boundingRect.height / 2.0;
-                double distFromCenter = Math.sqrt(Math.pow(centerX - frameWidth/2.0, 2) + Math.pow(centerY - frameHeight/2.0, 2));
-                double maxDistFromCenter = Math.sqrt(Math.pow(frameWidth/2.0, 2) + Math.pow(frameHeight/2.0, 2));
-                double positionScore = 1.0 - (distFromCenter / maxDistFromCenter);
-                
-                // Composite scoring
-                double areaScore = Math.min(1.0, area / (frameArea * 0.5)); // Normalize to 0.5 of frame
-                double solidityScore = solidity;
-                double rectangularityScore = rectangularity;
-                double aspectScore = Math.min(aspectRatio, 1.0/aspectRatio); // Prefer square-ish shapes
-                
-                double totalScore = (areaScore * 0.3) + 
-                                  (solidityScore * 0.25) + 
-                                  (rectangularityScore * 0.2) + 
-                                  (cornerScore * 0.15) + 
-                                  (positionScore * 0.1);
-                
-                Log.d(TAG, String.format("Contour %d: area=%.0f(%.1f%%), perim=%.0f, solidity=%.3f, rect=%.3f, corners=%.3f, pos=%.3f, score=%.3f", 
-                    i, area, (area/frameArea)*100, perimeter, solidity, rectangularity, cornerScore, positionScore, totalScore));
-                
-                // Select best contour based on composite score
-                if (totalScore > maxScore && solidity > 0.75 && rectangularity > 0.5) {
-                    maxScore = totalScore;
-                    bestContour = contour;
-                }
-                
-                // Clean up
-                hull.release();
-                hullPoints.release();
-                
-            } catch (Exception e) {
-                Log.w(TAG, "Error evaluating contour " + i, e);
-            }
-        }
-        
-        if (bestContour != null) {
-            Log.d(TAG, "✅ Selected best document contour with score: " + maxScore);
-        } else {
-            Log.d(TAG, "❌ No suitable document contour found");
-        }
-        
-        return bestContour;
-    }
-    
-    /**
-     * Calculate corner detection score for contour quality
-     */
-    private double calculateCornerScore(MatOfPoint contour) {
-        try {
-            // Approximate contour to polygon
-            MatOfPoint2f contour2f = new MatOfPoint2f();
-            contour.convertTo(contour2f, CvType.CV_32FC2);
-            
-            MatOfPoint2f approx = new MatOfPoint2f();
-            double epsilon = 0.02 * Imgproc.arcLength(contour2f, true);
-            Imgproc.approxPolyDP(contour2f, approx, epsilon, true);
-            
-            Point[] points = approx.toArray();
-            int numCorners = points.length;
-            
-            // Score based on how close to 4 corners (ideal for documents)
-            double cornerScore;
-            if (numCorners == 4) {
-                cornerScore = 1.0; // Perfect rectangle
-            } else if (numCorners >= 3 && numCorners <= 6) {
-                cornerScore = 0.8 - Math.abs(numCorners - 4) * 0.1; // Close to rectangle
-            } else {
-                cornerScore = 0.3; // Not rectangular
-            }
-            
-            contour2f.release();
-            approx.release();
-            
-            return cornerScore;
-            
-        } catch (Exception e) {
-            Log.w(TAG, "Error calculating corner score", e);
-            return 0.5; // Default score
-        }
-    }
-
-    /**
-     * Find the largest contour that could be a document
-     */
-    private MatOfPoint findLargestValidContour(List<MatOfPoint> contours, int frameWidth, int frameHeight) {
-        if (contours.isEmpty()) {
-            return null;
-        }
-
-        MatOfPoint bestContour = null;
-        double maxScore = 0;
-        double frameArea = frameWidth * frameHeight;
-        
-        // Minimum area should be at least 10% of frame area for processed frame
-        double minArea = frameArea * 0.1;
-        
-        Log.d(TAG, "🔍 Evaluating " + contours.size() + " contours, frame area: " + frameArea + ", min area: " + minArea);
-
-        for (MatOfPoint contour : contours) {
-            try {
-                double area = Imgproc.contourArea(contour);
-                
-                // Skip very small contours
-                if (area < minArea) {
-                    continue;
-                }
-                
-                // Calculate perimeter and check if it's reasonable
-                double perimeter = Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true);
-                if (perimeter < 100) { // Too small perimeter
-                    continue;
-                }
-                
-                // Calculate contour complexity score (lower is better for documents)
-                double complexity = perimeter * perimeter / area; // Isoperimetric ratio
-                
-                // Calculate solidity (area/convex hull area) - documents should be relatively solid
-                MatOfInt hull = new MatOfInt();
-                Imgproc.convexHull(contour, hull);
-                
-                MatOfPoint hullPoints = new MatOfPoint();
-                Point[] contourArray = contour.toArray();
-                List<Point> hullPointsList = new ArrayList<>();
-                int[] hullIndices = hull.toArray();
-                for (int index : hullIndices) {
-                    hullPointsList.add(contourArray[index]);
-                }
-                hullPoints.fromList(hullPointsList);
-                
-                double hullArea = Imgproc.contourArea(hullPoints);
-                double solidity = (hullArea > 0) ? area / hullArea : 0;
-                
-                // Score based on area (higher is better) and shape characteristics
-                double areaScore = area / frameArea; // Normalized area score
-                double solidityScore = solidity; // Solidity score (0-1)
-                double complexityScore = Math.max(0, 1.0 - (complexity - 16) / 100); // Penalize overly complex shapes
-                
-                double totalScore = areaScore * 0.5 + solidityScore * 0.3 + complexityScore * 0.2;
-                
-                Log.d(TAG, String.format("Contour: area=%.0f (%.1f%%), perimeter=%.0f, solidity=%.3f, complexity=%.2f, score=%.3f", 
-                    area, areaScore * 100, perimeter, solidity, complexity, totalScore));
-                
-                // Check if this is the best contour so far
-                if (totalScore > maxScore && solidity > 0.7 && areaScore > 0.1) {
-                    maxScore = totalScore;
-                    bestContour = contour;
-                }
-                
-                // Clean up
-                hull.release();
-                hullPoints.release();
-                
-            } catch (Exception e) {
-                Log.w(TAG, "Error evaluating contour", e);
-            }
-        }
-        
-        if (bestContour != null) {
-            Log.d(TAG, "✅ Selected best contour with score: " + maxScore);
-        } else {
-            Log.d(TAG, "❌ No suitable contour found");
-        }
-        
-        return bestContour;
-    }
-
-    /**
-     * Approximate contour to a quadrilateral
-     */
-    private Point[] approximateToQuadrilateral(MatOfPoint contour) {
-        try {
-            // Convert MatOfPoint to MatOfPoint2f for approximation
-            MatOfPoint2f contour2f = new MatOfPoint2f();
-            contour.convertTo(contour2f, CvType.CV_32FC2);
-            
-            // Approximate contour
-            MatOfPoint2f approxCurve = new MatOfPoint2f();
-            double epsilon = 0.02 * Imgproc.arcLength(contour2f, true);
-            Imgproc.approxPolyDP(contour2f, approxCurve, epsilon, true);
-            
-            // Check if we got 4 points (quadrilateral)
-            Point[] points = approxCurve.toArray();
-            if (points.length == 4) {
-                // Clean up
-                contour2f.release();
-                approxCurve.release();
-                return points;
-            }
-            
-            // Clean up
-            contour2f.release();
-            approxCurve.release();
-            return null;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error approximating contour to quadrilateral", e);
-            return null;
-        }
-    }
-
-    /**
-     * Transform coordinates from processed frame space back to original frame space
-     */
-    private Point[] transformCornersToOriginalFrame(Point[] corners, double ratio, int originalX, int originalY) {
-        Point[] originalCorners = new Point[4];
-        for (int i = 0; i < 4; i++) {
-            originalCorners[i] = new Point(
-                (corners[i].x * ratio) + originalX,
-                (corners[i].y * ratio) + originalY
-            );
-        }
-        return originalCorners;
-    }
-
-    /**
-     * Refined corner detection with sub-pixel accuracy and geometric validation
-     */
-    private Point[] refineDocumentCorners(MatOfPoint contour, Mat enhancedImage) {
-        Log.d(TAG, "🎯 Refining document corners with sub-pixel accuracy");
-        
-        try {
-            // 1. First approximation to quadrilateral
-            Point[] initialCorners = approximateToQuadrilateral(contour);
-            if (initialCorners == null || initialCorners.length != 4) {
-                Log.w(TAG, "Initial corner approximation failed");
-                return null;
-            }
-            
-            // 2. Refine corners using Harris corner detection in local regions
-            Point[] refinedCorners = new Point[4];
-            Mat cornerMask = Mat.zeros(enhancedImage.size(), CvType.CV_8UC1);
-            
-            for (int i = 0; i < 4; i++) {
-                Point corner = initialCorners[i];
-                
-                // Define search region around each corner
-                int searchRadius = 20;
-                int x1 = Math.max(0, (int)(corner.x - searchRadius));
-                int y1 = Math.max(0, (int)(corner.y - searchRadius));
-                int x2 = Math.min(enhancedImage.width() - 1, (int)(corner.x + searchRadius));
-                int y2 = Math.min(enhancedImage.height() - 1, (int)(corner.y + searchRadius));
-                
-                org.opencv.core.Rect searchRect = new org.opencv.core.Rect(x1, y1, x2 - x1, y2 - y1);
-                Mat searchRegion = new Mat(enhancedImage, searchRect);
-                
-                // Apply Harris corner detection
-                Mat corners = new Mat();
-                Imgproc.cornerHarris(searchRegion, corners, 2, 3, 0.04);
-                
-                // Find the strongest corner in the search region
-                Core.MinMaxLocResult mmr = Core.minMaxLoc(corners);
-                if (mmr.maxVal > 0.01) { // Threshold for corner strength
-                    refinedCorners[i] = new Point(
-                        x1 + mmr.maxLoc.x,
-                        y1 + mmr.maxLoc.y
-                    );
-                } else {
-                    // Fallback to original corner if Harris detection fails
-                    refinedCorners[i] = corner;
-                }
-                
-                searchRegion.release();
-                corners.release();
-                
-                Log.d(TAG, String.format("Corner %d: (%.1f,%.1f) -> (%.1f,%.1f)", 
-                    i, corner.x, corner.y, refinedCorners[i].x, refinedCorners[i].y));
-            }
-            
-            cornerMask.release();
-            
-            // 3. Geometric validation of refined corners
-            if (validateCornerGeometry(refinedCorners)) {
-                Log.d(TAG, "✅ Corner refinement successful");
-                return refinedCorners;
-            } else {
-                Log.w(TAG, "⚠️ Refined corners failed geometry validation, using initial corners");
-                return initialCorners;
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error in corner refinement", e);
-            // Fallback to basic approximation
-            return approximateToQuadrilateral(contour);
-        }
-    }
-    
-    /**
-     * Validate geometric properties of detected corners
-     */
-    private boolean validateCornerGeometry(Point[] corners) {
-        try {
-            if (corners == null || corners.length != 4) {
-                return false;
-            }
-            
-            // 1. Check if corners form a valid quadrilateral (no self-intersections)
-            for (int i = 0; i < 4; i++) {
-                Point p1 = corners[i];
-                Point p2 = corners[(i + 1) % 4];
-                Point p3 = corners[(i + 2) % 4];
-                
-                // Check if points are not collinear
-                double crossProduct = (p2.x - p1.x) * (p3.y - p1.y) - (p2.y - p1.y) * (p3.x - p1.x);
-                if (Math.abs(crossProduct) < 100) { // Too small means nearly collinear
-                    Log.w(TAG, "Corners are nearly collinear");
-                    return false;
-                }
-            }
-            
-            // 2. Check minimum distances between corners
-            double minDistance = Double.MAX_VALUE;
-            for (int i = 0; i < 4; i++) {
-                for (int j = i + 1; j < 4; j++) {
-                    double dist = Math.hypot(corners[i].x - corners[j].x, corners[i].y - corners[j].y);
-                    minDistance = Math.min(minDistance, dist);
-                }
-            }
-            
-            if (minDistance < 50) { // Corners too close together
-                Log.w(TAG, "Corners too close together: " + minDistance);
-                return false;
-            }
-            
-            // 3. Check if quadrilateral is roughly convex
-            boolean isConvex = true;
-            for (int i = 0; i < 4; i++) {
-                Point p1 = corners[i];
-                Point p2 = corners[(i + 1) % 4];
-                Point p3 = corners[(i + 2) % 4];
-                
-                double cross = (p2.x - p1.x) * (p3.y - p2.y) - (p2.y - p1.y) * (p3.x - p2.x);
-                if (i == 0) {
-                    isConvex = cross > 0;
-                } else if ((cross > 0) != isConvex) {
-                    Log.w(TAG, "Quadrilateral is not convex");
-                    return false;
-                }
-            }
-            
-            Log.d(TAG, "✅ Corner geometry validation passed");
-            return true;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error in corner geometry validation", e);
-            return false;
-        }
-    }
-    
-    /**
-     * Advanced geometric validation with aspect ratio and shape analysis
-     */
-    private boolean validateDocumentGeometry(Point[] corners, double expectedAspectRatio) {
-        Log.d(TAG, "🔍 Validating document geometry");
-        
-        try {
-            if (corners == null || corners.length != 4) {
-                Log.w(TAG, "Invalid corners for geometry validation");
-                return false;
-            }
-            
-            // 1. Order corners properly
-            Point[] orderedCorners = orderPoints(corners);
-            
-            // 2. Calculate side lengths
-            double[] sideLengths = new double[4];
-            for (int i = 0; i < 4; i++) {
-                Point p1 = orderedCorners[i];
-                Point p2 = orderedCorners[(i + 1) % 4];
-                sideLengths[i] = Math.hypot(p2.x - p1.x, p2.y - p1.y);
-            }
-            
-            // 3. Check if opposite sides are reasonably similar (parallelogram test)
-            double side1Ratio = Math.min(sideLengths[0], sideLengths[2]) / Math.max(sideLengths[0], sideLengths[2]);
-            double side2Ratio = Math.min(sideLengths[1], sideLengths[3]) / Math.max(sideLengths[1], sideLengths[3]);
-            
-            if (side1Ratio < 0.7 || side2Ratio < 0.7) {
-                Log.w(TAG, String.format("Sides not parallel enough: %.3f, %.3f", side1Ratio, side2Ratio));
-                return false;
-            }
-            
-            // 4. Calculate average width and height
-            double avgWidth = (sideLengths[0] + sideLengths[2]) / 2.0;
-            double avgHeight = (sideLengths[1] + sideLengths[3]) / 2.0;
-            
-            if (avgHeight == 0) {
-                Log.w(TAG, "Invalid height calculation");
-                return false;
-            }
-            
-            double detectedAspectRatio = avgWidth / avgHeight;
-            
-            // 5. Validate aspect ratio if expected ratio is provided
-            if (expectedAspectRatio > 0) {
-                double tolerance = 0.35 * expectedAspectRatio; // 35% tolerance for real-world conditions
-                boolean aspectValid = Math.abs(detectedAspectRatio - expectedAspectRatio) < tolerance;
-                
-                Log.d(TAG, String.format("Aspect ratio: detected=%.3f, expected=%.3f, tolerance=%.3f, valid=%s",
-                        detectedAspectRatio, expectedAspectRatio, tolerance, aspectValid));
-                
-                if (!aspectValid) {
-                    return false;
-                }
-            }
-            
-            // 6. Calculate area and perimeter ratios for shape validation
-            double area = Imgproc.contourArea(new MatOfPoint(orderedCorners));
-            double perimeter = sideLengths[0] + sideLengths[1] + sideLengths[2] + sideLengths[3];
-            double rectangleArea = avgWidth * avgHeight;
-            double rectanglePerimeter = 2 * (avgWidth + avgHeight);
-            
-            double areaRatio = area / rectangleArea;
-            double perimeterRatio = perimeter / rectanglePerimeter;
-            
-            // Document should be reasonably rectangular
-            if (areaRatio < 0.8 || areaRatio > 1.2 || perimeterRatio < 0.9 || perimeterRatio > 1.1) {
-                Log.w(TAG, String.format("Shape not rectangular enough: area ratio=%.3f, perimeter ratio=%.3f", 
-                    areaRatio, perimeterRatio));
-                return false;
-            }
-            
-            // 7. Check corner angles (should be roughly 90 degrees for documents)
-            for (int i = 0; i < 4; i++) {
-                Point p1 = orderedCorners[i];
-                Point p2 = orderedCorners[(i + 1) % 4];
-                Point p3 = orderedCorners[(i + 2) % 4];
-                
-                // Calculate vectors
-                double v1x = p1.x - p2.x;
-                double v1y = p1.y - p2.y;
-                double v2x = p3.x - p2.x;
-                double v2y = p3.y - p2.y;
-                
-                // Calculate angle
-                double dot = v1x * v2x + v1y * v2y;
-                double mag1 = Math.sqrt(v1x * v1x + v1y * v1y);
-                double mag2 = Math.sqrt(v2x * v2x + v2y * v2y);
-                
-                if (mag1 > 0 && mag2 > 0) {
-                    double angle = Math.acos(Math.max(-1, Math.min(1, dot / (mag1 * mag2))));
-                    double angleDegrees = Math.toDegrees(angle);
-                    
-                    // Allow 45-135 degree range for perspective distortion
-                    if (angleDegrees < 45 || angleDegrees > 135) {
-                        Log.w(TAG, String.format("Corner %d angle too extreme: %.1f degrees", i, angleDegrees));
-                        return false;
-                    }
-                }
-            }
-            
-            Log.d(TAG, "✅ Document geometry validation passed");
-            return true;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error in document geometry validation", e);
-            return false;
-        }
-    }
-    
-    /**
-     * Enhanced perspective transformation with quality improvements
-     */
-    private Mat performEnhancedPerspectiveTransform(Mat originalFrame, Point[] corners) {
-        Log.d(TAG, "🔄 Performing enhanced perspective transformation");
-        
-        if (corners == null || corners.length != 4) {
-            Log.e(TAG, "Invalid corners for perspective transformation");
-            return null;
-        }
-
-        try {
-            // Order points: top-left, top-right, bottom-right, bottom-left
-            Point[] orderedCorners = orderPoints(corners);
-            
-            // Calculate output dimensions with better accuracy
-            double w1 = Math.hypot(orderedCorners[1].x - orderedCorners[0].x, orderedCorners[1].y - orderedCorners[0].y);
-            double w2 = Math.hypot(orderedCorners[2].x - orderedCorners[3].x, orderedCorners[2].y - orderedCorners[3].y);
-            double h1 = Math.hypot(orderedCorners[3].x - orderedCorners[0].x, orderedCorners[3].y - orderedCorners[0].y);
-            double h2 = Math.hypot(orderedCorners[2].x - orderedCorners[1].x, orderedCorners[2].y - orderedCorners[1].y);
-            
-            double maxWidth = Math.max(w1, w2);
-            double maxHeight = Math.max(h1, h2);
-            
-            // Apply minimum and maximum size constraints
-            maxWidth = Math.max(maxWidth, 200);
-            maxHeight = Math.max(maxHeight, 200);
-            maxWidth = Math.min(maxWidth, originalFrame.width() * 2); // Allow some upscaling
-            maxHeight = Math.min(maxHeight, originalFrame.height() * 2);
-            
-            // If expected aspect ratio is available, use it to improve dimensions
-            if (expectedAspectRatio > 0) {
-                double currentAspectRatio = maxWidth / maxHeight;
-                double aspectDifference = Math.abs(currentAspectRatio - expectedAspectRatio);
-                
-                if (aspectDifference > 0.1) { // Significant difference
-                    if (currentAspectRatio > expectedAspectRatio) {
-                        // Too wide, adjust width
-                        maxWidth = maxHeight * expectedAspectRatio;
-                    } else {
-                        // Too tall, adjust height  
-                        maxHeight = maxWidth / expectedAspectRatio;
-                    }
-                }
-            }
-            
-            Log.d(TAG, String.format("Transform dimensions: %.0fx%.0f", maxWidth, maxHeight));
-            
-            // Source points (actual corners)
-            Mat srcPoints = new Mat(4, 1, CvType.CV_32FC2);
-            for (int i = 0; i < 4; i++) {
-                srcPoints.put(i, 0, orderedCorners[i].x, orderedCorners[i].y);
-            }
-            
-            // Destination points (perfect rectangle)
-            Mat dstPoints = new Mat(4, 1, CvType.CV_32FC2);
-            dstPoints.put(0, 0, 0, 0);
-            dstPoints.put(1, 0, maxWidth - 1, 0);
-            dstPoints.put(2, 0, maxWidth - 1, maxHeight - 1);
-            dstPoints.put(3, 0, 0, maxHeight - 1);
-            
-            // Get perspective transform matrix
-            Mat transformMatrix = Imgproc.getPerspectiveTransform(srcPoints, dstPoints);
-            
-            // Apply transformation with high-quality interpolation
-            Mat warped = new Mat();
-            Imgproc.warpPerspective(originalFrame, warped, transformMatrix, new Size(maxWidth, maxHeight), 
-                Imgproc.INTER_LANCZOS4, Core.BORDER_CONSTANT, new Scalar(255, 255, 255));
-            
-            // Clean up
-            srcPoints.release();
-            dstPoints.release();
-            transformMatrix.release();
-            
-            // Validate output
-            if (warped.width() < 100 || warped.height() < 100) {
-                Log.w(TAG, "Perspective transformation resulted in too small image: " + warped.width() + "x" + warped.height());
-                warped.release();
-                return null;
-            }
-            
-            Log.d(TAG, "✅ Enhanced perspective transformation complete");
-            return warped;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error in enhanced perspective transformation", e);
-            return null;
+        return valid;
+    }
+    
+    /**
+     * Advanced geometric validation with aspect ratio and shape analysis
+     */
+    private boolean validateDocumentGeometry(Point[] corners, double expectedAspectRatio) {
+        Log.d(TAG, "🔍 Validating document geometry");
+        
+        if (corners == null || corners.length != 4) {
+            Log.w(TAG, "Invalid corners for geometry validation");
+            return false;
         }
+        
+        // Parallel sides, rectangular area, 45-135 degree corners and ±35% aspect ratio
+        // (average width / average height, in either orientation). No perimeter check:
+        // the perimeter of a quad is 2 * (avgWidth + avgHeight) by construction, so its
+        // ratio to the "rectangle perimeter" is always 1 and the old 0.9-1.1 test never failed
+        documentGeometryLimits.expectedAspect = (float) expectedAspectRatio;
+        quadValidator.reset(imageWidth, imageHeight);
+        boolean valid = quadValidator.evaluate(toQuadBuffer(corners), 0, documentGeometryLimits, quadFeatures);
+        
+        Log.d(TAG, String.format(Locale.US,
+                "Geometry: aspect=%.3f (expected %.3f), parallelism=%.3f, rectangularity=%.3f, maxCos=%.3f, valid=%s",
+                quadFeatures[QuadScorer.F_ASPECT], expectedAspectRatio, quadFeatures[QuadScorer.F_PARALLELISM],
+                quadFeatures[QuadScorer.F_RECTANGULARITY], quadFeatures[QuadScorer.F_MAX_CORNER_COS], valid));
+        return valid;
     }
-
+    
     /**
      * Validate aspect ratio of detected quadrilateral
      */
@@ -3191,6 +2651,27 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         }
     }
 
+    /**
+     * Sort contours by area (largest first), computing each area only once
+     */
+    private static void sortContoursByAreaDescending(List<MatOfPoint> contours) {
+        int n = contours.size();
+        if (n < 2) {
+            return;
+        }
+        final double[] areas = new double[n];
+        Integer[] order = new Integer[n];
+        MatOfPoint[] source = contours.toArray(new MatOfPoint[0]);
+        for (int i = 0; i < n; i++) {
+            areas[i] = Imgproc.contourArea(source[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(areas[b], areas[a]));
+        for (int i = 0; i < n; i++) {
+            contours.set(i, source[order[i]]);
+        }
+    }
+
     /**
      * Order points as: top-left, top-right, bottom-right, bottom-left
      */
@@ -3272,50 +2753,175 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         }
     }
 
-    private String matToBase64(Mat mat) {
+    /**
+     * Captures leave performSimplePerspectiveTransform as 8-bit BGR. A Mat carries no channel
+     * order, so this checks the layout that conversion produces before a Mat reaches an encoder
+     */
+    private static boolean isBgrCapture(Mat document) {
+        return document.type() == CvType.CV_8UC3;
+    }
+    
+    /**
+     * Send a small preview of the warped capture: pyrDown while at least twice too
+     * large, then INTER_AREA to THUMBNAIL_SIZE on the long side
+     */
+    private void emitCaptureThumbnail(Mat document, Quad corners, int frameWidth, int frameHeight, long captureId) {
+        FrameListener listener = frameListener;
+        if (listener == null) {
+            return;
+        }
+        if (!isBgrCapture(document)) {
+            Log.e(TAG, "Capture #" + captureId + " is not 8-bit BGR: " + CvType.typeToString(document.type()));
+            return;
+        }
+        Mat thumbnail = new Mat();
         try {
-            if (mat == null || mat.empty()) {
-                Log.e(TAG, "Cannot encode null or empty Mat to base64");
-                return null;
+            Mat src = document;
+            while (Math.max(src.cols(), src.rows()) >= THUMBNAIL_SIZE * 2) {
+                Imgproc.pyrDown(src, thumbnail);
+                src = thumbnail;
+            }
+            double scale = (double) THUMBNAIL_SIZE / Math.max(src.cols(), src.rows());
+            if (scale < 1.0) {
+                Imgproc.resize(src, thumbnail, new Size(), scale, scale, Imgproc.INTER_AREA);
+                src = thumbnail;
+            }
+            
+            long encodeStart = ScanTrace.begin(ScanTrace.Span.ENCODE);
+            CaptureEncoder.Result encoded = thumbnailEncoder.encode(src, thumbnailSettings, thumbnailResult);
+            ScanTrace.end(ScanTrace.Span.ENCODE, encodeStart);
+            if (encoded == null) {
+                Log.e(TAG, "Failed to encode capture thumbnail");
+                return;
             }
-
-            Log.d(TAG, String.format("Encoding Mat to base64: %dx%d, type: %d",
-                    mat.width(), mat.height(), mat.type()));
-
-            // The mat should already be in RGB format
-            MatOfByte buffer = new MatOfByte();
-
-            // Use JPEG with quality setting for smaller file size and better memory
-            // management
-            MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, 85); // 85% quality
-            boolean success = Imgcodecs.imencode(".jpg", mat, buffer, params);
-
-            if (!success) {
-                Log.e(TAG, "Failed to encode Mat to JPEG format");
-                buffer.release();
-                params.release();
-                return null;
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "🖼️ Capture #" + captureId + " thumbnail: " + src.cols() + "x" + src.rows()
+                    + ", " + encoded.bytes.length + " bytes");
+            listener.onCaptureThumbnail(corners, frameWidth, frameHeight,
+                    Base64.encodeToString(encoded.bytes, Base64.NO_WRAP), encoded.format.mimeType,
+                    src.cols(), src.rows(), captureId);
+        } catch (Exception e) {
+            Log.e(TAG, "Error creating capture thumbnail: " + e.getMessage());
+        } finally {
+            thumbnail.release();
+        }
+    }
+    
+    /**
+     * Encode and deliver the full-size capture on the encode thread, in capture order;
+     * takes ownership of {@code document}. Callers check MAX_PENDING_ENCODES first and
+     * defer the capture while it is reached.
+     */
+    private void encodeCaptureAsync(Mat document, Quad corners, int frameWidth, int frameHeight, long captureId) {
+        ExecutorService executor = encodeExecutor;
+        if (executor == null) {
+            document.release();
+            return;
+        }
+        pendingEncodes.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    deliverCapture(document, corners, frameWidth, frameHeight, captureId);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error delivering capture #" + captureId, e);
+                } finally {
+                    pendingEncodes.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingEncodes.decrementAndGet();
+            document.release();
+        }
+    }
+    
+    /**
+     * Encode and deliver a capture. Takes ownership of {@code document}: it is handed to the
+     * ImageRegistry (its id goes out with the event, for handle-based OCR / extraction) or released.
+     */
+    private void deliverCapture(Mat document, Quad corners, int frameWidth, int frameHeight, long captureId) {
+        long start = System.nanoTime();
+        String imageId = null;
+        try {
+            if (!isBgrCapture(document)) {
+                Log.e(TAG, "Capture #" + captureId + " is not 8-bit BGR: " + CvType.typeToString(document.type()));
+                return;
             }
-
-            byte[] bytes = buffer.toArray();
-            buffer.release();
-            params.release();
-
-            if (bytes == null || bytes.length == 0) {
-                Log.e(TAG, "Encoded bytes are null or empty");
+            long encodeStart = ScanTrace.begin(ScanTrace.Span.ENCODE);
+            CaptureEncoder.Result encoded = captureEncoder.encode(document, encoderSettings, new CaptureEncoder.Result());
+            ScanTrace.end(ScanTrace.Span.ENCODE, encodeStart);
+            int width = document.width();
+            int height = document.height();
+            // Same BGR Mat as the outputs above: no conversion of its own for the pipeline
+            CapturePipeline pipeline = capturePipeline;
+            if (pipeline != null) {
+                pipeline.run(document.clone(), captureId);
+            }
+            imageId = ImageRegistry.getInstance().put(document);
+            FrameListener listener = frameListener;
+            
+            if (fileOutput) {
+                // Only the file URI crosses the bridge
+                String imageUri = encoded != null ? writeCaptureFile(encoded, width, height) : null;
+                if (imageUri != null && listener != null) {
+                    listener.onDocumentCaptured(corners, frameWidth, frameHeight,
+                            imageUri, width, height, captureId, imageId);
+                }
+            } else if (listener != null) {
+                String base64Image = encoded != null ? Base64.encodeToString(encoded.bytes, Base64.NO_WRAP) : null;
+                listener.onDocumentDetected(corners, frameWidth, frameHeight,
+                        base64Image, encoded != null ? encoded.format.mimeType : null, captureId, imageId);
+            }
+        } finally {
+            if (imageId == null) {
+                document.release();
+            }
+        }
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, "📤 Capture #" + captureId + " delivered in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+    
+    /**
+     * Write an encoded capture to the app cache and return its file:// URI.
+     * Keeps the newest MAX_CAPTURE_FILES captures.
+     */
+    @Nullable
+    private String writeCaptureFile(CaptureEncoder.Result encoded, int width, int height) {
+        try {
+            File dir = new File(getContext().getCacheDir(), CAPTURE_DIR);
+            if (!dir.exists() && !dir.mkdirs()) {
+                Log.e(TAG, "❌ Cannot create capture directory: " + dir);
                 return null;
             }
+            pruneCaptureFiles(dir);
 
-            Log.d(TAG, String.format("Successfully encoded image: %d bytes", bytes.length));
-            return Base64.encodeToString(bytes, Base64.NO_WRAP); // NO_WRAP for cleaner output
+            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date());
+            File imageFile = new File(dir, "scan_" + timeStamp + encoded.format.extension);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(imageFile))) {
+                out.write(encoded.bytes);
+            }
 
+            Log.d(TAG, "💾 Capture written: " + imageFile.getName() + " (" + width + "x" + height
+                    + ", " + encoded.bytes.length + " bytes)");
+            return "file://" + imageFile.getAbsolutePath();
         } catch (Exception e) {
-            Log.e(TAG, "Error encoding Mat to base64: " + e.getMessage());
-            e.printStackTrace();
+            Log.e(TAG, "Error writing capture file: " + e.getMessage());
             return null;
         }
     }
 
+    private void pruneCaptureFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length < MAX_CAPTURE_FILES) {
+            return;
+        }
+        // Names sort by timestamp
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        for (int i = 0; i <= files.length - MAX_CAPTURE_FILES; i++) {
+            if (!files[i].delete()) {
+                Log.w(TAG, "Could not delete old capture: " + files[i].getName());
+            }
+        }
+    }
+
     private Mat imageToMat(Image image) {
         int width = image.getWidth();
         int height = image.getHeight();
@@ -3341,13 +2947,21 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         int height = image.getHeight();
 
         Image.Plane[] planes = image.getPlanes();
-        byte[] data = new byte[width * height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8];
         int offset = 0;
 
         ByteBuffer yBuffer = planes[0].getBuffer();
         int yRowStride = planes[0].getRowStride();
         int yPixelStride = planes[0].getPixelStride();
 
+        // Reused across frames. The Y plane is copied with its row padding, so size for
+        // whichever is larger: packed NV21 or the padded Y plane plus the chroma bytes
+        int required = Math.max(width * height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8,
+                yBuffer.remaining() + (width / 2) * (height / 2) * 2);
+        if (nv21Buffer == null || nv21Buffer.length != required) {
+            nv21Buffer = new byte[required];
+        }
+        byte[] data = nv21Buffer;
+
         ByteBuffer uBuffer = planes[1].getBuffer();
         ByteBuffer vBuffer = planes[2].getBuffer();
         int uvRowStride = planes[1].getRowStride();
@@ -3396,273 +3010,315 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
 
     @Override
     public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surface) {
-        // Called every time there's a new Camera preview frame
-        // Send overlay coordinates to React Native for display
-        sendOverlayCoordinates();
-    }
-
-    // Throttle overlay updates to avoid spam
-    private long lastOverlaySentTime = 0;
-    private static final long OVERLAY_UPDATE_INTERVAL_MS = 50; // Send overlay updates every 50ms for real-time response
-
-    /**
-     * Send overlay coordinates to React Native for display
-     */
-    private void sendOverlayCoordinates() {
-        if (!showRectangleOverlay || !hasScanRegion || scanRegionWidth <= 0 || scanRegionHeight <= 0) {
-            return;
-        }
-
-        // Minimal throttling for real-time response
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastOverlaySentTime < OVERLAY_UPDATE_INTERVAL_MS) {
-            return;
-        }
-
-        try {
-            // Get the view dimensions
-            int viewWidth = getWidth();
-            int viewHeight = getHeight();
-
-            if (viewWidth <= 0 || viewHeight <= 0 || frameListener == null)
-                return;
-
-            // Get actual frame dimensions accounting for rotation
-            int rotation = getImageRotation();
-            double frameWidth, frameHeight;
-            if (rotation == 90 || rotation == 270) {
-                frameWidth = imageHeight;
-                frameHeight = imageWidth;
-            } else {
-                frameWidth = imageWidth;
-                frameHeight = imageHeight;
-            }
-            
-            // Scale the scan region coordinates from frame space to view space
-            double scaleX = (double) viewWidth / frameWidth;
-            double scaleY = (double) viewHeight / frameHeight;
-
-            // Calculate scaled rectangle position for React Native overlay
-            double left = scanRegionX * scaleX;
-            double top = scanRegionY * scaleY;
-            double width = scanRegionWidth * scaleX;
-            double height = scanRegionHeight * scaleY;
-
-            Log.v(TAG, String.format("📱 Sending overlay coords: view=%dx%d, frame=%.0fx%.0f (rotation=%d°), scale=%.2fx%.2f",
-                    viewWidth, viewHeight, frameWidth, frameHeight, rotation, scaleX, scaleY));
-            Log.v(TAG, String.format("📱 Overlay rectangle: (%.1f,%.1f,%.1fx%.1f)", left, top, width, height));
-
-            // Send coordinates to React Native via callback
-            if (frameListener != null) {
-                try {
-                    frameListener.onOverlayUpdate(left, top, width, height);
-                    lastOverlaySentTime = currentTime;
-                    Log.d(TAG, "✅ Overlay coordinates sent to React Native");
-                } catch (Exception e) {
-                    Log.e(TAG, "❌ Error calling onOverlayUpdate", e);
-                }
-            }
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending overlay coordinates", e);
-        }
+        // Called for every preview frame; overlay geometry is pushed on change instead
     }
 
     /**
      * Simple real-time document detection based on react-native-document-scanner-master logic
-     * This method detects rectangular documents without aspect ratio constraints
+     * Every large contour that approximates to a quadrilateral is scored by the QuadScorer
+     * and the best candidate wins, instead of only looking at the single largest contour.
      */
-    private Point[] detectDocumentRealTime(Mat frame, int width, int height) {
-        Log.d(TAG, "⚡ Ultra-fast document detection");
+    private boolean detectDocumentRealTime(Mat frame, int width, int height, double regionArea, Quad out) {
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, "⚡ Ultra-fast document detection");
+        DocumentType type = applyDocumentTypeIfChanged();
+        quadScorer.reset(width, height);
+        
+        // Optional DNN detector feeds the same scorer from its latest finished inference;
+        // Otsu is the fallback while there is none
+        DnnEdgeDetector dnn = enableDnnDetection ? ensureDnnDetector() : null;
+        if (dnn != null && dnn.detect(frame, quadScorer)) {
+            return pickBestQuad(out);
+        }
         
         Mat gray = null;
         Mat thresh = null;
+        Mat hierarchy = null;
+        MatOfPoint2f contour2f = null;
+        MatOfPoint2f approx2f = null;
+        List<MatOfPoint> contours = new ArrayList<>();
         
         try {
             // 1. Convert to grayscale (fastest approach)
+            long thresholdStart = ScanTrace.begin(ScanTrace.Span.THRESHOLD);
             gray = new Mat();
             if (frame.channels() == 3) {
                 Imgproc.cvtColor(frame, gray, Imgproc.COLOR_BGR2GRAY);
             } else {
-                gray = frame.clone();
+                frame.copyTo(gray);
             }
             
             // 2. Simple thresholding (much faster than Canny)
             thresh = new Mat();
             Imgproc.threshold(gray, thresh, 0, 255, Imgproc.THRESH_BINARY + Imgproc.THRESH_OTSU);
+            ScanTrace.end(ScanTrace.Span.THRESHOLD, thresholdStart);
             
             // 3. Find contours (fastest method)
-            List<MatOfPoint> contours = new ArrayList<>();
-            Imgproc.findContours(thresh, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+            long contoursStart = ScanTrace.begin(ScanTrace.Span.CONTOURS);
+            hierarchy = new Mat();
+            Imgproc.findContours(thresh, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+            ScanTrace.end(ScanTrace.Span.CONTOURS, contoursStart);
             
             if (contours.isEmpty()) {
-                return null;
+                return false;
             }
             
-            // 4. Find largest contour (simple and fast)
-            MatOfPoint largestContour = null;
-            double maxArea = 0;
+            // 4. Score every large quadrilateral candidate (area computed once per contour)
+            double minContourArea = width * height * 0.15; // At least 15% of frame
+            double maxContourArea = Double.MAX_VALUE;
+            if (type != null && regionArea > 0) {
+                // Expected fill of the scan region for this document type
+                minContourArea = Math.max(width * height * 0.05, regionArea * type.minRegionFill);
+                maxContourArea = regionArea * type.maxRegionFill;
+            }
+            contour2f = new MatOfPoint2f();
+            approx2f = new MatOfPoint2f();
+            int pruned = 0;
             
             for (MatOfPoint contour : contours) {
                 double area = Imgproc.contourArea(contour);
-                if (area > maxArea && area > width * height * 0.15) { // At least 15% of frame
-                    maxArea = area;
-                    largestContour = contour;
+                if (area < minContourArea || area > maxContourArea) {
+                    continue;
                 }
-            }
-            
-            if (largestContour == null) {
-                return null;
-            }
-            
-            // 5. Approximate to quadrilateral (fast approximation)
-            MatOfPoint2f contour2f = new MatOfPoint2f();
-            largestContour.convertTo(contour2f, CvType.CV_32FC2);
-            
-            double epsilon = 0.04 * Imgproc.arcLength(contour2f, true); // More lenient approximation
-            MatOfPoint2f approx2f = new MatOfPoint2f();
-            Imgproc.approxPolyDP(contour2f, approx2f, epsilon, true);
-            
-            MatOfPoint approx = new MatOfPoint();
-            approx2f.convertTo(approx, CvType.CV_32S);
-            
-            Point[] points = approx.toArray();
-            
-            // 6. Check if it's a quadrilateral
-            if (points.length == 4) {
-                Log.d(TAG, "✅ Fast quadrilateral detection successful");
-                Point[] orderedPoints = orderPoints(points);
                 
-                contour2f.release();
-                approx2f.release();
-                approx.release();
+                // Cheap bounding-box ratio prior before the polygon approximation
+                if (type != null) {
+                    org.opencv.core.Rect box = Imgproc.boundingRect(contour);
+                    if (!type.matchesBoundingBox(box.width, box.height)) {
+                        pruned++;
+                        continue;
+                    }
+                }
+                
+                // 5. Approximate to quadrilateral (fast approximation)
+                contour.convertTo(contour2f, CvType.CV_32FC2);
+                double epsilon = 0.04 * Imgproc.arcLength(contour2f, true); // More lenient approximation
+                Imgproc.approxPolyDP(contour2f, approx2f, epsilon, true);
                 
-                return orderedPoints;
+                if (approx2f.rows() == 4) {
+                    approx2f.get(0, 0, quadBuffer);
+                    quadScorer.add(quadBuffer, 0);
+                }
             }
             
-            contour2f.release();
-            approx2f.release();
-            approx.release();
+            if (pruned > 0) {
+                if (ScanTrace.ENABLED) ScanTrace.log(TAG, "📐 Pruned " + pruned + " contours by " + type.name + " bounding-box prior");
+            }
             
-            return null;
+            // 6. Pick the best scoring quadrilateral
+            return pickBestQuad(out);
             
         } catch (Exception e) {
             Log.e(TAG, "Error in fast document detection", e);
-            return null;
+            return false;
         } finally {
             if (gray != null) gray.release();
             if (thresh != null) thresh.release();
+            if (hierarchy != null) hierarchy.release();
+            if (contour2f != null) contour2f.release();
+            if (approx2f != null) approx2f.release();
+            for (MatOfPoint contour : contours) {
+                contour.release();
+            }
         }
     }
     
     
     /**
-     * Simple validation to check if the detected quadrilateral is reasonable
+     * Score the quad ROI of the current frame once; later calls for the same frame reuse it
      */
-    private boolean isValidQuadrilateral(Point[] corners) {
-        if (corners == null || corners.length != 4) {
+    private QualityScorer.Result scoreFrameQuality(Mat frame, Quad quad) {
+        if (qualityFrameSequence != frameSequence) {
+            qualityScorer.score(frame, quad, qualityResult);
+            qualityFrameSequence = frameSequence;
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, String.format(Locale.US,
+                    "💡 Quality: sharpness=%.1f, contrast=%.1f, mean=%.0f, saturated=%.3f, glare=%s, edges=%.3f (%dus)",
+                    qualityResult.sharpness, qualityResult.contrast, qualityResult.meanLuma,
+                    qualityResult.saturatedFraction, qualityResult.glare, qualityResult.edgeDensity,
+                    qualityResult.micros));
+        }
+        return qualityResult;
+    }
+    
+    /**
+     * Glare and exposure check inside the detected quad.
+     * Sends user feedback and returns true when the frame should not count.
+     */
+    private boolean hasQualityProblem(Mat frame, Quad quad) {
+        if (!enableGlareDetection) {
             return false;
         }
         
-        // Check for minimum area (avoid tiny detections)
-        double area = calculateQuadrilateralArea(corners);
-        double frameArea = imageWidth * imageHeight;
-        
-        if (area < frameArea * 0.05) { // At least 5% of frame area
-            Log.d(TAG, "Quadrilateral too small: " + area + " vs " + (frameArea * 0.05));
+        String message = scoreFrameQuality(frame, quad).feedbackMessage();
+        if (message == null) {
             return false;
         }
-        
-        // Check for reasonable aspect ratio (not too extreme)
-        double width = Math.max(
-            distance(corners[0], corners[1]), 
-            distance(corners[2], corners[3])
-        );
-        double height = Math.max(
-            distance(corners[1], corners[2]), 
-            distance(corners[3], corners[0])
-        );
-        
-        double aspectRatio = width / height;
-        if (aspectRatio < 0.3 || aspectRatio > 3.0) { // Reasonable range
-            Log.d(TAG, "Extreme aspect ratio: " + aspectRatio);
+        Log.w(TAG, "⚠️ " + message);
+        sendFeedbackIfNeeded(message);
+        return true;
+    }
+    
+    /**
+     * Apply the selected document type's priors to the scorer (detection thread only)
+     */
+    @Nullable
+    private DocumentType applyDocumentTypeIfChanged() {
+        DocumentType type = selectedDocumentType;
+        if (type == appliedDocumentType) {
+            return type;
+        }
+        appliedDocumentType = type;
+        
+        QuadScorer.Limits limits = quadScorer.limits;
+        if (type != null) {
+            limits.expectedAspect = (float) type.aspectRatio;
+            limits.aspectTolerance = type.aspectTolerance();
+            limits.minRectangularity = type.minRectangularity();
+        } else {
+            limits.expectedAspect = 0f;
+            limits.minRectangularity = 0f;
+        }
+        Log.d(TAG, "Document priors applied: " + (type != null ? type : "generic"));
+        return type;
+    }
+    
+    /**
+     * Copy the best ranked candidate of this frame into {@code out}
+     */
+    private boolean pickBestQuad(Quad out) {
+        if (quadScorer.rank(1) == 0) {
             return false;
         }
         
-        Log.d(TAG, "✅ Valid quadrilateral: area=" + area + ", aspect=" + aspectRatio);
+        int best = quadScorer.rankedIndex(0);
+        quadScorer.copyQuad(best, out.pts, 0);
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, String.format(Locale.US, "✅ Fast quadrilateral detection successful (%d candidates, score=%.3f)",
+                quadScorer.size(), quadScorer.score(best)));
         return true;
     }
     
     /**
-     * Calculate area of a quadrilateral using shoelace formula
+     * Lazily create the DNN detector; the model loads asynchronously on its own executor
      */
-    private double calculateQuadrilateralArea(Point[] corners) {
-        if (corners.length != 4) return 0;
-        
-        double area = 0;
+    @Nullable
+    private DnnEdgeDetector ensureDnnDetector() {
+        DnnEdgeDetector detector = dnnEdgeDetector;
+        if (detector == null) {
+            detector = new DnnEdgeDetector(DNN_INPUT_SIZE, DNN_INPUT_SIZE, 1);
+            detector.loadAsync(context, dnnModelAsset);
+            dnnEdgeDetector = detector;
+        }
+        if (detector.hasFailed()) {
+            return null;
+        }
+        return detector;
+    }
+    
+    /**
+     * Simple validation to check if the detected quadrilateral is reasonable
+     */
+    private boolean isValidQuadrilateral(Quad corners) {
+        // Area >= 5% of frame
+        quadValidator.reset(imageWidth, imageHeight);
+        boolean valid = quadValidator.evaluate(corners.pts, 0, basicQuadLimits, quadFeatures);
+        
+        // Aspect ratio 0.3 - 3.0 on the longer opposite sides, the size the warp outputs
+        float height = corners.maxHeight();
+        float aspect = height > 0f ? corners.maxWidth() / height : 0f;
+        valid = valid && aspect >= 0.3f && aspect <= 3.0f;
+        
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, (valid ? "✅ Valid quadrilateral: " : "Rejected quadrilateral: ")
+                + "area=" + quadFeatures[QuadScorer.F_AREA] + ", aspect=" + aspect);
+        
+        // Only quads of the selected document type count towards stability
+        DocumentType type = appliedDocumentType;
+        if (valid && type != null && !type.matchesAspect(quadFeatures[QuadScorer.F_ASPECT])) {
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Quadrilateral does not match " + type.name);
+            return false;
+        }
+        return valid;
+    }
+    
+    /**
+     * Copy corners into the shared quad buffer
+     */
+    private float[] toQuadBuffer(Point[] corners) {
         for (int i = 0; i < 4; i++) {
-            int j = (i + 1) % 4;
-            area += corners[i].x * corners[j].y;
-            area -= corners[j].x * corners[i].y;
+            quadBuffer[i * 2] = (float) corners[i].x;
+            quadBuffer[i * 2 + 1] = (float) corners[i].y;
         }
-        return Math.abs(area) / 2.0;
+        return quadBuffer;
     }
     
     
     /**
      * Simple perspective transformation without complex validation
      */
-    private Mat performSimplePerspectiveTransform(Mat originalFrame, Point[] corners) {
-        Log.d(TAG, "🔄 Performing simple perspective transform");
+    private Mat performSimplePerspectiveTransform(Mat originalFrame, Quad corners) {
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, "🔄 Performing simple perspective transform");
         
+        long warpStart = ScanTrace.begin(ScanTrace.Span.WARP);
+        Mat warped = null;
         try {
-            // Calculate output dimensions based on the detected corners
-            double width1 = distance(corners[0], corners[1]);
-            double width2 = distance(corners[2], corners[3]);
-            double height1 = distance(corners[1], corners[2]);
-            double height2 = distance(corners[3], corners[0]);
-            
-            int outputWidth = (int) Math.max(width1, width2);
-            int outputHeight = (int) Math.max(height1, height2);
-            
-            // Ensure minimum size
-            outputWidth = Math.max(outputWidth, 400);
-            outputHeight = Math.max(outputHeight, 300);
-            
-            // Define destination points (rectangle)
-            Point[] dst = new Point[4];
-            dst[0] = new Point(0, 0);                           // top-left
-            dst[1] = new Point(outputWidth - 1, 0);             // top-right
-            dst[2] = new Point(outputWidth - 1, outputHeight - 1); // bottom-right
-            dst[3] = new Point(0, outputHeight - 1);            // bottom-left
-            
-            // Convert to MatOfPoint2f
-            MatOfPoint2f srcPoints = new MatOfPoint2f(corners);
-            MatOfPoint2f dstPoints = new MatOfPoint2f(dst);
+            // Measured size in source pixels, and the DPI target of the document type
+            int measuredWidth = Math.max(1, Math.round(corners.maxWidth()));
+            int measuredHeight = Math.max(1, Math.round(corners.maxHeight()));
+            CaptureOutputPolicy.Output output = outputPolicy.resolve(measuredWidth, measuredHeight,
+                    appliedDocumentType, captureOutput);
+            
+            // Shrinking: warp at the measured size, then area-resample (warpPerspective has no INTER_AREA).
+            // Otherwise warp straight to the target size.
+            boolean areaResample = output.isDownscale();
+            int warpWidth = areaResample ? measuredWidth : output.width;
+            int warpHeight = areaResample ? measuredHeight : output.height;
+            
+            // Source and destination corners (reused 4x1 CV_32FC2 buffers)
+            if (warpSrc == null) {
+                warpSrc = new MatOfPoint2f();
+                warpSrc.alloc(4);
+                warpDst = new MatOfPoint2f();
+                warpDst.alloc(4);
+            }
+            corners.put(warpSrc);
+            // Destination corners already carry the lens orientation correction
+            Size warpSize = orientedWarpDestination(warpWidth, warpHeight, warpDstBuffer);
+            warpDst.put(0, 0, warpDstBuffer);
+            MatOfPoint2f srcPoints = warpSrc;
+            MatOfPoint2f dstPoints = warpDst;
             
             // Get perspective transform matrix
             Mat perspectiveMatrix = Imgproc.getPerspectiveTransform(srcPoints, dstPoints);
             
-            // Apply transformation
-            Mat result = new Mat();
-            Imgproc.warpPerspective(originalFrame, result, perspectiveMatrix, 
-                new Size(outputWidth, outputHeight));
+            // Apply transformation; the result is already upright
+            warped = new Mat();
+            Imgproc.warpPerspective(originalFrame, warped, perspectiveMatrix, warpSize, Imgproc.INTER_LINEAR);
             
             // Clean up
-            srcPoints.release();
-            dstPoints.release();
             perspectiveMatrix.release();
             
-            // Apply correction for inverted and upside down image
-            Mat corrected = fixImageOrientation(result);
-            result.release();
+            Mat result = warped;
+            if (areaResample) {
+                result = new Mat();
+                Imgproc.resize(warped, result, orientedWarpDestination(output.width, output.height, orientedSizeBuffer),
+                        0, 0, output.interpolation);
+                warped.release();
+            }
+            warped = null;
+            
+            // Camera frames are RGB (imageToMat). Captures are converted to BGR once, here:
+            // the thumbnail, the encoded outputs, the registry and the pipeline all use this Mat
+            Imgproc.cvtColor(result, result, Imgproc.COLOR_RGB2BGR);
             
-            Log.d(TAG, "✅ Perspective transform complete with corrections: " + outputWidth + "x" + outputHeight);
-            return corrected;
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, String.format(Locale.US, "✅ Perspective transform complete with corrections: %dx%d (measured %dx%d, scale %.2f, %s)",
+                    result.width(), result.height(), measuredWidth, measuredHeight, output.scale,
+                    areaResample ? "area" : "linear"));
+            return result;
             
         } catch (Exception e) {
             Log.e(TAG, "Error in perspective transform", e);
+            if (warped != null) warped.release();
             return null;
+        } finally {
+            ScanTrace.end(ScanTrace.Span.WARP, warpStart);
         }
     }
     
@@ -3674,6 +3330,59 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
         Log.d(TAG, "Detection count set to: " + this.numOfRectangles);
     }
     
+    /**
+     * Output resolution of captures of catalogue document types (from their size in mm)
+     */
+    public void setOutputDpi(int dpi) {
+        outputPolicy.dpi = Math.max(72, Math.min(dpi, 600));
+        Log.d(TAG, "Output DPI set to: " + outputPolicy.dpi);
+    }
+    
+    /**
+     * Capture encoding: mode "jpeg" (default), "webp" or "auto" (text pages as 1-bit PNG),
+     * and a byte budget (0 = none) that lossy formats search their quality to fit
+     */
+    public void setCaptureEncoding(String mode, long maxBytes) {
+        CaptureEncoder.Settings settings = new CaptureEncoder.Settings();
+        settings.mode = CaptureEncoder.Mode.fromName(mode);
+        settings.maxBytes = Math.max(0, maxBytes);
+        encoderSettings = settings;
+        Log.d(TAG, "Capture encoding set to: " + settings.mode + ", budget " + settings.maxBytes + " bytes");
+    }
+    
+    /**
+     * Run {@code pipeline} on every capture (null to stop); the previous pipeline is released
+     */
+    public void setCapturePipeline(@Nullable CapturePipeline pipeline) {
+        CapturePipeline previous = capturePipeline;
+        capturePipeline = pipeline;
+        if (previous != null) {
+            previous.release();
+        }
+        Log.d(TAG, "Capture pipeline set: " + (pipeline != null ? pipeline.size() + " stages" : "none"));
+    }
+
+    /**
+     * Drop and close the capture pipeline now (view going away): its workers and ML Kit
+     * clients are shut down without waiting for captures in flight
+     */
+    public void closeCapturePipeline() {
+        CapturePipeline previous = capturePipeline;
+        capturePipeline = null;
+        if (previous != null) {
+            previous.close();
+            Log.d(TAG, "Capture pipeline closed");
+        }
+    }
+
+    /**
+     * Capture output mode: OUTPUT_BASE64 (default) or OUTPUT_FILE
+     */
+    public void setCaptureOutput(String mode) {
+        this.fileOutput = OUTPUT_FILE.equalsIgnoreCase(mode);
+        Log.d(TAG, "Capture output set to: " + (fileOutput ? OUTPUT_FILE : OUTPUT_BASE64));
+    }
+    
     /**
      * Enable or disable auto-capture when document is detected
      */
@@ -3712,6 +3421,45 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     
 
     
+    /**
+     * Enable or disable the optional DNN edge detector.
+     * @param modelAsset ONNX file in assets, or null for the default model name
+     */
+    public void setDnnDetection(boolean enable, @Nullable String modelAsset) {
+        if (modelAsset != null && !modelAsset.isEmpty() && !modelAsset.equals(dnnModelAsset)) {
+            dnnModelAsset = modelAsset;
+            releaseDnnDetectorAsync();
+        }
+        this.enableDnnDetection = enable;
+        if (!enable) {
+            releaseDnnDetectorAsync();
+        }
+        Log.d(TAG, "DNN detection " + (enable ? "enabled" : "disabled") + " (model: " + dnnModelAsset + ")");
+    }
+
+    /**
+     * Drop the DNN detector on the detection thread so it is never freed mid-frame
+     */
+    private void releaseDnnDetectorAsync() {
+        Runnable release = () -> {
+            DnnEdgeDetector detector = dnnEdgeDetector;
+            dnnEdgeDetector = null;
+            if (detector != null) {
+                detector.release();
+            }
+        };
+        if (backgroundHandler != null) {
+            backgroundHandler.post(release);
+        } else {
+            release.run();
+        }
+    }
+
+    public void setGlareDetection(boolean enable) {
+        this.enableGlareDetection = enable;
+        Log.d(TAG, "Glare detection " + (enable ? "enabled" : "disabled"));
+    }
+
     /**
      * Set blur detection threshold (lower = more sensitive to blur)
      * @param threshold Laplacian variance threshold (default: 100.0)
@@ -3738,48 +3486,27 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     }
     
     /**
-     * Detect if image is blurry using Laplacian variance
-     * @param image Input image to check for blur
-     * @return true if image is blurry, false otherwise
+     * Check if the document area is blurry.
+     * Quality is scored once per frame; repeated calls for the same frame are free.
      */
-    private boolean isImageBlurry(Mat image) {
+    private boolean isImageBlurry(Mat image, Quad quad) {
         if (!enableBlurDetection || image == null || image.empty()) {
             return false;
         }
         
+        boolean cached = qualityFrameSequence == frameSequence;
         try {
-            Mat gray = new Mat();
-            Mat laplacian = new Mat();
-            MatOfDouble mean = new MatOfDouble();
-            MatOfDouble stddev = new MatOfDouble();
-            
-            // Convert to grayscale if needed
-            if (image.channels() == 3) {
-                Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
-            } else {
-                gray = image.clone();
+            double variance = scoreFrameQuality(image, quad).sharpness;
+            boolean isBlurry = variance < blurThreshold;
+            if (cached) {
+                return isBlurry;
             }
             
-            // Apply Laplacian filter to detect edges
-            Imgproc.Laplacian(gray, laplacian, CvType.CV_64F);
-            
-            // Calculate variance of Laplacian
-            Core.meanStdDev(laplacian, mean, stddev);
-            double variance = stddev.get(0, 0)[0] * stddev.get(0, 0)[0];
-            
-            // Clean up
-            gray.release();
-            laplacian.release();
-            mean.release();
-            stddev.release();
-            
-            Log.d(TAG, "Blur detection - Laplacian variance: " + variance + " (threshold: " + blurThreshold + ")");
-            
-            boolean isBlurry = variance < blurThreshold;
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Blur detection - ROI Laplacian variance: " + variance + " (threshold: " + blurThreshold + ")");
             
             if (isBlurry) {
                 blurDetectionCount++;
-                Log.d(TAG, "Blur detected! Count: " + blurDetectionCount + "/" + MAX_BLUR_COUNT);
+                if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Blur detected! Count: " + blurDetectionCount + "/" + MAX_BLUR_COUNT);
                 // No feedback message - just silently filter blurry images
             } else {
                 blurDetectionCount = 0; // Reset counter for sharp images
@@ -3794,42 +3521,39 @@ public class CameraPreview extends TextureView implements TextureView.SurfaceTex
     }
     
     /**
-     * Fix image orientation and mirroring issues
+     * Destination corners (TL, TR, BR, BL) of the capture warp for an upright
+     * {@code width x height} document, with the lens facing's orientation correction
+     * (mirror, then 90° counter-clockwise turns) composed in, so one warpPerspective
+     * produces the final image. Returns the output size.
      */
-    private Mat fixImageOrientation(Mat inputImage) {
-        if (inputImage == null || inputImage.empty()) {
-            return inputImage;
-        }
-        
-        try {
-            Log.d(TAG, "🔍 Image correction input: " + inputImage.width() + "x" + inputImage.height() + 
-                  ", lensFacing: " + lensFacing + 
-                  " (FRONT=" + CameraCharacteristics.LENS_FACING_FRONT + 
-                  ", BACK=" + CameraCharacteristics.LENS_FACING_BACK + ")");
-            
-            Mat corrected = new Mat();
-            
-            if (enableImageFlipCorrection) {
-                // Step 1: Apply horizontal flip for mirror correction
-                Log.d(TAG, "🔄 Applying horizontal flip (mirror correction)");
-                Mat flipped = new Mat();
-                Core.flip(inputImage, flipped, 1); // Horizontal flip only (1 = flip around y-axis)
-                
-                // Step 2: Apply 90-degree rotation correction for landscape documents 
-                Log.d(TAG, "🔄 Applying 90-degree rotation correction");
-                Core.rotate(flipped, corrected, Core.ROTATE_90_COUNTERCLOCKWISE);
-                flipped.release();
-            } else {
-                Log.d(TAG, "🚫 Image flip correction disabled, returning original");
-                inputImage.copyTo(corrected);
-            }
-            
-            Log.d(TAG, "✅ Image correction applied: " + corrected.width() + "x" + corrected.height());
-            return corrected;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error fixing image orientation: " + e.getMessage());
-            return inputImage; // Return original if correction fails
-        }
+    private Size orientedWarpDestination(int width, int height, float[] dst) {
+        CaptureOrientation orientation = !enableImageFlipCorrection ? CaptureOrientation.NONE
+                : lensFacing == CameraCharacteristics.LENS_FACING_FRONT ? FRONT_CAPTURE_ORIENTATION
+                : BACK_CAPTURE_ORIENTATION;
+        
+        dst[0] = 0;          dst[1] = 0;           // top-left
+        dst[2] = width - 1;  dst[3] = 0;           // top-right
+        dst[4] = width - 1;  dst[5] = height - 1;  // bottom-right
+        dst[6] = 0;          dst[7] = height - 1;  // bottom-left
+        
+        int w = width;
+        int h = height;
+        if (orientation.mirror) {
+            for (int i = 0; i < 8; i += 2) {
+                dst[i] = w - 1 - dst[i];
+            }
+        }
+        for (int turn = 0; turn < orientation.quarterTurnsCcw; turn++) {
+            // (x, y) -> (y, w - 1 - x) in the h x w rotated image
+            for (int i = 0; i < 8; i += 2) {
+                float x = dst[i];
+                dst[i] = dst[i + 1];
+                dst[i + 1] = w - 1 - x;
+            }
+            int swap = w;
+            w = h;
+            h = swap;
+        }
+        return new Size(w, h);
     }
 }
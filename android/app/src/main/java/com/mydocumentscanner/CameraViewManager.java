@@ -13,10 +13,8 @@ import com.facebook.react.uimanager.annotations.ReactProp;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import org.opencv.core.Point;
 import java.util.Map;
 import com.facebook.react.common.MapBuilder;
-import java.util.List;
 import android.util.Log;
 import android.widget.FrameLayout;
 
@@ -26,6 +24,12 @@ public class CameraViewManager extends SimpleViewManager<FrameLayout> {
     public static final int COMMAND_PAUSE_SCANNING = 1;
     public static final int COMMAND_RESUME_SCANNING = 2;
     public static final int COMMAND_SET_EXPECTED_RATIO = 3;
+    public static final int COMMAND_SET_DNN_DETECTION = 4;
+    public static final int COMMAND_SET_CAPTURE_OUTPUT = 5;
+    public static final int COMMAND_SET_OUTPUT_DPI = 6;
+    public static final int COMMAND_SET_CAPTURE_ENCODING = 7;
+    public static final int COMMAND_SET_SCANNER_EVENTS = 8;
+    public static final int COMMAND_SET_CAPTURE_PIPELINE = 9;
     public static final String EVENT_ON_FEEDBACK = "onFeedback";
     public static final String EVENT_ON_OVERLAY_UPDATE = "onOverlayUpdate";
     
@@ -40,11 +44,17 @@ public class CameraViewManager extends SimpleViewManager<FrameLayout> {
 
     @Override
     public Map<String, Integer> getCommandsMap() {
-        return MapBuilder.of(
-                "pauseScanning", COMMAND_PAUSE_SCANNING,
-                "resumeScanning", COMMAND_RESUME_SCANNING,
-                "setExpectedRatio", COMMAND_SET_EXPECTED_RATIO
-        );
+        return MapBuilder.<String, Integer>builder()
+                .put("pauseScanning", COMMAND_PAUSE_SCANNING)
+                .put("resumeScanning", COMMAND_RESUME_SCANNING)
+                .put("setExpectedRatio", COMMAND_SET_EXPECTED_RATIO)
+                .put("setDnnDetection", COMMAND_SET_DNN_DETECTION)
+                .put("setCaptureOutput", COMMAND_SET_CAPTURE_OUTPUT)
+                .put("setOutputDpi", COMMAND_SET_OUTPUT_DPI)
+                .put("setCaptureEncoding", COMMAND_SET_CAPTURE_ENCODING)
+                .put("setScannerEvents", COMMAND_SET_SCANNER_EVENTS)
+                .put("setCapturePipeline", COMMAND_SET_CAPTURE_PIPELINE)
+                .build();
     }
 
     @NonNull
@@ -127,12 +137,86 @@ public class CameraViewManager extends SimpleViewManager<FrameLayout> {
                     Log.e("CameraViewManager", "setExpectedRatio called with insufficient args. Args size: " + (args != null ? args.size() : "null"));
                 }
                 break;
+            case "setDnnDetection":
+                Log.d("CameraViewManager", "Executing setDnnDetection");
+                if (args != null && args.size() >= 1) {
+                    boolean enabled = args.getBoolean(0);
+                    String modelAsset = args.size() >= 2 && !args.isNull(1) ? args.getString(1) : null;
+                    cameraPreview.setDnnDetection(enabled, modelAsset);
+                } else {
+                    Log.e("CameraViewManager", "setDnnDetection called without args");
+                }
+                break;
+            case "setCaptureOutput":
+                Log.d("CameraViewManager", "Executing setCaptureOutput");
+                if (args != null && args.size() >= 1) {
+                    cameraPreview.setCaptureOutput(args.getString(0));
+                } else {
+                    Log.e("CameraViewManager", "setCaptureOutput called without args");
+                }
+                break;
+            case "setOutputDpi":
+                Log.d("CameraViewManager", "Executing setOutputDpi");
+                if (args != null && args.size() >= 1) {
+                    cameraPreview.setOutputDpi(args.getInt(0));
+                } else {
+                    Log.e("CameraViewManager", "setOutputDpi called without args");
+                }
+                break;
+            case "setCaptureEncoding":
+                Log.d("CameraViewManager", "Executing setCaptureEncoding");
+                if (args != null && args.size() >= 1) {
+                    long maxBytes = args.size() >= 2 && !args.isNull(1) ? (long) args.getDouble(1) : 0;
+                    cameraPreview.setCaptureEncoding(args.getString(0), maxBytes);
+                } else {
+                    Log.e("CameraViewManager", "setCaptureEncoding called without args");
+                }
+                break;
+            case "setScannerEvents":
+                Log.d("CameraViewManager", "Executing setScannerEvents");
+                if (args == null || args.size() < 1) {
+                    Log.e("CameraViewManager", "setScannerEvents called without args");
+                } else if (!(cameraPreview.getFrameListener() instanceof CombinedListener)) {
+                    Log.e("CameraViewManager", "setScannerEvents: frame listener is "
+                            + cameraPreview.getFrameListener() + ", not the view manager's");
+                } else {
+                    ((CombinedListener) cameraPreview.getFrameListener()).setScannerEvents(args.getString(0));
+                }
+                break;
+            case "setCapturePipeline":
+                Log.d("CameraViewManager", "Executing setCapturePipeline");
+                if (args == null || args.size() < 1 || args.isNull(0) || args.getArray(0).size() == 0) {
+                    cameraPreview.setCapturePipeline(null);
+                    break;
+                }
+                try {
+                    ThemedReactContext context = (ThemedReactContext) container.getContext();
+                    cameraPreview.setCapturePipeline(CapturePipeline.fromSpec(args.getArray(0),
+                            (captureId, result) -> context
+                                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                                    .emit("CapturePipelineResult", result)));
+                } catch (IllegalArgumentException e) {
+                    Log.e("CameraViewManager", "Invalid capture pipeline: " + e.getMessage());
+                }
+                break;
             default:
                 Log.w("CameraViewManager", "Unknown command: " + commandId);
                 break;
         }
     }
 
+    @Override
+    public void onDropViewInstance(@NonNull FrameLayout container) {
+        CameraPreview cameraPreview = (CameraPreview) container.getTag();
+        if (cameraPreview != null && cameraPreview.getFrameListener() instanceof CombinedListener) {
+            ((CombinedListener) cameraPreview.getFrameListener()).release();
+        }
+        if (cameraPreview != null) {
+            cameraPreview.closeCapturePipeline();
+        }
+        super.onDropViewInstance(container);
+    }
+
     @Override
     public Map<String, Object> getExportedCustomDirectEventTypeConstants() {
         return MapBuilder.<String, Object>builder()
@@ -142,31 +226,52 @@ public class CameraViewManager extends SimpleViewManager<FrameLayout> {
     }
     
     /**
-     * Combined listener that implements FrameListener with overlay support
+     * Combined listener that implements FrameListener with overlay support.
+     *
+     * Live scanning state (contours, stability count, scan region) goes out through a
+     * ScannerEventChannel as one coalesced onScannerState event per display frame. The
+     * "legacy" mode instead emits onDocumentContoursDetected / onOverlayUpdate on every
+     * call, as before. Captures, feedback and latency are always separate events.
      */
     private static class CombinedListener implements CameraPreview.FrameListener {
         private final ThemedReactContext reactContext;
+        private final ScannerEventChannel scannerEvents;
+        private volatile boolean legacyEvents = false;
         
         public CombinedListener(ThemedReactContext reactContext) {
             this.reactContext = reactContext;
+            this.scannerEvents = new ScannerEventChannel(reactContext);
+        }
+
+        /**
+         * "packed" (default): onScannerState with packed corners; "points": onScannerState
+         * with [{x, y}] corners; "legacy": separate per-frame contour and overlay events
+         */
+        void setScannerEvents(String mode) {
+            legacyEvents = "legacy".equalsIgnoreCase(mode);
+            scannerEvents.setPointMaps("points".equalsIgnoreCase(mode));
+            Log.d("CameraViewManager", "Scanner events: " + mode);
+        }
+
+        void release() {
+            scannerEvents.release();
         }
         
         @Override
-        public void onDocumentDetected(@Nullable List<Point> corners, int frameWidth, int frameHeight, @Nullable String croppedImageBase64) {
+        public void onDocumentDetected(@Nullable Quad corners, int frameWidth, int frameHeight,
+                                       @Nullable String croppedImageBase64, @Nullable String mimeType,
+                                       long captureId, @Nullable String imageId) {
             WritableMap event = Arguments.createMap();
-            if (corners != null && corners.size() == 4) {
-                WritableArray cornersArray = Arguments.createArray();
-                for (Point corner : corners) {
-                    WritableMap pointMap = Arguments.createMap();
-                    pointMap.putDouble("x", corner.x);
-                    pointMap.putDouble("y", corner.y);
-                    cornersArray.pushMap(pointMap);
-                }
-                event.putArray("corners", cornersArray);
+            event.putDouble("captureId", captureId);
+            event.putString("imageId", imageId);
+            if (corners != null) {
+                event.putArray("corners", toPackedArray(corners));
                 event.putString("croppedImage", croppedImageBase64);
+                event.putString("croppedImageMimeType", mimeType);
             } else {
                 event.putNull("corners");
                 event.putNull("croppedImage");
+                event.putNull("croppedImageMimeType");
             }
             event.putInt("frameWidth", frameWidth);
             event.putInt("frameHeight", frameHeight);
@@ -176,6 +281,48 @@ public class CameraViewManager extends SimpleViewManager<FrameLayout> {
                     .emit("DocumentDetected", event);
         }
 
+        @Override
+        public void onDocumentCaptured(Quad corners, int frameWidth, int frameHeight,
+                                       String imageUri, int imageWidth, int imageHeight, long captureId,
+                                       @Nullable String imageId) {
+            // Same event as the Base64 mode, with a file URI instead of croppedImage
+            WritableMap event = Arguments.createMap();
+            event.putDouble("captureId", captureId);
+            event.putString("imageId", imageId);
+            event.putArray("corners", toPackedArray(corners));
+            event.putString("imageUri", imageUri);
+            event.putInt("imageWidth", imageWidth);
+            event.putInt("imageHeight", imageHeight);
+            event.putInt("frameWidth", frameWidth);
+            event.putInt("frameHeight", frameHeight);
+
+            reactContext
+                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit("DocumentDetected", event);
+        }
+
+        @Override
+        public void onCaptureThumbnail(Quad corners, int frameWidth, int frameHeight,
+                                       String thumbnailBase64, String mimeType, int width, int height,
+                                       long captureId) {
+            scannerEvents.markCaptured();
+
+            // Sent before the full-size DocumentDetected event of the same captureId
+            WritableMap event = Arguments.createMap();
+            event.putDouble("captureId", captureId);
+            event.putArray("corners", toPackedArray(corners));
+            event.putString("thumbnail", thumbnailBase64);
+            event.putString("thumbnailMimeType", mimeType);
+            event.putInt("width", width);
+            event.putInt("height", height);
+            event.putInt("frameWidth", frameWidth);
+            event.putInt("frameHeight", frameHeight);
+
+            reactContext
+                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit("CaptureThumbnail", event);
+        }
+
         @Override
         public void onImageCaptured(String imagePath) {
             WritableMap event = Arguments.createMap();
@@ -197,6 +344,10 @@ public class CameraViewManager extends SimpleViewManager<FrameLayout> {
         
         @Override
         public void onOverlayUpdate(double x, double y, double width, double height) {
+            if (!legacyEvents) {
+                scannerEvents.updateRegion(x, y, width, height);
+                return;
+            }
             WritableMap event = Arguments.createMap();
             event.putDouble("x", x);
             event.putDouble("y", y);
@@ -209,42 +360,22 @@ public class CameraViewManager extends SimpleViewManager<FrameLayout> {
         }
         
         @Override
-        public void onDocumentContoursDetected(@Nullable List<Point> bestContour, 
-                @Nullable List<List<Point>> allValidContours, int frameWidth, int frameHeight) {
+        public void onDocumentContoursDetected(@Nullable Quad bestContour, int frameWidth, int frameHeight,
+                                               int detections, int required) {
             
             // Update overlay with document contours for real-time visual feedback
             updateOverlayWithContours(bestContour, frameWidth, frameHeight);
+
+            if (!legacyEvents) {
+                scannerEvents.updateDetection(bestContour, frameWidth, frameHeight, detections, required);
+                return;
+            }
             
             WritableMap event = Arguments.createMap();
             
-            // Add best contour
+            // Best contour as packed [x0, y0, x1, y1, x2, y2, x3, y3]
             if (bestContour != null) {
-                WritableArray bestContourArray = Arguments.createArray();
-                for (Point point : bestContour) {
-                    WritableMap pointMap = Arguments.createMap();
-                    pointMap.putDouble("x", point.x);
-                    pointMap.putDouble("y", point.y);
-                    bestContourArray.pushMap(pointMap);
-                }
-                event.putArray("bestContour", bestContourArray);
-            }
-            
-            // Add all valid contours (limit to 3 for performance)
-            if (allValidContours != null && !allValidContours.isEmpty()) {
-                WritableArray allContoursArray = Arguments.createArray();
-                int maxContours = Math.min(3, allValidContours.size());
-                for (int i = 0; i < maxContours; i++) {
-                    List<Point> contour = allValidContours.get(i);
-                    WritableArray contourArray = Arguments.createArray();
-                    for (Point point : contour) {
-                        WritableMap pointMap = Arguments.createMap();
-                        pointMap.putDouble("x", point.x);
-                        pointMap.putDouble("y", point.y);
-                        contourArray.pushMap(pointMap);
-                    }
-                    allContoursArray.pushArray(contourArray);
-                }
-                event.putArray("allContours", allContoursArray);
+                event.putArray("bestContour", toPackedArray(bestContour));
             }
             
             event.putInt("frameWidth", frameWidth);
@@ -256,28 +387,34 @@ public class CameraViewManager extends SimpleViewManager<FrameLayout> {
         }
 
         /**
-         * Update overlay view with detected document contours
+         * Update overlay view with detected document contours.
+         * OverlayView copies the corners synchronously, so the caller may reuse the Quad.
+         */
+        private void updateOverlayWithContours(@Nullable Quad contours, int frameWidth, int frameHeight) {
+            OverlayView overlay = currentOverlayView;
+            if (overlay == null) {
+                return;
+            }
+            try {
+                if (contours != null) {
+                    overlay.updateDocumentContours(contours.pts, frameWidth, frameHeight);
+                } else {
+                    overlay.clearDocumentContours();
+                }
+            } catch (Exception e) {
+                // Ignore overlay update errors
+            }
+        }
+
+        /**
+         * Corners packed as [x0, y0, x1, y1, x2, y2, x3, y3] (TL, TR, BR, BL)
          */
-        private void updateOverlayWithContours(@Nullable List<Point> contours, int frameWidth, int frameHeight) {
-            // Find the overlay view in the container
-            if (reactContext.getCurrentActivity() != null) {
-                reactContext.getCurrentActivity().runOnUiThread(() -> {
-                    try {
-                        // Get the container from the view manager
-                        // This will be called from the camera preview, so we need to find the overlay
-                        // We'll use a static reference approach
-                        if (currentOverlayView != null) {
-                            if (contours != null && contours.size() == 4) {
-                                currentOverlayView.updateDocumentContours(contours, frameWidth, frameHeight);
-                            } else {
-                                currentOverlayView.clearDocumentContours();
-                            }
-                        }
-                    } catch (Exception e) {
-                        // Ignore overlay update errors
-                    }
-                });
+        private static WritableArray toPackedArray(Quad quad) {
+            WritableArray array = Arguments.createArray();
+            for (int i = 0; i < Quad.SIZE; i++) {
+                array.pushDouble(quad.pts[i]);
             }
+            return array;
         }
     }
 }
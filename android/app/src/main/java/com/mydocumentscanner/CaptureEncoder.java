@@ -0,0 +1,406 @@
+package com.mydocumentscanner;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Encodes a captured document crop to a byte budget or quality target.
+ *
+ * In AUTO mode a 256px thumbnail decides whether the crop is a text page (bimodal,
+ * mostly paper, little colour) or a photo / ID card. Text pages are binarized with an
+ * adaptive threshold and written as 1-bit PNG (grayscale PNG when bilevel is off);
+ * photos go to WebP or JPEG. Lossy formats start at the target quality and, when a
+ * budget is set, binary-search the quality down to the highest one that fits.
+ *
+ * 3-channel input is encoded as given (OpenCV BGR order); 4-channel input is treated
+ * as RGBA from an Android Bitmap. Buffers are reused, so encode() is synchronized.
+ */
+public class CaptureEncoder {
+    private static final String TAG = "CaptureEncoder";
+
+    private static final int ANALYSIS_SIZE = 256;
+
+    public enum Format {
+        JPEG(".jpg", "image/jpeg"),
+        WEBP(".webp", "image/webp"),
+        PNG_BILEVEL(".png", "image/png"),
+        PNG_GRAY(".png", "image/png");
+
+        public final String extension;
+        public final String mimeType;
+
+        Format(String extension, String mimeType) {
+            this.extension = extension;
+            this.mimeType = mimeType;
+        }
+    }
+
+    public enum Mode {
+        AUTO, JPEG, WEBP;
+
+        public static Mode fromName(@Nullable String name) {
+            if (name != null) {
+                for (Mode mode : values()) {
+                    if (mode.name().equalsIgnoreCase(name)) {
+                        return mode;
+                    }
+                }
+            }
+            return JPEG;
+        }
+    }
+
+    public static class Settings {
+        public Mode mode = Mode.JPEG;
+        public long maxBytes = 0;        // 0 = no budget, encode once at quality
+        public int quality = 85;         // target / upper bound of the search
+        public int minQuality = 40;      // lower bound of the search
+        public int maxSearchSteps = 5;   // encodes after the first attempt
+        public boolean bilevel = true;   // text pages as 1-bit PNG, else grayscale PNG
+        public boolean preferWebp = true; // photo format in AUTO mode
+    }
+
+    public static class Result {
+        public byte[] bytes;
+        public Format format;
+        public int quality;              // lossy quality, 0 for PNG
+        public boolean textDominant;
+        public boolean withinBudget;
+        public int attempts;
+        public long micros;
+    }
+
+    // Text page classification on the thumbnail
+    private static final double MIN_SEPARABILITY = 0.75;  // Otsu between-class / total variance
+    private static final double MIN_PAPER_FRACTION = 0.55;
+    private static final double MAX_MEAN_CHROMA = 18.0;
+
+    private Mat small;
+    private Mat gray;
+    private Mat binary;
+    private Mat bgr;
+    private MatOfByte buffer;
+    private final int[] histogram = new int[256];
+    private byte[] pixels = new byte[0];
+
+    /**
+     * Encode {@code image} with {@code settings}. Returns null if nothing could be encoded.
+     */
+    @Nullable
+    public synchronized Result encode(Mat image, Settings settings, Result out) {
+        long start = System.nanoTime();
+        if (image == null || image.empty()) {
+            return null;
+        }
+        ensureBuffers();
+
+        Mat source = image;
+        if (image.channels() == 4) {
+            Imgproc.cvtColor(image, bgr, Imgproc.COLOR_RGBA2BGR);
+            source = bgr;
+        }
+
+        out.bytes = null;
+        out.attempts = 0;
+        out.textDominant = settings.mode == Mode.AUTO && isTextDominant(source);
+
+        boolean done = false;
+        if (out.textDominant) {
+            done = encodeText(source, settings, out);
+        }
+        if (!done) {
+            Format format = settings.mode == Mode.WEBP
+                    || (settings.mode == Mode.AUTO && settings.preferWebp) ? Format.WEBP : Format.JPEG;
+            encodeLossy(source, format, settings, out);
+        }
+
+        out.micros = (System.nanoTime() - start) / 1000;
+        if (out.bytes == null) {
+            return null;
+        }
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, String.format(Locale.US, "🗜️ Encoded %dx%d as %s q=%d: %d bytes (%s, %d attempts, %dus)",
+                image.cols(), image.rows(), out.format, out.quality, out.bytes.length,
+                out.textDominant ? "text" : "photo", out.attempts, out.micros));
+        return out;
+    }
+
+    /**
+     * Binarized (or gray) PNG; false when it misses the budget and a lossy format should be tried
+     */
+    private boolean encodeText(Mat source, Settings settings, Result out) {
+        toGray(source, gray);
+        Mat encoded = gray;
+        Format format = Format.PNG_GRAY;
+        MatOfInt params;
+        if (settings.bilevel) {
+            // Block size ~1/24 of the short side copes with uneven lighting across the page
+            int block = Math.max(15, (Math.min(gray.cols(), gray.rows()) / 24) | 1);
+            Imgproc.adaptiveThreshold(gray, binary, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                    Imgproc.THRESH_BINARY, block, 10);
+            encoded = binary;
+            format = Format.PNG_BILEVEL;
+            params = new MatOfInt(Imgcodecs.IMWRITE_PNG_BILEVEL, 1, Imgcodecs.IMWRITE_PNG_COMPRESSION, 9);
+        } else {
+            params = new MatOfInt(Imgcodecs.IMWRITE_PNG_COMPRESSION, 9);
+        }
+
+        try {
+            out.attempts++;
+            if (!Imgcodecs.imencode(".png", encoded, buffer, params)) {
+                return false;
+            }
+            long size = buffer.total();
+            if (settings.maxBytes > 0 && size > settings.maxBytes) {
+                if (ScanTrace.ENABLED) ScanTrace.log(TAG, "PNG of " + size + " bytes over budget, falling back to lossy");
+                return false;
+            }
+            out.bytes = buffer.toArray();
+            out.format = format;
+            out.quality = 0;
+            out.withinBudget = true;
+            return true;
+        } finally {
+            params.release();
+        }
+    }
+
+    /**
+     * Encode at settings.quality; with a budget, binary-search the highest quality that fits
+     */
+    private void encodeLossy(Mat source, Format format, Settings settings, Result out) {
+        byte[][] kept = new byte[2][];   // best fit, smallest miss
+        QualitySearch search = new QualitySearch();
+        boolean encoded = search.run(settings, new QualitySearch.Probe() {
+            @Override
+            public long encode(int quality) {
+                return encodeLossyOnce(source, format, quality);
+            }
+
+            @Override
+            public void keep(boolean fits) {
+                kept[fits ? 0 : 1] = buffer.toArray();
+            }
+        });
+        out.attempts += search.attempts;
+        if (!encoded) {
+            return;
+        }
+
+        out.format = format;
+        out.withinBudget = search.bestQuality > 0;
+        if (out.withinBudget) {
+            out.bytes = kept[0];
+            out.quality = search.bestQuality;
+        } else {
+            // Budget unreachable within the search: return the smallest encode
+            Log.w(TAG, "Budget of " + settings.maxBytes + " bytes not reached, smallest is "
+                    + kept[1].length + " bytes at q=" + search.smallestQuality);
+            out.bytes = kept[1];
+            out.quality = search.smallestQuality;
+        }
+    }
+
+    /**
+     * Budgeted quality search, independent of the codec: one encode at settings.quality,
+     * then at most maxSearchSteps bisection steps down to minQuality
+     */
+    static final class QualitySearch {
+        interface Probe {
+            /** Encoded size at {@code quality}, or -1 if encoding failed */
+            long encode(int quality);
+
+            /** Keep the encode just made: the best fit so far, or the smallest miss so far */
+            void keep(boolean fits);
+        }
+
+        int bestQuality = 0;       // highest quality that fit, 0 = none
+        int smallestQuality = 0;   // lowest quality that did not fit, 0 = none
+        int attempts = 0;
+
+        /**
+         * @return false if the first encode failed
+         */
+        boolean run(Settings settings, Probe probe) {
+            int high = Math.max(1, Math.min(100, settings.quality));
+            int low = Math.max(1, Math.min(high, settings.minQuality));
+
+            // First attempt at the target quality; most captures fit and stop here
+            long size = probe.encode(high);
+            attempts++;
+            if (size < 0) {
+                return false;
+            }
+            if (settings.maxBytes <= 0 || size <= settings.maxBytes) {
+                probe.keep(true);
+                bestQuality = high;
+                return true;
+            }
+            probe.keep(false);
+            smallestQuality = high;
+            high--;
+            for (int step = 0; step < settings.maxSearchSteps && low <= high; step++) {
+                int q = (low + high) >>> 1;
+                size = probe.encode(q);
+                attempts++;
+                if (size < 0) {
+                    break;
+                }
+                if (size <= settings.maxBytes) {
+                    probe.keep(true);
+                    bestQuality = q;
+                    low = q + 1;
+                } else {
+                    probe.keep(false);
+                    smallestQuality = q;
+                    high = q - 1;
+                }
+            }
+            return true;
+        }
+    }
+
+    private long encodeLossyOnce(Mat source, Format format, int quality) {
+        MatOfInt params = format == Format.WEBP
+                ? new MatOfInt(Imgcodecs.IMWRITE_WEBP_QUALITY, quality)
+                : new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+        try {
+            return Imgcodecs.imencode(format.extension, source, buffer, params) ? buffer.total() : -1;
+        } finally {
+            params.release();
+        }
+    }
+
+    /**
+     * Text page: bimodal luma (high Otsu separability), mostly paper, low colourfulness
+     */
+    private boolean isTextDominant(Mat source) {
+        double scale = (double) ANALYSIS_SIZE / Math.max(source.cols(), source.rows());
+        Imgproc.resize(source, small, new Size(), Math.min(1.0, scale), Math.min(1.0, scale), Imgproc.INTER_AREA);
+
+        double meanChroma = 0;
+        if (small.channels() == 3) {
+            meanChroma = chroma(small);
+        }
+        toGray(small, gray);
+
+        int total = gray.rows() * gray.cols();
+        if (pixels.length < total) {
+            pixels = new byte[total];
+        }
+        gray.get(0, 0, pixels);
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < total; i++) {
+            histogram[pixels[i] & 0xFF]++;
+        }
+
+        // Otsu over the histogram: best between-class variance
+        double sum = 0;
+        double sumSq = 0;
+        for (int v = 0; v < 256; v++) {
+            sum += (double) v * histogram[v];
+            sumSq += (double) v * v * histogram[v];
+        }
+        double mu = sum / total;
+        double totalVariance = sumSq / total - mu * mu;
+        if (totalVariance < 1) {
+            return false; // blank
+        }
+        double bestBetween = 0;
+        int threshold = 0;
+        double weightBelow = 0;
+        double sumBelow = 0;
+        for (int t = 0; t < 256; t++) {
+            weightBelow += histogram[t];
+            sumBelow += (double) t * histogram[t];
+            double weightAbove = total - weightBelow;
+            if (weightBelow == 0 || weightAbove == 0) {
+                continue;
+            }
+            double meanBelow = sumBelow / weightBelow;
+            double meanAbove = (sum - sumBelow) / weightAbove;
+            double between = weightBelow * weightAbove * (meanBelow - meanAbove) * (meanBelow - meanAbove)
+                    / ((double) total * total);
+            if (between > bestBetween) {
+                bestBetween = between;
+                threshold = t;
+            }
+        }
+        int paper = 0;
+        for (int v = threshold + 1; v < 256; v++) {
+            paper += histogram[v];
+        }
+
+        double separability = bestBetween / totalVariance;
+        double paperFraction = (double) paper / total;
+        boolean text = separability >= MIN_SEPARABILITY && paperFraction >= MIN_PAPER_FRACTION
+                && meanChroma <= MAX_MEAN_CHROMA;
+        if (ScanTrace.ENABLED) ScanTrace.log(TAG, String.format(Locale.US, "Content: separability=%.2f, paper=%.2f, chroma=%.1f -> %s",
+                separability, paperFraction, meanChroma, text ? "text" : "photo"));
+        return text;
+    }
+
+    /**
+     * Mean of max(B,G,R) - min(B,G,R) over a 3-channel thumbnail
+     */
+    private double chroma(Mat bgrSmall) {
+        int total = bgrSmall.rows() * bgrSmall.cols() * 3;
+        if (pixels.length < total) {
+            pixels = new byte[total];
+        }
+        bgrSmall.get(0, 0, pixels);
+        long spread = 0;
+        for (int i = 0; i < total; i += 3) {
+            int b = pixels[i] & 0xFF;
+            int g = pixels[i + 1] & 0xFF;
+            int r = pixels[i + 2] & 0xFF;
+            spread += Math.max(b, Math.max(g, r)) - Math.min(b, Math.min(g, r));
+        }
+        return (double) spread / (total / 3);
+    }
+
+    private static void toGray(Mat src, Mat dst) {
+        if (src.channels() == 3) {
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_BGR2GRAY);
+        } else if (src.channels() == 4) {
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_RGBA2GRAY);
+        } else {
+            src.copyTo(dst);
+        }
+    }
+
+    private void ensureBuffers() {
+        if (small == null) {
+            small = new Mat();
+            gray = new Mat();
+            binary = new Mat();
+            bgr = new Mat();
+            buffer = new MatOfByte();
+        }
+    }
+
+    /**
+     * Free native buffers (re-allocated if the encoder is used again)
+     */
+    public synchronized void release() {
+        if (small == null) {
+            return;
+        }
+        small.release();
+        gray.release();
+        binary.release();
+        bgr.release();
+        buffer.release();
+        small = null;
+    }
+}
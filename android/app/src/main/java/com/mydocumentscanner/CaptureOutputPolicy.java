@@ -0,0 +1,85 @@
+package com.mydocumentscanner;
+
+import androidx.annotation.Nullable;
+
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Output size and resampling of a captured document.
+ *
+ * With a catalogue document type the target size comes from its physical size at
+ * {@link #dpi}; otherwise the measured corner distances are used. The result is capped
+ * (long side, upscale factor) so encode time and file size stay bounded per capture.
+ * Shrinking uses area resampling, everything else a linear warp.
+ */
+public class CaptureOutputPolicy {
+
+    public static final int DEFAULT_DPI = 300;
+
+    private static final double MM_PER_INCH = 25.4;
+
+    public int dpi = DEFAULT_DPI;
+    public int maxLongSide = 3508;   // A4 at 300 DPI
+    public int minShortSide = 300;
+    public double maxUpscale = 1.5;  // relative to the pixels the camera actually saw
+
+    /**
+     * Resolved output of one capture
+     */
+    public static final class Output {
+        public int width;
+        public int height;
+        public double scale;        // output / measured size
+        public int interpolation;   // INTER_AREA when shrinking, INTER_LINEAR otherwise
+
+        public boolean isDownscale() {
+            return scale < 1.0;
+        }
+    }
+
+    /**
+     * @param measuredWidth  longer of the quad's top/bottom edges, in source pixels
+     * @param measuredHeight longer of the quad's left/right edges, in source pixels
+     */
+    public Output resolve(float measuredWidth, float measuredHeight, @Nullable DocumentType type, Output out) {
+        double width = Math.max(1, measuredWidth);
+        double height = Math.max(1, measuredHeight);
+        double measuredLong = Math.max(width, height);
+
+        if (type != null && type.hasPhysicalSize() && dpi > 0) {
+            // Physical long/short side onto the quad's long/short axis
+            double longPx = Math.max(type.widthMm, type.heightMm) / MM_PER_INCH * dpi;
+            double shortPx = Math.min(type.widthMm, type.heightMm) / MM_PER_INCH * dpi;
+            if (width >= height) {
+                width = longPx;
+                height = shortPx;
+            } else {
+                width = shortPx;
+                height = longPx;
+            }
+        }
+
+        double targetLong = Math.max(width, height);
+        double limit = Math.min(maxLongSide, measuredLong * maxUpscale);
+        if (targetLong > limit) {
+            double shrink = limit / targetLong;
+            width *= shrink;
+            height *= shrink;
+        }
+        double targetShort = Math.min(width, height);
+        if (targetShort < minShortSide) {
+            // Raise the short side, but maxLongSide wins for long, narrow quads
+            double grow = Math.min(minShortSide / targetShort, maxLongSide / Math.max(width, height));
+            if (grow > 1.0) {
+                width *= grow;
+                height *= grow;
+            }
+        }
+
+        out.width = (int) Math.round(width);
+        out.height = (int) Math.round(height);
+        out.scale = Math.max(out.width, out.height) / measuredLong;
+        out.interpolation = out.scale < 1.0 ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR;
+        return out;
+    }
+}
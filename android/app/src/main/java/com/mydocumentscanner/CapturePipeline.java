@@ -0,0 +1,884 @@
+package com.mydocumentscanner;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.objdetect.QRCodeDetector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Post-capture stages registered once from JS and run natively on every captured document.
+ *
+ * A spec is an array of stages, e.g.
+ * <pre>
+ *   [{ type: 'crop', margin: 0.01 },
+ *    { type: 'orientation', orientation: 'landscape' },
+ *    { type: 'enhance', filter: 'shadow_removal' },
+ *    { type: 'qr', input: 'orientation' },
+ *    { type: 'ocr', input: 'orientation' },
+ *    { type: 'face', input: 'orientation', output: 'base64' }]
+ * </pre>
+ * {@code id} defaults to the type. {@code input} names the image stage a stage reads
+ * (default: the nearest preceding crop/orientation/enhance stage, or the capture);
+ * {@code after} lists extra ordering dependencies. Stages run in dependency order on a
+ * worker pool, independent stages in parallel; a stage whose dependency failed is skipped.
+ *
+ * Image stages (crop, orientation, enhance, face) produce a Mat. With {@code output}
+ * "handle" it is registered in the ImageRegistry, with "base64" a JPEG is attached; by
+ * default images no other stage reads are registered. Each capture yields exactly one
+ * result: { captureId, status, totalMs, stages: { id: { type, status, ms, ... } } }.
+ */
+public final class CapturePipeline {
+    private static final String TAG = "CapturePipeline";
+
+    private static final int MAX_PENDING_RUNS = 2;
+    private static final int JPEG_QUALITY = 90;
+    private static final double MAX_CROP_MARGIN = 0.2;
+
+    public interface Listener {
+        void onPipelineResult(long captureId, WritableMap result);
+    }
+
+    enum StageType {
+        CROP(true), ORIENTATION(true), ENHANCE(true), QR(false), OCR(false), FACE(true);
+
+        final boolean producesImage;
+
+        StageType(boolean producesImage) {
+            this.producesImage = producesImage;
+        }
+
+        @Nullable
+        static StageType fromName(@Nullable String name) {
+            if (name != null) {
+                for (StageType type : values()) {
+                    if (type.name().equalsIgnoreCase(name)) {
+                        return type;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private enum Output { NONE, HANDLE, BASE64 }
+
+    private static final class Stage {
+        final String id;
+        final StageType type;
+        String inputId;                            // null = the capture
+        final List<String> after = new ArrayList<>();
+        Output output;                             // null = default
+
+        // Options
+        double margin = 0;
+        double[] region;                           // x, y, width, height as fractions
+        boolean landscape = true;
+        ScanEnhancer.Filter filter = ScanEnhancer.Filter.SHADOW_REMOVAL;
+
+        // Resolved graph
+        int input = -1;                            // stage index, -1 = capture
+        int[] dependencies;
+        final List<Integer> dependents = new ArrayList<>();
+        int consumers = 0;                         // stages reading this image
+
+        Stage(String id, StageType type) {
+            this.id = id;
+            this.type = type;
+        }
+    }
+
+    private final Stage[] stages;                  // topological order
+    private final int captureConsumers;
+    private final Listener listener;
+    private final ExecutorService workers;
+    private final AtomicInteger activeRuns = new AtomicInteger();
+    private volatile boolean released = false;
+
+    // Created on first use, closed on release; never recreated once closed
+    private boolean closed = false;
+    private TextRecognizer textRecognizer;
+    private FaceDetector faceDetector;
+    private ScanEnhancer enhancer;
+
+    private CapturePipeline(Stage[] stages, Listener listener) {
+        this.stages = stages;
+        this.listener = listener;
+        int fromCapture = 0;
+        for (Stage stage : stages) {
+            if (stage.input < 0) {
+                fromCapture++;
+            }
+        }
+        this.captureConsumers = fromCapture;
+        int threads = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "CapturePipeline");
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    /**
+     * Parse and validate a JS stage spec
+     *
+     * @throws IllegalArgumentException on unknown types, duplicate or unknown ids, or cycles
+     */
+    public static CapturePipeline fromSpec(ReadableArray spec, Listener listener) {
+        List<Stage> declared = new ArrayList<>();
+        Map<String, Integer> byId = new HashMap<>();
+        String previousImage = null;
+        for (int i = 0; i < spec.size(); i++) {
+            ReadableMap map = spec.getMap(i);
+            String typeName = map.hasKey("type") ? map.getString("type") : null;
+            StageType type = StageType.fromName(typeName);
+            if (type == null) {
+                throw new IllegalArgumentException("Unknown stage type: " + typeName);
+            }
+            String id = map.hasKey("id") && !map.isNull("id") ? map.getString("id") : type.name().toLowerCase(Locale.US);
+            if (byId.containsKey(id)) {
+                throw new IllegalArgumentException("Duplicate stage id: " + id);
+            }
+            Stage stage = new Stage(id, type);
+            stage.inputId = map.hasKey("input") ? (map.isNull("input") ? null : map.getString("input")) : previousImage;
+            if ("capture".equals(stage.inputId)) {
+                stage.inputId = null;
+            }
+            if (map.hasKey("after") && !map.isNull("after")) {
+                ReadableArray after = map.getArray("after");
+                for (int j = 0; j < after.size(); j++) {
+                    stage.after.add(after.getString(j));
+                }
+            }
+            if (map.hasKey("output") && !map.isNull("output")) {
+                stage.output = Output.valueOf(map.getString("output").toUpperCase(Locale.US));
+            }
+            parseOptions(stage, map);
+
+            byId.put(id, declared.size());
+            declared.add(stage);
+            if (type.producesImage && type != StageType.FACE) {
+                previousImage = id;
+            }
+        }
+        return new CapturePipeline(resolve(declared, byId), listener);
+    }
+
+    private static void parseOptions(Stage stage, ReadableMap map) {
+        switch (stage.type) {
+            case CROP:
+                if (map.hasKey("margin")) {
+                    stage.margin = Math.max(0, Math.min(MAX_CROP_MARGIN, map.getDouble("margin")));
+                }
+                if (map.hasKey("region") && !map.isNull("region")) {
+                    ReadableMap region = map.getMap("region");
+                    stage.region = new double[]{region.getDouble("x"), region.getDouble("y"),
+                            region.getDouble("width"), region.getDouble("height")};
+                }
+                break;
+            case ORIENTATION:
+                if (map.hasKey("orientation")) {
+                    stage.landscape = !"portrait".equalsIgnoreCase(map.getString("orientation"));
+                }
+                break;
+            case ENHANCE:
+                if (map.hasKey("filter")) {
+                    ScanEnhancer.Filter filter = ScanEnhancer.Filter.fromName(map.getString("filter"));
+                    if (filter == null) {
+                        throw new IllegalArgumentException("Unknown enhance filter: " + map.getString("filter"));
+                    }
+                    stage.filter = filter;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Resolve ids to indices and sort topologically (Kahn, stable in declaration order)
+     */
+    private static Stage[] resolve(List<Stage> declared, Map<String, Integer> byId) {
+        int n = declared.size();
+        List<List<Integer>> edges = new ArrayList<>();
+        int[] inDegree = new int[n];
+        for (int i = 0; i < n; i++) {
+            edges.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            Stage stage = declared.get(i);
+            List<String> deps = new ArrayList<>(stage.after);
+            if (stage.inputId != null) {
+                Integer input = byId.get(stage.inputId);
+                if (input == null || !declared.get(input).type.producesImage) {
+                    throw new IllegalArgumentException("Stage " + stage.id + " reads " + stage.inputId
+                            + ", which is not an image stage");
+                }
+                deps.add(stage.inputId);
+            }
+            for (String dep : deps) {
+                Integer from = byId.get(dep);
+                if (from == null) {
+                    throw new IllegalArgumentException("Stage " + stage.id + " depends on unknown stage " + dep);
+                }
+                if (!edges.get(from).contains(i)) {
+                    edges.get(from).add(i);
+                    inDegree[i]++;
+                }
+            }
+        }
+
+        int[] order = new int[n];
+        int[] position = new int[n];
+        ArrayDeque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            if (inDegree[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int count = 0;
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            position[i] = count;
+            order[count++] = i;
+            for (int next : edges.get(i)) {
+                if (--inDegree[next] == 0) {
+                    ready.add(next);
+                }
+            }
+        }
+        if (count < n) {
+            throw new IllegalArgumentException("Capture pipeline has a dependency cycle");
+        }
+
+        Stage[] sorted = new Stage[n];
+        for (int k = 0; k < n; k++) {
+            sorted[k] = declared.get(order[k]);
+        }
+        for (int k = 0; k < n; k++) {
+            Stage stage = sorted[k];
+            if (stage.inputId != null) {
+                stage.input = position[byId.get(stage.inputId)];
+                sorted[stage.input].consumers++;
+            }
+        }
+        for (int from = 0; from < n; from++) {
+            for (int to : edges.get(from)) {
+                sorted[position[from]].dependents.add(position[to]);
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            List<Integer> deps = new ArrayList<>();
+            for (int from = 0; from < n; from++) {
+                if (sorted[from].dependents.contains(k)) {
+                    deps.add(from);
+                }
+            }
+            sorted[k].dependencies = new int[deps.size()];
+            for (int d = 0; d < deps.size(); d++) {
+                sorted[k].dependencies[d] = deps.get(d);
+            }
+        }
+        return sorted;
+    }
+
+    public int size() {
+        return stages.length;
+    }
+
+    /**
+     * Stage ids in run (topological) order
+     */
+    String[] stageIds() {
+        String[] ids = new String[stages.length];
+        for (int k = 0; k < stages.length; k++) {
+            ids[k] = stages[k].id;
+        }
+        return ids;
+    }
+
+    /**
+     * Run all stages on {@code capture} (8-bit BGR; other types are refused) and report once to the listener.
+     * Takes ownership of {@code capture}. Returns false, after reporting a "busy" result,
+     * when earlier captures are still being processed.
+     */
+    public boolean run(Mat capture, long captureId) {
+        if (released) {
+            capture.release();
+            return false;
+        }
+        if (capture.type() != CvType.CV_8UC3) {
+            // Stages hand it to imencode, ScanEnhancer and ImageRegistry.toBitmap, which take BGR
+            Log.e(TAG, "Capture #" + captureId + " is not 8-bit BGR: " + CvType.typeToString(capture.type()));
+            capture.release();
+            return false;
+        }
+        if (activeRuns.incrementAndGet() > MAX_PENDING_RUNS) {
+            activeRuns.decrementAndGet();
+            capture.release();
+            Log.w(TAG, "⚠️ Pipeline busy, skipping capture #" + captureId);
+            WritableMap result = Arguments.createMap();
+            result.putDouble("captureId", captureId);
+            result.putString("status", "busy");
+            listener.onPipelineResult(captureId, result);
+            return false;
+        }
+        new Run(capture, captureId).start();
+        return true;
+    }
+
+    /**
+     * Stop accepting captures; running captures finish, then the workers and ML Kit clients are shut down
+     */
+    public void release() {
+        released = true;
+        if (activeRuns.get() == 0) {
+            shutdown();
+        }
+    }
+
+    /**
+     * Stop now, e.g. when the camera view is dropped: queued stages fail with "Pipeline
+     * released", running ones fail or finish without their clients. The workers and ML Kit
+     * clients are shut down before this returns.
+     */
+    public void close() {
+        released = true;
+        for (Runnable queued : workers.shutdownNow()) {
+            if (queued instanceof StageTask) {
+                ((StageTask) queued).abandon();
+            }
+        }
+        shutdown();
+    }
+
+    private synchronized void shutdown() {
+        closed = true;
+        workers.shutdown();
+        if (textRecognizer != null) {
+            textRecognizer.close();
+            textRecognizer = null;
+        }
+        if (faceDetector != null) {
+            faceDetector.close();
+            faceDetector = null;
+        }
+        if (enhancer != null) {
+            enhancer.shutdown();
+            enhancer = null;
+        }
+    }
+
+    private synchronized TextRecognizer textRecognizer() {
+        checkOpen();
+        if (textRecognizer == null) {
+            textRecognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+        }
+        return textRecognizer;
+    }
+
+    private synchronized FaceDetector faceDetector() {
+        checkOpen();
+        if (faceDetector == null) {
+            faceDetector = FaceDetection.getClient(new FaceDetectorOptions.Builder()
+                    .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
+                    .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
+                    .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
+                    .build());
+        }
+        return faceDetector;
+    }
+
+    private synchronized ScanEnhancer enhancer() {
+        checkOpen();
+        if (enhancer == null) {
+            enhancer = new ScanEnhancer();
+        }
+        return enhancer;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pipeline released");
+        }
+    }
+
+    /**
+     * A stage of one run on the worker pool; failed in place if the pool is closed before it starts
+     */
+    private static final class StageTask implements Runnable {
+        private final Run run;
+        private final int index;
+
+        StageTask(Run run, int index) {
+            this.run = run;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            run.execute(index);
+        }
+
+        void abandon() {
+            run.complete(index, null, error(run.stage(index), "Pipeline released"), true);
+        }
+    }
+
+    /**
+     * State of one capture going through the graph. Guarded by {@code this}.
+     */
+    private final class Run {
+        private final long captureId;
+        private final long start = System.nanoTime();
+        private Mat capture;
+        private int captureReaders;
+        private final Mat[] images = new Mat[stages.length];
+        private final int[] readers = new int[stages.length];
+        private final int[] waiting = new int[stages.length];
+        private final boolean[] failed = new boolean[stages.length];
+        private final WritableMap[] results = new WritableMap[stages.length];
+        private int finished = 0;
+
+        Run(Mat capture, long captureId) {
+            this.capture = capture;
+            this.captureId = captureId;
+            this.captureReaders = captureConsumers;
+            for (int i = 0; i < stages.length; i++) {
+                readers[i] = stages[i].consumers;
+                waiting[i] = stages[i].dependencies.length;
+            }
+        }
+
+        void start() {
+            List<Integer> ready = new ArrayList<>();
+            synchronized (this) {
+                if (captureReaders == 0) {
+                    releaseCapture();
+                }
+                for (int i = 0; i < stages.length; i++) {
+                    if (waiting[i] == 0) {
+                        ready.add(i);
+                    }
+                }
+            }
+            if (stages.length == 0) {
+                finish();
+                return;
+            }
+            submitAll(ready);
+        }
+
+        private void submitAll(List<Integer> ready) {
+            for (int i : ready) {
+                try {
+                    workers.execute(new StageTask(this, i));
+                } catch (Exception e) {
+                    // Pool already shut down; fail the stage so the run still completes
+                    complete(i, null, error(stages[i], "Pipeline released"), true);
+                }
+            }
+        }
+
+        Stage stage(int index) {
+            return stages[index];
+        }
+
+        void execute(int index) {
+            Stage stage = stages[index];
+            Mat input;
+            synchronized (this) {
+                input = stage.input < 0 ? capture : images[stage.input];
+            }
+            long stageStart = System.nanoTime();
+            WritableMap result = Arguments.createMap();
+            AtomicReference<Mat> output = new AtomicReference<>();
+            boolean ok = false;
+            try {
+                runStage(stage, input, result, output);
+                ok = true;
+            } catch (Exception e) {
+                Log.e(TAG, "Stage " + stage.id + " failed on capture #" + captureId, e);
+                result = error(stage, e.getMessage());
+                if (output.get() != null) {
+                    output.get().release();
+                    output.set(null);
+                }
+            }
+            result.putString("type", stage.type.name().toLowerCase(Locale.US));
+            result.putDouble("ms", (System.nanoTime() - stageStart) / 1e6);
+            if (ok) {
+                result.putString("status", "ok");
+            }
+            complete(index, output.get(), result, !ok);
+        }
+
+        /**
+         * Record a finished stage, free inputs nobody reads any more and schedule dependents
+         */
+        void complete(int index, @Nullable Mat output, WritableMap result, boolean stageFailed) {
+            Stage stage = stages[index];
+            boolean registered = output != null && attachImage(stage, output, result);
+            List<Integer> ready = new ArrayList<>();
+            boolean done;
+            synchronized (this) {
+                results[index] = result;
+                failed[index] = stageFailed || (stage.type.producesImage && output == null && stage.consumers > 0);
+                if (output != null && !registered) {
+                    if (readers[index] > 0) {
+                        images[index] = output;
+                    } else {
+                        output.release();
+                    }
+                }
+                releaseInputOf(stage);
+                finished++;
+                scheduleDependents(index, ready);
+                done = finished == stages.length;
+            }
+            submitAll(ready);
+            if (done) {
+                finish();
+            }
+        }
+
+        /**
+         * Caller holds the lock. Skipped stages complete inline and cascade.
+         */
+        private void scheduleDependents(int index, List<Integer> ready) {
+            for (int next : stages[index].dependents) {
+                if (--waiting[next] > 0) {
+                    continue;
+                }
+                boolean blocked = false;
+                for (int dep : stages[next].dependencies) {
+                    blocked |= failed[dep];
+                }
+                if (!blocked) {
+                    ready.add(next);
+                    continue;
+                }
+                WritableMap skipped = Arguments.createMap();
+                skipped.putString("type", stages[next].type.name().toLowerCase(Locale.US));
+                skipped.putString("status", "skipped");
+                results[next] = skipped;
+                failed[next] = true;
+                releaseInputOf(stages[next]);
+                finished++;
+                scheduleDependents(next, ready);
+            }
+        }
+
+        private void releaseInputOf(Stage stage) {
+            if (stage.input < 0) {
+                if (--captureReaders == 0) {
+                    releaseCapture();
+                }
+            } else if (images[stage.input] != null && --readers[stage.input] == 0) {
+                images[stage.input].release();
+                images[stage.input] = null;
+            }
+        }
+
+        private void releaseCapture() {
+            if (capture != null) {
+                capture.release();
+                capture = null;
+            }
+        }
+
+        private void finish() {
+            int ok = 0;
+            WritableMap stageResults = Arguments.createMap();
+            for (int i = 0; i < stages.length; i++) {
+                stageResults.putMap(stages[i].id, results[i]);
+                ok += failed[i] ? 0 : 1;
+            }
+            double totalMs = (System.nanoTime() - start) / 1e6;
+            WritableMap result = Arguments.createMap();
+            result.putDouble("captureId", captureId);
+            result.putString("status", ok == stages.length ? "ok" : "partial");
+            result.putDouble("totalMs", totalMs);
+            result.putMap("stages", stageResults);
+            Log.d(TAG, String.format(Locale.US, "🧩 Capture #%d: %d/%d stages ok in %.1fms",
+                    captureId, ok, stages.length, totalMs));
+            try {
+                listener.onPipelineResult(captureId, result);
+            } finally {
+                if (activeRuns.decrementAndGet() == 0 && released) {
+                    shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Explicit output, else a handle for images no other stage reads
+     */
+    private static Output outputOf(Stage stage) {
+        if (stage.output != null) {
+            return stage.output;
+        }
+        return stage.consumers == 0 ? Output.HANDLE : Output.NONE;
+    }
+
+    /**
+     * Add width/height and the requested output to the stage result. Returns true when
+     * {@code image} itself went to the ImageRegistry (no stage reads it); with readers the
+     * registry gets a copy, since it may evict its entry while they run.
+     */
+    private static boolean attachImage(Stage stage, Mat image, WritableMap result) {
+        result.putInt("width", image.cols());
+        result.putInt("height", image.rows());
+        switch (outputOf(stage)) {
+            case HANDLE: {
+                Mat owned = stage.consumers > 0 ? image.clone() : image;
+                String imageId = ImageRegistry.getInstance().put(owned);
+                if (imageId == null && owned != image) {
+                    owned.release();
+                }
+                result.putString("imageId", imageId);
+                return imageId != null && owned == image;
+            }
+            case BASE64: {
+                MatOfByte buffer = new MatOfByte();
+                MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
+                try {
+                    if (Imgcodecs.imencode(".jpg", image, buffer, params)) {
+                        result.putString("image", Base64.encodeToString(buffer.toArray(), Base64.NO_WRAP));
+                        result.putString("mimeType", "image/jpeg");
+                    }
+                } finally {
+                    buffer.release();
+                    params.release();
+                }
+                break;
+            }
+            default:
+                break;
+        }
+        return false;
+    }
+
+    private static WritableMap error(Stage stage, @Nullable String message) {
+        WritableMap result = Arguments.createMap();
+        result.putString("type", stage.type.name().toLowerCase(Locale.US));
+        result.putString("status", "error");
+        result.putString("error", message != null ? message : "unknown error");
+        return result;
+    }
+
+    private void runStage(Stage stage, Mat input, WritableMap result, AtomicReference<Mat> output) throws Exception {
+        switch (stage.type) {
+            case CROP:
+                output.set(crop(stage, input));
+                break;
+            case ORIENTATION: {
+                boolean rotate = stage.landscape ? input.rows() > input.cols() : input.cols() > input.rows();
+                Mat oriented = new Mat();
+                if (rotate) {
+                    Core.rotate(input, oriented, Core.ROTATE_90_CLOCKWISE);
+                } else {
+                    input.copyTo(oriented);
+                }
+                result.putInt("rotation", rotate ? 90 : 0);
+                output.set(oriented);
+                break;
+            }
+            case ENHANCE:
+                output.set(enhance(stage, input));
+                break;
+            case QR:
+                decodeQr(input, result);
+                break;
+            case OCR: {
+                Bitmap bitmap = ImageRegistry.toBitmap(input);
+                try {
+                    Text text = Tasks.await(textRecognizer().process(InputImage.fromBitmap(bitmap, 0)));
+                    result.merge(TextRecognitionModule.toResultMap(text));
+                } finally {
+                    bitmap.recycle();
+                }
+                break;
+            }
+            case FACE:
+                output.set(detectFace(input, result));
+                break;
+        }
+    }
+
+    private static Mat crop(Stage stage, Mat input) {
+        int x = 0;
+        int y = 0;
+        int w = input.cols();
+        int h = input.rows();
+        if (stage.region != null) {
+            x = (int) Math.round(stage.region[0] * w);
+            y = (int) Math.round(stage.region[1] * h);
+            w = (int) Math.round(stage.region[2] * w);
+            h = (int) Math.round(stage.region[3] * h);
+        }
+        int mx = (int) Math.round(stage.margin * w);
+        int my = (int) Math.round(stage.margin * h);
+        x = Math.max(0, Math.min(input.cols() - 1, x + mx));
+        y = Math.max(0, Math.min(input.rows() - 1, y + my));
+        w = Math.max(1, Math.min(input.cols() - x, w - 2 * mx));
+        h = Math.max(1, Math.min(input.rows() - y, h - 2 * my));
+        Mat roi = input.submat(y, y + h, x, x + w);
+        try {
+            return roi.clone();
+        } finally {
+            roi.release();
+        }
+    }
+
+    /**
+     * ScanEnhancer is asynchronous; the stage blocks its worker until the tiles are done
+     */
+    private Mat enhance(Stage stage, Mat input) throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Mat> enhanced = new AtomicReference<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean handedOff = new AtomicBoolean(false);
+        enhancer().enhance(input.clone(), stage.filter, new ScanEnhancer.Callback() {
+            @Override
+            public void onComplete(Mat result, long micros) {
+                enhanced.set(result);
+                if (!handedOff.compareAndSet(false, true)) {
+                    result.release();   // the stage gave up waiting
+                }
+                latch.countDown();
+            }
+
+            @Override
+            public void onCancelled() {
+                failure.set(new IllegalStateException("Enhancement cancelled"));
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                failure.set(e);
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            // Closed mid-stage: whichever side comes second frees the result
+            if (!handedOff.compareAndSet(false, true) && enhanced.get() != null) {
+                enhanced.get().release();
+            }
+            throw e;
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return enhanced.get();
+    }
+
+    private static void decodeQr(Mat input, WritableMap result) {
+        QRCodeDetector detector = new QRCodeDetector();
+        Mat points = new Mat();
+        try {
+            String text = detector.detectAndDecode(input, points);
+            boolean found = text != null && !text.isEmpty();
+            result.putBoolean("found", found);
+            result.putString("text", found ? text : null);
+            if (found && points.total() == 4) {
+                float[] packed = new float[8];
+                Mat flat = points.reshape(1, 1);
+                flat.get(0, 0, packed);
+                flat.release();
+                WritableArray corners = Arguments.createArray();
+                for (float v : packed) {
+                    corners.pushDouble(v);
+                }
+                result.putArray("corners", corners);
+            }
+        } finally {
+            points.release();
+        }
+    }
+
+    /**
+     * First face's probabilities and bounding box; the face crop is the stage image
+     */
+    @Nullable
+    private Mat detectFace(Mat input, WritableMap result) throws Exception {
+        Bitmap bitmap = ImageRegistry.toBitmap(input);
+        List<Face> faces;
+        try {
+            faces = Tasks.await(faceDetector().process(InputImage.fromBitmap(bitmap, 0)));
+        } finally {
+            bitmap.recycle();
+        }
+        if (faces == null || faces.isEmpty()) {
+            result.putBoolean("found", false);
+            return null;
+        }
+        Face face = faces.get(0);
+        Rect bounds = face.getBoundingBox();
+        int left = Math.max(0, bounds.left);
+        int top = Math.max(0, bounds.top);
+        int right = Math.min(input.cols(), bounds.right);
+        int bottom = Math.min(input.rows(), bounds.bottom);
+        result.putBoolean("found", true);
+        result.putDouble("smileProb", face.getSmilingProbability() != null ? face.getSmilingProbability() : 0);
+        result.putDouble("rightEyeOpenProb", face.getRightEyeOpenProbability() != null ? face.getRightEyeOpenProbability() : 0);
+        result.putDouble("leftEyeOpenProb", face.getLeftEyeOpenProbability() != null ? face.getLeftEyeOpenProbability() : 0);
+        WritableMap box = Arguments.createMap();
+        box.putInt("left", left);
+        box.putInt("top", top);
+        box.putInt("right", right);
+        box.putInt("bottom", bottom);
+        result.putMap("boundingBox", box);
+        if (right <= left || bottom <= top) {
+            return null;
+        }
+        Mat roi = input.submat(top, bottom, left, right);
+        try {
+            return roi.clone();
+        } finally {
+            roi.release();
+        }
+    }
+}
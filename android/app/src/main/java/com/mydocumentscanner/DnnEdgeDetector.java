@@ -0,0 +1,311 @@
+package com.mydocumentscanner;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Optional document detector backed by a small edge / corner-heatmap network.
+ *
+ * The ONNX model is loaded once from assets through org.opencv.dnn and runs on
+ * the CPU backend on a single dedicated executor, so the Net is only ever touched
+ * by one thread. detect() never waits for it: it starts inference on the current
+ * frame when the executor is idle, and feeds the shared QuadScorer with the latest
+ * finished result (each result once, while its frame is at most MAX_RESULT_AGE_MS old).
+ * The output heatmap is thresholded and contoured into candidates on the executor.
+ *
+ * Model contract: input 1xCxHxW float (C = 1 gray or 3 colour, 0..1),
+ * output 1x1xH'xW' edge/document probability.
+ */
+public class DnnEdgeDetector {
+    private static final String TAG = "DnnEdgeDetector";
+
+    public static final String DEFAULT_MODEL_ASSET = "document_edges.onnx";
+
+    private static final long MAX_RESULT_AGE_MS = 250;
+    private static final double HEATMAP_THRESHOLD = 0.5;
+    private static final int MAX_CANDIDATES = 8;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "DnnEdgeDetector");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+    private final AtomicBoolean busy = new AtomicBoolean(false);
+
+    private final int inputWidth;
+    private final int inputHeight;
+    private final int inputChannels;
+
+    private volatile Net net = null;
+    private volatile boolean loadFailed = false;
+
+    // Reused between calls (resized is written by the caller thread while no inference runs,
+    // the rest by the executor)
+    private final Mat resized = new Mat();
+    private final Mat gray = new Mat();
+    private final Mat floatInput = new Mat();
+    private final List<Mat> planes = new ArrayList<>();
+    private Mat blob = null;
+    private Mat[] blobPlanes = null;
+    private final Mat binary = new Mat();
+    private final Mat hierarchy = new Mat();
+    private final MatOfPoint2f contour2f = new MatOfPoint2f();
+    private final MatOfPoint2f approx2f = new MatOfPoint2f();
+    private final float[] quadBuffer = new float[8];
+
+    // Candidates of the running inference, normalized to 0..1 (executor only)
+    private final float[] candidates = new float[MAX_CANDIDATES * 8];
+    private int candidateCount = 0;
+
+    // Latest finished result, handed over under this lock; consumed once by detect()
+    private final float[] finished = new float[MAX_CANDIDATES * 8];
+    private int finishedCount = 0;
+    private long finishedFrameNanos = 0;
+    private final float[] scaled = new float[8]; // caller thread
+
+    public DnnEdgeDetector(int inputWidth, int inputHeight, int inputChannels) {
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.inputChannels = inputChannels == 3 ? 3 : 1;
+    }
+
+    /**
+     * Load the model from assets on the detector executor. Safe to call more than once.
+     */
+    public void loadAsync(Context context, String assetName) {
+        executor.execute(() -> {
+            if (net != null) {
+                return;
+            }
+            MatOfByte buffer = null;
+            try (InputStream in = context.getAssets().open(assetName)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] chunk = new byte[16 * 1024];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    out.write(chunk, 0, read);
+                }
+                buffer = new MatOfByte(out.toByteArray());
+                Net loaded = Dnn.readNetFromONNX(buffer);
+                if (loaded.empty()) {
+                    throw new IllegalStateException("Empty network");
+                }
+                loaded.setPreferableBackend(Dnn.DNN_BACKEND_OPENCV);
+                loaded.setPreferableTarget(Dnn.DNN_TARGET_CPU);
+                net = loaded;
+                loadFailed = false;
+                Log.d(TAG, "✅ Loaded DNN edge model: " + assetName);
+            } catch (Exception e) {
+                loadFailed = true;
+                Log.e(TAG, "❌ Failed to load DNN edge model " + assetName + ": " + e.getMessage());
+            } finally {
+                if (buffer != null) buffer.release();
+            }
+        });
+    }
+
+    public boolean isReady() {
+        return net != null;
+    }
+
+    public boolean hasFailed() {
+        return loadFailed;
+    }
+
+    /**
+     * Start inference on {@code frame} if the previous one has finished, and add the quad
+     * candidates of the latest finished inference to {@code scorer} (in frame coordinates).
+     * The scorer must already be reset for this frame. Never blocks on the network.
+     *
+     * @return false if the model is not ready, no fresh result is available or it holds
+     *         no accepted quad; the caller should fall back
+     */
+    public boolean detect(Mat frame, QuadScorer scorer) {
+        if (net == null) {
+            return false;
+        }
+
+        // 1. Hand this frame to an idle executor; its own buffer, so the caller may release the frame
+        if (busy.compareAndSet(false, true)) {
+            Imgproc.resize(frame, resized, new Size(inputWidth, inputHeight), 0, 0, Imgproc.INTER_AREA);
+            final long frameNanos = System.nanoTime();
+            try {
+                executor.execute(() -> {
+                    try {
+                        runInference(frameNanos);
+                    } finally {
+                        busy.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                busy.set(false);
+            }
+        }
+
+        // 2. Consume the latest finished result while it still describes the scene
+        int added = 0;
+        synchronized (this) {
+            if (finishedCount > 0 && System.nanoTime() - finishedFrameNanos <= MAX_RESULT_AGE_MS * 1_000_000L) {
+                float width = frame.width();
+                float height = frame.height();
+                for (int i = 0; i < finishedCount; i++) {
+                    int base = i * 8;
+                    for (int k = 0; k < 8; k += 2) {
+                        scaled[k] = finished[base + k] * width;
+                        scaled[k + 1] = finished[base + k + 1] * height;
+                    }
+                    if (scorer.add(scaled, 0) >= 0) {
+                        added++;
+                    }
+                }
+            }
+            finishedCount = 0;
+        }
+        return added > 0;
+    }
+
+    private void runInference(long frameNanos) {
+        Mat output = null;
+        candidateCount = 0;
+        List<MatOfPoint> contours = new ArrayList<>();
+        try {
+            // 1. Build the NCHW blob in place (no per-frame blob allocation)
+            ensureBlob();
+            if (inputChannels == 1) {
+                // Camera frames are RGB (CameraPreview.imageToMat)
+                Imgproc.cvtColor(resized, gray, Imgproc.COLOR_RGB2GRAY);
+                gray.convertTo(blobPlanes[0], CvType.CV_32F, 1.0 / 255.0);
+            } else {
+                resized.convertTo(floatInput, CvType.CV_32FC3, 1.0 / 255.0);
+                Core.split(floatInput, planes);
+                for (int c = 0; c < 3; c++) {
+                    planes.get(c).copyTo(blobPlanes[c]);
+                }
+            }
+
+            // 2. Inference
+            long inferStart = ScanTrace.begin(ScanTrace.Span.DNN);
+            try {
+                net.setInput(blob);
+                output = net.forward();
+            } finally {
+                ScanTrace.end(ScanTrace.Span.DNN, inferStart);
+            }
+
+            int outH = output.dims() == 4 ? output.size(2) : output.rows();
+            int outW = output.dims() == 4 ? output.size(3) : output.cols();
+            Mat heatmap = output.reshape(1, new int[] {outH, outW});
+
+            // 3. Heatmap -> binary mask -> contours
+            Imgproc.threshold(heatmap, binary, HEATMAP_THRESHOLD, 255, Imgproc.THRESH_BINARY);
+            binary.convertTo(binary, CvType.CV_8U);
+            Imgproc.findContours(binary, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+            // 4. Quadrilateral candidates, normalized so any frame size can use them
+            float scaleX = 1f / outW;
+            float scaleY = 1f / outH;
+            double minArea = outW * outH * 0.05;
+            for (MatOfPoint contour : contours) {
+                if (candidateCount == MAX_CANDIDATES) {
+                    break;
+                }
+                if (Imgproc.contourArea(contour) < minArea) {
+                    continue;
+                }
+                contour.convertTo(contour2f, CvType.CV_32FC2);
+                double epsilon = 0.04 * Imgproc.arcLength(contour2f, true);
+                Imgproc.approxPolyDP(contour2f, approx2f, epsilon, true);
+                if (approx2f.rows() != 4) {
+                    continue;
+                }
+                approx2f.get(0, 0, quadBuffer);
+                int base = candidateCount * 8;
+                for (int i = 0; i < 8; i += 2) {
+                    candidates[base + i] = quadBuffer[i] * scaleX;
+                    candidates[base + i + 1] = quadBuffer[i + 1] * scaleY;
+                }
+                candidateCount++;
+            }
+            heatmap.release();
+
+            // 5. Publish, replacing any result detect() has not consumed yet
+            synchronized (this) {
+                System.arraycopy(candidates, 0, finished, 0, candidateCount * 8);
+                finishedCount = candidateCount;
+                finishedFrameNanos = frameNanos;
+            }
+            if (ScanTrace.ENABLED) ScanTrace.log(TAG, candidateCount + " DNN candidates, "
+                    + (System.nanoTime() - frameNanos) / 1000 + "us after the frame");
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error in DNN edge detection", e);
+        } finally {
+            if (output != null) output.release();
+            for (MatOfPoint contour : contours) {
+                contour.release();
+            }
+        }
+    }
+
+    /**
+     * Allocate the 1xCxHxW blob once, with one 2D header per channel plane
+     */
+    private void ensureBlob() {
+        if (blob != null) {
+            return;
+        }
+        blob = new Mat(new int[] {1, inputChannels, inputHeight, inputWidth}, CvType.CV_32F);
+        Mat stacked = blob.reshape(1, new int[] {inputChannels * inputHeight, inputWidth});
+        blobPlanes = new Mat[inputChannels];
+        for (int c = 0; c < inputChannels; c++) {
+            blobPlanes[c] = stacked.submat(c * inputHeight, (c + 1) * inputHeight, 0, inputWidth);
+        }
+    }
+
+    /**
+     * Stop the executor and free native buffers
+     */
+    public void release() {
+        executor.execute(() -> {
+            net = null;
+            if (blobPlanes != null) {
+                for (Mat plane : blobPlanes) plane.release();
+                blobPlanes = null;
+            }
+            if (blob != null) {
+                blob.release();
+                blob = null;
+            }
+            for (Mat plane : planes) plane.release();
+            planes.clear();
+            gray.release();
+            floatInput.release();
+            binary.release();
+            hierarchy.release();
+            contour2f.release();
+            approx2f.release();
+            resized.release();
+        });
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,152 @@
+package com.mydocumentscanner;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Native catalogue of supported document types and their geometric priors.
+ * Mirrors DOCUMENT_TYPES in utils/types.ts (ids and display names must match).
+ */
+public final class DocumentType {
+    private static final String TAG = "DocumentType";
+
+    // ID-1 / ID-3 cards (ISO/IEC 7810) have 3.18mm rounded corners
+    private static final double ISO_CARD_CORNER_RADIUS_MM = 3.18;
+
+    public static final DocumentType AADHAAR = new DocumentType(
+            "aadhaar", "Aadhaar Card", 85.6, 53.98, ISO_CARD_CORNER_RADIUS_MM, 0.20, 1.40);
+    public static final DocumentType PAN = new DocumentType(
+            "pan", "PAN Card", 85.6, 53.98, ISO_CARD_CORNER_RADIUS_MM, 0.20, 1.40);
+    public static final DocumentType PASSPORT = new DocumentType(
+            "passport", "Passport", 125, 88, ISO_CARD_CORNER_RADIUS_MM, 0.20, 1.40);
+    public static final DocumentType A4 = new DocumentType(
+            "a4", "A4 Document", 210, 297, 0, 0.25, 1.50);
+    public static final DocumentType VISITING_CARD = new DocumentType(
+            "visitCard", "Visiting card Document", 89, 51, 0, 0.20, 1.40);
+    public static final DocumentType USD = new DocumentType(
+            "usd", "US Dollar", 156, 66.3, 0, 0.20, 1.40);
+
+    private static final List<DocumentType> ALL = Collections.unmodifiableList(Arrays.asList(
+            AADHAAR, PAN, PASSPORT, A4, VISITING_CARD, USD));
+
+    // Relative tolerance of the quad aspect ratio (after perspective) against the nominal one
+    private static final double ASPECT_TOLERANCE = 0.25;
+    // Axis-aligned bounding boxes of tilted documents drift towards 1:1
+    private static final double BOUNDING_BOX_RATIO_FACTOR = 1.6;
+
+    public final String id;
+    public final String name;
+    public final double widthMm;
+    public final double heightMm;
+    public final double aspectRatio;
+    public final double cornerRadiusMm;
+    // Expected document area as a fraction of the scan region area
+    public final double minRegionFill;
+    public final double maxRegionFill;
+
+    private DocumentType(String id, String name, double widthMm, double heightMm,
+                         double cornerRadiusMm, double minRegionFill, double maxRegionFill) {
+        this.id = id;
+        this.name = name;
+        this.widthMm = widthMm;
+        this.heightMm = heightMm;
+        this.aspectRatio = widthMm / heightMm;
+        this.cornerRadiusMm = cornerRadiusMm;
+        this.minRegionFill = minRegionFill;
+        this.maxRegionFill = maxRegionFill;
+    }
+
+    public static List<DocumentType> all() {
+        return ALL;
+    }
+
+    /**
+     * Look up by id or display name (case-insensitive)
+     */
+    @Nullable
+    public static DocumentType fromName(@Nullable String nameOrId) {
+        if (nameOrId == null) {
+            return null;
+        }
+        for (DocumentType type : ALL) {
+            if (type.id.equalsIgnoreCase(nameOrId) || type.name.equalsIgnoreCase(nameOrId)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Catalogue entry for {@code nameOrId}, or an aspect-only type when the name is
+     * unknown. Returns null when neither is usable (generic detection).
+     * A known name wins over {@code aspectRatio}: the catalogue carries the physical size
+     * (output DPI sizing, corner radius) that an explicit ratio cannot supply.
+     */
+    @Nullable
+    public static DocumentType resolve(@Nullable String nameOrId, double aspectRatio) {
+        DocumentType known = fromName(nameOrId);
+        if (known != null) {
+            if (aspectRatio > 0 && !known.matchesAspect(aspectRatio)) {
+                Log.w(TAG, "Ignoring aspect ratio " + aspectRatio + " for " + known);
+            }
+            return known;
+        }
+        if (aspectRatio <= 0) {
+            return null;
+        }
+        // Unknown physical size: keep the ratio, assume a 100mm wide sharp-cornered sheet
+        return new DocumentType(nameOrId != null ? nameOrId : "custom",
+                nameOrId != null ? nameOrId : "Custom", 100, 100 / aspectRatio, 0, 0.20, 1.50);
+    }
+
+    /**
+     * Does a quad with this (perspective-averaged) width/height ratio match the type,
+     * in either orientation
+     */
+    public boolean matchesAspect(double quadAspect) {
+        return QuadScorer.aspectDeviation((float) quadAspect, (float) aspectRatio) < ASPECT_TOLERANCE;
+    }
+
+    /**
+     * True for catalogue entries; aspect-only types from resolve() have a nominal size
+     */
+    public boolean hasPhysicalSize() {
+        return ALL.contains(this);
+    }
+
+    public float aspectTolerance() {
+        return (float) ASPECT_TOLERANCE;
+    }
+
+    /**
+     * Cheap pre-approxPolyDP check on the contour's axis-aligned bounding box
+     */
+    public boolean matchesBoundingBox(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        // Either orientation: compare long/short sides
+        double ratio = (double) Math.max(width, height) / Math.min(width, height);
+        double expected = Math.max(aspectRatio, 1 / aspectRatio);
+        return ratio > expected / BOUNDING_BOX_RATIO_FACTOR && ratio < expected * BOUNDING_BOX_RATIO_FACTOR;
+    }
+
+    /**
+     * Lower bound of quad area / (avg width * avg height); rounded corners shave area
+     */
+    public float minRectangularity() {
+        double cornerLoss = (4 - Math.PI) * cornerRadiusMm * cornerRadiusMm / (widthMm * heightMm);
+        return (float) (0.85 * (1 - cornerLoss));
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + widthMm + "x" + heightMm + "mm, aspect " + String.format(Locale.US, "%.3f", aspectRatio) + ")";
+    }
+}
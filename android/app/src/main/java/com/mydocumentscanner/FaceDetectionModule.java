@@ -39,7 +39,30 @@ public class FaceDetectionModule extends ReactContextBaseJavaModule {
             // Decode base64 to bitmap
             byte[] decodedString = Base64.decode(imageBase64, Base64.DEFAULT);
             Bitmap bitmap = BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
+            detect(bitmap, successCallback, errorCallback);
+        } catch (Exception e) {
+            errorCallback.invoke("Error processing image: " + e.getMessage());
+        }
+    }
 
+    /**
+     * Face detection on a registered image (ImageRegistry id, e.g. the imageId of a capture)
+     */
+    @ReactMethod
+    public void detectFaceFromHandle(String imageId, final Callback successCallback, final Callback errorCallback) {
+        try (ImageRegistry.Handle handle = ImageRegistry.getInstance().acquire(imageId)) {
+            if (handle == null) {
+                errorCallback.invoke("Unknown image: " + imageId);
+                return;
+            }
+            detect(handle.toBitmap(), successCallback, errorCallback);
+        } catch (Exception e) {
+            errorCallback.invoke("Error processing image: " + e.getMessage());
+        }
+    }
+
+    private void detect(Bitmap bitmap, final Callback successCallback, final Callback errorCallback) {
+        try {
             // Create input image
             InputImage image = InputImage.fromBitmap(bitmap, 0);
 
@@ -0,0 +1,231 @@
+package com.mydocumentscanner;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.opencv.android.Utils;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decoded images shared by the native modules, keyed by opaque ids ("img:<n>").
+ *
+ * A capture or an imported image is decoded once and kept here, so JS can pass the id
+ * to extraction, OCR, face detection and blur checks instead of Base64 or a path.
+ * Images are 8-bit BGR (or single-channel gray) Mats. The registry is LRU ordered and
+ * capped by pixel bytes; readers pin an entry with {@link #acquire} so it is not freed
+ * underneath them, and eviction / release of a pinned entry is deferred until unpinned.
+ */
+public final class ImageRegistry {
+    private static final String TAG = "ImageRegistry";
+
+    public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private static final ImageRegistry INSTANCE = new ImageRegistry(DEFAULT_BUDGET_BYTES);
+
+    public static ImageRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private static final class Entry {
+        final String id;
+        final Mat image;
+        final long bytes;
+        int pins = 0;
+        boolean released = false;
+
+        Entry(String id, Mat image) {
+            this.id = id;
+            this.image = image;
+            this.bytes = image.total() * image.elemSize();
+        }
+    }
+
+    /**
+     * A pinned image; close() unpins it. Do not release or modify the Mat.
+     */
+    public final class Handle implements AutoCloseable {
+        private final Entry entry;
+        private boolean closed = false;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        public String id() {
+            return entry.id;
+        }
+
+        public Mat mat() {
+            return entry.image;
+        }
+
+        /**
+         * ARGB_8888 copy for Android APIs (ML Kit, Bitmap.compress); the caller recycles it
+         */
+        public Bitmap toBitmap() {
+            return ImageRegistry.toBitmap(entry.image);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unpin(entry);
+            }
+        }
+    }
+
+    /**
+     * ARGB_8888 copy of an 8-bit BGR or gray Mat; the caller recycles it
+     */
+    public static Bitmap toBitmap(Mat image) {
+        Mat rgba = new Mat();
+        try {
+            Imgproc.cvtColor(image, rgba, image.channels() == 1 ? Imgproc.COLOR_GRAY2RGBA : Imgproc.COLOR_BGR2RGBA);
+            Bitmap bitmap = Bitmap.createBitmap(rgba.cols(), rgba.rows(), Bitmap.Config.ARGB_8888);
+            Utils.matToBitmap(rgba, bitmap);
+            return bitmap;
+        } finally {
+            rgba.release();
+        }
+    }
+
+    public static final class Stats {
+        public int count;
+        public long bytes;
+        public long budgetBytes;
+        public long hits;
+        public long misses;
+        public long evictions;
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong nextId = new AtomicLong();
+    private long budgetBytes;
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    ImageRegistry(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trimLocked();
+    }
+
+    /**
+     * Register {@code image} and take ownership of it. Returns null (ownership stays with
+     * the caller) when the image is empty, not 8-bit BGR or gray, or larger than the whole budget.
+     */
+    @Nullable
+    public synchronized String put(Mat image) {
+        if (image == null || image.empty()) {
+            return null;
+        }
+        if (image.depth() != CvType.CV_8U || (image.channels() != 1 && image.channels() != 3)) {
+            // Readers convert with BGR2RGBA / GRAY2RGBA; RGBA or float input would come out wrong
+            Log.e(TAG, "Registry images are 8-bit BGR or gray, got " + CvType.typeToString(image.type()));
+            return null;
+        }
+        long size = image.total() * image.elemSize();
+        if (size > budgetBytes) {
+            Log.w(TAG, "Image of " + size + " bytes exceeds the registry budget of " + budgetBytes);
+            return null;
+        }
+        String id = "img:" + nextId.incrementAndGet();
+        entries.put(id, new Entry(id, image));
+        bytes += size;
+        trimLocked();
+        Log.d(TAG, "📥 Registered " + id + " (" + image.cols() + "x" + image.rows() + ", "
+                + entries.size() + " images, " + bytes / 1024 + " KB)");
+        return id;
+    }
+
+    /**
+     * Pin an image for reading; null when the id is unknown or already evicted
+     */
+    @Nullable
+    public synchronized Handle acquire(String id) {
+        Entry entry = id != null ? entries.get(id) : null;
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.pins++;
+        return new Handle(entry);
+    }
+
+    /**
+     * Drop an image; freed now, or when its last reader closes its handle
+     */
+    public synchronized boolean release(String id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        bytes -= entry.bytes;
+        freeLocked(entry);
+        return true;
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            freeLocked(entry);
+        }
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        Stats stats = new Stats();
+        stats.count = entries.size();
+        stats.bytes = bytes;
+        stats.budgetBytes = budgetBytes;
+        stats.hits = hits;
+        stats.misses = misses;
+        stats.evictions = evictions;
+        return stats;
+    }
+
+    private synchronized void unpin(Entry entry) {
+        entry.pins--;
+        if (entry.pins == 0 && entry.released) {
+            entry.image.release();
+        }
+    }
+
+    /**
+     * Evict least recently used images until within budget
+     */
+    private void trimLocked() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > budgetBytes && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            it.remove();
+            bytes -= entry.bytes;
+            evictions++;
+            freeLocked(entry);
+            Log.d(TAG, "♻️ Evicted " + entry.id);
+        }
+    }
+
+    private void freeLocked(Entry entry) {
+        entry.released = true;
+        if (entry.pins == 0) {
+            entry.image.release();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mydocumentscanner;
+
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * JS access to the ImageRegistry: import an image once, pass its id to the
+ * *FromHandle methods of the other modules, release it when done.
+ */
+public class ImageRegistryModule extends ReactContextBaseJavaModule {
+    private static final String TAG = "ImageRegistryModule";
+
+    public ImageRegistryModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "ImageRegistryModule";
+    }
+
+    /**
+     * Decode an image file once; resolves { imageId, width, height }
+     */
+    @ReactMethod
+    public void registerImageFromUri(String imageUri, Promise promise) {
+        String path = imageUri.startsWith("file://") ? imageUri.substring(7) : imageUri;
+        register(Imgcodecs.imread(path, Imgcodecs.IMREAD_COLOR), imageUri, promise);
+    }
+
+    /**
+     * Decode a Base64 image once; resolves { imageId, width, height }
+     */
+    @ReactMethod
+    public void registerImageFromBase64(String imageBase64, Promise promise) {
+        Mat image;
+        try {
+            MatOfByte buffer = new MatOfByte(Base64.decode(imageBase64, Base64.DEFAULT));
+            image = Imgcodecs.imdecode(buffer, Imgcodecs.IMREAD_COLOR);
+            buffer.release();
+        } catch (Exception e) {
+            Log.e(TAG, "Error decoding Base64 image", e);
+            promise.reject("IMAGE_DECODE_ERROR", e.getMessage());
+            return;
+        }
+        register(image, "base64", promise);
+    }
+
+    private void register(Mat image, String source, Promise promise) {
+        if (image.empty()) {
+            image.release();
+            promise.reject("IMAGE_DECODE_ERROR", "Could not decode image: " + source);
+            return;
+        }
+        int width = image.cols();
+        int height = image.rows();
+        String imageId = ImageRegistry.getInstance().put(image);
+        if (imageId == null) {
+            image.release();
+            promise.reject("IMAGE_TOO_LARGE", width + "x" + height + " image exceeds the registry budget");
+            return;
+        }
+        WritableMap result = Arguments.createMap();
+        result.putString("imageId", imageId);
+        result.putInt("width", width);
+        result.putInt("height", height);
+        promise.resolve(result);
+    }
+
+    /**
+     * Resolves true if the id was registered (false if unknown or already evicted)
+     */
+    @ReactMethod
+    public void releaseImage(String imageId, Promise promise) {
+        promise.resolve(ImageRegistry.getInstance().release(imageId));
+    }
+
+    @ReactMethod
+    public void releaseAllImages() {
+        ImageRegistry.getInstance().clear();
+    }
+
+    /**
+     * Resolves { count, bytes, budgetBytes, hits, misses, evictions }
+     */
+    @ReactMethod
+    public void getImageRegistryStats(Promise promise) {
+        ImageRegistry.Stats stats = ImageRegistry.getInstance().stats();
+        WritableMap result = Arguments.createMap();
+        result.putInt("count", stats.count);
+        result.putDouble("bytes", stats.bytes);
+        result.putDouble("budgetBytes", stats.budgetBytes);
+        result.putDouble("hits", stats.hits);
+        result.putDouble("misses", stats.misses);
+        result.putDouble("evictions", stats.evictions);
+        promise.resolve(result);
+    }
+
+    @Override
+    public void invalidate() {
+        // Handles do not survive a JS reload
+        ImageRegistry.getInstance().clear();
+        super.invalidate();
+    }
+}
@@ -0,0 +1,406 @@
+package com.mydocumentscanner;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal PDF writer for image-only documents, one page at a time.
+ *
+ * Each page is a single JPEG embedded as-is (/DCTDecode image XObject), copied from
+ * its source in small chunks. Object offsets are recorded as objects are written; the
+ * page tree, xref table and trailer follow the last page. Nothing is decoded, so memory
+ * does not depend on page size or page count (beyond 8 bytes of xref per object).
+ * An EXIF orientation is applied by the page's content matrix, not by re-encoding.
+ */
+public class JpegPdfWriter {
+    private static final int COPY_CHUNK = 64 * 1024;
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    // Unit-square image space to unit-square display space per EXIF orientation 1..8,
+    // as PDF matrices [a b c d e f]
+    private static final int[][] ORIENTATION_MATRICES = {
+            {1, 0, 0, 1, 0, 0},     // 1 normal
+            {-1, 0, 0, 1, 1, 0},    // 2 mirrored horizontally
+            {-1, 0, 0, -1, 1, 1},   // 3 rotated 180
+            {1, 0, 0, -1, 0, 1},    // 4 mirrored vertically
+            {0, -1, -1, 0, 1, 1},   // 5 transposed
+            {0, -1, 1, 0, 0, 1},    // 6 rotated 90 clockwise
+            {0, 1, 1, 0, 0, 0},     // 7 transversed
+            {0, 1, -1, 0, 1, 0},    // 8 rotated 90 counter-clockwise
+    };
+
+    /**
+     * Frame header of a baseline or progressive JPEG, with its EXIF orientation
+     */
+    public static final class JpegInfo {
+        public final int width;        // stored pixels
+        public final int height;
+        public final int components;   // 1 gray, 3 YCbCr/RGB, 4 CMYK
+        public final int orientation;  // EXIF 1..8, 1 when absent
+
+        JpegInfo(int width, int height, int components, int orientation) {
+            this.width = width;
+            this.height = height;
+            this.components = components;
+            this.orientation = orientation >= 1 && orientation <= 8 ? orientation : 1;
+        }
+
+        /**
+         * Orientations 5..8 turn the image by 90 degrees
+         */
+        public boolean swapsAxes() {
+            return orientation >= 5;
+        }
+
+        public int displayWidth() {
+            return swapsAxes() ? height : width;
+        }
+
+        public int displayHeight() {
+            return swapsAxes() ? width : height;
+        }
+    }
+
+    private final CountingOutputStream out;
+    private long[] offsets = new long[16];   // by object number; 1 = catalog, 2 = page tree
+    private int objectCount = 2;
+    private int[] pageObjects = new int[8];
+    private int pageCount = 0;
+    private boolean finished = false;
+
+    public JpegPdfWriter(OutputStream out) throws IOException {
+        this.out = new CountingOutputStream(out);
+        // Binary comment marks the file as binary for transfer tools
+        write("%PDF-1.4\n%âãÏÓ\n");
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Add a page showing the JPEG file {@code jpeg}, upright per its EXIF orientation,
+     * fitted and centred on a pageWidth x pageHeight (points) page
+     */
+    public void addPage(File jpeg, JpegInfo info, int pageWidth, int pageHeight) throws IOException {
+        try (InputStream in = new FileInputStream(jpeg)) {
+            addPage(in, jpeg.length(), info, pageWidth, pageHeight);
+        }
+    }
+
+    /**
+     * Add a page from {@code length} JPEG bytes read from {@code jpeg}
+     */
+    public void addPage(InputStream jpeg, long length, JpegInfo info, int pageWidth, int pageHeight) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("PDF already finished");
+        }
+        int pageObject = ++objectCount;
+        int contentObject = ++objectCount;
+        int imageObject = ++objectCount;
+
+        double scale = Math.min((double) pageWidth / info.displayWidth(), (double) pageHeight / info.displayHeight());
+        double drawWidth = info.displayWidth() * scale;
+        double drawHeight = info.displayHeight() * scale;
+        double x = (pageWidth - drawWidth) / 2;
+        double y = (pageHeight - drawHeight) / 2;
+        int[] m = ORIENTATION_MATRICES[info.orientation - 1];
+        String content = String.format(Locale.US, "q %.2f %.2f %.2f %.2f %.2f %.2f cm /Im0 Do Q\n",
+                m[0] * drawWidth, m[1] * drawHeight, m[2] * drawWidth, m[3] * drawHeight,
+                m[4] * drawWidth + x, m[5] * drawHeight + y);
+        byte[] contentBytes = content.getBytes(StandardCharsets.US_ASCII);
+
+        beginObject(pageObject);
+        write(String.format(Locale.US, "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 %d %d] "
+                + "/Resources << /XObject << /Im0 %d 0 R >> >> /Contents %d 0 R >>\n",
+                pageWidth, pageHeight, imageObject, contentObject));
+        endObject();
+
+        beginObject(contentObject);
+        write("<< /Length " + contentBytes.length + " >>\nstream\n");
+        out.write(contentBytes);
+        write("endstream\n");
+        endObject();
+
+        beginObject(imageObject);
+        write(String.format(Locale.US, "<< /Type /XObject /Subtype /Image /Width %d /Height %d "
+                + "/ColorSpace %s /BitsPerComponent 8 /Filter /DCTDecode /Length %d >>\nstream\n",
+                info.width, info.height, colorSpace(info.components), length));
+        copy(jpeg, length);
+        write("\nendstream\n");
+        endObject();
+
+        if (pageCount == pageObjects.length) {
+            pageObjects = Arrays.copyOf(pageObjects, pageCount * 2);
+        }
+        pageObjects[pageCount++] = pageObject;
+    }
+
+    /**
+     * Write the catalog, page tree, xref and trailer. Does not close the stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (pageCount == 0) {
+            throw new IOException("PDF has no pages");
+        }
+        finished = true;
+
+        beginObject(1);
+        write("<< /Type /Catalog /Pages 2 0 R >>\n");
+        endObject();
+
+        beginObject(2);
+        StringBuilder kids = new StringBuilder("<< /Type /Pages /Kids [");
+        for (int i = 0; i < pageCount; i++) {
+            kids.append(i == 0 ? "" : " ").append(pageObjects[i]).append(" 0 R");
+        }
+        kids.append("] /Count ").append(pageCount).append(" >>\n");
+        write(kids.toString());
+        endObject();
+
+        long xref = out.count;
+        StringBuilder table = new StringBuilder();
+        table.append("xref\n0 ").append(objectCount + 1).append('\n');
+        table.append("0000000000 65535 f \n");
+        for (int i = 1; i <= objectCount; i++) {
+            table.append(String.format(Locale.US, "%010d 00000 n \n", offsets[i]));
+        }
+        table.append("trailer\n<< /Size ").append(objectCount + 1).append(" /Root 1 0 R >>\n");
+        table.append("startxref\n").append(xref).append("\n%%EOF\n");
+        write(table.toString());
+        out.flush();
+    }
+
+    /**
+     * Read the frame header (SOFn) and the EXIF orientation of a JPEG; null if {@code in}
+     * is not a JPEG or ends before a frame header
+     */
+    @Nullable
+    public static JpegInfo readJpegInfo(InputStream in) throws IOException {
+        if (in.read() != 0xFF || in.read() != 0xD8) {
+            return null;
+        }
+        int orientation = 1;
+        while (true) {
+            int b = in.read();
+            while (b != 0xFF) {
+                if (b < 0) return null;
+                b = in.read();
+            }
+            int marker = in.read();
+            while (marker == 0xFF) {
+                marker = in.read();   // fill bytes
+            }
+            if (marker < 0 || marker == 0xD9 || marker == 0xDA) {
+                return null;          // end of image or scan data before any frame header
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue;             // standalone markers
+            }
+            int length = (in.read() << 8) | in.read();
+            if (length < 2) {
+                return null;
+            }
+            if (marker == 0xE1) {
+                // APP1: EXIF orientation, if this is the Exif segment
+                byte[] segment = new byte[length - 2];
+                if (!readFully(in, segment)) {
+                    return null;
+                }
+                int exif = exifOrientation(segment);
+                if (exif > 0) {
+                    orientation = exif;
+                }
+                continue;
+            }
+            boolean frame = marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (frame) {
+                in.read();            // sample precision
+                int height = (in.read() << 8) | in.read();
+                int width = (in.read() << 8) | in.read();
+                int components = in.read();
+                if (width <= 0 || height <= 0 || components <= 0) {
+                    return null;
+                }
+                return new JpegInfo(width, height, components, orientation);
+            }
+            if (!skipFully(in, length - 2)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Orientation tag of IFD0 in an APP1 payload, or 0 if it is not Exif or has none
+     */
+    static int exifOrientation(byte[] segment) {
+        // "Exif\0\0", then a TIFF header: byte order, 42, offset of IFD0
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i'
+                || segment[3] != 'f' || segment[4] != 0 || segment[5] != 0) {
+            return 0;
+        }
+        int tiff = 6;
+        boolean little;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            little = true;
+        } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            little = false;
+        } else {
+            return 0;
+        }
+        if (readShort(segment, tiff + 2, little) != 42) {
+            return 0;
+        }
+        long ifd = tiff + readInt(segment, tiff + 4, little);
+        if (ifd + 2 > segment.length) {
+            return 0;
+        }
+        int entries = readShort(segment, (int) ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return 0;
+            }
+            if (readShort(segment, entry, little) == EXIF_ORIENTATION_TAG) {
+                int value = readShort(segment, entry + 8, little);
+                return value >= 1 && value <= 8 ? value : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static int readShort(byte[] b, int offset, boolean little) {
+        int b0 = b[offset] & 0xFF;
+        int b1 = b[offset + 1] & 0xFF;
+        return little ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static long readInt(byte[] b, int offset, boolean little) {
+        long high = readShort(b, little ? offset + 2 : offset, little);
+        long low = readShort(b, little ? offset : offset + 2, little);
+        return (high << 16) | low;
+    }
+
+    @Nullable
+    public static JpegInfo readJpegInfo(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 4096)) {
+            return readJpegInfo(in);
+        }
+    }
+
+    private static String colorSpace(int components) {
+        switch (components) {
+            case 1:
+                return "/DeviceGray";
+            case 4:
+                // Adobe CMYK JPEGs are stored inverted
+                return "/DeviceCMYK /Decode [1 0 1 0 1 0 1 0]";
+            default:
+                return "/DeviceRGB";
+        }
+    }
+
+    private void beginObject(int number) throws IOException {
+        if (number >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(number + 1, offsets.length * 2));
+        }
+        offsets[number] = out.count;
+        write(number + " 0 obj\n");
+    }
+
+    private void endObject() throws IOException {
+        write("endobj\n");
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void copy(InputStream in, long length) throws IOException {
+        byte[] chunk = new byte[(int) Math.min(COPY_CHUNK, Math.max(1, length))];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+            if (read < 0) {
+                throw new IOException("JPEG ended " + remaining + " bytes early");
+            }
+            out.write(chunk, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * @return false if {@code in} ended first
+     */
+    private static boolean skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    return false;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if {@code in} ended first
+     */
+    private static boolean readFully(InputStream in, byte[] buffer) throws IOException {
+        int filled = 0;
+        while (filled < buffer.length) {
+            int read = in.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                return false;
+            }
+            filled += read;
+        }
+        return true;
+    }
+
+    /**
+     * Byte position of everything written so far, for the xref table
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -13,6 +13,8 @@ import com.mydocumentscanner.OpenCVPackage;
 import com.mydocumentscanner.TextRecognitionPackage;
 import com.mydocumentscanner.FaceDetectionPackage;
 import com.mydocumentscanner.TemplateMatchingPackage;
+import com.mydocumentscanner.ScanSessionPackage;
+import com.mydocumentscanner.ImageRegistryPackage;
 
 public class MainApplication extends Application implements ReactApplication {
 
@@ -31,6 +33,8 @@ public class MainApplication extends Application implements ReactApplication {
           packages.add(new TextRecognitionPackage());
           packages.add(new FaceDetectionPackage());
           packages.add(new TemplateMatchingPackage());
+          packages.add(new ScanSessionPackage());
+          packages.add(new ImageRegistryPackage());
           return packages;
         }
 
@@ -1,6 +1,5 @@
 package com.mydocumentscanner;
 
-import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraDevice;
@@ -9,20 +8,30 @@ import android.os.HandlerThread;
 import android.util.Base64;
 import android.util.Log;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Callback;
 
 import org.opencv.android.OpenCVLoader;
-import org.opencv.android.Utils;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
 import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
+import java.io.File;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class OpenCVModule extends ReactContextBaseJavaModule {
 
     private static final String TAG = "OpenCVModule";
@@ -30,6 +39,10 @@ public class OpenCVModule extends ReactContextBaseJavaModule {
     private CameraCaptureSession captureSession;
     private Handler backgroundHandler;
     private HandlerThread backgroundThread;
+    private final QualityScorer qualityScorer = new QualityScorer();
+    // Post-capture enhancement jobs by caller-chosen request id
+    private ScanEnhancer scanEnhancer;
+    private final Map<String, EnhancementRequest> enhancementJobs = new ConcurrentHashMap<>();
 
     static {
         if (!OpenCVLoader.initDebug()) {
@@ -100,51 +113,308 @@ public class OpenCVModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void checkForBlurryImage(String imageAsBase64, Callback errorCallback, Callback successCallback) {
+        Mat gray = null;
         try {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inDither = true;
-            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-
-            byte[] decodedString = Base64.decode(imageAsBase64, Base64.DEFAULT);
-            Bitmap image = BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
-
-
-    //      Bitmap image = decodeSampledBitmapFromFile(imageurl, 2000, 2000);
-                int l = CvType.CV_8UC1; //8-bit grey scale image
-                Mat matImage = new Mat();
-                Utils.bitmapToMat(image, matImage);
-                Mat matImageGrey = new Mat();
-                Imgproc.cvtColor(matImage, matImageGrey, Imgproc.COLOR_BGR2GRAY);
-
-                Bitmap destImage;
-                destImage = Bitmap.createBitmap(image);
-                Mat dst2 = new Mat();
-                Utils.bitmapToMat(destImage, dst2);
-                Mat laplacianImage = new Mat();
-                dst2.convertTo(laplacianImage, l);
-                Imgproc.Laplacian(matImageGrey, laplacianImage, CvType.CV_8U);
-                Mat laplacianImage8bit = new Mat();
-                laplacianImage.convertTo(laplacianImage8bit, l);
-
-                Bitmap bmp = Bitmap.createBitmap(laplacianImage8bit.cols(), laplacianImage8bit.rows(), Bitmap.Config.ARGB_8888);
-                Utils.matToBitmap(laplacianImage8bit, bmp);
-                int[] pixels = new int[bmp.getHeight() * bmp.getWidth()];
-                bmp.getPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
-                int maxLap = -16777216; // 16m
-                for (int pixel : pixels) {
-                    if (pixel > maxLap)
-                        maxLap = pixel;
-                }
+            byte[] encoded = Base64.decode(imageAsBase64, Base64.DEFAULT);
+
+            // Header only: pick the reduced decode before touching any pixels
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(encoded, 0, encoded.length, bounds);
 
-    //            int soglia = -6118750;
-            int soglia = -8118750;
-            if (maxLap <= soglia) {
-                System.out.println("is blur image");
+            MatOfByte buffer = new MatOfByte(encoded);
+            try {
+                gray = Imgcodecs.imdecode(buffer, reducedGrayscaleFlag(bounds.outWidth, bounds.outHeight));
+            } finally {
+                buffer.release();
             }
+            if (gray.empty()) {
+                errorCallback.invoke("Unable to decode image");
+                return;
+            }
+
+            // Same sharpness metric and threshold as the live camera path
+            double sharpness = qualityScorer.sharpness(gray);
+            boolean isBlurry = sharpness < qualityScorer.thresholds.minSharpness;
+            Log.d(TAG, "Blur check: " + bounds.outWidth + "x" + bounds.outHeight + " decoded at "
+                    + gray.cols() + "x" + gray.rows() + ", sharpness=" + sharpness + ", blurry=" + isBlurry);
 
-            successCallback.invoke(maxLap <= soglia);
+            successCallback.invoke(isBlurry);
         } catch (Exception e) {
             errorCallback.invoke(e.getMessage());
+        } finally {
+            if (gray != null) gray.release();
+        }
+    }
+
+    /**
+     * Blur check on a registered image (ImageRegistry id), without decoding anything
+     */
+    @ReactMethod
+    public void checkForBlurryImageFromHandle(String imageId, Callback errorCallback, Callback successCallback) {
+        try (ImageRegistry.Handle handle = ImageRegistry.getInstance().acquire(imageId)) {
+            if (handle == null) {
+                errorCallback.invoke("Unknown image: " + imageId);
+                return;
+            }
+            double sharpness = qualityScorer.sharpness(handle.mat());
+            boolean isBlurry = sharpness < qualityScorer.thresholds.minSharpness;
+            Log.d(TAG, "Blur check " + imageId + ": sharpness=" + sharpness + ", blurry=" + isBlurry);
+            successCallback.invoke(isBlurry);
+        } catch (Exception e) {
+            errorCallback.invoke(e.getMessage());
+        }
+    }
+
+    /**
+     * Blur scores for many image files in one bridge call.
+     * Resolves an array of { path, width, height, sharpness, isBlurry } or { path, error } per input, in order.
+     */
+    @ReactMethod
+    public void checkForBlurryImages(ReadableArray imagePaths, Promise promise) {
+        try {
+            WritableArray results = Arguments.createArray();
+            for (int i = 0; i < imagePaths.size(); i++) {
+                String path = imagePaths.getString(i);
+                WritableMap entry = Arguments.createMap();
+                entry.putString("path", path);
+                scoreImageFile(path, entry);
+                results.pushMap(entry);
+            }
+            promise.resolve(results);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in batch blur check", e);
+            promise.reject("BLUR_CHECK_ERROR", e.getMessage());
+        }
+    }
+
+    private void scoreImageFile(String path, WritableMap entry) {
+        Mat gray = null;
+        try {
+            String filePath = path.startsWith("file://") ? path.substring(7) : path;
+
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(filePath, bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                entry.putString("error", "Unable to read image");
+                return;
+            }
+
+            gray = Imgcodecs.imread(filePath, reducedGrayscaleFlag(bounds.outWidth, bounds.outHeight));
+            if (gray.empty()) {
+                entry.putString("error", "Unable to decode image");
+                return;
+            }
+
+            double sharpness = qualityScorer.sharpness(gray);
+            entry.putInt("width", bounds.outWidth);
+            entry.putInt("height", bounds.outHeight);
+            entry.putDouble("sharpness", sharpness);
+            entry.putBoolean("isBlurry", sharpness < qualityScorer.thresholds.minSharpness);
+        } catch (Exception e) {
+            Log.e(TAG, "Error scoring " + path, e);
+            entry.putString("error", e.getMessage());
+        } finally {
+            if (gray != null) gray.release();
+        }
+    }
+
+    /**
+     * Apply a scan filter ("shadow_removal", "black_and_white", "grayscale", "color_boost")
+     * to an image file in the background. Resolves { uri, width, height, filter, durationMs }
+     * with a new file in the app cache; rejects with CANCELLED after cancelScanEnhancement(requestId).
+     */
+    @ReactMethod
+    public void enhanceScan(String imageUri, String filterName, String requestId, Promise promise) {
+        ScanEnhancer.Filter filter = ScanEnhancer.Filter.fromName(filterName);
+        if (filter == null) {
+            promise.reject("ENHANCE_ERROR", "Unknown filter: " + filterName);
+            return;
+        }
+        String path = imageUri.startsWith("file://") ? imageUri.substring(7) : imageUri;
+
+        // Published before it starts, so a fast completion cannot race the put
+        EnhancementRequest request = new EnhancementRequest(requestId, filter, promise);
+        EnhancementRequest previous = enhancementJobs.put(requestId, request);
+        if (previous != null) {
+            previous.job.cancel();
+        }
+        // Decoded on the enhancer thread, not the native modules thread
+        ensureScanEnhancer().enhanceFile(request.job, path, filter, request);
+    }
+
+    /**
+     * One enhanceScan call: settles its promise exactly once, from the enhancer or from invalidate()
+     */
+    private final class EnhancementRequest implements ScanEnhancer.Callback {
+        final String requestId;
+        final ScanEnhancer.Filter filter;
+        final ScanEnhancer.Job job = new ScanEnhancer.Job();
+        private final Promise promise;
+        private final AtomicBoolean settled = new AtomicBoolean(false);
+
+        EnhancementRequest(String requestId, ScanEnhancer.Filter filter, Promise promise) {
+            this.requestId = requestId;
+            this.filter = filter;
+            this.promise = promise;
+        }
+
+        @Override
+        public void onComplete(Mat result, long micros) {
+            try {
+                File dir = new File(getReactApplicationContext().getCacheDir(), "enhanced");
+                if (!dir.exists() && !dir.mkdirs()) {
+                    reject("ENHANCE_ERROR", "Cannot create output directory");
+                    return;
+                }
+                boolean bilevel = filter == ScanEnhancer.Filter.BLACK_AND_WHITE;
+                File output = new File(dir, "scan_" + System.currentTimeMillis() + "_"
+                        + filter.name().toLowerCase(Locale.US) + (bilevel ? ".png" : ".jpg"));
+                MatOfInt params = bilevel
+                        ? new MatOfInt(Imgcodecs.IMWRITE_PNG_BILEVEL, 1)
+                        : new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, 90);
+                boolean written = Imgcodecs.imwrite(output.getAbsolutePath(), result, params);
+                params.release();
+                if (!written) {
+                    reject("ENHANCE_ERROR", "Failed to write enhanced image");
+                    return;
+                }
+
+                WritableMap response = Arguments.createMap();
+                response.putString("uri", "file://" + output.getAbsolutePath());
+                response.putInt("width", result.cols());
+                response.putInt("height", result.rows());
+                response.putString("filter", filter.name().toLowerCase(Locale.US));
+                response.putDouble("durationMs", micros / 1000.0);
+                if (settle()) {
+                    promise.resolve(response);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error writing enhanced image", e);
+                reject("ENHANCE_ERROR", e.getMessage());
+            } finally {
+                result.release();
+            }
+        }
+
+        @Override
+        public void onCancelled() {
+            reject("CANCELLED", "Enhancement cancelled");
+        }
+
+        @Override
+        public void onError(Exception e) {
+            reject("ENHANCE_ERROR", e.getMessage());
+        }
+
+        void reject(String code, String message) {
+            if (settle()) {
+                promise.reject(code, message);
+            }
+        }
+
+        private boolean settle() {
+            if (!settled.compareAndSet(false, true)) {
+                return false;
+            }
+            // Only our own entry: a newer request may already hold this id
+            enhancementJobs.remove(requestId, this);
+            return true;
+        }
+    }
+
+    @ReactMethod
+    public void cancelScanEnhancement(String requestId) {
+        EnhancementRequest request = enhancementJobs.remove(requestId);
+        if (request != null) {
+            request.job.cancel();
+            Log.d(TAG, "Cancelled scan enhancement " + requestId);
+        }
+    }
+
+    /**
+     * Scan pipeline timings from ScanTrace: { enabled, spans: [{ span, count, meanMs, p50Ms,
+     * p95Ms, maxMs }], recent: [{ span, startMs, durationMs }] }. Empty when tracing is compiled out.
+     */
+    @ReactMethod
+    public void getScanTrace(Promise promise) {
+        WritableMap result = Arguments.createMap();
+        result.putBoolean("enabled", ScanTrace.ENABLED);
+        WritableArray spans = Arguments.createArray();
+        WritableArray recent = Arguments.createArray();
+        if (ScanTrace.ENABLED) {
+            for (ScanTrace.HistogramSink.Snapshot snapshot : ScanTrace.histograms().snapshot()) {
+                WritableMap entry = Arguments.createMap();
+                entry.putString("span", snapshot.span.jsName);
+                entry.putDouble("count", snapshot.count);
+                entry.putDouble("meanMs", snapshot.meanMs);
+                entry.putDouble("p50Ms", snapshot.p50Ms);
+                entry.putDouble("p95Ms", snapshot.p95Ms);
+                entry.putDouble("maxMs", snapshot.maxMs);
+                spans.pushMap(entry);
+            }
+            for (ScanTrace.RingBufferSink.Record record : ScanTrace.ringBuffer().recent()) {
+                WritableMap entry = Arguments.createMap();
+                entry.putString("span", record.span.jsName);
+                entry.putDouble("startMs", record.startNanos / 1_000_000.0);
+                entry.putDouble("durationMs", record.durationNanos / 1_000_000.0);
+                recent.pushMap(entry);
+            }
+        }
+        result.putArray("spans", spans);
+        result.putArray("recent", recent);
+        promise.resolve(result);
+    }
+
+    @ReactMethod
+    public void resetScanTrace() {
+        if (ScanTrace.ENABLED) {
+            ScanTrace.histograms().logSummary();
+            ScanTrace.histograms().reset();
+            ScanTrace.ringBuffer().clear();
+        }
+    }
+
+    private synchronized ScanEnhancer ensureScanEnhancer() {
+        if (scanEnhancer == null) {
+            scanEnhancer = new ScanEnhancer();
+        }
+        return scanEnhancer;
+    }
+
+    @Override
+    public void invalidate() {
+        // Nothing will run the callbacks of a shut-down enhancer reliably: settle every promise here
+        for (EnhancementRequest request : enhancementJobs.values()) {
+            request.job.cancel();
+            request.reject("CANCELLED", "Module invalidated");
+        }
+        enhancementJobs.clear();
+        synchronized (this) {
+            if (scanEnhancer != null) {
+                scanEnhancer.shutdown();
+                scanEnhancer = null;
+            }
+        }
+        qualityScorer.release();
+        super.invalidate();
+    }
+
+    /**
+     * Largest libjpeg/libpng reduced grayscale decode (1/2, 1/4, 1/8) that still
+     * leaves the long side at or above the scorer's analysis size
+     */
+    private static int reducedGrayscaleFlag(int width, int height) {
+        int longSide = Math.max(width, height);
+        if (longSide >= QualityScorer.ANALYSIS_SIZE * 8) {
+            return Imgcodecs.IMREAD_REDUCED_GRAYSCALE_8;
+        } else if (longSide >= QualityScorer.ANALYSIS_SIZE * 4) {
+            return Imgcodecs.IMREAD_REDUCED_GRAYSCALE_4;
+        } else if (longSide >= QualityScorer.ANALYSIS_SIZE * 2) {
+            return Imgcodecs.IMREAD_REDUCED_GRAYSCALE_2;
         }
+        // Unknown size (header unreadable) or already small
+        return Imgcodecs.IMREAD_GRAYSCALE;
     }
 }
@@ -6,43 +6,70 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
-import org.opencv.core.Point;
-import java.util.List;
 
-public class OverlayView extends View {
+/**
+ * Scan region and detected-document overlay.
+ *
+ * Detection threads write corners into an incoming buffer (copied under a small lock);
+ * the UI thread takes them on the next Choreographer frame and eases the drawn contour
+ * from its current position to the new one. The view is invalidated only while that
+ * animation runs. Paints and the contour path are allocated once.
+ */
+public class OverlayView extends View implements Choreographer.FrameCallback {
+    private static final int CORNER_VALUES = 8;
+    private static final long ANIMATION_NANOS = 120_000_000L;
+    // Jumps larger than this fraction of the frame diagonal snap instead of animating
+    private static final float SNAP_FRACTION = 0.25f;
+    private static final int CONTOUR_COLOR = Color.parseColor("#FF6A00"); // Orange color
+
     private double scanRegionX = 0;
     private double scanRegionY = 0;
     private double scanRegionWidth = 0;
     private double scanRegionHeight = 0;
     private boolean overlayVisible = true;
 
-    // Document contour overlay
-    private List<Point> documentCorners = null;
+    // Incoming corners from the detection thread, packed [x0, y0, ..., x3, y3] in frame coordinates
+    private final Object incomingLock = new Object();
+    private final float[] incomingCorners = new float[CORNER_VALUES];
+    private boolean incomingPresent = false;
+    private boolean incomingPending = false;
+    private int incomingFrameWidth = 0;
+    private int incomingFrameHeight = 0;
+    private boolean frameScheduled = false;
+
+    // Render state, UI thread only
+    private final float[] fromCorners = new float[CORNER_VALUES];
+    private final float[] targetCorners = new float[CORNER_VALUES];
+    private final float[] drawnCorners = new float[CORNER_VALUES];
+    private boolean hasDocumentCorners = false;
     private int frameWidth = 0;
     private int frameHeight = 0;
+    private long animationStartNanos = -1;
+    private boolean animating = false;
 
-    private final Paint scanRegionPaint;
-    private final Paint documentContourPaint;
+    private final Choreographer choreographer;
+    private final Paint scanRegionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint documentContourPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint cornerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path contourPath = new Path();
 
     public OverlayView(Context context) {
         super(context);
-        scanRegionPaint = new Paint();
-        documentContourPaint = new Paint();
+        choreographer = Choreographer.getInstance();
         init();
     }
 
     public OverlayView(Context context, AttributeSet attrs) {
         super(context, attrs);
-        scanRegionPaint = new Paint();
-        documentContourPaint = new Paint();
+        choreographer = Choreographer.getInstance();
         init();
     }
 
     public OverlayView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
-        scanRegionPaint = new Paint();
-        documentContourPaint = new Paint();
+        choreographer = Choreographer.getInstance();
         init();
     }
 
@@ -52,13 +79,19 @@ public class OverlayView extends View {
         scanRegionPaint.setStyle(Paint.Style.STROKE);
         scanRegionPaint.setStrokeWidth(4);
         scanRegionPaint.setAlpha(150);
-        
+
         // Document contour paint (orange overlay)
-        documentContourPaint.setColor(Color.parseColor("#FF6A00")); // Orange color
+        documentContourPaint.setColor(CONTOUR_COLOR);
         documentContourPaint.setStyle(Paint.Style.STROKE);
         documentContourPaint.setStrokeWidth(8);
+        documentContourPaint.setStrokeJoin(Paint.Join.ROUND);
         documentContourPaint.setAlpha(200);
-        
+
+        // Corner circles for better visibility
+        cornerPaint.setColor(CONTOUR_COLOR);
+        cornerPaint.setStyle(Paint.Style.FILL);
+        cornerPaint.setAlpha(180);
+
         setWillNotDraw(false);
     }
 
@@ -72,37 +105,131 @@ public class OverlayView extends View {
         this.scanRegionY = y;
         this.scanRegionWidth = width;
         this.scanRegionHeight = height;
-        invalidate();
+        postInvalidate(); // Called from the camera thread on rotation changes
     }
 
     /**
-     * Update document contours for real-time overlay
+     * Update document contours for real-time overlay.
+     * Safe to call from any thread; the corners are copied before returning.
      */
-    public void updateDocumentContours(List<Point> corners, int frameWidth, int frameHeight) {
-        this.documentCorners = corners;
-        this.frameWidth = frameWidth;
-        this.frameHeight = frameHeight;
-        post(() -> invalidate()); // Ensure invalidate runs on UI thread
+    public void updateDocumentContours(float[] corners, int frameWidth, int frameHeight) {
+        synchronized (incomingLock) {
+            System.arraycopy(corners, 0, incomingCorners, 0, CORNER_VALUES);
+            incomingFrameWidth = frameWidth;
+            incomingFrameHeight = frameHeight;
+            incomingPresent = true;
+            incomingPending = true;
+            scheduleFrameLocked();
+        }
     }
 
     /**
      * Clear document contours overlay
      */
     public void clearDocumentContours() {
-        this.documentCorners = null;
-        post(() -> invalidate()); // Ensure invalidate runs on UI thread
+        synchronized (incomingLock) {
+            if (!incomingPresent && !incomingPending) {
+                return;
+            }
+            incomingPresent = false;
+            incomingPending = true;
+            scheduleFrameLocked();
+        }
+    }
+
+    private void scheduleFrameLocked() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            // Choreographer forwards to the UI looper when posted from another thread
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        synchronized (incomingLock) {
+            frameScheduled = false;
+            if (incomingPending) {
+                incomingPending = false;
+                takeIncomingLocked(frameTimeNanos);
+            }
+        }
+        if (animating) {
+            float t = Math.min(1f, (float) (frameTimeNanos - animationStartNanos) / ANIMATION_NANOS);
+            float eased = 1f - (1f - t) * (1f - t); // ease-out
+            for (int i = 0; i < CORNER_VALUES; i++) {
+                drawnCorners[i] = fromCorners[i] + (targetCorners[i] - fromCorners[i]) * eased;
+            }
+            if (t >= 1f) {
+                animating = false;
+            }
+        }
+        invalidate();
+        if (animating) {
+            synchronized (incomingLock) {
+                scheduleFrameLocked();
+            }
+        }
+    }
+
+    /**
+     * Move the latest detection into the render state; UI thread, incomingLock held
+     */
+    private void takeIncomingLocked(long frameTimeNanos) {
+        if (!incomingPresent) {
+            hasDocumentCorners = false;
+            animating = false;
+            return;
+        }
+        System.arraycopy(incomingCorners, 0, targetCorners, 0, CORNER_VALUES);
+        boolean sameFrame = incomingFrameWidth == frameWidth && incomingFrameHeight == frameHeight;
+        frameWidth = incomingFrameWidth;
+        frameHeight = incomingFrameHeight;
+
+        if (!hasDocumentCorners || !sameFrame || isLargeJump()) {
+            // New document or new geometry: show it where it is
+            System.arraycopy(targetCorners, 0, drawnCorners, 0, CORNER_VALUES);
+            hasDocumentCorners = true;
+            animating = false;
+            return;
+        }
+        System.arraycopy(drawnCorners, 0, fromCorners, 0, CORNER_VALUES);
+        animationStartNanos = frameTimeNanos;
+        animating = true;
+    }
+
+    private boolean isLargeJump() {
+        float limit = SNAP_FRACTION * (float) Math.hypot(frameWidth, frameHeight);
+        for (int i = 0; i < CORNER_VALUES; i += 2) {
+            if (Math.hypot(targetCorners[i] - drawnCorners[i], targetCorners[i + 1] - drawnCorners[i + 1]) > limit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        synchronized (incomingLock) {
+            if (frameScheduled) {
+                choreographer.removeFrameCallback(this);
+                frameScheduled = false;
+            }
+        }
+        animating = false;
+        super.onDetachedFromWindow();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        
+
         if (!overlayVisible) {
             return;
         }
 
         // Draw scan region (green rectangle) - only if no document detected
-        if (documentCorners == null && scanRegionWidth > 0 && scanRegionHeight > 0) {
+        if (!hasDocumentCorners && scanRegionWidth > 0 && scanRegionHeight > 0) {
             float left = (float) scanRegionX;
             float top = (float) scanRegionY;
             float right = (float) (scanRegionX + scanRegionWidth);
@@ -111,69 +238,34 @@ public class OverlayView extends View {
         }
 
         // Draw detected document contours (orange overlay)
-        if (documentCorners != null && documentCorners.size() == 4) {
+        if (hasDocumentCorners) {
             drawDocumentContour(canvas);
         }
     }
 
     /**
-     * Draw the detected document contour as an orange overlay
+     * Draw the (interpolated) document contour, scaled from frame to view coordinates
      */
     private void drawDocumentContour(Canvas canvas) {
-        if (documentCorners == null || documentCorners.size() != 4) {
+        int viewWidth = getWidth();
+        int viewHeight = getHeight();
+        if (viewWidth <= 0 || viewHeight <= 0 || frameWidth <= 0 || frameHeight <= 0) {
             return;
         }
 
-        try {
-            // Get view dimensions
-            int viewWidth = getWidth();
-            int viewHeight = getHeight();
-            
-            if (viewWidth <= 0 || viewHeight <= 0 || frameWidth <= 0 || frameHeight <= 0) {
-                return;
-            }
+        float scaleX = (float) viewWidth / frameWidth;
+        float scaleY = (float) viewHeight / frameHeight;
 
-            // Calculate scale factors from camera frame to view
-            double scaleX = (double) viewWidth / frameWidth;
-            double scaleY = (double) viewHeight / frameHeight;
-
-            // Create path for the document contour
-            Path path = new Path();
-            
-            // Convert first corner to view coordinates
-            Point firstCorner = documentCorners.get(0);
-            float startX = (float) (firstCorner.x * scaleX);
-            float startY = (float) (firstCorner.y * scaleY);
-            path.moveTo(startX, startY);
-
-            // Draw lines to other corners
-            for (int i = 1; i < documentCorners.size(); i++) {
-                Point corner = documentCorners.get(i);
-                float x = (float) (corner.x * scaleX);
-                float y = (float) (corner.y * scaleY);
-                path.lineTo(x, y);
-            }
-
-            // Close the path back to first corner
-            path.lineTo(startX, startY);
-
-            // Draw the contour
-            canvas.drawPath(path, documentContourPaint);
-
-            // Draw corner circles for better visibility
-            Paint cornerPaint = new Paint();
-            cornerPaint.setColor(Color.parseColor("#FF6A00"));
-            cornerPaint.setStyle(Paint.Style.FILL);
-            cornerPaint.setAlpha(180);
-
-            for (Point corner : documentCorners) {
-                float x = (float) (corner.x * scaleX);
-                float y = (float) (corner.y * scaleY);
-                canvas.drawCircle(x, y, 12, cornerPaint);
-            }
+        contourPath.rewind();
+        contourPath.moveTo(drawnCorners[0] * scaleX, drawnCorners[1] * scaleY);
+        for (int i = 2; i < CORNER_VALUES; i += 2) {
+            contourPath.lineTo(drawnCorners[i] * scaleX, drawnCorners[i + 1] * scaleY);
+        }
+        contourPath.close();
+        canvas.drawPath(contourPath, documentContourPaint);
 
-        } catch (Exception e) {
-            // Ignore drawing errors to prevent crashes
+        for (int i = 0; i < CORNER_VALUES; i += 2) {
+            canvas.drawCircle(drawnCorners[i] * scaleX, drawnCorners[i + 1] * scaleY, 12, cornerPaint);
         }
     }
-} 
\ No newline at end of file
+}
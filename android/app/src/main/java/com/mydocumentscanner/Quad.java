@@ -0,0 +1,116 @@
+package com.mydocumentscanner;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+import java.util.Locale;
+
+/**
+ * Document quadrilateral backed by a packed float[8] (x0,y0,...,x3,y3).
+ *
+ * Used end to end on the detection and capture path so corners never become
+ * boxed Point objects: ordering, area, coordinate transforms, homography input
+ * and the packed array sent over the bridge all read the same buffer.
+ * Instances are mutable and meant to be reused by the thread that owns them.
+ */
+public final class Quad {
+
+    public static final int SIZE = 8;
+
+    public final float[] pts = new float[SIZE];
+
+    public Quad() {
+    }
+
+    public Quad set(float[] src, int offset) {
+        System.arraycopy(src, offset, pts, 0, SIZE);
+        return this;
+    }
+
+    public Quad set(Quad other) {
+        return set(other.pts, 0);
+    }
+
+    public float x(int i) {
+        return pts[i * 2];
+    }
+
+    public float y(int i) {
+        return pts[i * 2 + 1];
+    }
+
+    /**
+     * Order as top-left, top-right, bottom-right, bottom-left
+     */
+    public Quad order() {
+        QuadScorer.orderInPlace(pts, 0);
+        return this;
+    }
+
+    /**
+     * Shoelace area
+     */
+    public float area() {
+        return QuadScorer.area(pts, 0);
+    }
+
+    public float distance(int i, int j) {
+        float dx = pts[j * 2] - pts[i * 2];
+        float dy = pts[j * 2 + 1] - pts[i * 2 + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Longer of the top and bottom edges (ordered quad)
+     */
+    public float maxWidth() {
+        return Math.max(distance(0, 1), distance(3, 2));
+    }
+
+    /**
+     * Longer of the left and right edges (ordered quad)
+     */
+    public float maxHeight() {
+        return Math.max(distance(1, 2), distance(0, 3));
+    }
+
+    /**
+     * In-place affine map: p' = p * scale + offset
+     */
+    public Quad scaleAndOffset(double scale, double offsetX, double offsetY) {
+        for (int i = 0; i < SIZE; i += 2) {
+            pts[i] = (float) (pts[i] * scale + offsetX);
+            pts[i + 1] = (float) (pts[i + 1] * scale + offsetY);
+        }
+        return this;
+    }
+
+    /**
+     * Write the corners into a 4x1 CV_32FC2 Mat (e.g. homography input)
+     */
+    public void put(Mat dst) {
+        dst.put(0, 0, pts);
+    }
+
+    public void copyTo(float[] dst, int offset) {
+        System.arraycopy(pts, 0, dst, offset, SIZE);
+    }
+
+    /**
+     * Boxed points, only for legacy code paths that still need them
+     */
+    public Point[] toPoints() {
+        return new Point[] {
+            new Point(pts[0], pts[1]),
+            new Point(pts[2], pts[3]),
+            new Point(pts[4], pts[5]),
+            new Point(pts[6], pts[7])
+        };
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "Quad[(%.1f,%.1f) (%.1f,%.1f) (%.1f,%.1f) (%.1f,%.1f)]",
+                pts[0], pts[1], pts[2], pts[3], pts[4], pts[5], pts[6], pts[7]);
+    }
+}
@@ -0,0 +1,356 @@
+package com.mydocumentscanner;
+
+/**
+ * Candidate-scoring engine for document quadrilaterals.
+ *
+ * Candidates are stored as packed {@code float[8]} quads (x0,y0,...,x3,y3) in a
+ * preallocated arena. Every geometric feature (area, perimeter, aspect ratio,
+ * side parallelism, corner angles, rectangularity, centre offset) is computed
+ * exactly once when the candidate is added, and ranking reuses those values.
+ * After construction, adding and ranking candidates does not allocate.
+ *
+ * Not thread-safe: one instance per detection thread.
+ */
+public class QuadScorer {
+
+    // Per-candidate feature slots
+    public static final int F_AREA = 0;
+    public static final int F_PERIMETER = 1;
+    public static final int F_ASPECT = 2;          // average width / average height (ordered quad)
+    public static final int F_PARALLELISM = 3;     // min(opposite side ratios), 1.0 = parallelogram
+    public static final int F_MAX_CORNER_COS = 4;  // max |cos| of the interior angles, 0.0 = right angles
+    public static final int F_RECTANGULARITY = 5;  // area / (avgWidth * avgHeight)
+    public static final int F_CENTER_OFFSET = 6;   // centroid distance from frame centre, normalized 0..1
+    public static final int F_AREA_FRACTION = 7;   // area / frame area
+    public static final int F_MIN_SIDE = 8;
+    public static final int F_CONVEX = 9;          // 1.0 if convex, 0.0 otherwise
+    public static final int FEATURE_COUNT = 10;
+
+    /**
+     * Scoring weights. Scores are normalized to 0..1 per term before weighting.
+     */
+    public static class Weights {
+        public float area = 0.30f;
+        public float rectangularity = 0.20f;
+        public float angles = 0.20f;
+        public float parallelism = 0.10f;
+        public float center = 0.10f;
+        public float aspect = 0.10f;
+
+        // Area fraction that earns the full area score
+        public float fullAreaFraction = 0.5f;
+    }
+
+    /**
+     * Hard constraints; candidates failing any of them are rejected in add().
+     */
+    public static class Limits {
+        public float minAreaFraction = 0.05f;
+        public float maxAreaFraction = 0.95f;
+        public float minAspect = 0.3f;
+        public float maxAspect = 3.0f;
+        public float maxCornerCos = 0.7071f; // 45..135 degree interior angles
+        public float minSide = 0f;
+        public float minParallelism = 0f;
+        public float minRectangularity = 0f;
+        public float maxRectangularity = Float.MAX_VALUE;
+        public boolean requireConvex = true;
+
+        // Expected width/height ratio, in either orientation: a hard gate here and the
+        // aspect term of the score. Tolerance is relative (0.35 = 35%); 0 disables both
+        public float expectedAspect = 0f;
+        public float aspectTolerance = 0.35f;
+
+        /**
+         * Limits that accept any non-degenerate quad
+         */
+        public static Limits permissive() {
+            Limits l = new Limits();
+            l.minAreaFraction = 0f;
+            l.maxAreaFraction = Float.MAX_VALUE;
+            l.minAspect = 0f;
+            l.maxAspect = Float.MAX_VALUE;
+            l.maxCornerCos = 1f;
+            l.requireConvex = false;
+            return l;
+        }
+    }
+
+    public final Weights weights = new Weights();
+    public final Limits limits = new Limits();
+
+    private final int capacity;
+    private final float[] quads;
+    private final float[] features;
+    private final float[] scores;
+    private final int[] ranked;
+    private final float[] scratch = new float[8];
+    private int count = 0;
+    private int rankedCount = 0;
+
+    private float frameWidth = 1f;
+    private float frameHeight = 1f;
+
+    public QuadScorer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.quads = new float[this.capacity * 8];
+        this.features = new float[this.capacity * FEATURE_COUNT];
+        this.scores = new float[this.capacity];
+        this.ranked = new int[this.capacity];
+    }
+
+    /**
+     * Start a new frame. Clears all candidates.
+     */
+    public void reset(float frameWidth, float frameHeight) {
+        this.frameWidth = Math.max(1f, frameWidth);
+        this.frameHeight = Math.max(1f, frameHeight);
+        this.count = 0;
+        this.rankedCount = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Add a candidate quad. The points are copied and ordered TL, TR, BR, BL.
+     * @return the candidate index, or -1 if the quad was rejected or the arena is full
+     */
+    public int add(float[] quad, int offset) {
+        if (count >= capacity) {
+            return -1;
+        }
+        int base = count * 8;
+        System.arraycopy(quad, offset, quads, base, 8);
+        orderInPlace(quads, base);
+
+        int fBase = count * FEATURE_COUNT;
+        computeFeatures(quads, base, frameWidth, frameHeight, features, fBase);
+        if (!passesLimits(limits, features, fBase)) {
+            return -1;
+        }
+        scores[count] = score(features, fBase);
+        return count++;
+    }
+
+    /**
+     * Rank the current candidates and keep the best {@code k} (descending score).
+     * @return number of ranked candidates
+     */
+    public int rank(int k) {
+        k = Math.min(k, count);
+        rankedCount = 0;
+        for (int i = 0; i < count; i++) {
+            float s = scores[i];
+            if (rankedCount < k) {
+                int pos = rankedCount++;
+                while (pos > 0 && scores[ranked[pos - 1]] < s) {
+                    ranked[pos] = ranked[pos - 1];
+                    pos--;
+                }
+                ranked[pos] = i;
+            } else if (k > 0 && s > scores[ranked[k - 1]]) {
+                int pos = k - 1;
+                while (pos > 0 && scores[ranked[pos - 1]] < s) {
+                    ranked[pos] = ranked[pos - 1];
+                    pos--;
+                }
+                ranked[pos] = i;
+            }
+        }
+        return rankedCount;
+    }
+
+    /**
+     * Candidate index at position {@code rank} after rank()
+     */
+    public int rankedIndex(int rank) {
+        return ranked[rank];
+    }
+
+    public float score(int index) {
+        return scores[index];
+    }
+
+    public float feature(int index, int feature) {
+        return features[index * FEATURE_COUNT + feature];
+    }
+
+    /**
+     * Copy the ordered quad of a candidate into {@code dst}
+     */
+    public void copyQuad(int index, float[] dst, int offset) {
+        System.arraycopy(quads, index * 8, dst, offset, 8);
+    }
+
+    /**
+     * Evaluate a single quad against {@code limits} without adding it, using the
+     * frame size from the last reset(). {@code out} receives FEATURE_COUNT values.
+     */
+    public boolean evaluate(float[] quad, int offset, Limits limits, float[] out) {
+        System.arraycopy(quad, offset, scratch, 0, 8);
+        orderInPlace(scratch, 0);
+        computeFeatures(scratch, 0, frameWidth, frameHeight, out, 0);
+        return passesLimits(limits, out, 0);
+    }
+
+    private static boolean passesLimits(Limits l, float[] f, int b) {
+        float aspect = f[b + F_ASPECT];
+        float rect = f[b + F_RECTANGULARITY];
+        if (l.expectedAspect > 0f && aspectDeviation(aspect, l.expectedAspect) >= l.aspectTolerance) {
+            return false;
+        }
+        return f[b + F_AREA] > 0f
+                && f[b + F_AREA_FRACTION] >= l.minAreaFraction
+                && f[b + F_AREA_FRACTION] <= l.maxAreaFraction
+                && aspect >= l.minAspect
+                && aspect <= l.maxAspect
+                && f[b + F_MAX_CORNER_COS] <= l.maxCornerCos
+                && f[b + F_MIN_SIDE] >= l.minSide
+                && f[b + F_PARALLELISM] >= l.minParallelism
+                && rect >= l.minRectangularity
+                && rect <= l.maxRectangularity
+                && (!l.requireConvex || f[b + F_CONVEX] > 0f);
+    }
+
+    private float score(float[] f, int b) {
+        Weights w = weights;
+        float areaScore = Math.min(1f, f[b + F_AREA_FRACTION] / w.fullAreaFraction);
+        float rectScore = clamp01(1f - Math.abs(1f - f[b + F_RECTANGULARITY]));
+        float angleScore = 1f - f[b + F_MAX_CORNER_COS];
+        float centerScore = 1f - f[b + F_CENTER_OFFSET];
+        float aspectScore = 1f;
+        if (limits.expectedAspect > 0f) {
+            aspectScore = clamp01(1f - aspectDeviation(f[b + F_ASPECT], limits.expectedAspect)
+                    / limits.aspectTolerance);
+        }
+        return w.area * areaScore
+                + w.rectangularity * rectScore
+                + w.angles * angleScore
+                + w.parallelism * f[b + F_PARALLELISM]
+                + w.center * centerScore
+                + w.aspect * aspectScore;
+    }
+
+    /**
+     * Relative distance of {@code aspect} from {@code expected} in the nearer orientation:
+     * a landscape card shot in portrait has aspect ~1/expected
+     */
+    public static float aspectDeviation(float aspect, float expected) {
+        return Math.min(Math.abs(aspect - expected) / expected, Math.abs(aspect - 1f / expected) * expected);
+    }
+
+    // ========================================
+    // PRIMITIVE QUAD GEOMETRY
+    // ========================================
+
+    /**
+     * Compute all features of an ordered quad (TL, TR, BR, BL) in one pass
+     */
+    public static void computeFeatures(float[] q, int o, float frameWidth, float frameHeight,
+                                       float[] out, int ob) {
+        float top = dist(q, o, 0, 1);
+        float right = dist(q, o, 1, 2);
+        float bottom = dist(q, o, 2, 3);
+        float left = dist(q, o, 3, 0);
+
+        float area = area(q, o);
+        float avgWidth = (top + bottom) * 0.5f;
+        float avgHeight = (left + right) * 0.5f;
+
+        float maxCos = 0f;
+        int turn = 0;
+        boolean convex = true;
+        for (int i = 0; i < 4; i++) {
+            int p = o + ((i + 3) % 4) * 2;
+            int c = o + i * 2;
+            int n = o + ((i + 1) % 4) * 2;
+            float ax = q[p] - q[c], ay = q[p + 1] - q[c + 1];
+            float bx = q[n] - q[c], by = q[n + 1] - q[c + 1];
+            float la = ax * ax + ay * ay;
+            float lb = bx * bx + by * by;
+            if (la > 0f && lb > 0f) {
+                float cos = (float) Math.abs((ax * bx + ay * by) / Math.sqrt(la * lb));
+                if (cos > maxCos) maxCos = cos;
+            } else {
+                maxCos = 1f;
+            }
+            float cross = ax * by - ay * bx;
+            int sign = cross > 0f ? 1 : (cross < 0f ? -1 : 0);
+            if (sign == 0 || (turn != 0 && sign != turn)) {
+                convex = false;
+            }
+            turn = sign;
+        }
+
+        float cx = (q[o] + q[o + 2] + q[o + 4] + q[o + 6]) * 0.25f;
+        float cy = (q[o + 1] + q[o + 3] + q[o + 5] + q[o + 7]) * 0.25f;
+        float dx = cx - frameWidth * 0.5f;
+        float dy = cy - frameHeight * 0.5f;
+        float maxDist = (float) Math.sqrt(frameWidth * frameWidth + frameHeight * frameHeight) * 0.5f;
+
+        out[ob + F_AREA] = area;
+        out[ob + F_PERIMETER] = top + right + bottom + left;
+        out[ob + F_ASPECT] = avgHeight > 0f ? avgWidth / avgHeight : 0f;
+        out[ob + F_PARALLELISM] = Math.min(ratio(top, bottom), ratio(left, right));
+        out[ob + F_MAX_CORNER_COS] = maxCos;
+        out[ob + F_RECTANGULARITY] = avgWidth * avgHeight > 0f ? area / (avgWidth * avgHeight) : 0f;
+        out[ob + F_CENTER_OFFSET] = clamp01((float) Math.sqrt(dx * dx + dy * dy) / maxDist);
+        out[ob + F_AREA_FRACTION] = area / (frameWidth * frameHeight);
+        out[ob + F_MIN_SIDE] = Math.min(Math.min(top, bottom), Math.min(left, right));
+        out[ob + F_CONVEX] = convex ? 1f : 0f;
+    }
+
+    /**
+     * Shoelace area of a quad
+     */
+    public static float area(float[] q, int o) {
+        float sum = 0f;
+        for (int i = 0; i < 4; i++) {
+            int a = o + i * 2;
+            int b = o + ((i + 1) % 4) * 2;
+            sum += q[a] * q[b + 1] - q[b] * q[a + 1];
+        }
+        return Math.abs(sum) * 0.5f;
+    }
+
+    /**
+     * Order the four points as top-left, top-right, bottom-right, bottom-left
+     * using coordinate sums and differences (same rule as orderPoints).
+     */
+    public static void orderInPlace(float[] q, int o) {
+        int tl = 0, br = 0, tr = 0, bl = 0;
+        for (int i = 1; i < 4; i++) {
+            float s = q[o + i * 2] + q[o + i * 2 + 1];
+            float d = q[o + i * 2] - q[o + i * 2 + 1];
+            if (s < q[o + tl * 2] + q[o + tl * 2 + 1]) tl = i;
+            if (s > q[o + br * 2] + q[o + br * 2 + 1]) br = i;
+            if (d > q[o + tr * 2] - q[o + tr * 2 + 1]) tr = i;
+            if (d < q[o + bl * 2] - q[o + bl * 2 + 1]) bl = i;
+        }
+        float x0 = q[o + tl * 2], y0 = q[o + tl * 2 + 1];
+        float x1 = q[o + tr * 2], y1 = q[o + tr * 2 + 1];
+        float x2 = q[o + br * 2], y2 = q[o + br * 2 + 1];
+        float x3 = q[o + bl * 2], y3 = q[o + bl * 2 + 1];
+        q[o] = x0; q[o + 1] = y0;
+        q[o + 2] = x1; q[o + 3] = y1;
+        q[o + 4] = x2; q[o + 5] = y2;
+        q[o + 6] = x3; q[o + 7] = y3;
+    }
+
+    private static float dist(float[] q, int o, int i, int j) {
+        float dx = q[o + j * 2] - q[o + i * 2];
+        float dy = q[o + j * 2 + 1] - q[o + i * 2 + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static float ratio(float a, float b) {
+        float max = Math.max(a, b);
+        return max > 0f ? Math.min(a, b) / max : 0f;
+    }
+
+    private static float clamp01(float v) {
+        return v < 0f ? 0f : (v > 1f ? 1f : v);
+    }
+}
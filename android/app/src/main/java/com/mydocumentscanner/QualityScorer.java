@@ -0,0 +1,365 @@
+package com.mydocumentscanner;
+
+import androidx.annotation.Nullable;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+
+/**
+ * Capture quality metrics shared by the live camera path and the still-image modules.
+ *
+ * The image (or the bounding box of a document quad) is resampled once to a gray
+ * thumbnail whose long side is ANALYSIS_SIZE px. Sharpness is the variance of a
+ * CV_16S Laplacian computed natively; contrast, exposure, glare and edge density
+ * are then gathered in a single Java pass over the thumbnail bytes.
+ * Because the analysis size is fixed, thresholds mean the same at any resolution.
+ *
+ * Buffers and the Result are reused; score() is synchronized so one instance
+ * can be shared by a module's methods.
+ */
+public class QualityScorer {
+
+    public static final int ANALYSIS_SIZE = 256;
+    public static final int GRID_SIZE = 8;
+
+    private static final int SATURATED_LEVEL = 250;
+    private static final int BRIGHT_LEVEL = 235;
+    private static final int DARK_LEVEL = 25;
+    private static final int EDGE_GRADIENT = 48; // |gx| + |gy| on central differences
+
+    /**
+     * Thresholds; fractions are of the analysed pixels.
+     */
+    public static class Thresholds {
+        public double minSharpness = 100.0;       // Laplacian variance at ANALYSIS_SIZE
+        public float glareCellFraction = 0.25f;   // saturated share of one grid cell that counts as a blob
+        public float glareMinFraction = 0.005f;   // ignore a handful of saturated pixels
+        public float overExposedFraction = 0.35f;
+        public float underExposedFraction = 0.35f;
+        public int minMeanLuma = 50;
+    }
+
+    /**
+     * Reusable result
+     */
+    public static class Result {
+        public int width;               // analysed thumbnail size
+        public int height;
+        public int samples;
+        public double sharpness;        // Laplacian variance
+        public float meanLuma;
+        public float contrast;          // luma standard deviation
+        public float saturatedFraction;
+        public float brightFraction;
+        public float darkFraction;
+        public boolean glare;
+        // Worst glare cell, 0..1 across the analysed box (valid when glare)
+        public float glareX;
+        public float glareY;
+        public float glareCellFraction;
+        public boolean overExposed;
+        public boolean underExposed;
+        public float edgeDensity;
+        public long micros;
+
+        public boolean isBlurry(Thresholds t) {
+            return sharpness < t.minSharpness;
+        }
+
+        /**
+         * Short user-facing lighting hint, or null when lighting is fine
+         */
+        @Nullable
+        public String feedbackMessage() {
+            if (glare) {
+                return "Glare detected " + regionName(glareX, glareY) + ". Tilt the document slightly.";
+            }
+            if (overExposed) {
+                return "Too bright. Move away from direct light.";
+            }
+            if (underExposed) {
+                return "Too dark. Move to a brighter area.";
+            }
+            return null;
+        }
+
+        private static String regionName(float x, float y) {
+            String vertical = y < 0.33f ? "top" : (y > 0.66f ? "bottom" : "");
+            String horizontal = x < 0.33f ? "left" : (x > 0.66f ? "right" : "");
+            if (vertical.isEmpty() && horizontal.isEmpty()) {
+                return "in the centre";
+            }
+            if (vertical.isEmpty() || horizontal.isEmpty()) {
+                return "near the " + vertical + horizontal;
+            }
+            return "near the " + vertical + "-" + horizontal;
+        }
+    }
+
+    public final Thresholds thresholds = new Thresholds();
+
+    // Allocated on first use so the scorer can be created before OpenCV is loaded
+    private Mat small;
+    private Mat gray;
+    private Mat laplacian;
+    private MatOfDouble mean;
+    private MatOfDouble stddev;
+    private byte[] pixels = new byte[0];
+
+    private final int[] histogram = new int[256];
+    private final int[] cellSaturated = new int[GRID_SIZE * GRID_SIZE];
+    private final int[] cellTotal = new int[GRID_SIZE * GRID_SIZE];
+    private final float[] localQuad = new float[8];
+
+    /**
+     * Score the whole image
+     */
+    public Result score(Mat image, Result out) {
+        return score(image, null, out);
+    }
+
+    /**
+     * Score the bounding box of {@code quad} (image coordinates); histogram and glare
+     * only count pixels inside the quad. A null quad scores the whole image.
+     */
+    public synchronized Result score(Mat image, @Nullable Quad quad, Result out) {
+        long start = System.nanoTime();
+
+        int x0 = 0, y0 = 0, x1 = image.cols(), y1 = image.rows();
+        if (quad != null) {
+            float[] p = quad.pts;
+            x0 = Math.max(0, (int) Math.floor(Math.min(Math.min(p[0], p[2]), Math.min(p[4], p[6]))));
+            y0 = Math.max(0, (int) Math.floor(Math.min(Math.min(p[1], p[3]), Math.min(p[5], p[7]))));
+            x1 = Math.min(image.cols(), (int) Math.ceil(Math.max(Math.max(p[0], p[2]), Math.max(p[4], p[6]))));
+            y1 = Math.min(image.rows(), (int) Math.ceil(Math.max(Math.max(p[1], p[3]), Math.max(p[5], p[7]))));
+        }
+        if (x1 - x0 < 8 || y1 - y0 < 8) {
+            clear(out);
+            out.micros = (System.nanoTime() - start) / 1000;
+            return out;
+        }
+
+        // 1. One resample to the fixed analysis size, then gray
+        double scale = resampleGray(image, x0, y0, x1, y1);
+
+        // 2. Sharpness natively
+        out.sharpness = laplacianVariance();
+
+        // 3. Everything else in one pass over the thumbnail
+        if (quad != null) {
+            for (int i = 0; i < 8; i += 2) {
+                localQuad[i] = (float) ((quad.pts[i] - x0) * scale);
+                localQuad[i + 1] = (float) ((quad.pts[i + 1] - y0) * scale);
+            }
+        }
+        analyzePixels(quad != null, out);
+        out.micros = (System.nanoTime() - start) / 1000;
+        return out;
+    }
+
+    /**
+     * Sharpness only (Laplacian variance at ANALYSIS_SIZE), for callers that do not
+     * need the other metrics. Comparable with Result.sharpness and Thresholds.minSharpness.
+     */
+    public synchronized double sharpness(Mat image) {
+        if (image.cols() < 8 || image.rows() < 8) {
+            return 0;
+        }
+        resampleGray(image, 0, 0, image.cols(), image.rows());
+        return laplacianVariance();
+    }
+
+    private double resampleGray(Mat image, int x0, int y0, int x1, int y1) {
+        if (small == null) {
+            small = new Mat();
+            gray = new Mat();
+            laplacian = new Mat();
+            mean = new MatOfDouble();
+            stddev = new MatOfDouble();
+        }
+
+        double scale = (double) ANALYSIS_SIZE / Math.max(x1 - x0, y1 - y0);
+        Mat view = image.submat(y0, y1, x0, x1);
+        try {
+            int interpolation = scale < 1.0 ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR;
+            Imgproc.resize(view, small, new Size(), scale, scale, interpolation);
+        } finally {
+            view.release();
+        }
+        if (small.channels() == 3) {
+            Imgproc.cvtColor(small, gray, Imgproc.COLOR_BGR2GRAY);
+        } else if (small.channels() == 4) {
+            Imgproc.cvtColor(small, gray, Imgproc.COLOR_RGBA2GRAY);
+        } else {
+            small.copyTo(gray);
+        }
+        return scale;
+    }
+
+    private double laplacianVariance() {
+        Imgproc.Laplacian(gray, laplacian, CvType.CV_16S);
+        Core.meanStdDev(laplacian, mean, stddev);
+        double sd = stddev.get(0, 0)[0];
+        return sd * sd;
+    }
+
+    private void analyzePixels(boolean useQuad, Result out) {
+        int w = gray.cols();
+        int h = gray.rows();
+        int total = w * h;
+        if (pixels.length < total) {
+            pixels = new byte[total];
+        }
+        gray.get(0, 0, pixels);
+
+        Arrays.fill(histogram, 0);
+        Arrays.fill(cellSaturated, 0);
+        Arrays.fill(cellTotal, 0);
+
+        int samples = 0;
+        long sum = 0;
+        long sumSq = 0;
+        int edges = 0;
+        int gradientSamples = 0;
+
+        for (int y = 0; y < h; y++) {
+            int row = y * w;
+            int cellY = y * GRID_SIZE / h;
+            for (int x = 0; x < w; x++) {
+                if (useQuad && !inside(localQuad, x + 0.5f, y + 0.5f)) {
+                    continue;
+                }
+                int v = pixels[row + x] & 0xFF;
+                histogram[v]++;
+                sum += v;
+                sumSq += v * v;
+                samples++;
+
+                int cell = cellY * GRID_SIZE + x * GRID_SIZE / w;
+                cellTotal[cell]++;
+                if (v >= SATURATED_LEVEL) {
+                    cellSaturated[cell]++;
+                }
+
+                if (x > 0 && x < w - 1 && y > 0 && y < h - 1) {
+                    int gx = (pixels[row + x + 1] & 0xFF) - (pixels[row + x - 1] & 0xFF);
+                    int gy = (pixels[row + w + x] & 0xFF) - (pixels[row - w + x] & 0xFF);
+                    gradientSamples++;
+                    if (Math.abs(gx) + Math.abs(gy) >= EDGE_GRADIENT) {
+                        edges++;
+                    }
+                }
+            }
+        }
+
+        out.width = w;
+        out.height = h;
+        out.samples = samples;
+        out.glare = false;
+        out.glareX = 0f;
+        out.glareY = 0f;
+        out.glareCellFraction = 0f;
+        if (samples == 0) {
+            clearStats(out);
+            return;
+        }
+
+        int saturated = 0, bright = 0, dark = 0;
+        for (int v = SATURATED_LEVEL; v < 256; v++) saturated += histogram[v];
+        for (int v = BRIGHT_LEVEL; v < 256; v++) bright += histogram[v];
+        for (int v = 0; v <= DARK_LEVEL; v++) dark += histogram[v];
+
+        double meanLuma = (double) sum / samples;
+        out.meanLuma = (float) meanLuma;
+        out.contrast = (float) Math.sqrt(Math.max(0, (double) sumSq / samples - meanLuma * meanLuma));
+        out.saturatedFraction = (float) saturated / samples;
+        out.brightFraction = (float) bright / samples;
+        out.darkFraction = (float) dark / samples;
+        out.edgeDensity = gradientSamples > 0 ? (float) edges / gradientSamples : 0f;
+
+        // Worst glare cell
+        int worst = -1;
+        float worstFraction = 0f;
+        for (int c = 0; c < cellTotal.length; c++) {
+            if (cellTotal[c] == 0) continue;
+            float f = (float) cellSaturated[c] / cellTotal[c];
+            if (f > worstFraction) {
+                worstFraction = f;
+                worst = c;
+            }
+        }
+        Thresholds t = thresholds;
+        if (worst >= 0 && worstFraction >= t.glareCellFraction && out.saturatedFraction >= t.glareMinFraction) {
+            out.glare = true;
+            out.glareCellFraction = worstFraction;
+            out.glareX = ((worst % GRID_SIZE) + 0.5f) / GRID_SIZE;
+            out.glareY = ((worst / GRID_SIZE) + 0.5f) / GRID_SIZE;
+        }
+        out.overExposed = out.brightFraction >= t.overExposedFraction;
+        out.underExposed = out.darkFraction >= t.underExposedFraction || out.meanLuma < t.minMeanLuma;
+    }
+
+    private static void clear(Result out) {
+        out.width = 0;
+        out.height = 0;
+        out.samples = 0;
+        out.sharpness = 0;
+        out.glare = false;
+        out.glareX = 0f;
+        out.glareY = 0f;
+        out.glareCellFraction = 0f;
+        clearStats(out);
+    }
+
+    private static void clearStats(Result out) {
+        out.meanLuma = 0f;
+        out.contrast = 0f;
+        out.saturatedFraction = 0f;
+        out.brightFraction = 0f;
+        out.darkFraction = 0f;
+        out.edgeDensity = 0f;
+        out.overExposed = false;
+        out.underExposed = false;
+    }
+
+    /**
+     * Point inside a convex quad (either winding)
+     */
+    private static boolean inside(float[] p, float x, float y) {
+        int sign = 0;
+        for (int i = 0; i < 4; i++) {
+            int a = i * 2;
+            int b = ((i + 1) % 4) * 2;
+            float cross = (p[b] - p[a]) * (y - p[a + 1]) - (p[b + 1] - p[a + 1]) * (x - p[a]);
+            int s = cross > 0 ? 1 : (cross < 0 ? -1 : 0);
+            if (s == 0) continue;
+            if (sign == 0) {
+                sign = s;
+            } else if (s != sign) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Free native buffers (re-allocated if the scorer is used again)
+     */
+    public synchronized void release() {
+        if (small == null) {
+            return;
+        }
+        small.release();
+        gray.release();
+        laplacian.release();
+        mean.release();
+        stddev.release();
+        small = null;
+    }
+}
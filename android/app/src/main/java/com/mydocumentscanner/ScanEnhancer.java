@@ -0,0 +1,533 @@
+package com.mydocumentscanner;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Post-capture "scan look" filters for a warped document crop.
+ *
+ * Anything that needs neighbourhood context (paper background estimate, black/white
+ * points, B&W threshold) is computed once on a copy with a 512px long side. The
+ * full-size pass is then pointwise: divide by the upsampled background in 8-bit,
+ * and apply 256-entry LUTs. It runs in horizontal tiles on a worker pool, writing
+ * into disjoint rows of one output Mat. Jobs can be cancelled between tiles.
+ *
+ * Input is 8-bit gray or BGR (as decoded by Imgcodecs).
+ */
+public class ScanEnhancer {
+    private static final String TAG = "ScanEnhancer";
+
+    public enum Filter {
+        SHADOW_REMOVAL,   // flatten lighting, keep colour
+        BLACK_AND_WHITE,  // flatten lighting, global threshold
+        GRAYSCALE,        // gray with black/white point stretch
+        COLOR_BOOST;      // per-channel stretch and saturation boost
+
+        @Nullable
+        public static Filter fromName(@Nullable String name) {
+            if (name != null) {
+                String normalized = name.replace('-', '_').toUpperCase(Locale.US);
+                for (Filter filter : values()) {
+                    if (filter.name().equals(normalized)) {
+                        return filter;
+                    }
+                }
+                if ("BW".equals(normalized)) {
+                    return BLACK_AND_WHITE;
+                }
+            }
+            return null;
+        }
+    }
+
+    public interface Callback {
+        void onComplete(Mat result, long micros);
+
+        void onCancelled();
+
+        void onError(Exception e);
+    }
+
+    /**
+     * Handle of an enhancement; can be created ahead of enhance() so callers can
+     * publish it before the work starts. Queued tiles of a cancelled job return at once.
+     */
+    public static final class Job {
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        private void checkCancelled() {
+            if (cancelled.get()) {
+                throw new CancellationException();
+            }
+        }
+    }
+
+    private static final int ANALYSIS_SIZE = 512;
+    private static final int TILE_ROWS = 128;
+    private static final int BACKGROUND_KERNEL = 15;     // at ANALYSIS_SIZE, wider than text strokes
+    private static final double BLACK_PERCENTILE = 0.01;
+    private static final double WHITE_PERCENTILE = 0.90; // most of a page is paper
+    private static final int SATURATION_BOOST_PERCENT = 140;
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(r -> new Thread(r, "ScanEnhancer"));
+    private final ExecutorService workers;
+
+    public ScanEnhancer() {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ScanEnhancerWorker");
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    /**
+     * Enhance {@code source} asynchronously. The enhancer takes ownership of
+     * {@code source} and releases it; the callback owns the result Mat.
+     */
+    public Job enhance(Mat source, Filter filter, Callback callback) {
+        Job job = new Job();
+        submit(new Task(job, source, null, filter, callback));
+        return job;
+    }
+
+    /**
+     * Decode {@code path} on the enhancer thread, then enhance it as {@link #enhance}
+     */
+    public void enhanceFile(Job job, String path, Filter filter, Callback callback) {
+        submit(new Task(job, null, path, filter, callback));
+    }
+
+    private void submit(Task task) {
+        try {
+            coordinator.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.abandon();
+        }
+    }
+
+    /**
+     * One enhancement on the coordinator thread
+     */
+    private final class Task implements Runnable {
+        final Job job;
+        @Nullable Mat source;
+        @Nullable final String path;
+        final Filter filter;
+        final Callback callback;
+
+        Task(Job job, @Nullable Mat source, @Nullable String path, Filter filter, Callback callback) {
+            this.job = job;
+            this.source = source;
+            this.path = path;
+            this.filter = filter;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            Mat result = null;
+            Params params = null;
+            try {
+                job.checkCancelled();
+                if (source == null) {
+                    source = Imgcodecs.imread(path, Imgcodecs.IMREAD_COLOR);
+                    if (source.empty()) {
+                        throw new IllegalArgumentException("Unable to read image: " + path);
+                    }
+                }
+                params = analyze(source, filter);
+                result = new Mat(source.rows(), source.cols(), outputType(source, filter));
+                runTiles(job, source, result, params);
+                job.checkCancelled();
+
+                long micros = (System.nanoTime() - start) / 1000;
+                Log.d(TAG, String.format(Locale.US, "✨ %s on %dx%d in %dms",
+                        filter, source.cols(), source.rows(), micros / 1000));
+                Mat done = result;
+                result = null;
+                callback.onComplete(done, micros);
+            } catch (CancellationException e) {
+                Log.d(TAG, "Enhancement cancelled");
+                callback.onCancelled();
+            } catch (Exception e) {
+                Log.e(TAG, "Error enhancing scan", e);
+                callback.onError(e);
+            } finally {
+                // runTiles has waited for every tile, nothing reads these any more
+                if (source != null) source.release();
+                if (result != null) result.release();
+                if (params != null) params.release();
+            }
+        }
+
+        /**
+         * Never ran (enhancer shut down): free the input and report the cancellation
+         */
+        void abandon() {
+            if (source != null) source.release();
+            callback.onCancelled();
+        }
+    }
+
+    /**
+     * Global state of one job, computed on the small copy
+     */
+    private static final class Params {
+        Filter filter;
+        Mat background;        // small gray paper estimate (null when unused)
+        Mat lut;               // 1x256 CV_8U, applied after the background divide
+        Mat lut3;              // same LUT on 3 channels (colour output)
+
+        void release() {
+            if (background != null) background.release();
+            if (lut != null) lut.release();
+            if (lut3 != null) lut3.release();
+        }
+    }
+
+    private Params analyze(Mat source, Filter filter) {
+        Params params = new Params();
+        params.filter = filter;
+
+        Mat small = new Mat();
+        Mat smallGray = new Mat();
+        Mat normalized = new Mat();
+        try {
+            double scale = Math.min(1.0, (double) ANALYSIS_SIZE / Math.max(source.cols(), source.rows()));
+            Imgproc.resize(source, small, new Size(), scale, scale, Imgproc.INTER_AREA);
+            toGray(small, smallGray);
+
+            Mat statsSource = smallGray;
+            if (filter == Filter.SHADOW_REMOVAL || filter == Filter.BLACK_AND_WHITE) {
+                // Paper estimate: closing removes dark strokes, blur smooths the seams
+                params.background = new Mat();
+                Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE,
+                        new Size(BACKGROUND_KERNEL, BACKGROUND_KERNEL));
+                Imgproc.morphologyEx(smallGray, params.background, Imgproc.MORPH_CLOSE, kernel);
+                kernel.release();
+                Imgproc.GaussianBlur(params.background, params.background, new Size(0, 0), BACKGROUND_KERNEL / 2.0);
+                Core.max(params.background, new Scalar(1), params.background);
+                Core.divide(smallGray, params.background, normalized, 255);
+                statsSource = normalized;
+            }
+
+            int[] histogram = histogram(statsSource);
+            int total = statsSource.rows() * statsSource.cols();
+            byte[] table = new byte[256];
+            if (filter == Filter.BLACK_AND_WHITE) {
+                int threshold = otsu(histogram, total);
+                for (int v = 0; v < 256; v++) {
+                    table[v] = (byte) (v > threshold ? 255 : 0);
+                }
+            } else if (filter == Filter.COLOR_BOOST) {
+                // Gentle stretch; the saturation step does the rest
+                fillStretch(table, percentile(histogram, total, 0.005), percentile(histogram, total, 0.995));
+            } else {
+                fillStretch(table, percentile(histogram, total, BLACK_PERCENTILE),
+                        percentile(histogram, total, WHITE_PERCENTILE));
+            }
+            params.lut = new Mat(1, 256, CvType.CV_8U);
+            params.lut.put(0, 0, table);
+            if (source.channels() == 3 && filter != Filter.BLACK_AND_WHITE && filter != Filter.GRAYSCALE) {
+                params.lut3 = new Mat();
+                List<Mat> lutPlanes = new ArrayList<>();
+                lutPlanes.add(params.lut);
+                lutPlanes.add(params.lut);
+                lutPlanes.add(params.lut);
+                Core.merge(lutPlanes, params.lut3);
+            }
+            return params;
+        } catch (RuntimeException e) {
+            params.release();
+            throw e;
+        } finally {
+            small.release();
+            smallGray.release();
+            normalized.release();
+        }
+    }
+
+    private void runTiles(Job job, Mat source, Mat result, Params params) throws Exception {
+        int rows = source.rows();
+        List<Future<?>> futures = new ArrayList<>();
+        boolean finished = false;
+        try {
+            for (int y0 = 0; y0 < rows; y0 += TILE_ROWS) {
+                final int top = y0;
+                final int bottom = Math.min(rows, y0 + TILE_ROWS);
+                futures.add(workers.submit(() -> {
+                    job.checkCancelled();
+                    processTile(source, result, params, top, bottom);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException) {
+                        throw (CancellationException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                // Failed, cancelled or interrupted: skip the queued tiles, then wait out the
+                // running ones before the caller releases the Mats they use
+                job.cancel();
+                awaitTiles(futures);
+            }
+        }
+    }
+
+    /**
+     * Wait until no tile of {@code futures} is running, ignoring interrupts and tile failures
+     */
+    private static void awaitTiles(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pointwise processing of rows [top, bottom) into the matching rows of {@code result}
+     */
+    private static void processTile(Mat source, Mat result, Params params, int top, int bottom) {
+        Mat src = source.rowRange(top, bottom);
+        Mat dst = result.rowRange(top, bottom);
+        Mat gray = new Mat();
+        Mat background = new Mat();
+        Mat work = new Mat();
+        try {
+            switch (params.filter) {
+                case SHADOW_REMOVAL:
+                case BLACK_AND_WHITE: {
+                    tileBackground(params.background, source, top, bottom, background);
+                    boolean colour = params.filter == Filter.SHADOW_REMOVAL && src.channels() == 3;
+                    if (colour) {
+                        Imgproc.cvtColor(background, work, Imgproc.COLOR_GRAY2BGR);
+                        // 8-bit divide with saturation: src * 255 / background
+                        Core.divide(src, work, work, 255);
+                        Core.LUT(work, params.lut3, dst);
+                    } else {
+                        toGray(src, gray);
+                        Core.divide(gray, background, work, 255);
+                        Core.LUT(work, params.lut, dst);
+                    }
+                    break;
+                }
+                case GRAYSCALE:
+                    toGray(src, gray);
+                    Core.LUT(gray, params.lut, dst);
+                    break;
+                case COLOR_BOOST:
+                    if (src.channels() == 3) {
+                        Core.LUT(src, params.lut3, work);
+                        Imgproc.cvtColor(work, gray, Imgproc.COLOR_BGR2GRAY);
+                        boostSaturation(work, gray, dst);
+                    } else {
+                        Core.LUT(src, params.lut, dst);
+                    }
+                    break;
+            }
+        } finally {
+            src.release();
+            dst.release();
+            gray.release();
+            background.release();
+            work.release();
+        }
+    }
+
+    /**
+     * gray + (c - gray) * SATURATION_BOOST_PERCENT / 100 per channel, in integer math, saturating
+     */
+    private static void boostSaturation(Mat bgr, Mat gray, Mat dst) {
+        int pixels = gray.rows() * gray.cols();
+        byte[] colour = new byte[pixels * 3];
+        byte[] luma = new byte[pixels];
+        bgr.get(0, 0, colour);
+        gray.get(0, 0, luma);
+        for (int i = 0, c = 0; i < pixels; i++) {
+            int g = luma[i] & 0xFF;
+            for (int k = 0; k < 3; k++, c++) {
+                int v = g + ((colour[c] & 0xFF) - g) * SATURATION_BOOST_PERCENT / 100;
+                colour[c] = (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+            }
+        }
+        dst.put(0, 0, colour);
+    }
+
+    /**
+     * Upsample the rows of the small background that cover [top, bottom) of the source
+     */
+    private static void tileBackground(Mat smallBackground, Mat source, int top, int bottom, Mat out) {
+        double scaleY = (double) smallBackground.rows() / source.rows();
+        // One small row of context on each side keeps interpolation continuous across tiles
+        int sTop = Math.max(0, (int) Math.floor(top * scaleY) - 1);
+        int sBottom = Math.min(smallBackground.rows(), (int) Math.ceil(bottom * scaleY) + 1);
+        Mat band = smallBackground.rowRange(sTop, sBottom);
+        Mat upsampled = new Mat();
+        try {
+            int fullTop = (int) Math.round(sTop / scaleY);
+            int fullBottom = Math.min(source.rows(), (int) Math.round(sBottom / scaleY));
+            Imgproc.resize(band, upsampled, new Size(source.cols(), Math.max(1, fullBottom - fullTop)),
+                    0, 0, Imgproc.INTER_LINEAR);
+            int from = Math.min(upsampled.rows() - 1, Math.max(0, top - fullTop));
+            int to = Math.min(upsampled.rows(), from + (bottom - top));
+            Mat rows = upsampled.rowRange(from, to);
+            if (rows.rows() == bottom - top) {
+                rows.copyTo(out);
+            } else {
+                // Rounding at the bottom edge: stretch to the tile height
+                Imgproc.resize(rows, out, new Size(source.cols(), bottom - top), 0, 0, Imgproc.INTER_LINEAR);
+            }
+            rows.release();
+        } finally {
+            band.release();
+            upsampled.release();
+        }
+    }
+
+    private static int outputType(Mat source, Filter filter) {
+        boolean colour = source.channels() == 3 && (filter == Filter.SHADOW_REMOVAL || filter == Filter.COLOR_BOOST);
+        return colour ? CvType.CV_8UC3 : CvType.CV_8UC1;
+    }
+
+    private static void toGray(Mat src, Mat dst) {
+        if (src.channels() == 3) {
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_BGR2GRAY);
+        } else if (src.channels() == 4) {
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_BGRA2GRAY);
+        } else {
+            src.copyTo(dst);
+        }
+    }
+
+    private static int[] histogram(Mat gray) {
+        int total = gray.rows() * gray.cols();
+        byte[] pixels = new byte[total];
+        gray.get(0, 0, pixels);
+        int[] histogram = new int[256];
+        for (int i = 0; i < total; i++) {
+            histogram[pixels[i] & 0xFF]++;
+        }
+        return histogram;
+    }
+
+    private static int percentile(int[] histogram, int total, double fraction) {
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int v = 0; v < 256; v++) {
+            seen += histogram[v];
+            if (seen >= target) {
+                return v;
+            }
+        }
+        return 255;
+    }
+
+    private static int otsu(int[] histogram, int total) {
+        long sum = 0;
+        for (int v = 0; v < 256; v++) {
+            sum += (long) v * histogram[v];
+        }
+        long sumBelow = 0;
+        long weightBelow = 0;
+        double best = -1;
+        int threshold = 127;
+        for (int t = 0; t < 256; t++) {
+            weightBelow += histogram[t];
+            if (weightBelow == 0) continue;
+            long weightAbove = total - weightBelow;
+            if (weightAbove == 0) break;
+            sumBelow += (long) t * histogram[t];
+            double meanBelow = (double) sumBelow / weightBelow;
+            double meanAbove = (double) (sum - sumBelow) / weightAbove;
+            double between = (double) weightBelow * weightAbove * (meanBelow - meanAbove) * (meanBelow - meanAbove);
+            if (between > best) {
+                best = between;
+                threshold = t;
+            }
+        }
+        return threshold;
+    }
+
+    /**
+     * Linear stretch of [black, white] to [0, 255] in integer math
+     */
+    private static void fillStretch(byte[] table, int black, int white) {
+        if (white <= black) {
+            black = 0;
+            white = 255;
+        }
+        int range = white - black;
+        for (int v = 0; v < 256; v++) {
+            int mapped = (v - black) * 255 / range;
+            table[v] = (byte) Math.max(0, Math.min(255, mapped));
+        }
+    }
+
+    /**
+     * Stop both executors. Queued jobs are reported cancelled; running jobs stop after
+     * their current tiles.
+     */
+    public void shutdown() {
+        for (Runnable queued : coordinator.shutdownNow()) {
+            if (queued instanceof Task) {
+                ((Task) queued).abandon();
+            }
+        }
+        for (Runnable queued : workers.shutdownNow()) {
+            // Never started: completes the future a coordinator may be waiting on
+            if (queued instanceof Future) {
+                ((Future<?>) queued).cancel(false);
+            }
+        }
+    }
+}
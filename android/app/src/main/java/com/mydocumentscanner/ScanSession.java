@@ -0,0 +1,340 @@
+package com.mydocumentscanner;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Multi-page scan kept on disk.
+ *
+ * Each page is an encoded image file in the session directory; only small decoded
+ * thumbnails are held in memory, in a byte-bounded LruCache. PDF export streams pages
+ * one at a time through JpegPdfWriter: JPEG pages are embedded without decoding, other
+ * formats are re-encoded to JPEG one page at a time. The EXIF orientation of imported
+ * JPEGs is honoured: page sizes and thumbnails are upright, and the PDF page turns the
+ * embedded image instead of re-encoding it.
+ */
+public class ScanSession {
+    private static final String TAG = "ScanSession";
+
+    public static final int THUMBNAIL_SIZE = 256;
+    private static final int THUMBNAIL_CACHE_BYTES = 8 * 1024 * 1024;
+    private static final int TRANSCODE_JPEG_QUALITY = 90;      // non-JPEG pages in PDF export
+    private static final int A4_WIDTH_PT = 595;
+    private static final int A4_HEIGHT_PT = 842;
+
+    public static final class Page {
+        public final File file;
+        public final int width;         // upright (after EXIF orientation)
+        public final int height;
+        public final int orientation;   // EXIF 1..8 of a JPEG page, 1 otherwise
+
+        Page(File file, int width, int height, int orientation) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.orientation = orientation;
+        }
+    }
+
+    public final String id;
+    private final File directory;
+    private final List<Page> pages = new ArrayList<>();
+    private int nextFileIndex = 0;
+
+    private final LruCache<String, Bitmap> thumbnails = new LruCache<String, Bitmap>(THUMBNAIL_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    public ScanSession(String id, File directory) {
+        this.id = id;
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    public synchronized List<Page> getPages() {
+        return new ArrayList<>(pages);
+    }
+
+    /**
+     * Copy an image file into the session; the caller keeps {@code source}
+     */
+    public synchronized Page addPage(File source) throws IOException {
+        File target = newPageFile(extensionOf(source.getName()));
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            byte[] chunk = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                out.write(chunk, 0, read);
+            }
+        } catch (IOException e) {
+            target.delete();
+            throw e;
+        }
+        return appendPage(target);
+    }
+
+    /**
+     * Write already encoded image bytes (e.g. a decoded Base64 capture) as a new page
+     */
+    public synchronized Page addPage(byte[] encoded, String extension) throws IOException {
+        File target = newPageFile(extension);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            out.write(encoded);
+        }
+        return appendPage(target);
+    }
+
+    public synchronized void removePage(int index) {
+        Page page = pages.remove(index);
+        thumbnails.remove(page.file.getName());
+        if (!page.file.delete()) {
+            Log.w(TAG, "Could not delete page file " + page.file.getName());
+        }
+    }
+
+    public synchronized void movePage(int from, int to) {
+        Page page = pages.remove(from);
+        pages.add(Math.max(0, Math.min(to, pages.size())), page);
+    }
+
+    /**
+     * Decoded thumbnail of a page (long side about THUMBNAIL_SIZE), cached
+     */
+    @Nullable
+    public synchronized Bitmap getThumbnail(int index) {
+        Page page = pages.get(index);
+        String key = page.file.getName();
+        Bitmap thumbnail = thumbnails.get(key);
+        if (thumbnail == null) {
+            thumbnail = decodeSubsampled(page, THUMBNAIL_SIZE);
+            if (thumbnail != null) {
+                thumbnails.put(key, thumbnail);
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Export all pages to {@code output}. Page size is A4 (image fitted and centred) or,
+     * when {@code fitToImage} is set, the image aspect with an A4-sized long side.
+     */
+    public void exportPdf(File output, boolean fitToImage) throws IOException {
+        List<Page> snapshot = getPages();
+        if (snapshot.isEmpty()) {
+            throw new IOException("Session has no pages");
+        }
+
+        long start = System.nanoTime();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+            JpegPdfWriter writer = new JpegPdfWriter(out);
+            for (int i = 0; i < snapshot.size(); i++) {
+                Page page = snapshot.get(i);
+                JpegPdfWriter.JpegInfo info = JpegPdfWriter.readJpegInfo(page.file);
+                if (info != null) {
+                    int[] size = pageSize(info.displayWidth(), info.displayHeight(), fitToImage);
+                    writer.addPage(page.file, info, size[0], size[1]);
+                } else {
+                    byte[] jpeg = transcodeToJpeg(page);
+                    info = JpegPdfWriter.readJpegInfo(new ByteArrayInputStream(jpeg));
+                    if (info == null) {
+                        throw new IOException("Cannot encode page " + (i + 1));
+                    }
+                    int[] size = pageSize(info.width, info.height, fitToImage);
+                    writer.addPage(new ByteArrayInputStream(jpeg), jpeg.length, info, size[0], size[1]);
+                }
+            }
+            writer.finish();
+        } catch (IOException | RuntimeException e) {
+            output.delete();
+            throw e;
+        }
+        Log.d(TAG, String.format(Locale.US, "📄 Exported %d pages to %s (%d bytes) in %dms",
+                snapshot.size(), output.getName(), output.length(), (System.nanoTime() - start) / 1000000));
+    }
+
+    /**
+     * { width, height } in points for an image of the given pixel size
+     */
+    private static int[] pageSize(int imageWidth, int imageHeight, boolean fitToImage) {
+        double imageAspect = (double) imageWidth / imageHeight;
+        if (fitToImage) {
+            return imageAspect >= 1
+                    ? new int[] { A4_HEIGHT_PT, (int) Math.round(A4_HEIGHT_PT / imageAspect) }
+                    : new int[] { (int) Math.round(A4_HEIGHT_PT * imageAspect), A4_HEIGHT_PT };
+        }
+        return imageAspect > 1
+                ? new int[] { A4_HEIGHT_PT, A4_WIDTH_PT }
+                : new int[] { A4_WIDTH_PT, A4_HEIGHT_PT };
+    }
+
+    /**
+     * Re-encode a PNG / WebP page as JPEG (gray stays gray) for DCTDecode embedding
+     */
+    private static byte[] transcodeToJpeg(Page page) throws IOException {
+        Mat image = Imgcodecs.imread(page.file.getAbsolutePath(), Imgcodecs.IMREAD_ANYCOLOR);
+        MatOfByte buffer = new MatOfByte();
+        MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, TRANSCODE_JPEG_QUALITY);
+        try {
+            if (image.empty() || !Imgcodecs.imencode(".jpg", image, buffer, params)) {
+                throw new IOException("Cannot decode page " + page.file.getName());
+            }
+            return buffer.toArray();
+        } finally {
+            image.release();
+            buffer.release();
+            params.release();
+        }
+    }
+
+    /**
+     * Drop thumbnails and delete the session directory
+     */
+    public synchronized void delete() {
+        thumbnails.evictAll();
+        pages.clear();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Could not delete " + file.getName());
+                }
+            }
+        }
+        if (!directory.delete()) {
+            Log.w(TAG, "Could not delete session directory " + directory);
+        }
+    }
+
+    /**
+     * Drop cached thumbnails; they are decoded again from the page files on demand.
+     * LruCache is thread-safe, so this does not wait for page or PDF work on the session.
+     */
+    public void trimMemory() {
+        thumbnails.evictAll();
+    }
+
+    private Page appendPage(File file) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            file.delete();
+            throw new IOException("Not a decodable image");
+        }
+        // Stored pixels are turned by the EXIF orientation, if any
+        JpegPdfWriter.JpegInfo jpeg = "image/jpeg".equals(bounds.outMimeType) ? JpegPdfWriter.readJpegInfo(file) : null;
+        int orientation = jpeg != null ? jpeg.orientation : 1;
+        Page page = orientation >= 5
+                ? new Page(file, bounds.outHeight, bounds.outWidth, orientation)
+                : new Page(file, bounds.outWidth, bounds.outHeight, orientation);
+        pages.add(page);
+        Log.d(TAG, "➕ Session " + id + " page " + pages.size() + ": " + file.getName()
+                + " (" + page.width + "x" + page.height + ")");
+        return page;
+    }
+
+    private File newPageFile(String extension) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create session directory " + directory);
+        }
+        return new File(directory, String.format(Locale.US, "page_%04d%s", nextFileIndex++, extension));
+    }
+
+    /**
+     * Decode with the largest power-of-two subsampling that keeps the long side >= maxSide
+     */
+    @Nullable
+    private static Bitmap decodeSubsampled(Page page, int maxSide) {
+        int sampleSize = 1;
+        int longSide = Math.max(page.width, page.height);
+        while (longSide / (sampleSize * 2) >= maxSide) {
+            sampleSize *= 2;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded = BitmapFactory.decodeFile(page.file.getAbsolutePath(), options);
+        if (decoded == null || page.orientation == 1) {
+            return decoded;
+        }
+        Bitmap upright = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(),
+                orientationMatrix(page.orientation), true);
+        if (upright != decoded) {
+            decoded.recycle();
+        }
+        return upright;
+    }
+
+    /**
+     * Matrix that turns stored pixels upright for EXIF orientation 2..8
+     */
+    private static Matrix orientationMatrix(int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case 2:
+                matrix.setScale(-1, 1);
+                break;
+            case 3:
+                matrix.setRotate(180);
+                break;
+            case 4:
+                matrix.setScale(1, -1);
+                break;
+            case 5:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case 6:
+                matrix.setRotate(90);
+                break;
+            case 7:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case 8:
+                matrix.setRotate(-90);
+                break;
+            default:
+                break;
+        }
+        return matrix;
+    }
+
+    private static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot).toLowerCase(Locale.US) : ".jpg";
+    }
+}
@@ -0,0 +1,305 @@
+package com.mydocumentscanner;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Multi-page scan sessions for JS. Pages live as files under cacheDir/sessions/<id>;
+ * JS only keeps session ids, page URIs and small thumbnails. File and PDF work runs on
+ * a single background thread so calls on one session are applied in order.
+ */
+public class ScanSessionModule extends ReactContextBaseJavaModule {
+    private static final String TAG = "ScanSessionModule";
+
+    private final Map<String, ScanSession> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // Thumbnail caches of open sessions are dropped when the system runs low on memory
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                trimSessions(level);
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimSessions(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        }
+    };
+
+    public ScanSessionModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        reactContext.getApplicationContext().registerComponentCallbacks(memoryCallbacks);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "ScanSessionModule";
+    }
+
+    @ReactMethod
+    public void createSession(Promise promise) {
+        String id = UUID.randomUUID().toString();
+        File dir = new File(new File(getReactApplicationContext().getCacheDir(), "sessions"), id);
+        sessions.put(id, new ScanSession(id, dir));
+        Log.d(TAG, "📚 Created scan session " + id);
+        promise.resolve(id);
+    }
+
+    /**
+     * Add a page from a file (e.g. a capture in file output mode). The file is copied; the caller keeps it.
+     */
+    @ReactMethod
+    public void addPage(String sessionId, String imageUri, Promise promise) {
+        ScanSession session = sessions.get(sessionId);
+        if (session == null) {
+            promise.reject("SESSION_ERROR", "Unknown session: " + sessionId);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                String path = imageUri.startsWith("file://") ? imageUri.substring(7) : imageUri;
+                File source = new File(path);
+                if (!source.exists()) {
+                    promise.reject("SESSION_ERROR", "File not found: " + imageUri);
+                    return;
+                }
+                ScanSession.Page page = session.addPage(source);
+                promise.resolve(pageToMap(session, page));
+            } catch (Exception e) {
+                Log.e(TAG, "Error adding page", e);
+                promise.reject("SESSION_ERROR", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Add a page from a Base64 capture (croppedImage of a DocumentDetected event)
+     */
+    @ReactMethod
+    public void addPageFromBase64(String sessionId, String base64, String mimeType, Promise promise) {
+        ScanSession session = sessions.get(sessionId);
+        if (session == null) {
+            promise.reject("SESSION_ERROR", "Unknown session: " + sessionId);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                byte[] bytes = Base64.decode(base64, Base64.DEFAULT);
+                ScanSession.Page page = session.addPage(bytes, extensionFor(mimeType));
+                promise.resolve(pageToMap(session, page));
+            } catch (Exception e) {
+                Log.e(TAG, "Error adding Base64 page", e);
+                promise.reject("SESSION_ERROR", e.getMessage());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void removePage(String sessionId, int index, Promise promise) {
+        ScanSession session = sessions.get(sessionId);
+        if (session == null) {
+            promise.reject("SESSION_ERROR", "Unknown session: " + sessionId);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                session.removePage(index);
+                promise.resolve(session.getPageCount());
+            } catch (Exception e) {
+                Log.e(TAG, "Error removing page", e);
+                promise.reject("SESSION_ERROR", e.getMessage());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void movePage(String sessionId, int from, int to, Promise promise) {
+        ScanSession session = sessions.get(sessionId);
+        if (session == null) {
+            promise.reject("SESSION_ERROR", "Unknown session: " + sessionId);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                session.movePage(from, to);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e(TAG, "Error moving page", e);
+                promise.reject("SESSION_ERROR", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Resolves [{ uri, width, height }] in page order
+     */
+    @ReactMethod
+    public void getPages(String sessionId, Promise promise) {
+        ScanSession session = sessions.get(sessionId);
+        if (session == null) {
+            promise.reject("SESSION_ERROR", "Unknown session: " + sessionId);
+            return;
+        }
+        WritableArray pages = Arguments.createArray();
+        for (ScanSession.Page page : session.getPages()) {
+            pages.pushMap(pageToMap(session, page));
+        }
+        promise.resolve(pages);
+    }
+
+    /**
+     * Small JPEG preview of a page as Base64, served from the session's thumbnail cache
+     */
+    @ReactMethod
+    public void getPageThumbnail(String sessionId, int index, Promise promise) {
+        ScanSession session = sessions.get(sessionId);
+        if (session == null) {
+            promise.reject("SESSION_ERROR", "Unknown session: " + sessionId);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                Bitmap thumbnail = session.getThumbnail(index);
+                if (thumbnail == null) {
+                    promise.reject("SESSION_ERROR", "Cannot decode page " + index);
+                    return;
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                thumbnail.compress(Bitmap.CompressFormat.JPEG, 75, out);
+                WritableMap result = Arguments.createMap();
+                result.putString("base64", Base64.encodeToString(out.toByteArray(), Base64.NO_WRAP));
+                result.putString("mimeType", "image/jpeg");
+                result.putInt("width", thumbnail.getWidth());
+                result.putInt("height", thumbnail.getHeight());
+                promise.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Error creating thumbnail", e);
+                promise.reject("SESSION_ERROR", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Write the session as a PDF in the cache. pageSize "a4" (default) or "fit".
+     * Resolves { uri, pageCount, bytes, durationMs }.
+     */
+    @ReactMethod
+    public void exportPdf(String sessionId, String pageSize, Promise promise) {
+        ScanSession session = sessions.get(sessionId);
+        if (session == null) {
+            promise.reject("SESSION_ERROR", "Unknown session: " + sessionId);
+            return;
+        }
+        executor.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                File output = new File(session.getDirectory(), "scan_" + start + ".pdf");
+                session.exportPdf(output, "fit".equalsIgnoreCase(pageSize));
+                WritableMap result = Arguments.createMap();
+                result.putString("uri", "file://" + output.getAbsolutePath());
+                result.putInt("pageCount", session.getPageCount());
+                result.putDouble("bytes", output.length());
+                result.putDouble("durationMs", System.currentTimeMillis() - start);
+                promise.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Error exporting PDF", e);
+                promise.reject("EXPORT_ERROR", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Delete the session's pages and any exported PDF
+     */
+    @ReactMethod
+    public void closeSession(String sessionId, Promise promise) {
+        ScanSession session = sessions.remove(sessionId);
+        if (session == null) {
+            promise.resolve(false);
+            return;
+        }
+        executor.execute(() -> {
+            session.delete();
+            Log.d(TAG, "🗑️ Closed scan session " + sessionId);
+            promise.resolve(true);
+        });
+    }
+
+    private static WritableMap pageToMap(ScanSession session, ScanSession.Page page) {
+        WritableMap map = Arguments.createMap();
+        List<ScanSession.Page> pages = session.getPages();
+        map.putInt("index", pages.indexOf(page));
+        map.putString("uri", "file://" + page.file.getAbsolutePath());
+        map.putInt("width", page.width);
+        map.putInt("height", page.height);
+        return map;
+    }
+
+    private static String extensionFor(String mimeType) {
+        if ("image/png".equals(mimeType)) {
+            return ".png";
+        }
+        if ("image/webp".equals(mimeType)) {
+            return ".webp";
+        }
+        return ".jpg";
+    }
+
+    private void trimSessions(int level) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        for (ScanSession session : sessions.values()) {
+            session.trimMemory();
+        }
+        Log.d(TAG, "✂️ Trimmed thumbnails of " + sessions.size() + " scan sessions (level " + level + ")");
+    }
+
+    @Override
+    public void invalidate() {
+        getReactApplicationContext().getApplicationContext().unregisterComponentCallbacks(memoryCallbacks);
+        // Ids do not survive a JS reload, so nothing could reach these files again:
+        // delete them after the work already queued on the session thread
+        List<ScanSession> open = new ArrayList<>(sessions.values());
+        sessions.clear();
+        executor.execute(() -> {
+            for (ScanSession session : open) {
+                session.delete();
+            }
+            Log.d(TAG, "🗑️ Deleted " + open.size() + " scan sessions on invalidate");
+        });
+        executor.shutdown();
+        super.invalidate();
+    }
+}
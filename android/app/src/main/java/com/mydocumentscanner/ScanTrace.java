@@ -0,0 +1,317 @@
+package com.mydocumentscanner;
+
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Spans and debug messages of the scan pipeline.
+ *
+ * {@link #ENABLED} is the BuildConfig.SCAN_TRACE constant (on in debug builds, off in
+ * release, override with -PscanTrace=true|false). Call sites guard with
+ * {@code if (ScanTrace.ENABLED)}, so in a disabled build the message strings are never
+ * built and javac drops the blocks; begin()/end() are empty when disabled.
+ *
+ * <pre>
+ *   long t = ScanTrace.begin(ScanTrace.Span.WARP);
+ *   try { ... } finally { ScanTrace.end(ScanTrace.Span.WARP, t); }
+ *   if (ScanTrace.ENABLED) ScanTrace.log(TAG, "Warped " + w + "x" + h);
+ * </pre>
+ *
+ * Spans and messages go to the installed sinks: logcat, an in-memory ring buffer,
+ * android.os.Trace sections (systrace / Perfetto) and per-span histograms by default.
+ */
+public final class ScanTrace {
+    private static final String TAG = "ScanTrace";
+
+    public static final boolean ENABLED = BuildConfig.SCAN_TRACE;
+
+    public enum Span {
+        INGEST, ROTATE, RESIZE, THRESHOLD, CONTOURS, VALIDATE, BLUR, WARP, ENCODE, DNN;
+
+        final String section = "scan." + name().toLowerCase(Locale.US);
+        public final String jsName = name().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Receives spans and messages. Called on the traced thread; implementations must be thread-safe.
+     * onBegin/onEnd of one span always run on the same thread.
+     */
+    public interface Sink {
+        void onBegin(Span span);
+
+        void onEnd(Span span, long startNanos, long durationNanos);
+
+        void onMessage(String tag, String message);
+    }
+
+    private static final RingBufferSink RING = new RingBufferSink(256);
+    private static final HistogramSink HISTOGRAMS = new HistogramSink();
+    private static volatile Sink[] sinks = ENABLED
+            ? new Sink[]{new LogcatSink(), RING, new SystemTraceSink(), HISTOGRAMS}
+            : new Sink[0];
+
+    private ScanTrace() {
+    }
+
+    public static long begin(Span span) {
+        if (!ENABLED) {
+            return 0;
+        }
+        for (Sink sink : sinks) {
+            sink.onBegin(span);
+        }
+        return System.nanoTime();
+    }
+
+    public static void end(Span span, long startNanos) {
+        if (!ENABLED) {
+            return;
+        }
+        long duration = System.nanoTime() - startNanos;
+        Sink[] current = sinks;
+        // Reverse order so nested sections (Trace) unwind correctly
+        for (int i = current.length - 1; i >= 0; i--) {
+            current[i].onEnd(span, startNanos, duration);
+        }
+    }
+
+    /**
+     * Debug message; guard the call with {@code if (ScanTrace.ENABLED)} so the string is not built otherwise
+     */
+    public static void log(String tag, String message) {
+        if (!ENABLED) {
+            return;
+        }
+        for (Sink sink : sinks) {
+            sink.onMessage(tag, message);
+        }
+    }
+
+    public static synchronized void addSink(Sink sink) {
+        if (!ENABLED) {
+            return;
+        }
+        Sink[] next = new Sink[sinks.length + 1];
+        System.arraycopy(sinks, 0, next, 0, sinks.length);
+        next[sinks.length] = sink;
+        sinks = next;
+    }
+
+    public static synchronized void removeSink(Sink sink) {
+        List<Sink> next = new ArrayList<>();
+        for (Sink s : sinks) {
+            if (s != sink) {
+                next.add(s);
+            }
+        }
+        sinks = next.toArray(new Sink[0]);
+    }
+
+    public static RingBufferSink ringBuffer() {
+        return RING;
+    }
+
+    public static HistogramSink histograms() {
+        return HISTOGRAMS;
+    }
+
+    /**
+     * Forwards messages to logcat at debug level; spans are left to the other sinks
+     */
+    public static final class LogcatSink implements Sink {
+        @Override
+        public void onBegin(Span span) {
+        }
+
+        @Override
+        public void onEnd(Span span, long startNanos, long durationNanos) {
+        }
+
+        @Override
+        public void onMessage(String tag, String message) {
+            Log.d(tag, message);
+        }
+    }
+
+    /**
+     * android.os.Trace sections named "scan.<span>", visible in systrace / Perfetto captures
+     */
+    public static final class SystemTraceSink implements Sink {
+        @Override
+        public void onBegin(Span span) {
+            Trace.beginSection(span.section);
+        }
+
+        @Override
+        public void onEnd(Span span, long startNanos, long durationNanos) {
+            Trace.endSection();
+        }
+
+        @Override
+        public void onMessage(String tag, String message) {
+        }
+    }
+
+    /**
+     * Last {@code capacity} spans in primitive arrays; nothing is allocated per span
+     */
+    public static final class RingBufferSink implements Sink {
+        public static final class Record {
+            public final Span span;
+            public final long startNanos;
+            public final long durationNanos;
+
+            Record(Span span, long startNanos, long durationNanos) {
+                this.span = span;
+                this.startNanos = startNanos;
+                this.durationNanos = durationNanos;
+            }
+        }
+
+        private final byte[] spans;
+        private final long[] starts;
+        private final long[] durations;
+        private int next = 0;
+        private int size = 0;
+
+        public RingBufferSink(int capacity) {
+            spans = new byte[capacity];
+            starts = new long[capacity];
+            durations = new long[capacity];
+        }
+
+        @Override
+        public void onBegin(Span span) {
+        }
+
+        @Override
+        public synchronized void onEnd(Span span, long startNanos, long durationNanos) {
+            spans[next] = (byte) span.ordinal();
+            starts[next] = startNanos;
+            durations[next] = durationNanos;
+            next = (next + 1) % spans.length;
+            size = Math.min(size + 1, spans.length);
+        }
+
+        @Override
+        public void onMessage(String tag, String message) {
+        }
+
+        /**
+         * Oldest first
+         */
+        public synchronized List<Record> recent() {
+            Span[] values = Span.values();
+            List<Record> records = new ArrayList<>(size);
+            int first = (next - size + spans.length) % spans.length;
+            for (int i = 0; i < size; i++) {
+                int index = (first + i) % spans.length;
+                records.add(new Record(values[spans[index]], starts[index], durations[index]));
+            }
+            return records;
+        }
+
+        public synchronized void clear() {
+            next = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * Per-span count, mean, max and log2 buckets of the duration in microseconds
+     */
+    public static final class HistogramSink implements Sink {
+        private static final int BUCKETS = 32; // bucket b holds durations in [2^(b-1), 2^b) us
+
+        public static final class Snapshot {
+            public Span span;
+            public long count;
+            public double meanMs;
+            public double p50Ms;
+            public double p95Ms;
+            public double maxMs;
+        }
+
+        private final long[] counts = new long[Span.values().length];
+        private final long[] totalMicros = new long[Span.values().length];
+        private final long[] maxMicros = new long[Span.values().length];
+        private final long[][] buckets = new long[Span.values().length][BUCKETS];
+
+        @Override
+        public void onBegin(Span span) {
+        }
+
+        @Override
+        public synchronized void onEnd(Span span, long startNanos, long durationNanos) {
+            int s = span.ordinal();
+            long micros = durationNanos / 1000;
+            counts[s]++;
+            totalMicros[s] += micros;
+            maxMicros[s] = Math.max(maxMicros[s], micros);
+            buckets[s][Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))]++;
+        }
+
+        @Override
+        public void onMessage(String tag, String message) {
+        }
+
+        /**
+         * One snapshot per span that has been recorded at least once
+         */
+        public synchronized List<Snapshot> snapshot() {
+            List<Snapshot> result = new ArrayList<>();
+            for (Span span : Span.values()) {
+                int s = span.ordinal();
+                if (counts[s] == 0) {
+                    continue;
+                }
+                Snapshot snapshot = new Snapshot();
+                snapshot.span = span;
+                snapshot.count = counts[s];
+                snapshot.meanMs = totalMicros[s] / 1000.0 / counts[s];
+                snapshot.p50Ms = percentileMicros(s, 0.50) / 1000.0;
+                snapshot.p95Ms = percentileMicros(s, 0.95) / 1000.0;
+                snapshot.maxMs = maxMicros[s] / 1000.0;
+                result.add(snapshot);
+            }
+            return result;
+        }
+
+        /**
+         * Upper bound of the bucket holding the percentile, capped at the observed max
+         */
+        private long percentileMicros(int s, double percentile) {
+            long rank = (long) Math.ceil(counts[s] * percentile);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += buckets[s][b];
+                if (seen >= rank) {
+                    // The last bucket is open-ended: only the max bounds it
+                    return b == BUCKETS - 1 ? maxMicros[s] : Math.min(maxMicros[s], 1L << b);
+                }
+            }
+            return maxMicros[s];
+        }
+
+        public synchronized void reset() {
+            for (int s = 0; s < counts.length; s++) {
+                counts[s] = 0;
+                totalMicros[s] = 0;
+                maxMicros[s] = 0;
+                Arrays.fill(buckets[s], 0);
+            }
+        }
+
+        public void logSummary() {
+            for (Snapshot s : snapshot()) {
+                Log.i(TAG, String.format(Locale.US, "⏱️ %-9s n=%d mean=%.2fms p50<=%.2fms p95<=%.2fms max=%.2fms",
+                        s.span.jsName, s.count, s.meanMs, s.p50Ms, s.p95Ms, s.maxMs));
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.mydocumentscanner;
+
+import android.view.Choreographer;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.Locale;
+
+/**
+ * Live scanner state for JS, coalesced to at most one "onScannerState" event per
+ * display frame.
+ *
+ * Detection (background thread) and overlay layout (UI thread) only update the latest
+ * state and schedule a Choreographer callback; updates arriving before that frame
+ * overwrite each other. The event carries packed arrays instead of per-point maps:
+ *
+ *   { seq, state, detections, required, captures, coalesced,
+ *     frameWidth, frameHeight,
+ *     corners: [x0, y0, x1, y1, x2, y2, x3, y3] | null,   (frame pixels, TL TR BR BL)
+ *     region:  [x, y, width, height] | null }              (view pixels)
+ *
+ * With pointMaps set, corners are sent as [{x, y}, ...] instead.
+ */
+public class ScannerEventChannel implements Choreographer.FrameCallback {
+    public static final String EVENT_SCANNER_STATE = "onScannerState";
+
+    public enum State {
+        SEARCHING,  // no document in the frame
+        TRACKING,   // document found, stability count building up
+        CAPTURED;   // capture taken since the previous event
+
+        final String jsName = name().toLowerCase(Locale.US);
+    }
+
+    private final ReactContext reactContext;
+    private final Choreographer choreographer;
+
+    // Latest state, guarded by this
+    private final Quad corners = new Quad();
+    private boolean hasCorners = false;
+    private final double[] region = new double[4];
+    private boolean hasRegion = false;
+    private int frameWidth;
+    private int frameHeight;
+    private int detections;
+    private int required;
+    private int captures;
+    private boolean capturedSinceEmit = false;
+    private int pendingUpdates = 0;
+    private boolean scheduled = false;
+    private boolean released = false;
+    private long sequence = 0;
+
+    private volatile boolean pointMaps = false;
+
+    /**
+     * Must be created on the UI thread (Choreographer is per-looper)
+     */
+    public ScannerEventChannel(ReactContext reactContext) {
+        this.reactContext = reactContext;
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    public void setPointMaps(boolean pointMaps) {
+        this.pointMaps = pointMaps;
+    }
+
+    public synchronized void updateDetection(@Nullable Quad quad, int frameWidth, int frameHeight,
+                                             int detections, int required) {
+        hasCorners = quad != null;
+        if (quad != null) {
+            corners.set(quad);
+        }
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.detections = detections;
+        this.required = required;
+        markDirty();
+    }
+
+    public synchronized void updateRegion(double x, double y, double width, double height) {
+        if (hasRegion && region[0] == x && region[1] == y && region[2] == width && region[3] == height) {
+            return;
+        }
+        region[0] = x;
+        region[1] = y;
+        region[2] = width;
+        region[3] = height;
+        hasRegion = true;
+        markDirty();
+    }
+
+    public synchronized void markCaptured() {
+        captures++;
+        capturedSinceEmit = true;
+        markDirty();
+    }
+
+    /**
+     * Stop emitting; pending state is dropped
+     */
+    public synchronized void release() {
+        released = true;
+        if (scheduled) {
+            choreographer.removeFrameCallback(this);
+            scheduled = false;
+        }
+    }
+
+    private void markDirty() {
+        pendingUpdates++;
+        if (!scheduled && !released) {
+            scheduled = true;
+            // Choreographer hands off to its looper when called from another thread
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        WritableMap event;
+        synchronized (this) {
+            scheduled = false;
+            if (released || pendingUpdates == 0) {
+                return;
+            }
+            event = Arguments.createMap();
+            State state = capturedSinceEmit ? State.CAPTURED
+                    : hasCorners ? State.TRACKING : State.SEARCHING;
+
+            event.putDouble("seq", ++sequence);
+            event.putString("state", state.jsName);
+            event.putInt("detections", detections);
+            event.putInt("required", required);
+            event.putInt("captures", captures);
+            event.putInt("coalesced", pendingUpdates);
+            event.putInt("frameWidth", frameWidth);
+            event.putInt("frameHeight", frameHeight);
+            if (hasCorners) {
+                event.putArray("corners", pointMaps ? toPointMaps(corners) : toPackedArray(corners.pts, Quad.SIZE));
+            } else {
+                event.putNull("corners");
+            }
+            if (hasRegion) {
+                event.putArray("region", toPackedArray(region, region.length));
+            } else {
+                event.putNull("region");
+            }
+            pendingUpdates = 0;
+            capturedSinceEmit = false;
+        }
+
+        if (reactContext.hasActiveCatalystInstance()) {
+            reactContext
+                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit(EVENT_SCANNER_STATE, event);
+        }
+    }
+
+    private static WritableArray toPackedArray(float[] values, int count) {
+        WritableArray array = Arguments.createArray();
+        for (int i = 0; i < count; i++) {
+            array.pushDouble(values[i]);
+        }
+        return array;
+    }
+
+    private static WritableArray toPackedArray(double[] values, int count) {
+        WritableArray array = Arguments.createArray();
+        for (int i = 0; i < count; i++) {
+            array.pushDouble(values[i]);
+        }
+        return array;
+    }
+
+    private static WritableArray toPointMaps(Quad quad) {
+        WritableArray array = Arguments.createArray();
+        for (int i = 0; i < Quad.SIZE; i += 2) {
+            WritableMap point = Arguments.createMap();
+            point.putDouble("x", quad.pts[i]);
+            point.putDouble("y", quad.pts[i + 1]);
+            array.pushMap(point);
+        }
+        return array;
+    }
+}
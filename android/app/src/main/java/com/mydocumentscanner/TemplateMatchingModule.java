@@ -22,9 +22,11 @@ import org.opencv.android.Utils;
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
@@ -36,7 +38,11 @@ import org.json.JSONArray;
 import org.json.JSONException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class TemplateMatchingModule extends ReactContextBaseJavaModule {
 
@@ -46,9 +52,45 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
     private static final int TM_CCOEFF_NORMED = Imgproc.TM_CCOEFF_NORMED;
     private static final int TM_SQDIFF_NORMED = Imgproc.TM_SQDIFF_NORMED;
 
+    // Basic document validation: one QualityScorer pass on the ANALYSIS_SIZE thumbnail.
+    // Sharpness and edge density there are denser than at full resolution, so the bounds
+    // sit above the old full-resolution ones (Laplacian variance > 30, Canny 1%..30%)
+    private static final double VALIDATION_MIN_SHARPNESS = 60.0;
+    private static final float VALIDATION_MIN_EDGE_DENSITY = 0.02f;
+    private static final float VALIDATION_MAX_EDGE_DENSITY = 0.45f;
+    private final QualityScorer qualityScorer = new QualityScorer();
+
+    // Encoder for Base64 results (same budgeted encoder as the live capture path)
+    private final CaptureEncoder captureEncoder = new CaptureEncoder();
+    private final CaptureEncoder.Settings encoderSettings = new CaptureEncoder.Settings();
+
+    // Built-in Aadhaar templates: decoded once per module instance on a background thread,
+    // kept as gray pyramids and shared by every extractAadhaar* call
+    private static final int TEMPLATE_PYRAMID_LEVELS = 4;
+
+    // Coarse-to-fine search: full search at the coarsest level whose template still has
+    // MIN_COARSE_TEMPLATE pixels on its short side, then REFINE_RADIUS windows around the
+    // TOP_K best coarse peaks on each finer level
+    private static final int MIN_COARSE_TEMPLATE = 16;
+    private static final int TOP_K = 5;
+    private static final int REFINE_RADIUS = 4;
+
+    // Scale search: expected scale = docWidthRatio * document width / template width, searched
+    // within SCALE_TOLERANCE either way in SCALE_STEP steps, then refined at half and quarter steps.
+    // Without a detected document the search runs from MIN_SCALE up to the image-width estimate
+    private static final double SCALE_TOLERANCE = 1.25;
+    private static final double SCALE_STEP = 1.12;
+    private static final double MIN_SCALE = 0.2;
+    private static final double MAX_SCALE = 5.0;
+    private static final double MIN_DOCUMENT_AREA = 0.3;   // of the image, for a detected document
+    private static final int DOCUMENT_ESTIMATE_SIZE = 800; // longest side of the estimation level
+    private final ExecutorService templateLoader = Executors.newSingleThreadExecutor(r -> new Thread(r, "TemplateLoader"));
+    private final Future<List<TemplateConfig>> aadhaarTemplates;
+
     // Helper class for template configuration (similar to Python dict)
-    private static class TemplateConfig {
+    static class TemplateConfig {
         public Mat template;
+        public Mat[] grayPyramid; // cached templates only: gray at full, 1/2, 1/4, 1/8 scale
         public String name;
         public String position;
         public double offsetX;
@@ -70,27 +112,43 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
     }
 
     // Helper class for template match results
-    private static class TemplateMatch {
+    static class TemplateMatch {
         public String name;
         public String position;
         public Point matchCoord;
         public Size templateSize;
         public double confidence;
+        public double scale; // matched template size / native template size
         public TemplateConfig config;
         
         public TemplateMatch(String name, String position, Point matchCoord, 
-                           Size templateSize, double confidence, TemplateConfig config) {
+                           Size templateSize, double confidence, double scale, TemplateConfig config) {
             this.name = name;
             this.position = position;
             this.matchCoord = matchCoord;
             this.templateSize = templateSize;
             this.confidence = confidence;
+            this.scale = scale;
             this.config = config;
         }
     }
 
+    // Candidate location of a template at one pyramid level
+    static class Peak {
+        public int x, y;
+        public double score;
+        public double scale = 1.0;
+        public Size templateSize;
+
+        public Peak(int x, int y, double score) {
+            this.x = x;
+            this.y = y;
+            this.score = score;
+        }
+    }
+
     // Helper class for document bounds
-    private static class DocumentBounds {
+    static class DocumentBounds {
         public int x, y, width, height;
         
         public DocumentBounds(int x, int y, int width, int height) {
@@ -111,6 +169,25 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
 
     public TemplateMatchingModule(ReactApplicationContext reactContext) {
         super(reactContext);
+        encoderSettings.quality = 90;
+        aadhaarTemplates = templateLoader.submit(this::createAadhaarTemplateConfigs);
+    }
+
+    @Override
+    public void invalidate() {
+        // Runs after the load on the same thread, so a load in progress is never leaked
+        templateLoader.execute(() -> {
+            for (TemplateConfig config : getAadhaarTemplateConfigs()) {
+                for (Mat level : config.grayPyramid) {
+                    level.release();
+                }
+            }
+            Log.d(TAG, "♻️ Template cache released");
+        });
+        templateLoader.shutdown();
+        qualityScorer.release();
+        captureEncoder.release();
+        super.invalidate();
     }
 
     @Override
@@ -213,6 +290,34 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Extract document from a registered image (ImageRegistry id, e.g. the imageId of a capture).
+     * Template configs may use templateBase64 or templatePath. The extracted document is
+     * registered too and returned as extractedImageId instead of Base64, so OCR / face
+     * detection can continue on it without another decode.
+     */
+    @ReactMethod
+    public void extractDocumentFromHandle(String imageId, ReadableArray templateConfigs,
+                                          double threshold, boolean withPerspectiveCorrection, Promise promise) {
+        try (ImageRegistry.Handle handle = ImageRegistry.getInstance().acquire(imageId)) {
+            if (handle == null) {
+                promise.reject("IMAGE_NOT_FOUND", "Unknown or released image: " + imageId);
+                return;
+            }
+
+            boolean base64Templates = templateConfigs.size() > 0
+                    && templateConfigs.getMap(0).hasKey("templateBase64");
+            List<TemplateConfig> configs = base64Templates
+                    ? parseTemplateConfigsFromBase64(templateConfigs)
+                    : parseTemplateConfigs(templateConfigs);
+            extractDocumentInternal(handle.mat(), configs, threshold, withPerspectiveCorrection, true, promise);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error in extractDocumentFromHandle", e);
+            promise.reject("EXTRACTION_ERROR", e.getMessage());
+        }
+    }
+
     /**
      * Find templates in image (equivalent to Python's find_templates method)
      */
@@ -242,9 +347,21 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
     // HARDCODED TEMPLATE CONFIGURATIONS
     // ========================================
 
+    /**
+     * Cached Aadhaar templates; waits for the background load on first use
+     */
+    private List<TemplateConfig> getAadhaarTemplateConfigs() {
+        try {
+            return aadhaarTemplates.get();
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Template cache unavailable: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
     /**
      * Create hardcoded template configurations using Ashoka Chakra & Emblem
-     * Loads images from Android drawable resources
+     * Loads images from Android drawable resources. Runs once, on the template loader thread.
      */
     private List<TemplateConfig> createAadhaarTemplateConfigs() {
         List<TemplateConfig> configs = new ArrayList<>();
@@ -255,7 +372,7 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
             // Ashoka Emblem (lions) - typically found on left side of Aadhaar
             try {
                 Log.d(TAG, "Loading Ashoka emblem template...");
-                Mat emblemTemplate = loadMatFromDrawable("ashoka");
+                Mat emblemTemplate = loadGrayTemplateFromDrawable("ashoka");
                 if (!emblemTemplate.empty()) {
                     Log.d(TAG, String.format("✅ Ashoka emblem loaded: %dx%d", 
                           emblemTemplate.width(), emblemTemplate.height()));
@@ -279,7 +396,7 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
             // Aadhaar Logo - typically found on right side of Aadhaar
             try {
                 Log.d(TAG, "Loading Aadhaar logo template...");
-                Mat aadhaarTemplate = loadMatFromDrawable("aadhaarlogo");
+                Mat aadhaarTemplate = loadGrayTemplateFromDrawable("aadhaarlogo");
                 if (!aadhaarTemplate.empty()) {
                     Log.d(TAG, String.format("✅ Aadhaar logo loaded: %dx%d", 
                           aadhaarTemplate.width(), aadhaarTemplate.height()));
@@ -300,6 +417,9 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
                 logoError.printStackTrace();
             }
             
+            for (TemplateConfig config : configs) {
+                config.grayPyramid = buildGrayPyramid(config.template);
+            }
             Log.d(TAG, String.format("Template configuration complete: %d templates loaded", configs.size()));
             
         } catch (Exception e) {
@@ -327,7 +447,7 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
                 return;
             }
 
-            List<TemplateConfig> configs = createAadhaarTemplateConfigs();
+            List<TemplateConfig> configs = getAadhaarTemplateConfigs();
             if (configs.isEmpty()) {
                 promise.reject("TEMPLATE_ERROR", "No template images configured. Please replace base64 placeholders.");
                 return;
@@ -353,7 +473,7 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
                 return;
             }
 
-            List<TemplateConfig> configs = createAadhaarTemplateConfigs();
+            List<TemplateConfig> configs = getAadhaarTemplateConfigs();
             if (configs.isEmpty()) {
                 promise.reject("TEMPLATE_ERROR", "No template images configured. Please replace base64 placeholders.");
                 return;
@@ -386,7 +506,7 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
             Log.d(TAG, String.format("Input image: %dx%d, channels=%d", 
                   image.width(), image.height(), image.channels()));
 
-            List<TemplateConfig> configs = createAadhaarTemplateConfigs();
+            List<TemplateConfig> configs = getAadhaarTemplateConfigs();
             Log.d(TAG, "Template configs created: " + configs.size() + " templates");
             
             if (configs.isEmpty()) {
@@ -422,7 +542,7 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
                 return;
             }
 
-            List<TemplateConfig> configs = createAadhaarTemplateConfigs();
+            List<TemplateConfig> configs = getAadhaarTemplateConfigs();
             if (configs.isEmpty()) {
                 promise.reject("TEMPLATE_ERROR", "No template images configured. Please replace base64 placeholders.");
                 return;
@@ -446,6 +566,16 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
     private void extractDocumentInternal(Mat image, List<TemplateConfig> configs, 
                                        double threshold, boolean withPerspectiveCorrection, 
                                        Promise promise) {
+        extractDocumentInternal(image, configs, threshold, withPerspectiveCorrection, false, promise);
+    }
+
+    /**
+     * @param resultAsHandle register the extracted document in the ImageRegistry and return
+     *                       its extractedImageId instead of a Base64 extractedDocument
+     */
+    private void extractDocumentInternal(Mat image, List<TemplateConfig> configs, 
+                                       double threshold, boolean withPerspectiveCorrection, 
+                                       boolean resultAsHandle, Promise promise) {
         try {
             // Step 1: Find template matches (similar to Python find_templates)
             List<TemplateMatch> matches = findTemplatesInternal(image, configs, threshold);
@@ -476,9 +606,22 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
                     extractedDoc = new Mat(image, docRect);
                 }
                 
-                // Convert to base64 for return
-                String extractedBase64 = matToBase64(extractedDoc);
-                result.putString("extractedDocument", extractedBase64);
+                if (resultAsHandle) {
+                    // Own copy: a simple extraction is a view into the source image
+                    Mat owned = extractedDoc.clone();
+                    extractedDoc.release();
+                    result.putInt("extractedWidth", owned.cols());
+                    result.putInt("extractedHeight", owned.rows());
+                    String extractedId = ImageRegistry.getInstance().put(owned);
+                    if (extractedId == null) {
+                        owned.release();
+                    }
+                    result.putString("extractedImageId", extractedId);
+                } else {
+                    // Convert to base64 for return
+                    String extractedBase64 = matToBase64(extractedDoc);
+                    result.putString("extractedDocument", extractedBase64);
+                }
                 
                 // Add bounds information
                 WritableMap boundsMap = Arguments.createMap();
@@ -512,57 +655,298 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
      */
     private List<TemplateMatch> findTemplatesInternal(Mat image, List<TemplateConfig> configs, double threshold) {
         List<TemplateMatch> matches = new ArrayList<>();
+        long start = System.nanoTime();
         
-        // Convert image to grayscale for template matching
         Mat grayImage = new Mat();
-        if (image.channels() == 3) {
-            Imgproc.cvtColor(image, grayImage, Imgproc.COLOR_BGR2GRAY);
-        } else {
-            grayImage = image.clone();
+        toGray(image, grayImage);
+        List<Mat> imagePyramid = buildImagePyramid(grayImage);
+        
+        try {
+            // Without a detected document (already cropped captures, or a document under
+            // MIN_DOCUMENT_AREA) the image width is only an upper bound on the document width
+            double detectedWidth = estimateDocumentWidth(imagePyramid);
+            boolean documentDetected = detectedWidth > 0;
+            double documentWidth = documentDetected ? detectedWidth : grayImage.cols();
+            for (TemplateConfig config : configs) {
+                // Cached templates are already gray pyramids; request templates are converted here
+                Mat[] templatePyramid = config.grayPyramid;
+                if (templatePyramid == null) {
+                    Mat grayTemplate = new Mat();
+                    toGray(config.template, grayTemplate);
+                    templatePyramid = buildGrayPyramid(grayTemplate);
+                }
+                
+                try {
+                    Peak best = matchOverScales(imagePyramid, templatePyramid,
+                            config.docWidthRatio * documentWidth / templatePyramid[0].cols(), documentDetected);
+                    if (best != null && best.score >= threshold) {
+                        matches.add(new TemplateMatch(
+                            config.name,
+                            config.position,
+                            new Point(best.x, best.y),
+                            best.templateSize,
+                            best.score,
+                            best.scale,
+                            config
+                        ));
+                    }
+                } finally {
+                    if (templatePyramid != config.grayPyramid) {
+                        for (Mat level : templatePyramid) {
+                            level.release();
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (Mat level : imagePyramid) {
+                level.release();
+            }
+        }
+        
+        Log.d(TAG, String.format("🔎 Matched %d/%d templates on %dx%d in %.1fms", matches.size(), configs.size(),
+                image.cols(), image.rows(), (System.nanoTime() - start) / 1e6));
+        return matches;
+    }
+
+    /**
+     * Best match of a template over scales around {@code expectedScale}: a coarse pass in
+     * SCALE_STEP steps over [expected / SCALE_TOLERANCE, expected * SCALE_TOLERANCE], then
+     * half and quarter steps either side of the best scale. The native size is always tried,
+     * so templates whose ratio is off still match as before. When {@code expectedScale} comes
+     * from the image width rather than a detected document it is only an upper bound, and the
+     * search starts at MIN_SCALE.
+     */
+    private Peak matchOverScales(List<Mat> imagePyramid, Mat[] templatePyramid, double expectedScale,
+                                 boolean documentDetected) {
+        Mat image = imagePyramid.get(0);
+        Mat template = templatePyramid[0];
+        // Largest scale at which the template still fits in the image
+        double fitScale = Math.min((double) image.cols() / template.cols(), (double) image.rows() / template.rows());
+        double maxScale = Math.min(Math.min(MAX_SCALE, fitScale), expectedScale * SCALE_TOLERANCE);
+        double minScale = documentDetected
+                ? Math.max(MIN_SCALE, expectedScale / SCALE_TOLERANCE)
+                : MIN_SCALE;
+        
+        Peak best = fitScale >= 1.0 ? matchAtScale(imagePyramid, templatePyramid, 1.0) : null;
+        if (!(expectedScale > 0) || minScale > maxScale) {
+            return best;
+        }
+        
+        for (double scale = minScale; scale <= maxScale * 1.0001; scale *= SCALE_STEP) {
+            best = better(best, matchAtScale(imagePyramid, templatePyramid, scale));
+        }
+        if (best != null && best.scale >= minScale && best.scale <= maxScale) {
+            for (double step : new double[]{Math.sqrt(SCALE_STEP), Math.pow(SCALE_STEP, 0.25)}) {
+                double center = best.scale;
+                if (center * step <= fitScale) {
+                    best = better(best, matchAtScale(imagePyramid, templatePyramid, center * step));
+                }
+                best = better(best, matchAtScale(imagePyramid, templatePyramid, center / step));
+            }
         }
+        return best;
+    }
+
+    private static Peak better(Peak a, Peak b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null && b.score > a.score ? b : a;
+    }
+
+    /**
+     * Coarse-to-fine match of the template resized by {@code scale}; scale 1 uses the given pyramid
+     */
+    private Peak matchAtScale(List<Mat> imagePyramid, Mat[] templatePyramid, double scale) {
+        Mat template = templatePyramid[0];
+        int width = (int) Math.round(template.cols() * scale);
+        int height = (int) Math.round(template.rows() * scale);
+        Mat image = imagePyramid.get(0);
+        if (width < 4 || height < 4 || width > image.cols() || height > image.rows()) {
+            return null;
+        }
+        
+        Mat[] pyramid = templatePyramid;
+        if (width != template.cols() || height != template.rows()) {
+            Mat scaled = new Mat();
+            Imgproc.resize(template, scaled, new Size(width, height), 0, 0,
+                    scale < 1.0 ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR);
+            pyramid = buildGrayPyramid(scaled);
+        }
+        try {
+            Peak peak = matchCoarseToFine(imagePyramid, pyramid);
+            if (peak != null) {
+                peak.scale = (double) width / template.cols();
+                peak.templateSize = new Size(width, height);
+            }
+            return peak;
+        } finally {
+            if (pyramid != templatePyramid) {
+                for (Mat level : pyramid) {
+                    level.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Width of the document in the image: the long side of the largest 4-corner contour when
+     * it covers MIN_DOCUMENT_AREA of the image, else 0
+     */
+    private double estimateDocumentWidth(List<Mat> imagePyramid) {
+        int level = 0;
+        while (level + 1 < imagePyramid.size()
+                && Math.max(imagePyramid.get(level).cols(), imagePyramid.get(level).rows()) > DOCUMENT_ESTIMATE_SIZE) {
+            level++;
+        }
+        Mat gray = imagePyramid.get(level);
+        double toFullScale = (double) imagePyramid.get(0).cols() / gray.cols();
         
-        for (TemplateConfig config : configs) {
-            Mat template = config.template;
+        Mat binary = new Mat();
+        Mat hierarchy = new Mat();
+        List<MatOfPoint> contours = new ArrayList<>();
+        try {
+            Imgproc.GaussianBlur(gray, binary, new Size(5, 5), 0);
+            Imgproc.threshold(binary, binary, 0, 255, Imgproc.THRESH_BINARY + Imgproc.THRESH_OTSU);
+            Imgproc.findContours(binary, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
             
-            // Ensure template is grayscale
-            Mat grayTemplate = new Mat();
-            if (template.channels() == 3) {
-                Imgproc.cvtColor(template, grayTemplate, Imgproc.COLOR_BGR2GRAY);
+            double bestArea = MIN_DOCUMENT_AREA * gray.cols() * gray.rows();
+            double documentWidth = 0;
+            for (MatOfPoint contour : contours) {
+                double area = Imgproc.contourArea(contour);
+                if (area < bestArea) {
+                    continue;
+                }
+                MatOfPoint2f curve = new MatOfPoint2f(contour.toArray());
+                MatOfPoint2f approx = new MatOfPoint2f();
+                Imgproc.approxPolyDP(curve, approx, 0.02 * Imgproc.arcLength(curve, true), true);
+                if (approx.total() == 4) {
+                    RotatedRect box = Imgproc.minAreaRect(approx);
+                    bestArea = area;
+                    documentWidth = Math.max(box.size.width, box.size.height) * toFullScale;
+                }
+                curve.release();
+                approx.release();
+            }
+            if (documentWidth > 0) {
+                Log.d(TAG, String.format("📐 Document width estimate: %.0fpx", documentWidth));
             } else {
-                grayTemplate = template.clone();
+                Log.d(TAG, "📐 No document found, scale search bounded by the image width");
             }
+            return documentWidth;
+        } finally {
+            binary.release();
+            hierarchy.release();
+            for (MatOfPoint contour : contours) {
+                contour.release();
+            }
+        }
+    }
+
+    /**
+     * Best TM_CCOEFF_NORMED location of a template at full resolution.
+     *
+     * The full search runs only at the coarsest usable level (4-8x smaller image and
+     * template). Each of its TOP_K peaks is then followed down the pyramid, matching the
+     * finer template in a window of +-REFINE_RADIUS pixels around the doubled position,
+     * so the returned score is the exact full-resolution score of the surviving peak.
+     */
+    static Peak matchCoarseToFine(List<Mat> imagePyramid, Mat[] templatePyramid) {
+        int coarse = 0;
+        for (int level = Math.min(imagePyramid.size(), templatePyramid.length) - 1; level > 0; level--) {
+            Mat template = templatePyramid[level];
+            Mat levelImage = imagePyramid.get(level);
+            if (Math.min(template.cols(), template.rows()) >= MIN_COARSE_TEMPLATE
+                    && template.cols() <= levelImage.cols() && template.rows() <= levelImage.rows()) {
+                coarse = level;
+                break;
+            }
+        }
+        
+        Mat result = new Mat();
+        try {
+            Mat coarseTemplate = templatePyramid[coarse];
+            Imgproc.matchTemplate(imagePyramid.get(coarse), coarseTemplate, result, TM_CCOEFF_NORMED);
+            List<Peak> peaks = topPeaks(result, coarse == 0 ? 1 : TOP_K,
+                    Math.max(1, coarseTemplate.cols() / 2), Math.max(1, coarseTemplate.rows() / 2));
             
-            // Perform template matching
-            Mat result = new Mat();
-            Imgproc.matchTemplate(grayImage, grayTemplate, result, TM_CCOEFF_NORMED);
-            
-            // Find the best match
-            Core.MinMaxLocResult minMaxResult = Core.minMaxLoc(result);
-            double maxVal = minMaxResult.maxVal;
+            for (int level = coarse - 1; level >= 0; level--) {
+                Mat levelImage = imagePyramid.get(level);
+                Mat template = templatePyramid[level];
+                List<Peak> refined = new ArrayList<>(peaks.size());
+                for (Peak peak : peaks) {
+                    Peak next = refinePeak(levelImage, template, peak.x * 2, peak.y * 2, result);
+                    if (next != null) {
+                        refined.add(next);
+                    }
+                }
+                peaks = refined;
+            }
             
-            if (maxVal >= threshold) {
-                Point topLeft = minMaxResult.maxLoc;
-                Size templateSize = grayTemplate.size();
-                
-                matches.add(new TemplateMatch(
-                    config.name,
-                    config.position,
-                    topLeft,
-                    templateSize,
-                    maxVal,
-                    config
-                ));
+            Peak best = null;
+            for (Peak peak : peaks) {
+                if (best == null || peak.score > best.score) {
+                    best = peak;
+                }
             }
+            return best;
+        } finally {
+            result.release();
         }
-        
-        return matches;
+    }
+
+    /**
+     * Match {@code template} in a window of +-REFINE_RADIUS around (x, y) of {@code image}
+     */
+    private static Peak refinePeak(Mat image, Mat template, int x, int y, Mat result) {
+        int left = Math.max(0, x - REFINE_RADIUS);
+        int top = Math.max(0, y - REFINE_RADIUS);
+        int right = Math.min(image.cols(), x + REFINE_RADIUS + template.cols());
+        int bottom = Math.min(image.rows(), y + REFINE_RADIUS + template.rows());
+        if (right - left < template.cols() || bottom - top < template.rows()) {
+            return null;
+        }
+        Mat window = image.submat(top, bottom, left, right);
+        try {
+            Imgproc.matchTemplate(window, template, result, TM_CCOEFF_NORMED);
+            Core.MinMaxLocResult minMax = Core.minMaxLoc(result);
+            return new Peak(left + (int) minMax.maxLoc.x, top + (int) minMax.maxLoc.y, minMax.maxVal);
+        } finally {
+            window.release();
+        }
+    }
+
+    /**
+     * Up to {@code k} maxima of a match result, each suppressing a (2 * suppressX + 1) x
+     * (2 * suppressY + 1) neighbourhood so the peaks are distinct locations. Overwrites {@code result}.
+     */
+    private static List<Peak> topPeaks(Mat result, int k, int suppressX, int suppressY) {
+        List<Peak> peaks = new ArrayList<>(k);
+        Scalar suppressed = new Scalar(-2);
+        for (int i = 0; i < k; i++) {
+            Core.MinMaxLocResult minMax = Core.minMaxLoc(result);
+            if (minMax.maxVal <= -1) {
+                break;
+            }
+            int x = (int) minMax.maxLoc.x;
+            int y = (int) minMax.maxLoc.y;
+            peaks.add(new Peak(x, y, minMax.maxVal));
+            if (i + 1 < k) {
+                Mat neighbourhood = result.submat(Math.max(0, y - suppressY), Math.min(result.rows(), y + suppressY + 1),
+                        Math.max(0, x - suppressX), Math.min(result.cols(), x + suppressX + 1));
+                neighbourhood.setTo(suppressed);
+                neighbourhood.release();
+            }
+        }
+        return peaks;
     }
 
     /**
      * Calculate document boundaries from template matches
      * Direct equivalent to Python's calculate_document_bounds method
      */
-    private DocumentBounds calculateDocumentBounds(List<TemplateMatch> matches, Size imageSize) {
+    static DocumentBounds calculateDocumentBounds(List<TemplateMatch> matches, Size imageSize) {
         if (matches.isEmpty()) {
             return null;
         }
@@ -580,27 +964,31 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
             // Calculate document dimensions using known ratios
             int docWidth = (int) (templateSize.width / config.docWidthRatio);
             int docHeight = (int) (templateSize.height / config.docHeightRatio);
+
+            // Offsets are in native template pixels; templateSize is already at the matched scale
+            double offsetX = config.offsetX * match.scale;
+            double offsetY = config.offsetY * match.scale;
             
             int docX, docY;
             
             // Calculate document top-left based on template position
             switch (config.position.toLowerCase()) {
                 case "top-left":
-                    docX = (int) (matchCoord.x - config.offsetX);
-                    docY = (int) (matchCoord.y - config.offsetY);
+                    docX = (int) (matchCoord.x - offsetX);
+                    docY = (int) (matchCoord.y - offsetY);
                     break;
                 case "center":
                     docX = (int) (matchCoord.x - docWidth / 2.0);
                     docY = (int) (matchCoord.y - docHeight / 2.0);
                     break;
                 case "top-right":
-                    docX = (int) (matchCoord.x - docWidth + templateSize.width + config.offsetX);
-                    docY = (int) (matchCoord.y - config.offsetY);
+                    docX = (int) (matchCoord.x - docWidth + templateSize.width + offsetX);
+                    docY = (int) (matchCoord.y - offsetY);
                     break;
                 default:
                     // Default to top-left assumption
-                    docX = (int) (matchCoord.x - config.offsetX);
-                    docY = (int) (matchCoord.y - config.offsetY);
+                    docX = (int) (matchCoord.x - offsetX);
+                    docY = (int) (matchCoord.y - offsetY);
                     break;
             }
             
@@ -759,6 +1147,7 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
             matchMap.putString("name", match.name);
             matchMap.putString("position", match.position);
             matchMap.putDouble("confidence", match.confidence);
+            matchMap.putDouble("scale", match.scale);
             
             WritableMap coordMap = Arguments.createMap();
             coordMap.putDouble("x", match.matchCoord.x);
@@ -781,14 +1170,13 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
      */
     private String matToBase64(Mat mat) {
         try {
-            Bitmap bitmap = Bitmap.createBitmap(mat.cols(), mat.rows(), Bitmap.Config.ARGB_8888);
-            Utils.matToBitmap(mat, bitmap);
-            
-            java.io.ByteArrayOutputStream byteArrayOutputStream = new java.io.ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, byteArrayOutputStream);
-            byte[] byteArray = byteArrayOutputStream.toByteArray();
-            
-            return Base64.encodeToString(byteArray, Base64.DEFAULT);
+            // Encoded straight from the Mat (RGBA from bitmapToMat), no Bitmap copy
+            CaptureEncoder.Result encoded = captureEncoder.encode(mat, encoderSettings, new CaptureEncoder.Result());
+            if (encoded == null) {
+                Log.e(TAG, "Failed to encode Mat");
+                return "";
+            }
+            return Base64.encodeToString(encoded.bytes, Base64.DEFAULT);
         } catch (Exception e) {
             Log.e(TAG, "Error converting Mat to base64", e);
             return "";
@@ -813,6 +1201,65 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Gray copy of an 8-bit image: BGR from imread, RGBA from bitmapToMat, or already gray
+     */
+    private static void toGray(Mat src, Mat dst) {
+        if (src.channels() == 4) {
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_RGBA2GRAY);
+        } else if (src.channels() == 3) {
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_BGR2GRAY);
+        } else {
+            src.copyTo(dst);
+        }
+    }
+
+    /**
+     * Drawable decoded and converted to gray; the RGBA copy is released
+     */
+    private Mat loadGrayTemplateFromDrawable(String drawableName) {
+        Mat rgba = loadMatFromDrawable(drawableName);
+        Mat gray = new Mat();
+        if (!rgba.empty()) {
+            toGray(rgba, gray);
+        }
+        rgba.release();
+        return gray;
+    }
+
+    /**
+     * Gray image pyramid, level i at 1/2^i scale; level 0 is {@code grayImage} itself.
+     * Coarse levels are small, so all of them are built.
+     */
+    static List<Mat> buildImagePyramid(Mat grayImage) {
+        List<Mat> imagePyramid = new ArrayList<>();
+        imagePyramid.add(grayImage);
+        for (int i = 1; i < TEMPLATE_PYRAMID_LEVELS; i++) {
+            Mat previous = imagePyramid.get(i - 1);
+            if (Math.min(previous.cols(), previous.rows()) < 2 * MIN_COARSE_TEMPLATE) {
+                break;
+            }
+            Mat level = new Mat();
+            Imgproc.pyrDown(previous, level);
+            imagePyramid.add(level);
+        }
+        return imagePyramid;
+    }
+
+    /**
+     * Level 0 is {@code grayTemplate} itself, each further level a pyrDown of the previous.
+     * Levels too small to match are still built; the search picks its coarsest level by size.
+     */
+    static Mat[] buildGrayPyramid(Mat grayTemplate) {
+        Mat[] levels = new Mat[TEMPLATE_PYRAMID_LEVELS];
+        levels[0] = grayTemplate;
+        for (int i = 1; i < levels.length; i++) {
+            levels[i] = new Mat();
+            Imgproc.pyrDown(levels[i - 1], levels[i]);
+        }
+        return levels;
+    }
+
     /**
      * Load Mat from Android drawable resource
      */
@@ -968,19 +1415,13 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
      */
     private boolean performBasicDocumentValidation(Mat image) {
         try {
-            // Convert to grayscale for analysis
-            Mat gray = new Mat();
-            if (image.channels() == 3) {
-                Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
-            } else {
-                gray = image.clone();
-            }
+            // One quality pass (sharpness and edges) on a downsampled gray copy
+            QualityScorer.Result quality = qualityScorer.score(image, new QualityScorer.Result());
             
             // Check 1: Image quality (not too blurry)
-            boolean goodQuality = checkImageQuality(gray);
+            boolean goodQuality = checkImageQuality(quality);
             if (!goodQuality) {
                 Log.d(TAG, "SAFE: Image quality check failed");
-                gray.release();
                 return false;
             }
             
@@ -988,19 +1429,16 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
             boolean goodAspectRatio = checkAspectRatio(image);
             if (!goodAspectRatio) {
                 Log.d(TAG, "SAFE: Aspect ratio check failed");
-                gray.release();
                 return false;
             }
             
             // Check 3: Has reasonable edge density (indicates document-like content)
-            boolean hasEdges = checkEdgeDensity(gray);
+            boolean hasEdges = checkEdgeDensity(quality);
             if (!hasEdges) {
                 Log.d(TAG, "SAFE: Edge density check failed");
-                gray.release();
                 return false;
             }
             
-            gray.release();
             Log.d(TAG, "SAFE: All basic validation checks passed");
             return true;
             
@@ -1013,29 +1451,12 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
     /**
      * Check if image has good quality (not too blurry)
      */
-    private boolean checkImageQuality(Mat gray) {
-        try {
-            Mat laplacian = new Mat();
-            Imgproc.Laplacian(gray, laplacian, CvType.CV_64F);
-            
-            MatOfDouble mean = new MatOfDouble();
-            MatOfDouble stddev = new MatOfDouble();
-            Core.meanStdDev(laplacian, mean, stddev);
-            
-            double variance = stddev.get(0, 0)[0] * stddev.get(0, 0)[0];
-            
-            laplacian.release();
-            
-            // Reasonable quality threshold
-            boolean goodQuality = variance > 30;
-            Log.d(TAG, String.format("SAFE: Image quality variance=%.2f, good=%b", variance, goodQuality));
-            
-            return goodQuality;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "SAFE: Error checking image quality: " + e.getMessage());
-            return false;
-        }
+    private boolean checkImageQuality(QualityScorer.Result quality) {
+        boolean goodQuality = quality.sharpness > VALIDATION_MIN_SHARPNESS;
+        
+        Log.d(TAG, String.format("SAFE: Image quality variance=%.2f, good=%b", quality.sharpness, goodQuality));
+        
+        return goodQuality;
     }
     
     /**
@@ -1055,27 +1476,13 @@ public class TemplateMatchingModule extends ReactContextBaseJavaModule {
     /**
      * Check if image has reasonable edge density (indicates document-like content)
      */
-    private boolean checkEdgeDensity(Mat gray) {
-        try {
-            Mat edges = new Mat();
-            Imgproc.Canny(gray, edges, 50, 150);
-            
-            int edgePixels = Core.countNonZero(edges);
-            int totalPixels = edges.rows() * edges.cols();
-            double edgeDensity = (double) edgePixels / totalPixels;
-            
-            edges.release();
-            
-            // Documents should have reasonable edge density (not too few, not too many)
-            boolean hasEdges = edgeDensity > 0.01 && edgeDensity < 0.3;
-            
-            Log.d(TAG, String.format("SAFE: Edge density=%.3f, good=%b", edgeDensity, hasEdges));
-            
-            return hasEdges;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "SAFE: Error checking edge density: " + e.getMessage());
-            return false;
-        }
+    private boolean checkEdgeDensity(QualityScorer.Result quality) {
+        // Documents should have reasonable edge density (not too few, not too many)
+        boolean hasEdges = quality.edgeDensity > VALIDATION_MIN_EDGE_DENSITY
+                && quality.edgeDensity < VALIDATION_MAX_EDGE_DENSITY;
+        
+        Log.d(TAG, String.format("SAFE: Edge density=%.3f, good=%b", quality.edgeDensity, hasEdges));
+        
+        return hasEdges;
     }
 } 
\ No newline at end of file
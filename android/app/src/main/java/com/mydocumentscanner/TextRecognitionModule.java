@@ -41,7 +41,7 @@ public class TextRecognitionModule extends ReactContextBaseJavaModule {
         return "TextRecognitionModule";
     }
 
-    private WritableMap convertRectToMap(Rect rect) {
+    private static WritableMap convertRectToMap(Rect rect) {
         WritableMap rectMap = Arguments.createMap();
         rectMap.putInt("left", rect.left);
         rectMap.putInt("top", rect.top);
@@ -50,7 +50,7 @@ public class TextRecognitionModule extends ReactContextBaseJavaModule {
         return rectMap;
     }
 
-    private WritableArray convertPointsToArray(Point[] points) {
+    private static WritableArray convertPointsToArray(Point[] points) {
         WritableArray pointsArray = Arguments.createArray();
         for (Point point : points) {
             WritableMap pointMap = Arguments.createMap();
@@ -71,63 +71,109 @@ public class TextRecognitionModule extends ReactContextBaseJavaModule {
             // Create InputImage object
             InputImage image = InputImage.fromBitmap(bitmap, 0);
 
-            // Get an instance of TextRecognizer
-            TextRecognizer recognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
-
-            // Process the image
-            recognizer.process(image)
-                    .addOnSuccessListener(new OnSuccessListener<Text>() {
-                        @Override
-                        public void onSuccess(Text result) {
-                            WritableMap response = Arguments.createMap();
-                            response.putString("text", result.getText());
-
-                            // Convert text blocks
-                            WritableArray blocksArray = Arguments.createArray();
-                            for (Text.TextBlock block : result.getTextBlocks()) {
-                                WritableMap blockMap = Arguments.createMap();
-                                blockMap.putString("text", block.getText());
-                                blockMap.putMap("boundingBox", convertRectToMap(block.getBoundingBox()));
-                                blockMap.putArray("cornerPoints", convertPointsToArray(block.getCornerPoints()));
-                                
-                                // Convert lines in this block
-                                WritableArray linesArray = Arguments.createArray();
-                                for (Text.Line line : block.getLines()) {
-                                    WritableMap lineMap = Arguments.createMap();
-                                    lineMap.putString("text", line.getText());
-                                    lineMap.putMap("boundingBox", convertRectToMap(line.getBoundingBox()));
-                                    lineMap.putArray("cornerPoints", convertPointsToArray(line.getCornerPoints()));
-                                    
-                                    // Convert elements in this line
-                                    WritableArray elementsArray = Arguments.createArray();
-                                    for (Text.Element element : line.getElements()) {
-                                        WritableMap elementMap = Arguments.createMap();
-                                        elementMap.putString("text", element.getText());
-                                        elementMap.putMap("boundingBox", convertRectToMap(element.getBoundingBox()));
-                                        elementMap.putArray("cornerPoints", convertPointsToArray(element.getCornerPoints()));
-                                        elementsArray.pushMap(elementMap);
-                                    }
-                                    lineMap.putArray("elements", elementsArray);
-                                    linesArray.pushMap(lineMap);
-                                }
-                                blockMap.putArray("lines", linesArray);
-                                blocksArray.pushMap(blockMap);
-                            }
-                            response.putArray("blocks", blocksArray);
-                            
-                            successCallback.invoke(response);
-                        }
-                    })
-                    .addOnFailureListener(new OnFailureListener() {
-                        @Override
-                        public void onFailure(@NonNull Exception e) {
-                            Log.e(TAG, "Text recognition failed: " + e.getMessage());
-                            errorCallback.invoke("Text recognition failed: " + e.getMessage());
-                        }
-                    });
+            recognize(image, successCallback, errorCallback);
         } catch (Exception e) {
             Log.e(TAG, "Error processing image: " + e.getMessage());
             errorCallback.invoke("Error processing image: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Text recognition on an image file (e.g. a capture written in "file" output mode),
+     * so the image never crosses the bridge as Base64
+     */
+    @ReactMethod
+    public void recognizeTextFromUri(String imageUri, final Callback successCallback, final Callback errorCallback) {
+        try {
+            Uri uri = imageUri.startsWith("/") ? Uri.fromFile(new File(imageUri)) : Uri.parse(imageUri);
+            InputImage image = InputImage.fromFilePath(getReactApplicationContext(), uri);
+            recognize(image, successCallback, errorCallback);
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading image " + imageUri + ": " + e.getMessage());
+            errorCallback.invoke("Error reading image: " + e.getMessage());
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing image: " + e.getMessage());
+            errorCallback.invoke("Error processing image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Text recognition on a registered image (ImageRegistry id, e.g. the imageId of a capture)
+     */
+    @ReactMethod
+    public void recognizeTextFromHandle(String imageId, final Callback successCallback, final Callback errorCallback) {
+        try (ImageRegistry.Handle handle = ImageRegistry.getInstance().acquire(imageId)) {
+            if (handle == null) {
+                errorCallback.invoke("Unknown image: " + imageId);
+                return;
+            }
+            recognize(InputImage.fromBitmap(handle.toBitmap(), 0), successCallback, errorCallback);
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing image " + imageId + ": " + e.getMessage());
+            errorCallback.invoke("Error processing image: " + e.getMessage());
+        }
+    }
+
+    private void recognize(InputImage image, final Callback successCallback, final Callback errorCallback) {
+        // Get an instance of TextRecognizer
+        TextRecognizer recognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+
+        // Process the image
+        recognizer.process(image)
+                .addOnSuccessListener(new OnSuccessListener<Text>() {
+                    @Override
+                    public void onSuccess(Text result) {
+                        successCallback.invoke(toResultMap(result));
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        Log.e(TAG, "Text recognition failed: " + e.getMessage());
+                        errorCallback.invoke("Text recognition failed: " + e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * { text, blocks: [{ text, boundingBox, cornerPoints, lines: [...] }] }, shared with CapturePipeline
+     */
+    static WritableMap toResultMap(Text result) {
+        WritableMap response = Arguments.createMap();
+        response.putString("text", result.getText());
+
+        // Convert text blocks
+        WritableArray blocksArray = Arguments.createArray();
+        for (Text.TextBlock block : result.getTextBlocks()) {
+            WritableMap blockMap = Arguments.createMap();
+            blockMap.putString("text", block.getText());
+            blockMap.putMap("boundingBox", convertRectToMap(block.getBoundingBox()));
+            blockMap.putArray("cornerPoints", convertPointsToArray(block.getCornerPoints()));
+            
+            // Convert lines in this block
+            WritableArray linesArray = Arguments.createArray();
+            for (Text.Line line : block.getLines()) {
+                WritableMap lineMap = Arguments.createMap();
+                lineMap.putString("text", line.getText());
+                lineMap.putMap("boundingBox", convertRectToMap(line.getBoundingBox()));
+                lineMap.putArray("cornerPoints", convertPointsToArray(line.getCornerPoints()));
+                
+                // Convert elements in this line
+                WritableArray elementsArray = Arguments.createArray();
+                for (Text.Element element : line.getElements()) {
+                    WritableMap elementMap = Arguments.createMap();
+                    elementMap.putString("text", element.getText());
+                    elementMap.putMap("boundingBox", convertRectToMap(element.getBoundingBox()));
+                    elementMap.putArray("cornerPoints", convertPointsToArray(element.getCornerPoints()));
+                    elementsArray.pushMap(elementMap);
+                }
+                lineMap.putArray("elements", elementsArray);
+                linesArray.pushMap(lineMap);
+            }
+            blockMap.putArray("lines", linesArray);
+            blocksArray.pushMap(blockMap);
+        }
+        response.putArray("blocks", blocksArray);
+        return response;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Ring bookkeeping only (makeRoom / commit); the pixel copy in offer() needs OpenCV natives
+ */
+public class BestFrameBufferTest {
+
+    private static BestFrameBuffer.Frame push(BestFrameBuffer buffer, long bytes, double score, long sequence) {
+        BestFrameBuffer.Frame slot = buffer.makeRoom(bytes);
+        buffer.commit(slot, bytes, score, sequence);
+        return slot;
+    }
+
+    @Test
+    public void emptyBufferHasNoBest() {
+        BestFrameBuffer buffer = new BestFrameBuffer(3, 1000);
+        assertNull(buffer.best());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void bestIsTheHighestScoreAndNewestWinsTies() {
+        BestFrameBuffer buffer = new BestFrameBuffer(4, 1000);
+        push(buffer, 10, 50, 1);
+        push(buffer, 10, 90, 2);
+        push(buffer, 10, 70, 3);
+        assertEquals(2, buffer.best().sequence);
+
+        push(buffer, 10, 90, 4);
+        assertEquals(4, buffer.best().sequence);
+    }
+
+    @Test
+    public void fullRingEvictsTheOldestFrame() {
+        BestFrameBuffer buffer = new BestFrameBuffer(3, 1000);
+        push(buffer, 10, 99, 1);
+        push(buffer, 10, 20, 2);
+        push(buffer, 10, 30, 3);
+        push(buffer, 10, 40, 4);
+        assertEquals(3, buffer.size());
+        assertEquals(30, buffer.bytes());
+        // The sharpest frame was the oldest, so it is gone
+        assertEquals(4, buffer.best().sequence);
+    }
+
+    @Test
+    public void byteBudgetEvictsOldestUntilTheNewRegionFits() {
+        BestFrameBuffer buffer = new BestFrameBuffer(8, 100);
+        push(buffer, 40, 10, 1);
+        push(buffer, 40, 20, 2);
+        push(buffer, 50, 5, 3);
+        assertEquals(2, buffer.size());
+        assertEquals(90, buffer.bytes());
+        assertEquals(2, buffer.best().sequence);
+
+        push(buffer, 100, 1, 4);
+        assertEquals(1, buffer.size());
+        assertEquals(100, buffer.bytes());
+    }
+
+    @Test
+    public void slotsAreReusedAfterEviction() {
+        BestFrameBuffer buffer = new BestFrameBuffer(2, 1000);
+        BestFrameBuffer.Frame first = push(buffer, 10, 1, 1);
+        push(buffer, 10, 2, 2);
+        assertSame(first, push(buffer, 10, 3, 3));
+    }
+
+    @Test
+    public void clearAndCapacityChangeDropEverything() {
+        BestFrameBuffer buffer = new BestFrameBuffer(3, 1000);
+        push(buffer, 10, 1, 1);
+        push(buffer, 10, 2, 2);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.bytes());
+        assertNull(buffer.best());
+
+        push(buffer, 10, 1, 3);
+        buffer.setCapacity(5);
+        assertEquals(0, buffer.size());
+        for (int i = 0; i < 5; i++) {
+            push(buffer, 10, i, 10 + i);
+        }
+        assertEquals(5, buffer.size());
+    }
+}
@@ -0,0 +1,159 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quality search of CaptureEncoder against a fake codec whose size grows with quality
+ */
+public class CaptureEncoderQualitySearchTest {
+
+    /**
+     * size = quality * bytesPerStep; records every quality tried and what was kept
+     */
+    private static final class FakeCodec implements CaptureEncoder.QualitySearch.Probe {
+        final long bytesPerStep;
+        final List<Integer> tried = new ArrayList<>();
+        int failFrom = Integer.MAX_VALUE;   // attempt index from which encodes fail
+        int keptFit = 0;
+        int keptMiss = 0;
+
+        FakeCodec(long bytesPerStep) {
+            this.bytesPerStep = bytesPerStep;
+        }
+
+        @Override
+        public long encode(int quality) {
+            tried.add(quality);
+            return tried.size() > failFrom ? -1 : quality * bytesPerStep;
+        }
+
+        @Override
+        public void keep(boolean fits) {
+            int last = tried.get(tried.size() - 1);
+            if (fits) {
+                keptFit = last;
+            } else {
+                keptMiss = last;
+            }
+        }
+    }
+
+    private CaptureEncoder.Settings settings;
+    private CaptureEncoder.QualitySearch search;
+
+    @Before
+    public void setUp() {
+        settings = new CaptureEncoder.Settings();
+        settings.quality = 85;
+        settings.minQuality = 40;
+        search = new CaptureEncoder.QualitySearch();
+    }
+
+    @Test
+    public void noBudgetEncodesOnceAtTheTargetQuality() {
+        FakeCodec codec = new FakeCodec(1000);
+        assertTrue(search.run(settings, codec));
+        assertEquals(1, search.attempts);
+        assertEquals(85, search.bestQuality);
+        assertEquals(85, codec.keptFit);
+    }
+
+    @Test
+    public void firstEncodeWithinBudgetStopsTheSearch() {
+        settings.maxBytes = 85_000;
+        assertTrue(search.run(settings, new FakeCodec(1000)));
+        assertEquals(1, search.attempts);
+        assertEquals(85, search.bestQuality);
+        assertEquals(0, search.smallestQuality);
+    }
+
+    @Test
+    public void searchFindsTheHighestQualityThatFits() {
+        settings.maxBytes = 61_500;
+        settings.maxSearchSteps = 8;
+        FakeCodec codec = new FakeCodec(1000);
+        assertTrue(search.run(settings, codec));
+        assertEquals(61, search.bestQuality);
+        assertEquals(61, codec.keptFit);
+        assertEquals(62, search.smallestQuality);
+    }
+
+    @Test
+    public void searchStopsAfterMaxSearchSteps() {
+        settings.maxBytes = 61_500;
+        settings.maxSearchSteps = 2;
+        FakeCodec codec = new FakeCodec(1000);
+        assertTrue(search.run(settings, codec));
+        assertEquals(3, search.attempts);
+        assertEquals(3, codec.tried.size());
+        assertTrue(search.bestQuality * 1000L <= settings.maxBytes);
+        assertEquals(search.bestQuality, codec.keptFit);
+    }
+
+    @Test
+    public void everyTriedQualityStaysWithinTheBounds() {
+        settings.maxBytes = 1;   // unreachable
+        settings.maxSearchSteps = 20;
+        FakeCodec codec = new FakeCodec(1000);
+        assertTrue(search.run(settings, codec));
+        for (int quality : codec.tried) {
+            assertTrue("tried q=" + quality, quality >= 40 && quality <= 85);
+        }
+        assertEquals(0, search.bestQuality);
+        assertEquals(40, search.smallestQuality);
+        assertEquals(40, codec.keptMiss);
+    }
+
+    @Test
+    public void outOfRangeSettingsAreClamped() {
+        settings.quality = 150;
+        settings.minQuality = 120;
+        settings.maxBytes = 1;
+        settings.maxSearchSteps = 20;
+        FakeCodec codec = new FakeCodec(1000);
+        assertTrue(search.run(settings, codec));
+        assertEquals(100, (int) codec.tried.get(0));
+        for (int quality : codec.tried) {
+            assertEquals(100, quality);
+        }
+        assertEquals(1, search.attempts);
+
+        settings.quality = 0;
+        settings.minQuality = -5;
+        settings.maxBytes = 0;
+        CaptureEncoder.QualitySearch low = new CaptureEncoder.QualitySearch();
+        assertTrue(low.run(settings, new FakeCodec(1000)));
+        assertEquals(1, low.bestQuality);
+    }
+
+    @Test
+    public void failedFirstEncodeReportsFailure() {
+        FakeCodec codec = new FakeCodec(1000);
+        codec.failFrom = 0;
+        assertFalse(search.run(settings, codec));
+        assertEquals(1, search.attempts);
+        assertEquals(0, search.bestQuality);
+    }
+
+    @Test
+    public void failedLaterEncodeKeepsTheResultSoFar() {
+        settings.maxBytes = 61_500;
+        settings.maxSearchSteps = 8;
+        FakeCodec codec = new FakeCodec(1000);
+        codec.failFrom = 2;   // first and second encodes succeed
+        assertTrue(search.run(settings, codec));
+        assertEquals(3, search.attempts);
+        // q=85 missed, q=62 missed, then the codec failed
+        assertEquals(0, search.bestQuality);
+        assertEquals(62, search.smallestQuality);
+        assertEquals(62, codec.keptMiss);
+    }
+}
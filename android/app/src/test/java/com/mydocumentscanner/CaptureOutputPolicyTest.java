@@ -0,0 +1,114 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.imgproc.Imgproc;
+
+public class CaptureOutputPolicyTest {
+
+    private CaptureOutputPolicy policy;
+    private CaptureOutputPolicy.Output out;
+
+    @Before
+    public void setUp() {
+        policy = new CaptureOutputPolicy();
+        out = new CaptureOutputPolicy.Output();
+    }
+
+    @Test
+    public void catalogueTypeUsesItsPhysicalSizeAtTheDpi() {
+        // 85.6 x 53.98 mm at 300 DPI
+        policy.resolve(900, 560, DocumentType.AADHAAR, out);
+        assertEquals(1011, out.width);
+        assertEquals(638, out.height);
+        assertEquals(1011 / 900.0, out.scale, 1e-9);
+        assertEquals(Imgproc.INTER_LINEAR, out.interpolation);
+        assertFalse(out.isDownscale());
+    }
+
+    @Test
+    public void physicalSizeFollowsTheQuadOrientation() {
+        policy.resolve(560, 900, DocumentType.AADHAAR, out);
+        assertEquals(638, out.width);
+        assertEquals(1011, out.height);
+    }
+
+    @Test
+    public void upscaleIsCappedRelativeToTheMeasuredPixels() {
+        policy.resolve(400, 250, DocumentType.AADHAAR, out);
+        assertEquals(600, out.width);
+        assertEquals(378, out.height);
+        assertEquals(1.5, out.scale, 1e-9);
+    }
+
+    @Test
+    public void unknownTypeKeepsTheMeasuredSize() {
+        policy.resolve(2000, 1500, null, out);
+        assertEquals(2000, out.width);
+        assertEquals(1500, out.height);
+        assertEquals(1.0, out.scale, 1e-9);
+        assertEquals(Imgproc.INTER_LINEAR, out.interpolation);
+    }
+
+    @Test
+    public void aspectOnlyTypeAndZeroDpiKeepTheMeasuredSize() {
+        policy.resolve(1200, 600, DocumentType.resolve("custom", 2.0), out);
+        assertEquals(1200, out.width);
+        assertEquals(600, out.height);
+
+        policy.dpi = 0;
+        policy.resolve(900, 560, DocumentType.AADHAAR, out);
+        assertEquals(900, out.width);
+        assertEquals(560, out.height);
+    }
+
+    @Test
+    public void longSideIsCappedAndShrinkingUsesAreaResampling() {
+        policy.resolve(5000, 3000, null, out);
+        assertEquals(3508, out.width);
+        assertEquals(2105, out.height);
+        assertEquals(3508 / 5000.0, out.scale, 1e-9);
+        assertEquals(Imgproc.INTER_AREA, out.interpolation);
+        assertTrue(out.isDownscale());
+    }
+
+    @Test
+    public void highDpiIsCappedAtMaxLongSide() {
+        policy.dpi = 600;
+        policy.resolve(2400, 3400, DocumentType.A4, out);
+        assertEquals(2480, out.width);
+        assertEquals(3508, out.height);
+    }
+
+    @Test
+    public void shortSideIsRaisedToTheMinimum() {
+        policy.resolve(400, 100, null, out);
+        assertEquals(1200, out.width);
+        assertEquals(300, out.height);
+        assertEquals(3.0, out.scale, 1e-9);
+    }
+
+    @Test
+    public void shortSideMinimumNeverPushesTheLongSidePastTheCap() {
+        // Receipt: shrunk to the cap, its short side stays below minShortSide
+        policy.resolve(8000, 200, null, out);
+        assertEquals(3508, out.width);
+        assertEquals(88, out.height);
+
+        // Grown towards minShortSide only until the long side reaches the cap
+        policy.resolve(2000, 100, null, out);
+        assertEquals(3508, out.width);
+        assertEquals(175, out.height);
+    }
+
+    @Test
+    public void degenerateMeasurementsAreClampedToOnePixel() {
+        policy.resolve(0, 0, null, out);
+        assertEquals(300, out.width);
+        assertEquals(300, out.height);
+    }
+}
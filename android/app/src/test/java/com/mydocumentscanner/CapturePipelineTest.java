@@ -0,0 +1,125 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Spec parsing and graph resolution of CapturePipeline.fromSpec
+ */
+public class CapturePipelineTest {
+    private static final CapturePipeline.Listener NO_LISTENER = (captureId, result) -> { };
+
+    private CapturePipeline pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    private CapturePipeline build(JavaOnlyMap... stages) {
+        pipeline = CapturePipeline.fromSpec(JavaOnlyArray.of((Object[]) stages), NO_LISTENER);
+        return pipeline;
+    }
+
+    private void assertRejected(String message, JavaOnlyMap... stages) {
+        try {
+            build(stages);
+            fail("Expected the spec to be rejected: " + message);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    @Test
+    public void emptySpecHasNoStages() {
+        assertEquals(0, build().size());
+    }
+
+    @Test
+    public void defaultPipelineKeepsDeclarationOrder() {
+        build(JavaOnlyMap.of("type", "crop", "margin", 0.01),
+                JavaOnlyMap.of("type", "orientation", "orientation", "landscape"),
+                JavaOnlyMap.of("type", "enhance", "filter", "shadow_removal"),
+                JavaOnlyMap.of("type", "qr", "input", "orientation"),
+                JavaOnlyMap.of("type", "ocr", "input", "orientation"),
+                JavaOnlyMap.of("type", "face", "input", "orientation", "output", "base64"));
+        assertEquals(6, pipeline.size());
+        assertArrayEquals(new String[]{"crop", "orientation", "enhance", "qr", "ocr", "face"},
+                pipeline.stageIds());
+    }
+
+    @Test
+    public void dependenciesRunFirstWhateverTheDeclarationOrder() {
+        build(JavaOnlyMap.of("type", "ocr", "input", "straight"),
+                JavaOnlyMap.of("type", "orientation", "id", "straight", "input", "cropped"),
+                JavaOnlyMap.of("type", "crop", "id", "cropped", "input", "capture"));
+        assertArrayEquals(new String[]{"cropped", "straight", "ocr"}, pipeline.stageIds());
+    }
+
+    @Test
+    public void afterOrdersStagesWithoutSharingAnImage() {
+        build(JavaOnlyMap.of("type", "qr", "input", null, "after", JavaOnlyArray.of("ocr")),
+                JavaOnlyMap.of("type", "ocr", "input", null));
+        assertArrayEquals(new String[]{"ocr", "qr"}, pipeline.stageIds());
+    }
+
+    @Test
+    public void cycleThroughAfterIsRejected() {
+        assertRejected("Capture pipeline has a dependency cycle",
+                JavaOnlyMap.of("type", "crop", "after", JavaOnlyArray.of("orientation")),
+                JavaOnlyMap.of("type", "orientation"));
+    }
+
+    @Test
+    public void selfDependencyIsRejected() {
+        assertRejected("Capture pipeline has a dependency cycle",
+                JavaOnlyMap.of("type", "crop", "input", "crop"));
+    }
+
+    @Test
+    public void unknownAfterDependencyIsRejected() {
+        assertRejected("Stage ocr depends on unknown stage missing",
+                JavaOnlyMap.of("type", "ocr", "after", JavaOnlyArray.of("missing")));
+    }
+
+    @Test
+    public void unknownInputIsRejected() {
+        assertRejected("Stage qr reads missing, which is not an image stage",
+                JavaOnlyMap.of("type", "qr", "input", "missing"));
+    }
+
+    @Test
+    public void nonImageInputIsRejected() {
+        assertRejected("Stage qr reads ocr, which is not an image stage",
+                JavaOnlyMap.of("type", "ocr"),
+                JavaOnlyMap.of("type", "qr", "input", "ocr"));
+    }
+
+    @Test
+    public void duplicateIdIsRejected() {
+        assertRejected("Duplicate stage id: crop",
+                JavaOnlyMap.of("type", "crop"),
+                JavaOnlyMap.of("type", "crop"));
+    }
+
+    @Test
+    public void unknownTypeIsRejected() {
+        assertRejected("Unknown stage type: blur", JavaOnlyMap.of("type", "blur"));
+        assertRejected("Unknown stage type: null", JavaOnlyMap.of("id", "untyped"));
+    }
+
+    @Test
+    public void unknownFilterIsRejected() {
+        assertRejected("Unknown enhance filter: sepia", JavaOnlyMap.of("type", "enhance", "filter", "sepia"));
+    }
+}
@@ -0,0 +1,241 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class JpegPdfWriterTest {
+
+    // ---- JPEG headers (not decodable images; the writer never decodes) ----
+
+    private static byte[] jpeg(int sofMarker, int components, int width, int height, byte[] app1) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        // APP0 / JFIF, skipped by the parser
+        writeSegment(out, 0xE0, new byte[] {'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+        if (app1 != null) {
+            writeSegment(out, 0xE1, app1);
+        }
+        byte[] sof = new byte[6 + components * 3];
+        sof[0] = 8;
+        sof[1] = (byte) (height >> 8);
+        sof[2] = (byte) height;
+        sof[3] = (byte) (width >> 8);
+        sof[4] = (byte) width;
+        sof[5] = (byte) components;
+        writeSegment(out, sofMarker, sof);
+        writeSegment(out, 0xDA, new byte[] {1, 1, 0, 0, 0x3F, 0});
+        for (int i = 0; i < 32; i++) {
+            out.write(i * 7);
+        }
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        int length = payload.length + 2;
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static byte[] exif(int orientation, boolean littleEndian) {
+        byte[] b = new byte[6 + 8 + 2 + 12 + 4];
+        System.arraycopy(new byte[] {'E', 'x', 'i', 'f', 0, 0}, 0, b, 0, 6);
+        int t = 6;
+        if (littleEndian) {
+            b[t] = 'I'; b[t + 1] = 'I';
+            b[t + 2] = 42;                 // 42
+            b[t + 4] = 8;                  // IFD0 at 8
+            b[t + 8] = 1;                  // one entry
+            b[t + 10] = 0x12; b[t + 11] = 0x01;   // tag 0x0112
+            b[t + 12] = 3;                 // SHORT
+            b[t + 14] = 1;                 // count 1
+            b[t + 18] = (byte) orientation;
+        } else {
+            b[t] = 'M'; b[t + 1] = 'M';
+            b[t + 3] = 42;
+            b[t + 7] = 8;
+            b[t + 9] = 1;
+            b[t + 10] = 0x01; b[t + 11] = 0x12;
+            b[t + 13] = 3;
+            b[t + 17] = 1;
+            b[t + 19] = (byte) orientation;
+        }
+        return b;
+    }
+
+    private static JpegPdfWriter.JpegInfo read(byte[] bytes) throws IOException {
+        return JpegPdfWriter.readJpegInfo(new ByteArrayInputStream(bytes));
+    }
+
+    // ---- readJpegInfo ----
+
+    @Test
+    public void readsBaselineFrameHeader() throws IOException {
+        JpegPdfWriter.JpegInfo info = read(jpeg(0xC0, 3, 1240, 1754, null));
+        assertNotNull(info);
+        assertEquals(1240, info.width);
+        assertEquals(1754, info.height);
+        assertEquals(3, info.components);
+        assertEquals(1, info.orientation);
+    }
+
+    @Test
+    public void readsProgressiveFrameHeader() throws IOException {
+        JpegPdfWriter.JpegInfo info = read(jpeg(0xC2, 3, 640, 480, null));
+        assertNotNull(info);
+        assertEquals(640, info.width);
+        assertEquals(480, info.height);
+    }
+
+    @Test
+    public void readsGrayAndCmykComponentCounts() throws IOException {
+        assertEquals(1, read(jpeg(0xC0, 1, 100, 100, null)).components);
+        assertEquals(4, read(jpeg(0xC0, 4, 100, 100, null)).components);
+    }
+
+    @Test
+    public void truncatedInputHasNoFrameHeader() throws IOException {
+        byte[] full = jpeg(0xC0, 3, 640, 480, null);
+        // Inside the APP0 payload, right after the SOI + APP0 length, and inside the SOF
+        assertNull(read(Arrays.copyOf(full, 10)));
+        assertNull(read(Arrays.copyOf(full, 6)));
+        assertNull(read(Arrays.copyOf(full, 2 + 18 + 6)));
+    }
+
+    @Test
+    public void nonJpegInputIsRejected() throws IOException {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+        assertNull(read(png));
+        assertNull(read(new byte[0]));
+    }
+
+    @Test
+    public void readsExifOrientationInEitherByteOrder() throws IOException {
+        JpegPdfWriter.JpegInfo little = read(jpeg(0xC0, 3, 400, 200, exif(6, true)));
+        assertEquals(6, little.orientation);
+        assertTrue(little.swapsAxes());
+        assertEquals(200, little.displayWidth());
+        assertEquals(400, little.displayHeight());
+
+        JpegPdfWriter.JpegInfo big = read(jpeg(0xC0, 3, 400, 200, exif(3, false)));
+        assertEquals(3, big.orientation);
+        assertFalse(big.swapsAxes());
+    }
+
+    @Test
+    public void nonExifApp1KeepsTheDefaultOrientation() throws IOException {
+        byte[] xmp = "http://ns.adobe.com/xap/1.0/\0<x/>".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(1, read(jpeg(0xC0, 3, 400, 200, xmp)).orientation);
+    }
+
+    // ---- PDF structure ----
+
+    private static String writePdf(byte[]... pages) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JpegPdfWriter writer = new JpegPdfWriter(out);
+        for (byte[] page : pages) {
+            JpegPdfWriter.JpegInfo info = read(page);
+            writer.addPage(new ByteArrayInputStream(page), page.length, info, 595, 842);
+        }
+        writer.finish();
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void xrefOffsetsPointAtTheirObjects() throws IOException {
+        String pdf = writePdf(jpeg(0xC0, 3, 1240, 1754, null), jpeg(0xC2, 1, 800, 600, null),
+                jpeg(0xC0, 4, 300, 300, exif(8, true)));
+
+        Matcher start = Pattern.compile("startxref\n(\\d+)\n%%EOF\n$").matcher(pdf);
+        assertTrue(start.find());
+        int xref = Integer.parseInt(start.group(1));
+        assertTrue(pdf.startsWith("xref\n0 ", xref));
+
+        Matcher header = Pattern.compile("xref\n0 (\\d+)\n").matcher(pdf);
+        assertTrue(header.find(xref));
+        int size = Integer.parseInt(header.group(1));
+        assertEquals(2 + 3 * 3 + 1, size);
+
+        int entry = header.end();
+        assertEquals("0000000000 65535 f \n", pdf.substring(entry, entry + 20));
+        for (int object = 1; object < size; object++) {
+            String line = pdf.substring(entry + object * 20, entry + (object + 1) * 20);
+            assertTrue(line, line.endsWith(" 00000 n \n"));
+            int offset = Integer.parseInt(line.substring(0, 10));
+            assertTrue("object " + object, pdf.startsWith(object + " 0 obj\n", offset));
+        }
+        assertTrue(pdf.contains("/Size " + size + " /Root 1 0 R"));
+        assertTrue(pdf.contains("/Count 3"));
+    }
+
+    @Test
+    public void streamLengthsMatchTheirBytes() throws IOException {
+        byte[] page = jpeg(0xC0, 3, 1240, 1754, null);
+        String pdf = writePdf(page, jpeg(0xC0, 1, 640, 480, null));
+
+        Matcher stream = Pattern.compile("/Length (\\d+) >>\nstream\n").matcher(pdf);
+        int streams = 0;
+        while (stream.find()) {
+            int length = Integer.parseInt(stream.group(1));
+            String after = pdf.substring(stream.end() + length);
+            assertTrue("stream " + streams, after.startsWith("endstream\n") || after.startsWith("\nendstream\n"));
+            streams++;
+        }
+        assertEquals(4, streams);   // content + image per page
+
+        // The first image stream is the JPEG, byte for byte
+        int image = pdf.indexOf("/Filter /DCTDecode /Length " + page.length + " >>\nstream\n");
+        assertTrue(image > 0);
+        int data = pdf.indexOf("stream\n", image) + "stream\n".length();
+        byte[] embedded = pdf.substring(data, data + page.length).getBytes(StandardCharsets.ISO_8859_1);
+        assertArrayEquals(page, embedded);
+    }
+
+    @Test
+    public void colourSpaceFollowsComponents() throws IOException {
+        String pdf = writePdf(jpeg(0xC0, 1, 10, 10, null), jpeg(0xC0, 3, 10, 10, null), jpeg(0xC0, 4, 10, 10, null));
+        assertTrue(pdf.contains("/ColorSpace /DeviceGray"));
+        assertTrue(pdf.contains("/ColorSpace /DeviceRGB"));
+        assertTrue(pdf.contains("/ColorSpace /DeviceCMYK /Decode [1 0 1 0 1 0 1 0]"));
+    }
+
+    @Test
+    public void contentMatrixFitsAndCentresTheImage() throws IOException {
+        // 1190 x 842 on a 595 x 842 page: scale 0.5, centred vertically
+        String pdf = writePdf(jpeg(0xC0, 3, 1190, 842, null));
+        assertTrue(pdf.contains("q 595.00 0.00 0.00 421.00 0.00 210.50 cm /Im0 Do Q\n"));
+    }
+
+    @Test
+    public void contentMatrixTurnsRotatedImagesUpright() throws IOException {
+        // Stored 1684 x 1190, EXIF 6: shown as 1190 x 1684, i.e. 595 x 842 at scale 0.5
+        String pdf = writePdf(jpeg(0xC0, 3, 1684, 1190, exif(6, true)));
+        assertTrue(pdf, pdf.contains("q 0.00 -842.00 595.00 0.00 0.00 842.00 cm /Im0 Do Q\n"));
+        // The image XObject keeps its stored size
+        assertTrue(pdf.contains("/Width 1684 /Height 1190"));
+    }
+
+    @Test(expected = IOException.class)
+    public void emptyDocumentCannotBeFinished() throws IOException {
+        new JpegPdfWriter(new ByteArrayOutputStream()).finish();
+    }
+}
@@ -0,0 +1,148 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class QuadScorerTest {
+    private static final float FRAME_WIDTH = 1000f;
+    private static final float FRAME_HEIGHT = 800f;
+
+    private QuadScorer scorer;
+
+    @Before
+    public void setUp() {
+        scorer = new QuadScorer(4);
+        scorer.reset(FRAME_WIDTH, FRAME_HEIGHT);
+    }
+
+    /**
+     * Axis-aligned rectangle centred in the frame
+     */
+    private static float[] centredRect(float width, float height) {
+        float x0 = (FRAME_WIDTH - width) / 2;
+        float y0 = (FRAME_HEIGHT - height) / 2;
+        return new float[] {x0, y0, x0 + width, y0, x0 + width, y0 + height, x0, y0 + height};
+    }
+
+    @Test
+    public void featuresOfARectangle() {
+        int index = scorer.add(centredRect(600, 400), 0);
+        assertEquals(0, index);
+        assertEquals(240000f, scorer.feature(index, QuadScorer.F_AREA), 1e-2f);
+        assertEquals(2000f, scorer.feature(index, QuadScorer.F_PERIMETER), 1e-2f);
+        assertEquals(1.5f, scorer.feature(index, QuadScorer.F_ASPECT), 1e-4f);
+        assertEquals(1f, scorer.feature(index, QuadScorer.F_PARALLELISM), 1e-4f);
+        assertEquals(0f, scorer.feature(index, QuadScorer.F_MAX_CORNER_COS), 1e-4f);
+        assertEquals(1f, scorer.feature(index, QuadScorer.F_RECTANGULARITY), 1e-4f);
+        assertEquals(0f, scorer.feature(index, QuadScorer.F_CENTER_OFFSET), 1e-4f);
+        assertEquals(0.3f, scorer.feature(index, QuadScorer.F_AREA_FRACTION), 1e-4f);
+        assertEquals(400f, scorer.feature(index, QuadScorer.F_MIN_SIDE), 1e-3f);
+        assertEquals(1f, scorer.feature(index, QuadScorer.F_CONVEX), 0f);
+    }
+
+    @Test
+    public void addOrdersTheStoredCorners() {
+        float[] rect = centredRect(600, 400);
+        float[] shuffled = {rect[4], rect[5], rect[0], rect[1], rect[6], rect[7], rect[2], rect[3]};
+        int index = scorer.add(shuffled, 0);
+        float[] stored = new float[8];
+        scorer.copyQuad(index, stored, 0);
+        assertArrayEquals(rect, stored, 0f);
+    }
+
+    @Test
+    public void limitsRejectSmallSkewedAndConcaveQuads() {
+        // Under minAreaFraction (5%)
+        assertEquals(-1, scorer.add(centredRect(100, 100), 0));
+        // Interior angles far from 90 degrees
+        assertEquals(-1, scorer.add(new float[] {100, 100, 900, 100, 300, 700, 200, 600}, 0));
+        // Concave (dart)
+        assertEquals(-1, scorer.add(new float[] {100, 100, 900, 100, 500, 300, 100, 700}, 0));
+        assertEquals(0, scorer.size());
+    }
+
+    @Test
+    public void expectedAspectGateRejectsOtherShapes() {
+        scorer.limits.expectedAspect = 1.0f;
+        scorer.limits.aspectTolerance = 0.2f;
+        assertEquals(-1, scorer.add(centredRect(600, 300), 0));
+        assertTrue(scorer.add(centredRect(400, 400), 0) >= 0);
+    }
+
+    @Test
+    public void expectedAspectGateAcceptsEitherOrientation() {
+        scorer.limits.expectedAspect = 1.6f;
+        scorer.limits.aspectTolerance = 0.25f;
+        assertTrue(scorer.add(centredRect(640, 400), 0) >= 0);
+        assertTrue(scorer.add(centredRect(400, 640), 0) >= 0);
+        assertEquals(-1, scorer.add(centredRect(600, 600), 0));
+    }
+
+    @Test
+    public void expectedAspectAlsoDrivesTheScore() {
+        scorer.limits.expectedAspect = 1.6f;
+        scorer.limits.aspectTolerance = 0.5f;
+        // Same area, one on the expected ratio and one square
+        int matching = scorer.add(centredRect(640, 400), 0);
+        int square = scorer.add(centredRect(506, 506), 0);
+        assertTrue(scorer.score(matching) > scorer.score(square));
+    }
+
+    @Test
+    public void aspectDeviationIsMeasuredInTheNearerOrientation() {
+        assertEquals(0f, QuadScorer.aspectDeviation(1.6f, 1.6f), 1e-6f);
+        assertEquals(0f, QuadScorer.aspectDeviation(0.625f, 1.6f), 1e-6f);
+        assertEquals(0.1f, QuadScorer.aspectDeviation(1.76f, 1.6f), 1e-6f);
+        assertEquals(0.1f, QuadScorer.aspectDeviation(0.6875f, 1.6f), 1e-6f);
+    }
+
+    @Test
+    public void largerCentredRectangleScoresHigher() {
+        int small = scorer.add(centredRect(320, 240), 0);
+        int large = scorer.add(centredRect(640, 480), 0);
+        assertTrue(scorer.score(large) > scorer.score(small));
+    }
+
+    @Test
+    public void rankKeepsTheBestKInDescendingOrder() {
+        int a = scorer.add(centredRect(320, 240), 0);
+        int b = scorer.add(centredRect(700, 500), 0);
+        int c = scorer.add(centredRect(500, 380), 0);
+        scorer.add(centredRect(260, 200), 0);
+
+        assertEquals(2, scorer.rank(2));
+        assertEquals(b, scorer.rankedIndex(0));
+        assertEquals(c, scorer.rankedIndex(1));
+
+        assertEquals(4, scorer.rank(10));
+        for (int r = 1; r < 4; r++) {
+            assertTrue(scorer.score(scorer.rankedIndex(r - 1)) >= scorer.score(scorer.rankedIndex(r)));
+        }
+        assertEquals(a, scorer.rankedIndex(2));
+    }
+
+    @Test
+    public void arenaRejectsCandidatesWhenFullAndResetClearsIt() {
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, scorer.add(centredRect(400 + i * 20, 300), 0));
+        }
+        assertEquals(-1, scorer.add(centredRect(500, 300), 0));
+        scorer.reset(FRAME_WIDTH, FRAME_HEIGHT);
+        assertEquals(0, scorer.size());
+        assertEquals(0, scorer.rank(3));
+    }
+
+    @Test
+    public void evaluateDoesNotAddTheCandidate() {
+        float[] features = new float[QuadScorer.FEATURE_COUNT];
+        assertTrue(scorer.evaluate(centredRect(600, 400), 0, scorer.limits, features));
+        assertFalse(scorer.evaluate(centredRect(50, 50), 0, scorer.limits, features));
+        assertEquals(0, scorer.size());
+        assertEquals(2500f, features[QuadScorer.F_AREA], 1e-2f);
+    }
+}
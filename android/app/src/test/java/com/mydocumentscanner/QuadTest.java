@@ -0,0 +1,47 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class QuadTest {
+
+    private static Quad quad(float... pts) {
+        return new Quad().set(pts, 0);
+    }
+
+    @Test
+    public void orderSortsCornersClockwiseFromTopLeft() {
+        Quad q = quad(100, 80, 10, 10, 90, 12, 12, 70).order();
+        assertArrayEquals(new float[] {10, 10, 90, 12, 100, 80, 12, 70}, q.pts, 0f);
+    }
+
+    @Test
+    public void areaIsIndependentOfWinding() {
+        assertEquals(2000f, quad(0, 0, 50, 0, 50, 40, 0, 40).area(), 1e-3f);
+        assertEquals(2000f, quad(0, 0, 0, 40, 50, 40, 50, 0).area(), 1e-3f);
+    }
+
+    @Test
+    public void maxWidthAndHeightTakeTheLongerEdges() {
+        // Trapezoid: top edge 60, bottom edge 100, slanted sides
+        Quad q = quad(20, 0, 80, 0, 100, 40, 0, 40);
+        assertEquals(100f, q.maxWidth(), 1e-3f);
+        assertEquals((float) Math.hypot(20, 40), q.maxHeight(), 1e-3f);
+    }
+
+    @Test
+    public void scaleAndOffsetMapsEveryCorner() {
+        Quad q = quad(0, 0, 10, 0, 10, 20, 0, 20).scaleAndOffset(2.0, 5, -3);
+        assertArrayEquals(new float[] {5, -3, 25, -3, 25, 37, 5, 37}, q.pts, 1e-4f);
+    }
+
+    @Test
+    public void setCopiesFromOffset() {
+        float[] packed = {9, 9, 1, 2, 3, 4, 5, 6, 7, 8};
+        Quad q = new Quad().set(packed, 2);
+        packed[2] = 100;
+        assertArrayEquals(new float[] {1, 2, 3, 4, 5, 6, 7, 8}, q.pts, 0f);
+    }
+}
@@ -0,0 +1,132 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ScanTraceHistogramTest {
+    private static final double EPS = 1e-9;
+
+    private ScanTrace.HistogramSink sink;
+
+    @Before
+    public void setUp() {
+        sink = new ScanTrace.HistogramSink();
+    }
+
+    private void record(ScanTrace.Span span, long micros, int times) {
+        for (int i = 0; i < times; i++) {
+            sink.onEnd(span, 0, micros * 1000);
+        }
+    }
+
+    private ScanTrace.HistogramSink.Snapshot only() {
+        List<ScanTrace.HistogramSink.Snapshot> snapshots = sink.snapshot();
+        assertEquals(1, snapshots.size());
+        return snapshots.get(0);
+    }
+
+    @Test
+    public void emptySinkHasNoSnapshots() {
+        assertTrue(sink.snapshot().isEmpty());
+    }
+
+    @Test
+    public void percentilesAreCappedAtTheMax() {
+        // 1000us falls in [512, 1024); the bucket bound is above every sample
+        record(ScanTrace.Span.WARP, 1000, 100);
+        ScanTrace.HistogramSink.Snapshot s = only();
+        assertSame(ScanTrace.Span.WARP, s.span);
+        assertEquals(100, s.count);
+        assertEquals(1.0, s.meanMs, EPS);
+        assertEquals(1.0, s.p50Ms, EPS);
+        assertEquals(1.0, s.p95Ms, EPS);
+        assertEquals(1.0, s.maxMs, EPS);
+    }
+
+    @Test
+    public void percentilesReportTheBucketUpperBound() {
+        record(ScanTrace.Span.THRESHOLD, 100, 94);     // [64, 128)
+        record(ScanTrace.Span.THRESHOLD, 300, 5);      // [256, 512)
+        record(ScanTrace.Span.THRESHOLD, 10_000, 1);   // [8192, 16384)
+        ScanTrace.HistogramSink.Snapshot s = only();
+        assertEquals(100, s.count);
+        assertEquals((94 * 100 + 5 * 300 + 10_000) / 1000.0 / 100, s.meanMs, EPS);
+        assertEquals(0.128, s.p50Ms, EPS);
+        assertEquals(0.512, s.p95Ms, EPS);
+        assertEquals(10.0, s.maxMs, EPS);
+    }
+
+    @Test
+    public void p95LandsInTheTailBucket() {
+        record(ScanTrace.Span.ENCODE, 100, 90);
+        record(ScanTrace.Span.ENCODE, 5000, 10);
+        ScanTrace.HistogramSink.Snapshot s = only();
+        assertEquals(0.128, s.p50Ms, EPS);
+        assertEquals(5.0, s.p95Ms, EPS);
+        assertEquals(5.0, s.maxMs, EPS);
+        assertEquals(0.59, s.meanMs, EPS);
+    }
+
+    @Test
+    public void exactPowersOfTwoStartTheNextBucket() {
+        // 64us has bit length 7, so it belongs to [64, 128) and reports 128 unless capped
+        record(ScanTrace.Span.BLUR, 64, 1);
+        record(ScanTrace.Span.BLUR, 100, 1);
+        ScanTrace.HistogramSink.Snapshot s = only();
+        assertEquals(0.1, s.p50Ms, EPS);
+    }
+
+    @Test
+    public void subMicrosecondSpansLandInTheFirstBucket() {
+        sink.onEnd(ScanTrace.Span.ROTATE, 0, 500);
+        ScanTrace.HistogramSink.Snapshot s = only();
+        assertEquals(1, s.count);
+        assertEquals(0.0, s.p50Ms, EPS);
+        assertEquals(0.0, s.maxMs, EPS);
+    }
+
+    @Test
+    public void overflowBucketReportsTheMax() {
+        long hourMicros = 3_600_000_000L;   // past the last bucket bound of 2^31us
+        record(ScanTrace.Span.VALIDATE, hourMicros, 3);
+        ScanTrace.HistogramSink.Snapshot s = only();
+        assertEquals(hourMicros / 1000.0, s.p50Ms, EPS);
+        assertEquals(hourMicros / 1000.0, s.p95Ms, EPS);
+        assertEquals(hourMicros / 1000.0, s.maxMs, EPS);
+    }
+
+    @Test
+    public void snapshotsFollowSpanOrderAndSkipUnusedSpans() {
+        record(ScanTrace.Span.ENCODE, 10, 1);
+        record(ScanTrace.Span.INGEST, 10, 2);
+        record(ScanTrace.Span.CONTOURS, 10, 3);
+        List<ScanTrace.HistogramSink.Snapshot> snapshots = sink.snapshot();
+        assertEquals(3, snapshots.size());
+        assertSame(ScanTrace.Span.INGEST, snapshots.get(0).span);
+        assertSame(ScanTrace.Span.CONTOURS, snapshots.get(1).span);
+        assertSame(ScanTrace.Span.ENCODE, snapshots.get(2).span);
+        assertEquals(2, snapshots.get(0).count);
+        assertEquals(3, snapshots.get(1).count);
+        assertEquals(1, snapshots.get(2).count);
+    }
+
+    @Test
+    public void resetClearsEverySpan() {
+        record(ScanTrace.Span.RESIZE, 5000, 4);
+        record(ScanTrace.Span.WARP, 100, 4);
+        sink.reset();
+        assertTrue(sink.snapshot().isEmpty());
+
+        record(ScanTrace.Span.RESIZE, 100, 1);
+        ScanTrace.HistogramSink.Snapshot s = only();
+        assertEquals(1, s.count);
+        assertEquals(0.1, s.maxMs, EPS);
+        assertEquals(0.1, s.p95Ms, EPS);
+    }
+}
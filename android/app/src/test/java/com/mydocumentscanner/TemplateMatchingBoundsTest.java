@@ -0,0 +1,55 @@
+package com.mydocumentscanner;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+
+public class TemplateMatchingBoundsTest {
+    // Native template: 100 x 50 px, 150 x 40 px from the document corner,
+    // 1/8 of the document width and 1/4 of its height
+    private static final double TEMPLATE_WIDTH = 100;
+    private static final double TEMPLATE_HEIGHT = 50;
+    private static final Size IMAGE = new Size(4000, 3000);
+
+    private static TemplateMatchingModule.DocumentBounds bounds(String position, double x, double y,
+                                                                double scale) {
+        TemplateMatchingModule.TemplateConfig config = new TemplateMatchingModule.TemplateConfig(
+                null, "logo", position, 150, 40, 0.125, 0.25);
+        Size matched = new Size(TEMPLATE_WIDTH * scale, TEMPLATE_HEIGHT * scale);
+        TemplateMatchingModule.TemplateMatch match = new TemplateMatchingModule.TemplateMatch(
+                "logo", position, new Point(x, y), matched, 0.9, scale, config);
+        return TemplateMatchingModule.calculateDocumentBounds(Collections.singletonList(match), IMAGE);
+    }
+
+    @Test
+    public void topLeftAtNativeScaleUsesTheConfiguredOffsets() {
+        TemplateMatchingModule.DocumentBounds b = bounds("top-left", 600, 100, 1.0);
+        assertEquals(450, b.x);
+        assertEquals(60, b.y);
+        assertEquals(800, b.width);
+        assertEquals(200, b.height);
+    }
+
+    @Test
+    public void topLeftOffsetsFollowTheMatchedScale() {
+        // 250 x 125 px template: offsets 375 x 100 px, document 2000 x 500 px
+        TemplateMatchingModule.DocumentBounds b = bounds("top-left", 900, 400, 2.5);
+        assertEquals(525, b.x);
+        assertEquals(300, b.y);
+        assertEquals(2000, b.width);
+        assertEquals(500, b.height);
+    }
+
+    @Test
+    public void topRightOffsetsFollowTheMatchedScale() {
+        TemplateMatchingModule.DocumentBounds b = bounds("top-right", 2100, 300, 2.5);
+        assertEquals(2100 - 2000 + 250 + 375, b.x);
+        assertEquals(200, b.y);
+        assertEquals(2000, b.width);
+        assertEquals(500, b.height);
+    }
+}